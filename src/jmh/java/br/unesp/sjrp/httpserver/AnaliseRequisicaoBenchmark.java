@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Leitura de requisições com conjuntos de cabeçalhos realistas: um
+ * navegador (muitos cabeçalhos, Cookie longo) e um cliente mínimo (curl).
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AnaliseRequisicaoBenchmark {
+
+    private static final String NAVEGADOR = "GET /css/estilo.css?v=42 HTTP/1.1\r\n"
+            + "Host: localhost:8000\r\n"
+            + "Connection: keep-alive\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) "
+            + "Chrome/120.0.0.0 Safari/537.36\r\n"
+            + "Accept: text/css,*/*;q=0.1\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Accept-Language: pt-BR,pt;q=0.9,en-US;q=0.8,en;q=0.7\r\n"
+            + "Referer: http://localhost:8000/index.html\r\n"
+            + "Cookie: sessao=8f14e45fceea167a5a36dedd4bea2543; preferencias=tema%3Descuro%26idioma%3Dpt; "
+            + "_ga=GA1.1.123456789.1700000000\r\n"
+            + "If-None-Match: \"5d41402abc4b2a76b9719d911017c592\"\r\n"
+            + "If-Modified-Since: Sat, 01 Feb 2025 09:05:03 GMT\r\n"
+            + "Sec-Fetch-Dest: style\r\n"
+            + "Sec-Fetch-Mode: no-cors\r\n"
+            + "Sec-Fetch-Site: same-origin\r\n"
+            + "\r\n";
+    private static final String CURL = "GET / HTTP/1.1\r\n"
+            + "Host: localhost:8000\r\n"
+            + "User-Agent: curl/8.5.0\r\n"
+            + "Accept: */*\r\n"
+            + "\r\n";
+
+    @Param({"navegador", "curl"})
+    private String cliente;
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private final AnalisadorRequisicao analisador = new AnalisadorRequisicao();
+
+    @Setup
+    public void preparar() {
+        bytes = ("navegador".equals(cliente) ? NAVEGADOR : CURL).getBytes(StandardCharsets.ISO_8859_1);
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Caminho público completo: stream, LeitorRequisicoes e analisador.
+     */
+    @Benchmark
+    public RequisicaoHTTP lerRequisicao() throws IOException {
+        return RequisicaoHTTP.lerRequisicao(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Só o analisador sobre bytes já no buffer, como no motor NIO.
+     */
+    @Benchmark
+    public RequisicaoHTTP analisar() throws IOException {
+        buffer.clear();
+        analisador.reiniciar();
+        analisador.analisar(buffer);
+        return analisador.getRequisicao();
+    }
+
+}
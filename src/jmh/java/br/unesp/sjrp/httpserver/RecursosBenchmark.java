@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Busca de recursos: direto no classpath (leitura a cada chamada) contra o
+ * CacheRecursos, com acerto e com um 404 guardado.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecursosBenchmark {
+
+    private FonteClasspath classpath;
+    private CacheRecursos cache;
+
+    @Setup
+    public void preparar() throws IOException {
+        classpath = new FonteClasspath();
+        cache = new CacheRecursos(classpath, 32 * 1024 * 1024, 60000);
+        cache.buscar("index.html");
+        cache.buscar("nao-existe.html");
+    }
+
+    @Benchmark
+    public Recurso classpath() throws IOException {
+        return classpath.buscar("index.html");
+    }
+
+    @Benchmark
+    public Recurso cache() throws IOException {
+        return cache.buscar("index.html");
+    }
+
+    @Benchmark
+    public Recurso cacheAusente() throws IOException {
+        return cache.buscar("nao-existe.html");
+    }
+
+}
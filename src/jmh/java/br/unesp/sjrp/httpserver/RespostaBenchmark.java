@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialização de respostas: o cabeçalho montado a cada envio, o envio
+ * completo para um stream nulo e o envio de uma resposta pronta.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RespostaBenchmark {
+
+    private RespostaHTTP resposta;
+    private RespostaHTTP pronta;
+    private RequisicaoHTTP requisicao;
+
+    @Setup
+    public void preparar() throws IOException {
+        resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setConteudoResposta(new byte[1024]);
+        resposta.setCabecalho("Location", "http://localhost:8000/");
+        resposta.setCabecalho("Date", RelogioHTTP.agora());
+        resposta.setCabecalho("Server", "MeuServidor/1.0");
+        resposta.setCabecalho("Content-Type", "text/html");
+        resposta.setCabecalho("Content-Length", "1024");
+        resposta.setCabecalho("ETag", "\"5d41402abc4b2a76b9719d911017c592\"");
+        resposta.setCabecalho("Last-Modified", "Sat, 01 Feb 2025 09:05:03 GMT");
+        resposta.setCabecalho("Accept-Ranges", "bytes");
+        resposta.setSaida(OutputStream.nullOutputStream());
+
+        requisicao = new RequisicaoHTTP();
+        requisicao.setMetodo("GET");
+        requisicao.setRecurso("/index.html");
+        requisicao.setProtocolo("HTTP/1.1");
+        pronta = ArquivosEstaticos.getPadrao().responder(requisicao);
+        pronta.setSaida(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public String toStringCabecalho() {
+        return resposta.toString();
+    }
+
+    @Benchmark
+    public RespostaHTTP enviar() throws IOException {
+        resposta.enviar();
+        return resposta;
+    }
+
+    @Benchmark
+    public RespostaHTTP enviarPronta() throws IOException {
+        pronta.enviar();
+        return pronta;
+    }
+
+    /**
+     * Montagem e envio da resposta de um recurso em cache, como por
+     * requisição no servidor.
+     */
+    @Benchmark
+    public RespostaHTTP responderEnviar() throws IOException {
+        RespostaHTTP nova = ArquivosEstaticos.getPadrao().responder(requisicao);
+        nova.setSaida(OutputStream.nullOutputStream());
+        nova.enviar();
+        return nova;
+    }
+
+}
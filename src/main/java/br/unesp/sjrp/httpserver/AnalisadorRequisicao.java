@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Analisador incremental de requisições HTTP que trabalha direto sobre os
+ * bytes de um ByteBuffer, sem Reader nem String.split.
+ *
+ * O buffer é passado em modo de leitura (após flip). Cada chamada de
+ * analisar consome apenas linhas completas, avançando a posição do buffer;
+ * uma linha que chegou pela metade fica no buffer e a varredura continua
+ * de onde parou na próxima chamada, depois que o chamador ler mais bytes
+ * (e eventualmente compactar o buffer). Funciona tanto com buffers em heap
+ * quanto com buffers diretos do PoolBuffers.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class AnalisadorRequisicao {
+
+    //tamanho máximo de uma linha (requisição ou cabeçalho)
+    static final int LIMITE_LINHA = 8192;
+    //tamanho máximo do corpo aceito via Content-Length
+    static final int LIMITE_CORPO = 1024 * 1024;
+
+    private static final int LINHA_REQUISICAO = 0;
+    private static final int CABECALHOS = 1;
+    private static final int CORPO = 2;
+    private static final int CONCLUIDA = 3;
+
+    private static final String[] METODOS = {"GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE"};
+    private static final String[] PROTOCOLOS = {"HTTP/1.1", "HTTP/1.0"};
+
+    private static final byte[][] BYTES_METODOS = emBytes(METODOS);
+    private static final byte[][] BYTES_PROTOCOLOS = emBytes(PROTOCOLOS);
+
+    private int estado = LINHA_REQUISICAO;
+    //quantos bytes após a posição do buffer já foram varridos sem achar '\n'
+    private int varrido;
+    //bytes do corpo já copiados
+    private int lidosCorpo;
+    private RequisicaoHTTP requisicao = new RequisicaoHTTP();
+    //cópia dos trechos de um buffer direto, reaproveitada entre os textos
+    private byte[] copia;
+
+    /**
+     * Consome do buffer as linhas completas disponíveis e, se houver
+     * Content-Length, os bytes do corpo. O que vier depois (a próxima
+     * requisição de um pipeline) permanece no buffer.
+     *
+     * @param buffer bytes recebidos, em modo de leitura
+     * @return true quando a requisição (linha, cabeçalhos e corpo) estiver
+     * completa
+     * @throws RequisicaoInvalidaException se os bytes não formarem uma
+     * requisição válida
+     */
+    boolean analisar(ByteBuffer buffer) throws RequisicaoInvalidaException {
+        while (estado != CONCLUIDA) {
+            if (estado == CORPO) {
+                return lerCorpo(buffer);
+            }
+            int inicio = buffer.position();
+            int quebra = procurar(buffer, (byte) '\n', inicio + varrido, buffer.limit());
+            if (quebra < 0) {
+                varrido = buffer.limit() - inicio;
+                if (varrido > LIMITE_LINHA) {
+                    throw new RequisicaoInvalidaException("Linha excede " + LIMITE_LINHA + " bytes");
+                }
+                return false;
+            }
+            varrido = 0;
+            buffer.position(quebra + 1);
+            //aceita tanto CRLF quanto LF sozinho
+            int fim = quebra > inicio && buffer.get(quebra - 1) == '\r' ? quebra - 1 : quebra;
+            if (estado == LINHA_REQUISICAO) {
+                //linhas vazias antes da requisição são ignoradas (RFC 7230, 3.5)
+                if (fim > inicio) {
+                    lerLinhaRequisicao(buffer, inicio, fim);
+                    estado = CABECALHOS;
+                }
+            } else if (fim == inicio) {
+                concluir();
+            } else {
+                lerCabecalho(buffer, inicio, fim);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a requisição analisada; só está completa depois que analisar
+     * retornar true
+     */
+    RequisicaoHTTP getRequisicao() {
+        return requisicao;
+    }
+
+    /**
+     * @return true se já começou a ler uma requisição que ainda não terminou
+     */
+    boolean isIniciada() {
+        return estado != LINHA_REQUISICAO || varrido > 0;
+    }
+
+    /**
+     * Prepara o analisador para a próxima requisição da mesma conexão.
+     */
+    void reiniciar() {
+        estado = LINHA_REQUISICAO;
+        varrido = 0;
+        lidosCorpo = 0;
+        requisicao = new RequisicaoHTTP();
+    }
+
+    private void lerLinhaRequisicao(ByteBuffer buffer, int inicio, int fim) throws RequisicaoInvalidaException {
+        int espaco1 = procurar(buffer, (byte) ' ', inicio, fim);
+        int espaco2 = espaco1 < 0 ? -1 : procurar(buffer, (byte) ' ', espaco1 + 1, fim);
+        if (espaco1 <= inicio || espaco2 <= espaco1 + 1 || espaco2 + 1 >= fim) {
+            throw new RequisicaoInvalidaException("Linha de requisição inválida");
+        }
+        int fimProtocolo = procurar(buffer, (byte) ' ', espaco2 + 1, fim);
+        requisicao.setMetodo(texto(buffer, inicio, espaco1, METODOS, BYTES_METODOS));
+        requisicao.setRecurso(texto(buffer, espaco1 + 1, espaco2, null, null));
+        requisicao.setProtocolo(texto(buffer, espaco2 + 1, fimProtocolo < 0 ? fim : fimProtocolo,
+                PROTOCOLOS, BYTES_PROTOCOLOS));
+    }
+
+    private void lerCabecalho(ByteBuffer buffer, int inicio, int fim) throws RequisicaoInvalidaException {
+        //o nome vai até o primeiro ':', o resto (inclusive outros ':') é valor
+        int doisPontos = procurar(buffer, (byte) ':', inicio, fim);
+        if (doisPontos <= inicio) {
+            throw new RequisicaoInvalidaException("Linha de cabeçalho inválida");
+        }
+        int inicioValor = doisPontos + 1;
+        while (inicioValor < fim && espaco(buffer.get(inicioValor))) {
+            inicioValor++;
+        }
+        int fimValor = fim;
+        while (fimValor > inicioValor && espaco(buffer.get(fimValor - 1))) {
+            fimValor--;
+        }
+        //o valor fica inteiro; só é separado por ',' se alguém pedir a lista
+        String valor = texto(buffer, inicioValor, fimValor, null, null);
+        //nomes conhecidos, em qualquer grafia, não viram String
+        int hash = CabecalhoConhecido.hash(buffer, inicio, doisPontos);
+        CabecalhoConhecido conhecido = CabecalhoConhecido.procurar(buffer, inicio, doisPontos, hash);
+        if (conhecido != null) {
+            requisicao.setCabecalho(conhecido, valor);
+        } else {
+            requisicao.setCabecalho(texto(buffer, inicio, doisPontos, null, null), hash, valor);
+        }
+    }
+
+    private void concluir() throws RequisicaoInvalidaException {
+        estado = CONCLUIDA;
+        //no HTTP/1.0 a conexão só é persistente com keep-alive explícito
+        //(RFC 9112, 9.3)
+        if ("HTTP/1.0".equals(requisicao.getProtocolo())) {
+            requisicao.setManterViva(false);
+        }
+        if (requisicao.getCabecalhos() == null) {
+            return;
+        }
+        //as opções não diferenciam maiúsculas; close prevalece sobre
+        //keep-alive e outras (ex: Upgrade) não mudam o padrão
+        String conexao = requisicao.getValorCabecalho(CabecalhoConhecido.CONNECTION);
+        if (conexao != null) {
+            if (CabecalhosRequisicao.temOpcao(conexao, "close")) {
+                requisicao.setManterViva(false);
+            } else if (CabecalhosRequisicao.temOpcao(conexao, "keep-alive")) {
+                requisicao.setManterViva(true);
+            }
+        }
+        if (requisicao.getValorCabecalho(CabecalhoConhecido.TRANSFER_ENCODING) != null) {
+            throw new RequisicaoInvalidaException("Transfer-Encoding não é suportado em requisições");
+        }
+        String tamanho = requisicao.getValorCabecalho(CabecalhoConhecido.CONTENT_LENGTH);
+        if (tamanho != null) {
+            int bytesCorpo;
+            try {
+                bytesCorpo = Integer.parseInt(tamanho.trim());
+            } catch (NumberFormatException ex) {
+                throw new RequisicaoInvalidaException("Content-Length inválido");
+            }
+            if (bytesCorpo < 0 || bytesCorpo > LIMITE_CORPO) {
+                throw new RequisicaoInvalidaException("Content-Length fora do limite de " + LIMITE_CORPO + " bytes");
+            }
+            if (bytesCorpo > 0) {
+                requisicao.setCorpo(new byte[bytesCorpo]);
+                estado = CORPO;
+            }
+        }
+    }
+
+    private boolean lerCorpo(ByteBuffer buffer) {
+        byte[] corpo = requisicao.getCorpo();
+        int quantidade = Math.min(buffer.remaining(), corpo.length - lidosCorpo);
+        buffer.get(corpo, lidosCorpo, quantidade);
+        lidosCorpo += quantidade;
+        if (lidosCorpo < corpo.length) {
+            return false;
+        }
+        estado = CONCLUIDA;
+        return true;
+    }
+
+    private static int procurar(ByteBuffer buffer, byte alvo, int inicio, int fim) {
+        if (buffer.hasArray()) {
+            byte[] dados = buffer.array();
+            int deslocamento = buffer.arrayOffset();
+            for (int i = inicio; i < fim; i++) {
+                if (dados[deslocamento + i] == alvo) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        for (int i = inicio; i < fim; i++) {
+            if (buffer.get(i) == alvo) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Converte um trecho do buffer em String. Se o trecho for igual a uma
+     * das constantes conhecidas, devolve a constante sem alocar nada.
+     */
+    private String texto(ByteBuffer buffer, int inicio, int fim, String[] constantes, byte[][] bytes) {
+        int tamanho = fim - inicio;
+        if (constantes != null) {
+            for (int c = 0; c < bytes.length; c++) {
+                if (igual(buffer, inicio, tamanho, bytes[c])) {
+                    return constantes[c];
+                }
+            }
+        }
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + inicio, tamanho, StandardCharsets.ISO_8859_1);
+        }
+        if (copia == null || copia.length < tamanho) {
+            copia = new byte[Math.max(256, Integer.highestOneBit(tamanho) << 1)];
+        }
+        buffer.get(inicio, copia, 0, tamanho);
+        return new String(copia, 0, tamanho, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean igual(ByteBuffer buffer, int inicio, int tamanho, byte[] esperado) {
+        if (tamanho != esperado.length) {
+            return false;
+        }
+        for (int i = 0; i < tamanho; i++) {
+            if (buffer.get(inicio + i) != esperado[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean espaco(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static byte[][] emBytes(String[] textos) {
+        byte[][] bytes = new byte[textos.length][];
+        for (int i = 0; i < textos.length; i++) {
+            bytes[i] = textos[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Pacote com todos os arquivos de um site em um único arquivo, mapeado em
+ * memória. O conteúdo fica no page cache, fora do heap, e cada recurso é
+ * uma fatia do mapeamento.
+ *
+ * Formato (inteiros big-endian):
+ * <pre>
+ * int mágico "MSRA", int versão, int quantidade
+ * quantidade × { texto caminho, texto tipo, texto etag, long modificação, long posição, int tamanho }
+ * conteúdo dos arquivos
+ * </pre>
+ * onde texto é um short com o tamanho seguido dos bytes em UTF-8. O índice
+ * é ordenado pelo caminho, então a busca é binária.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class ArquivoRecursos implements FonteRecursos {
+
+    static final int MAGICO = 0x4D535241;
+    static final int VERSAO = 2;
+
+    private final String[] caminhos;
+    private final Recurso[] recursos;
+
+    private ArquivoRecursos(String[] caminhos, Recurso[] recursos) {
+        this.caminhos = caminhos;
+        this.recursos = recursos;
+    }
+
+    /**
+     * Mapeia um pacote gerado por empacotar. Os Recurso são criados aqui,
+     * uma vez só, então respostas e variantes guardadas neles valem pela
+     * vida do servidor.
+     *
+     * @param arquivo pacote
+     * @return os recursos do pacote
+     * @throws IOException se o arquivo não puder ser lido ou não for um
+     * pacote válido
+     */
+    public static ArquivoRecursos abrir(Path arquivo) throws IOException {
+        MappedByteBuffer mapa;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Pacote maior que 2 GiB: " + arquivo);
+            }
+            //o mapeamento continua válido depois que o canal é fechado
+            mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        try {
+            if (mapa.getInt() != MAGICO || mapa.getInt() != VERSAO) {
+                throw new IOException("Não é um pacote de recursos: " + arquivo);
+            }
+            int quantidade = mapa.getInt();
+            String[] caminhos = new String[quantidade];
+            Recurso[] recursos = new Recurso[quantidade];
+            for (int i = 0; i < quantidade; i++) {
+                String caminho = lerTexto(mapa);
+                String tipo = lerTexto(mapa);
+                String etag = lerTexto(mapa);
+                long modificacao = mapa.getLong();
+                long posicao = mapa.getLong();
+                int tamanho = mapa.getInt();
+                if (i > 0 && caminhos[i - 1].compareTo(caminho) >= 0) {
+                    throw new IOException("Índice do pacote fora de ordem: " + caminho);
+                }
+                if (posicao < 0 || tamanho < 0 || posicao + tamanho > mapa.capacity()) {
+                    throw new IOException("Recurso fora dos limites do pacote: " + caminho);
+                }
+                ByteBuffer fatia = mapa.duplicate();
+                fatia.position((int) posicao).limit((int) posicao + tamanho);
+                caminhos[i] = caminho;
+                recursos[i] = new Recurso(caminho, fatia, tipo, etag, modificacao);
+            }
+            return new ArquivoRecursos(caminhos, recursos);
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Pacote truncado: " + arquivo, ex);
+        }
+    }
+
+    @Override
+    public Recurso buscar(String caminho) {
+        int indice = Arrays.binarySearch(caminhos, caminho);
+        return indice >= 0 ? recursos[indice] : null;
+    }
+
+    public int getQuantidade() {
+        return caminhos.length;
+    }
+
+    /**
+     * Gera o pacote com todos os arquivos de um diretório (e subdiretórios).
+     *
+     * @param diretorio raiz dos arquivos
+     * @param destino pacote a ser criado (ou sobrescrito)
+     * @return quantidade de arquivos empacotados
+     * @throws IOException em erro de leitura ou escrita
+     */
+    public static int empacotar(Path diretorio, Path destino) throws IOException {
+        //TreeMap: mesma ordem de String.compareTo usada na busca binária
+        Map<String, Path> arquivos = new TreeMap<>();
+        try (Stream<Path> percorridos = Files.walk(diretorio)) {
+            percorridos.filter(Files::isRegularFile).forEach(arquivo -> arquivos.put(
+                    diretorio.relativize(arquivo).toString().replace(File.separatorChar, '/'), arquivo));
+        }
+        //primeira passada: metadados e tamanho do índice
+        byte[][][] textos = new byte[arquivos.size()][][];
+        long[] tamanhos = new long[arquivos.size()];
+        long[] modificacoes = new long[arquivos.size()];
+        long posicao = 12;
+        int i = 0;
+        for (Map.Entry<String, Path> arquivo : arquivos.entrySet()) {
+            byte[] conteudo = Files.readAllBytes(arquivo.getValue());
+            textos[i] = new byte[][]{emBytes(arquivo.getKey()), emBytes(Util.tipoConteudo(arquivo.getKey())),
+                emBytes(Util.calcularETag(conteudo))};
+            tamanhos[i] = conteudo.length;
+            modificacoes[i] = Files.getLastModifiedTime(arquivo.getValue()).toMillis();
+            posicao += 6 + textos[i][0].length + textos[i][1].length + textos[i][2].length + 20;
+            i++;
+        }
+        try (DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(destino)))) {
+            saida.writeInt(MAGICO);
+            saida.writeInt(VERSAO);
+            saida.writeInt(arquivos.size());
+            for (i = 0; i < textos.length; i++) {
+                for (byte[] texto : textos[i]) {
+                    saida.writeShort(texto.length);
+                    saida.write(texto);
+                }
+                saida.writeLong(modificacoes[i]);
+                saida.writeLong(posicao);
+                saida.writeInt((int) tamanhos[i]);
+                posicao += tamanhos[i];
+            }
+            if (posicao > Integer.MAX_VALUE) {
+                throw new IOException("Pacote maior que 2 GiB");
+            }
+            //segunda passada: o conteúdo, na mesma ordem do índice
+            for (Path arquivo : arquivos.values()) {
+                Files.copy(arquivo, saida);
+            }
+        }
+        return arquivos.size();
+    }
+
+    /**
+     * Empacota um diretório: ArquivoRecursos &lt;diretorio&gt; &lt;pacote&gt;
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Uso: ArquivoRecursos <diretorio> <pacote>");
+            System.exit(1);
+        }
+        int quantidade = empacotar(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println(quantidade + " arquivos empacotados em " + args[1]);
+    }
+
+    private static String lerTexto(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] emBytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serve os arquivos estáticos: procura o recurso pedido no cache (e, na
+ * falta, na fonte) e monta a resposta 200 ou 404. É o manipulador que o
+ * Roteador usa para os caminhos sem rota.
+ *
+ * No modo nio só um recurso já no cache, sem conferência pendente, é
+ * respondido no laço de eventos; o resto (leitura, stat do arquivo) vai
+ * para as threads de disco, para o laço não bloquear em E/S.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class ArquivosEstaticos implements ManipuladorAssincrono {
+
+    static final byte[] PAGINA_404_PADRAO = "<html><body><h1>404 - Not Found</h1></body></html>".getBytes();
+    //separador das partes de multipart/byteranges, sorteado a cada execução
+    static final String SEPARADOR = "faixas" + Long.toHexString(new SecureRandom().nextLong());
+
+    //buscas que podem ir ao disco, fora do laço de eventos
+    private static final ExecutorService DISCO = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), tarefa -> {
+                Thread thread = new Thread(tarefa, "arquivos-disco");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static volatile ArquivosEstaticos padrao = criar(new FonteClasspath(), new Configuracao());
+
+    private final CacheRecursos cache;
+    //recursos menores que isso não são comprimidos; negativo desliga
+    private final int compressaoMinima;
+
+    public ArquivosEstaticos(CacheRecursos cache) {
+        this(cache, -1);
+    }
+
+    public ArquivosEstaticos(CacheRecursos cache, int compressaoMinima) {
+        this.cache = cache;
+        this.compressaoMinima = compressaoMinima;
+    }
+
+    /**
+     * Cria o serviço com a fonte e o cache descritos na configuração.
+     *
+     * @param configuracao opções de inicialização
+     * @return serviço de arquivos
+     * @throws IOException se o pacote configurado não puder ser aberto
+     */
+    public static ArquivosEstaticos criar(Configuracao configuracao) throws IOException {
+        FonteRecursos fonte;
+        if (configuracao.getPacote() != null) {
+            fonte = ArquivoRecursos.abrir(Paths.get(configuracao.getPacote()));
+        } else if (configuracao.getDiretorioDocumentos() != null) {
+            fonte = new FonteDiretorio(Paths.get(configuracao.getDiretorioDocumentos()), configuracao.getLimiteMemoria());
+        } else {
+            fonte = new FonteClasspath();
+        }
+        return criar(fonte, configuracao);
+    }
+
+    private static ArquivosEstaticos criar(FonteRecursos fonte, Configuracao configuracao) {
+        return new ArquivosEstaticos(new CacheRecursos(fonte,
+                configuracao.getLimiteCache(), configuracao.getTtlAusentes()),
+                configuracao.getCompressaoMinima());
+    }
+
+    /**
+     * @return o serviço usado pelas conexões
+     */
+    public static ArquivosEstaticos getPadrao() {
+        return padrao;
+    }
+
+    public static void setPadrao(ArquivosEstaticos arquivos) {
+        padrao = arquivos;
+    }
+
+    @Override
+    public RespostaHTTP atender(RequisicaoHTTP requisicao) throws IOException {
+        return responder(requisicao);
+    }
+
+    @Override
+    public CompletionStage<RespostaHTTP> atenderAssincrono(RequisicaoHTTP requisicao) {
+        String caminho = Util.normalizarCaminho(requisicao.getRecurso());
+        Recurso recurso = caminho != null ? cache.buscarEmCache(caminho) : null;
+        if (recurso != null) {
+            try {
+                return CompletableFuture.completedFuture(responder(requisicao, recurso, 200, "OK"));
+            } catch (IOException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return responder(requisicao);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, DISCO);
+    }
+
+    /**
+     * Monta a resposta para uma requisição.
+     *
+     * @param requisicao requisição já lida do cliente
+     * @return resposta pronta para ser enviada, ainda sem canal de saída
+     * @throws IOException se o recurso não puder ser lido
+     */
+    public RespostaHTTP responder(RequisicaoHTTP requisicao) throws IOException {
+        String caminho = Util.normalizarCaminho(requisicao.getRecurso());
+        Recurso recurso = caminho != null ? cache.buscar(caminho) : null;
+        if (recurso != null) {
+            // Arquivo encontrado, criar resposta de sucesso
+            return responder(requisicao, recurso, 200, "OK");
+        }
+        // Arquivo não encontrado, criar resposta de erro 404
+        Recurso pagina404 = cache.buscar("404.html");
+        if (pagina404 != null) {
+            return responder(requisicao, pagina404, 404, "Not Found");
+        }
+        // Fallback se 404.html não existir
+        RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 404, "Not Found");
+        resposta.setConteudoResposta(PAGINA_404_PADRAO);
+        preencherCabecalhos(resposta, "text/html");
+        return resposta;
+    }
+
+    /**
+     * Responde com o conteúdo de um recurso, reaproveitando a resposta já
+     * serializada guardada nele quando existir. Se o cliente já tem a
+     * mesma versão (If-None-Match / If-Modified-Since) a resposta é um 304
+     * sem corpo.
+     */
+    private RespostaHTTP responder(RequisicaoHTTP requisicao, Recurso recurso, int codigo, String mensagem)
+            throws IOException {
+        boolean variavel = recurso.isEmMemoria() && isComprimivel(recurso);
+        if (variavel) {
+            String codificacao = Compressao.negociar(requisicao.getCabecalho(CabecalhoConhecido.ACCEPT_ENCODING));
+            if (codificacao != null) {
+                recurso = variante(recurso, codificacao);
+            }
+        }
+        List<long[]> faixas = codigo == 200 ? faixasPedidas(requisicao, recurso) : null;
+        if (codigo == 200 && naoModificado(requisicao, recurso)) {
+            codigo = 304;
+            mensagem = "Not Modified";
+        } else if (faixas != null) {
+            return responderFaixas(requisicao, recurso, faixas, variavel);
+        } else if (!recurso.isEmMemoria()) {
+            //arquivo grande ou fatia mapeada: nada de cópia no heap nem
+            //resposta pronta, o corpo sai direto do disco ou do mapeamento
+            RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), codigo, mensagem);
+            resposta.setCorpo(recurso.criarCorpo());
+            preencherCabecalhos(resposta, recurso.getTipoConteudo());
+            preencherValidadores(resposta, recurso);
+            return resposta;
+        }
+        int indice = RespostaPronta.indice(codigo, requisicao.getProtocolo());
+        RespostaPronta pronta = indice >= 0 ? recurso.getPronta(indice) : null;
+        if (pronta == null) {
+            RespostaHTTP modelo = new RespostaHTTP(requisicao.getProtocolo(), codigo, mensagem);
+            if (codigo == 304) {
+                //sem corpo nem Content-Type/Length, só os validadores
+                modelo.setConteudoResposta(new byte[0]);
+                preencherCabecalhosComuns(modelo);
+            } else {
+                //define o conteúdo da resposta
+                modelo.setConteudoResposta(recurso.getConteudo());
+                preencherCabecalhos(modelo, recurso.getTipoConteudo());
+                if (recurso.getCodificacao() != null) {
+                    modelo.setCabecalho("Content-Encoding", recurso.getCodificacao());
+                }
+            }
+            if (codigo != 404) {
+                preencherValidadores(modelo, recurso);
+            }
+            if (variavel) {
+                modelo.setCabecalho("Vary", "Accept-Encoding");
+            }
+            if (indice < 0) {
+                return modelo;
+            }
+            pronta = new RespostaPronta(modelo);
+            recurso.setPronta(indice, pronta);
+        }
+        return pronta.criarResposta();
+    }
+
+    /**
+     * Avalia as pré-condições da requisição (RFC 7232). If-None-Match tem
+     * precedência sobre If-Modified-Since; só valem para GET e HEAD.
+     *
+     * @return true se o cliente já tem a versão atual do recurso
+     */
+    static boolean naoModificado(RequisicaoHTTP requisicao, Recurso recurso) {
+        String metodo = requisicao.getMetodo();
+        if (requisicao.getCabecalhos() == null || !("GET".equals(metodo) || "HEAD".equals(metodo))) {
+            return false;
+        }
+        List<String> etags = requisicao.getCabecalho(CabecalhoConhecido.IF_NONE_MATCH);
+        if (etags != null) {
+            //comparação fraca: W/"x" também vale
+            String etag = recurso.getEtag();
+            for (String candidata : etags) {
+                candidata = candidata.trim();
+                if (candidata.startsWith("W/")) {
+                    candidata = candidata.substring(2);
+                }
+                if ("*".equals(candidata) || candidata.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        //a data tem vírgula ("Sun, 06 Nov ..."), então é lida inteira
+        String data = requisicao.getValorCabecalho(CabecalhoConhecido.IF_MODIFIED_SINCE);
+        if (data == null || recurso.getUltimaModificacao() <= 0) {
+            return false;
+        }
+        long desde = Util.lerDataGMT(data);
+        //o cabeçalho só tem precisão de segundos
+        return desde >= 0 && recurso.getUltimaModificacao() / 1000 <= desde / 1000;
+    }
+
+    /**
+     * Faixas pedidas no Range (só em GET). Um If-Range que não bate com a
+     * versão atual faz o Range ser ignorado: o cliente recebe tudo de novo.
+     *
+     * @return as faixas, lista vazia se nenhuma é atendível ou null se a
+     * resposta deve ser a completa
+     */
+    static List<long[]> faixasPedidas(RequisicaoHTTP requisicao, Recurso recurso) {
+        String faixa = requisicao.getValorCabecalho(CabecalhoConhecido.RANGE);
+        if (faixa == null || !"GET".equals(requisicao.getMetodo())) {
+            return null;
+        }
+        String seFaixa = requisicao.getValorCabecalho(CabecalhoConhecido.IF_RANGE);
+        if (seFaixa != null) {
+            String validador = seFaixa.trim();
+            boolean atual;
+            if (validador.startsWith("\"")) {
+                //só ETag forte vale aqui (RFC 7233, 3.2)
+                atual = validador.equals(recurso.getEtag());
+            } else {
+                long data = Util.lerDataGMT(validador);
+                atual = data >= 0 && recurso.getUltimaModificacao() > 0
+                        && data / 1000 == recurso.getUltimaModificacao() / 1000;
+            }
+            if (!atual) {
+                return null;
+            }
+        }
+        return FaixasBytes.interpretar(faixa, recurso.getTamanho());
+    }
+
+    /**
+     * Responde 206 com os trechos pedidos, direto do conteúdo do recurso
+     * (sem cópia), ou 416 se nenhum trecho cabe nele. Várias faixas vão
+     * num corpo multipart/byteranges.
+     */
+    private static RespostaHTTP responderFaixas(RequisicaoHTTP requisicao, Recurso recurso, List<long[]> faixas,
+            boolean variavel) {
+        long tamanho = recurso.getTamanho();
+        if (faixas.isEmpty()) {
+            RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 416, "Range Not Satisfiable");
+            resposta.setConteudoResposta(new byte[0]);
+            preencherCabecalhosComuns(resposta);
+            resposta.setCabecalho("Content-Length", "0");
+            resposta.setCabecalho("Content-Range", "bytes */" + tamanho);
+            return resposta;
+        }
+        RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 206, "Partial Content");
+        String tipo = recurso.getTipoConteudo();
+        if (faixas.size() == 1) {
+            long[] faixa = faixas.get(0);
+            resposta.setCorpo(recurso.criarCorpo(faixa[0], faixa[1] - faixa[0] + 1));
+            resposta.setCabecalho("Content-Range", FaixasBytes.conteudoFaixa(faixa, tamanho));
+        } else {
+            List<CorpoResposta> partes = new ArrayList<>(faixas.size() * 2 + 1);
+            String inicioParte = "--";
+            for (long[] faixa : faixas) {
+                partes.add(textoCorpo(inicioParte + SEPARADOR + "\r\nContent-Type: " + tipo
+                        + "\r\nContent-Range: " + FaixasBytes.conteudoFaixa(faixa, tamanho) + "\r\n\r\n"));
+                partes.add(recurso.criarCorpo(faixa[0], faixa[1] - faixa[0] + 1));
+                inicioParte = "\r\n--";
+            }
+            partes.add(textoCorpo("\r\n--" + SEPARADOR + "--\r\n"));
+            resposta.setCorpo(new CorpoComposto(partes));
+            tipo = "multipart/byteranges; boundary=" + SEPARADOR;
+        }
+        preencherCabecalhos(resposta, tipo);
+        if (recurso.getCodificacao() != null) {
+            resposta.setCabecalho("Content-Encoding", recurso.getCodificacao());
+        }
+        preencherValidadores(resposta, recurso);
+        if (variavel) {
+            resposta.setCabecalho("Vary", "Accept-Encoding");
+        }
+        return resposta;
+    }
+
+    private static CorpoResposta textoCorpo(String texto) {
+        return new CorpoBuffer(ByteBuffer.wrap(texto.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * Versão comprimida do recurso, calculada uma vez e guardada nele. Um
+     * arquivo irmão pré-comprimido (ex: site.css.gz) tem preferência sobre
+     * a compressão feita aqui.
+     */
+    private Recurso variante(Recurso recurso, String codificacao) throws IOException {
+        Recurso variante = recurso.getVariante(codificacao);
+        if (variante == null) {
+            Recurso irmao = Compressao.GZIP.equals(codificacao) ? cache.buscar(recurso.getCaminho() + ".gz") : null;
+            //os bytes do irmão já são cobrados na entrada dele
+            boolean doIrmao = irmao != null && irmao.isEmMemoria();
+            byte[] comprimido = doIrmao ? irmao.getConteudo()
+                    : Compressao.comprimir(recurso.getConteudo(), codificacao);
+            //se não ficar menor, envia sem compressão
+            variante = comprimido.length < recurso.getTamanho()
+                    ? new Recurso(recurso.getCaminho(), comprimido, recurso.getTipoConteudo(), codificacao,
+                            recurso.getUltimaModificacao())
+                    : recurso;
+            recurso.setVariante(codificacao, variante);
+            if (variante != recurso && !doIrmao) {
+                //a variante vive enquanto o recurso estiver no cache
+                cache.cobrar(recurso, comprimido.length);
+            }
+        }
+        return variante;
+    }
+
+    private boolean isComprimivel(Recurso recurso) {
+        return compressaoMinima >= 0 && recurso.getTamanho() >= compressaoMinima
+                && Compressao.isComprimivel(recurso.getTipoConteudo());
+    }
+
+    static void preencherCabecalhos(RespostaHTTP resposta, String tipoConteudo) {
+        preencherCabecalhosComuns(resposta);
+        resposta.setCabecalho("Content-Type", tipoConteudo);
+        resposta.setCabecalho("Content-Length", resposta.getTamanhoResposta());
+    }
+
+    private static void preencherCabecalhosComuns(RespostaHTTP resposta) {
+        //data atual no formato do HTTP, formatada no máximo uma vez por segundo
+        String dataFormatada = RelogioHTTP.agora();
+        //cabeçalho padrão da resposta HTTP/1.1
+        resposta.setCabecalho("Location", "http://localhost:8000/");
+        resposta.setCabecalho("Date", dataFormatada);
+        resposta.setCabecalho("Server", "MeuServidor/1.0");
+    }
+
+    private static void preencherValidadores(RespostaHTTP resposta, Recurso recurso) {
+        resposta.setCabecalho("Accept-Ranges", "bytes");
+        resposta.setCabecalho("ETag", recurso.getEtag());
+        if (recurso.getUltimaModificacao() > 0) {
+            resposta.setCabecalho("Last-Modified", RelogioHTTP.formatar(recurso.getUltimaModificacao()));
+        }
+    }
+
+    public CacheRecursos getCache() {
+        return cache;
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cabeçalhos de requisição que o servidor consulta ou que chegam em quase
+ * toda requisição. Cada um tem uma posição fixa (o ordinal) em
+ * CabecalhosRequisicao, então consultá-los é só indexar um array.
+ *
+ * O nome recebido é reconhecido sem diferenciar maiúsculas (RFC 7230,
+ * 3.2), direto dos bytes do buffer e sem criar String.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+enum CabecalhoConhecido {
+
+    HOST("Host"),
+    CONNECTION("Connection"),
+    USER_AGENT("User-Agent"),
+    ACCEPT("Accept"),
+    ACCEPT_ENCODING("Accept-Encoding"),
+    ACCEPT_LANGUAGE("Accept-Language"),
+    CONTENT_LENGTH("Content-Length"),
+    CONTENT_TYPE("Content-Type"),
+    COOKIE("Cookie"),
+    REFERER("Referer"),
+    CACHE_CONTROL("Cache-Control"),
+    IF_NONE_MATCH("If-None-Match"),
+    IF_MODIFIED_SINCE("If-Modified-Since"),
+    RANGE("Range"),
+    IF_RANGE("If-Range"),
+    KEEP_ALIVE("Keep-Alive"),
+    UPGRADE("Upgrade"),
+    TRANSFER_ENCODING("Transfer-Encoding");
+
+    //endereçamento aberto pelo hash do nome; o dobro de posições mantém
+    //as sondagens curtas
+    private static final CabecalhoConhecido[] TABELA = new CabecalhoConhecido[64];
+
+    static {
+        for (CabecalhoConhecido cabecalho : values()) {
+            int i = cabecalho.hash & (TABELA.length - 1);
+            while (TABELA[i] != null) {
+                i = (i + 1) & (TABELA.length - 1);
+            }
+            TABELA[i] = cabecalho;
+        }
+    }
+
+    private final String nome;
+    private final byte[] bytes;
+    private final int hash;
+
+    CabecalhoConhecido(String nome) {
+        this.nome = nome;
+        this.bytes = nome.getBytes(StandardCharsets.US_ASCII);
+        this.hash = hash(nome);
+    }
+
+    /**
+     * @return o nome na grafia usual (ex: "Content-Length")
+     */
+    String getNome() {
+        return nome;
+    }
+
+    /**
+     * Procura o cabeçalho cujo nome ocupa buffer[inicio, fim).
+     *
+     * @param hash hash do mesmo trecho
+     * @return o cabeçalho ou null se o nome não é um dos conhecidos
+     */
+    static CabecalhoConhecido procurar(ByteBuffer buffer, int inicio, int fim, int hash) {
+        for (int i = hash & (TABELA.length - 1); TABELA[i] != null; i = (i + 1) & (TABELA.length - 1)) {
+            CabecalhoConhecido cabecalho = TABELA[i];
+            if (cabecalho.hash == hash && cabecalho.igual(buffer, inicio, fim)) {
+                return cabecalho;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param hash hash do nome
+     * @return o cabeçalho com esse nome, em qualquer grafia, ou null
+     */
+    static CabecalhoConhecido procurar(String nome, int hash) {
+        for (int i = hash & (TABELA.length - 1); TABELA[i] != null; i = (i + 1) & (TABELA.length - 1)) {
+            CabecalhoConhecido cabecalho = TABELA[i];
+            if (cabecalho.hash == hash && cabecalho.nome.equalsIgnoreCase(nome)) {
+                return cabecalho;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hash do nome que não diferencia maiúsculas de minúsculas ASCII; o
+     * mesmo valor para a String e para os bytes do nome.
+     */
+    static int hash(String nome) {
+        int hash = 0;
+        for (int i = 0; i < nome.length(); i++) {
+            hash = 31 * hash + minuscula(nome.charAt(i));
+        }
+        return hash;
+    }
+
+    static int hash(ByteBuffer buffer, int inicio, int fim) {
+        int hash = 0;
+        for (int i = inicio; i < fim; i++) {
+            hash = 31 * hash + minuscula(buffer.get(i) & 0xFF);
+        }
+        return hash;
+    }
+
+    static int minuscula(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private boolean igual(ByteBuffer buffer, int inicio, int fim) {
+        if (fim - inicio != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (minuscula(buffer.get(inicio + i) & 0xFF) != minuscula(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
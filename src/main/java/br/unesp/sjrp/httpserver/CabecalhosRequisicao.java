@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Cabeçalhos de uma requisição. Os conhecidos (CabecalhoConhecido) ficam
+ * num array indexado pelo ordinal; os demais em arrays paralelos, na
+ * ordem de chegada, localizados pelo hash do nome que não diferencia
+ * maiúsculas. Consultas por nome, em qualquer grafia, também valem:
+ * "connection" e "Connection" são o mesmo cabeçalho.
+ *
+ * Cada valor é guardado como chegou, numa String só, e separado por ','
+ * apenas se for lido como lista; quem só precisa do texto (Content-Length,
+ * If-Modified-Since) usa getValor e nenhuma lista é criada.
+ *
+ * É um Map para continuar servindo a getCabecalhos e ao log; a remoção
+ * não é suportada. Como a requisição, só é usada por uma thread de cada
+ * vez.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class CabecalhosRequisicao extends AbstractMap<String, List<String>> {
+
+    private static final CabecalhoConhecido[] CONHECIDOS = CabecalhoConhecido.values();
+
+    //pelo ordinal: o valor bruto (String) até ser lido como lista (List)
+    private final Object[] conhecidos = new Object[CONHECIDOS.length];
+    private int quantidadeConhecidos;
+    //demais cabeçalhos
+    private String[] nomes;
+    private int[] hashes;
+    private Object[] valores;
+    private int quantidadeOutros;
+    private Set<Map.Entry<String, List<String>>> entradas;
+
+    /**
+     * Define o valor de um cabeçalho conhecido, substituindo o anterior.
+     *
+     * @param valor valor como recebido, sem separar por ','
+     */
+    void definir(CabecalhoConhecido cabecalho, Object valor) {
+        if (conhecidos[cabecalho.ordinal()] == null) {
+            quantidadeConhecidos++;
+        }
+        conhecidos[cabecalho.ordinal()] = valor;
+    }
+
+    /**
+     * Define o valor de um cabeçalho que não é um dos conhecidos.
+     *
+     * @param hash CabecalhoConhecido.hash do nome
+     * @param valor valor como recebido ou a lista de valores
+     */
+    void definir(String nome, int hash, Object valor) {
+        int posicao = posicao(nome, hash);
+        if (posicao >= 0) {
+            valores[posicao] = valor;
+            return;
+        }
+        if (nomes == null) {
+            nomes = new String[8];
+            hashes = new int[8];
+            valores = new Object[8];
+        } else if (quantidadeOutros == nomes.length) {
+            nomes = Arrays.copyOf(nomes, quantidadeOutros * 2);
+            hashes = Arrays.copyOf(hashes, quantidadeOutros * 2);
+            valores = Arrays.copyOf(valores, quantidadeOutros * 2);
+        }
+        nomes[quantidadeOutros] = nome;
+        hashes[quantidadeOutros] = hash;
+        valores[quantidadeOutros] = valor;
+        quantidadeOutros++;
+    }
+
+    /**
+     * Junta mais um valor ao cabeçalho, que pode já ter vindo. Em HTTP/2
+     * cada Cookie costuma vir num campo separado e volta a ser uma linha só
+     * com "; " (RFC 9113, 8.2.3); os demais são unidos por ','.
+     *
+     * @param hash CabecalhoConhecido.hash do nome
+     */
+    void acrescentar(String nome, int hash, String valor) {
+        CabecalhoConhecido cabecalho = CabecalhoConhecido.procurar(nome, hash);
+        if (cabecalho != null) {
+            String anterior = texto(conhecidos[cabecalho.ordinal()]);
+            String separador = cabecalho == CabecalhoConhecido.COOKIE ? "; " : ",";
+            definir(cabecalho, anterior == null ? valor : anterior + separador + valor);
+            return;
+        }
+        int posicao = posicao(nome, hash);
+        definir(nome, hash, posicao < 0 ? valor : texto(valores[posicao]) + "," + valor);
+    }
+
+    /**
+     * @return os valores do cabeçalho separados por ',' (sem tirar os
+     * espaços) ou null se ele não veio
+     */
+    List<String> get(CabecalhoConhecido cabecalho) {
+        Object valor = conhecidos[cabecalho.ordinal()];
+        if (valor instanceof String) {
+            valor = separar((String) valor);
+            conhecidos[cabecalho.ordinal()] = valor;
+        }
+        return lista(valor);
+    }
+
+    /**
+     * @return o valor inteiro do cabeçalho, como recebido, ou null se ele
+     * não veio
+     */
+    String getValor(CabecalhoConhecido cabecalho) {
+        return texto(conhecidos[cabecalho.ordinal()]);
+    }
+
+    boolean contem(CabecalhoConhecido cabecalho) {
+        return conhecidos[cabecalho.ordinal()] != null;
+    }
+
+    /**
+     * Procura uma opção numa lista separada por vírgulas (ex: "close" em
+     * Connection), sem diferenciar maiúsculas e sem criar Strings.
+     */
+    static boolean temOpcao(String valor, String opcao) {
+        int inicio = 0;
+        while (inicio <= valor.length()) {
+            int fim = valor.indexOf(',', inicio);
+            if (fim < 0) {
+                fim = valor.length();
+            }
+            int a = inicio;
+            int b = fim;
+            while (a < b && espaco(valor.charAt(a))) {
+                a++;
+            }
+            while (b > a && espaco(valor.charAt(b - 1))) {
+                b--;
+            }
+            if (b - a == opcao.length() && valor.regionMatches(true, a, opcao, 0, b - a)) {
+                return true;
+            }
+            inicio = fim + 1;
+        }
+        return false;
+    }
+
+    @Override
+    public List<String> get(Object chave) {
+        if (!(chave instanceof String)) {
+            return null;
+        }
+        String nome = (String) chave;
+        int hash = CabecalhoConhecido.hash(nome);
+        CabecalhoConhecido cabecalho = CabecalhoConhecido.procurar(nome, hash);
+        if (cabecalho != null) {
+            return get(cabecalho);
+        }
+        int posicao = posicao(nome, hash);
+        return posicao < 0 ? null : outro(posicao);
+    }
+
+    @Override
+    public boolean containsKey(Object chave) {
+        return get(chave) != null;
+    }
+
+    @Override
+    public List<String> put(String nome, List<String> lista) {
+        Objects.requireNonNull(lista);
+        List<String> anterior = get(nome);
+        int hash = CabecalhoConhecido.hash(nome);
+        CabecalhoConhecido cabecalho = CabecalhoConhecido.procurar(nome, hash);
+        if (cabecalho != null) {
+            definir(cabecalho, lista);
+        } else {
+            definir(nome, hash, lista);
+        }
+        return anterior;
+    }
+
+    @Override
+    public int size() {
+        return quantidadeConhecidos + quantidadeOutros;
+    }
+
+    /**
+     * Os conhecidos primeiro, na ordem do enum, depois os demais na ordem
+     * de chegada.
+     */
+    @Override
+    public Set<Map.Entry<String, List<String>>> entrySet() {
+        if (entradas == null) {
+            entradas = new AbstractSet<Map.Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Map.Entry<String, List<String>>> iterator() {
+                    return new Iterador();
+                }
+
+                @Override
+                public int size() {
+                    return CabecalhosRequisicao.this.size();
+                }
+            };
+        }
+        return entradas;
+    }
+
+    private List<String> outro(int posicao) {
+        Object valor = valores[posicao];
+        if (valor instanceof String) {
+            valor = separar((String) valor);
+            valores[posicao] = valor;
+        }
+        return lista(valor);
+    }
+
+    private int posicao(String nome, int hash) {
+        for (int i = 0; i < quantidadeOutros; i++) {
+            if (hashes[i] == hash && nomes[i].equalsIgnoreCase(nome)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<String> separar(String valor) {
+        int virgulas = 0;
+        for (int i = 0; i < valor.length(); i++) {
+            if (valor.charAt(i) == ',') {
+                virgulas++;
+            }
+        }
+        String[] partes = new String[virgulas + 1];
+        int inicio = 0;
+        for (int i = 0; i < virgulas; i++) {
+            int virgula = valor.indexOf(',', inicio);
+            partes[i] = valor.substring(inicio, virgula);
+            inicio = virgula + 1;
+        }
+        partes[virgulas] = valor.substring(inicio);
+        return Arrays.asList(partes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> lista(Object valor) {
+        return (List<String>) valor;
+    }
+
+    private static String texto(Object valor) {
+        if (valor == null || valor instanceof String) {
+            return (String) valor;
+        }
+        return String.join(",", lista(valor));
+    }
+
+    private static boolean espaco(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private class Iterador implements Iterator<Map.Entry<String, List<String>>> {
+
+        //posições em conhecidos e depois em nomes
+        private int proxima = avancar(0);
+
+        private int avancar(int posicao) {
+            while (posicao < conhecidos.length && conhecidos[posicao] == null) {
+                posicao++;
+            }
+            return posicao;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return proxima < conhecidos.length + quantidadeOutros;
+        }
+
+        @Override
+        public Map.Entry<String, List<String>> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int posicao = proxima;
+            Map.Entry<String, List<String>> entrada;
+            if (posicao < conhecidos.length) {
+                CabecalhoConhecido cabecalho = CONHECIDOS[posicao];
+                entrada = new AbstractMap.SimpleImmutableEntry<>(cabecalho.getNome(), get(cabecalho));
+                proxima = avancar(posicao + 1);
+            } else {
+                int outro = posicao - conhecidos.length;
+                entrada = new AbstractMap.SimpleImmutableEntry<>(nomes[outro], outro(outro));
+                proxima = posicao + 1;
+            }
+            return entrada;
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache em memória dos recursos servidos, limitado por um orçamento de
+ * bytes.
+ *
+ * A leitura é um get no ConcurrentHashMap mais a marcação da entrada como
+ * referenciada, sem trava. Quando o orçamento estoura, uma única thread
+ * percorre a fila das entradas no estilo CLOCK (segunda chance): entradas
+ * referenciadas desde a última passada perdem a marca e voltam ao fim da
+ * fila, as demais são removidas. O resultado se aproxima de um LRU sem o
+ * custo de reordenar uma lista a cada acerto.
+ *
+ * Recursos inexistentes também são guardados, por um tempo curto, para que
+ * varreduras por caminhos aleatórios não cheguem ao classloader a cada
+ * requisição.
+ *
+ * Uma entrada encontrada é conferida com a fonte (FonteRecursos.isAtual)
+ * no máximo uma vez por segundo; se o arquivo mudou ela é descartada e o
+ * recurso é lido de novo, assim o tamanho anunciado nunca fica para trás
+ * por mais que isso.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class CacheRecursos {
+
+    //custo aproximado de uma entrada além do conteúdo (objetos e nó do mapa)
+    private static final int CUSTO_ENTRADA = 96;
+    //intervalo mínimo entre duas conferências de uma entrada com a fonte
+    private static final long REVALIDACAO_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final FonteRecursos fonte;
+    private final long limiteBytes;
+    private final long ttlAusenteNanos;
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+    private final Queue<Entrada> relogio = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bytesUsados = new AtomicLong();
+    private final ReentrantLock despejo = new ReentrantLock();
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+    private final LongAdder remocoes = new LongAdder();
+
+    /**
+     * @param fonte origem dos recursos
+     * @param limiteBytes orçamento de memória do cache
+     * @param ttlAusenteMillis por quanto tempo um recurso inexistente fica no
+     * cache; zero desliga o cache de ausências
+     */
+    public CacheRecursos(FonteRecursos fonte, long limiteBytes, long ttlAusenteMillis) {
+        this.fonte = fonte;
+        this.limiteBytes = limiteBytes;
+        this.ttlAusenteNanos = TimeUnit.MILLISECONDS.toNanos(ttlAusenteMillis);
+    }
+
+    /**
+     * Busca um recurso, primeiro no cache e depois na fonte.
+     *
+     * @param caminho caminho normalizado (ver Util.normalizarCaminho)
+     * @return o recurso ou null se ele não existir
+     * @throws IOException se a fonte falhar
+     */
+    public Recurso buscar(String caminho) throws IOException {
+        Entrada entrada = entradas.get(caminho);
+        if (entrada != null) {
+            long agora = System.nanoTime();
+            if (!entrada.isExpirada(agora) && isAtual(entrada, agora)) {
+                entrada.referenciada = true;
+                acertos.increment();
+                return entrada.recurso;
+            }
+            descartar(entrada);
+        }
+        falhas.increment();
+        //a carga é feita fora de qualquer trava; duas threads podem carregar
+        //o mesmo recurso ao mesmo tempo, mas só uma entrada fica no mapa
+        Recurso recurso = fonte.buscar(caminho);
+        guardar(caminho, recurso);
+        return recurso;
+    }
+
+    /**
+     * Busca um recurso só no cache, sem nunca ir à fonte: serve para quem
+     * não pode bloquear em E/S (o laço de eventos do modo nio).
+     *
+     * @param caminho caminho normalizado
+     * @return o recurso, ou null se ele não estiver no cache, for um
+     * inexistente ou precisar ser conferido com a fonte
+     */
+    public Recurso buscarEmCache(String caminho) {
+        Entrada entrada = entradas.get(caminho);
+        if (entrada == null || entrada.recurso == null) {
+            return null;
+        }
+        long agora = System.nanoTime();
+        if (entrada.isExpirada(agora) || agora - entrada.conferidaEm >= REVALIDACAO_NANOS) {
+            return null;
+        }
+        entrada.referenciada = true;
+        acertos.increment();
+        return entrada.recurso;
+    }
+
+    /**
+     * Remove um caminho do cache, forçando a próxima busca a ir na fonte.
+     *
+     * @param caminho caminho normalizado
+     */
+    public void invalidar(String caminho) {
+        Entrada entrada = entradas.get(caminho);
+        if (entrada != null) {
+            descartar(entrada);
+        }
+    }
+
+    /**
+     * Remove todas as entradas.
+     */
+    public void limpar() {
+        for (Entrada entrada : entradas.values()) {
+            descartar(entrada);
+        }
+    }
+
+    /**
+     * Soma ao orçamento memória presa a um recurso depois de ele entrar no
+     * cache, como as variantes comprimidas. Se o recurso não está (ou já
+     * saiu) do cache, nada é cobrado.
+     *
+     * @param recurso recurso devolvido por buscar
+     * @param bytes memória adicional
+     */
+    public void cobrar(Recurso recurso, long bytes) {
+        Entrada entrada = entradas.get(recurso.getCaminho());
+        if (entrada == null || entrada.recurso != recurso) {
+            return;
+        }
+        long custo;
+        do {
+            custo = entrada.custo.get();
+            if (custo < 0) {
+                //o relógio já devolveu os bytes desta entrada
+                return;
+            }
+        } while (!entrada.custo.compareAndSet(custo, custo + bytes));
+        if (bytesUsados.addAndGet(bytes) > limiteBytes) {
+            despejar();
+        }
+    }
+
+    private boolean isAtual(Entrada entrada, long agora) {
+        if (entrada.recurso == null || agora - entrada.conferidaEm < REVALIDACAO_NANOS) {
+            return true;
+        }
+        //uma corrida só faz duas threads conferirem a mesma entrada
+        entrada.conferidaEm = agora;
+        return fonte.isAtual(entrada.recurso);
+    }
+
+    private void guardar(String caminho, Recurso recurso) {
+        long expiraEm;
+        if (recurso != null) {
+            expiraEm = Long.MAX_VALUE;
+        } else if (ttlAusenteNanos > 0) {
+            expiraEm = System.nanoTime() + ttlAusenteNanos;
+        } else {
+            return;
+        }
+        Entrada nova = new Entrada(caminho, recurso, expiraEm);
+        //um único recurso não pode ocupar mais que um quarto do orçamento
+        long custo = nova.custo.get();
+        if (custo > limiteBytes / 4 || entradas.putIfAbsent(caminho, nova) != null) {
+            return;
+        }
+        relogio.add(nova);
+        if (bytesUsados.addAndGet(custo) > limiteBytes) {
+            despejar();
+        }
+    }
+
+    private void descartar(Entrada entrada) {
+        //os bytes só são devolvidos quando o relógio passar pela entrada,
+        //assim a fila nunca guarda mais que o orçamento
+        if (entradas.remove(entrada.chave, entrada)) {
+            entrada.removida = true;
+        }
+    }
+
+    private void despejar() {
+        //se outra thread já está despejando, ela cuida do excesso
+        if (!despejo.tryLock()) {
+            return;
+        }
+        try {
+            long agora = System.nanoTime();
+            while (bytesUsados.get() > limiteBytes) {
+                Entrada entrada = relogio.poll();
+                if (entrada == null) {
+                    break;
+                }
+                if (!entrada.removida && entrada.referenciada && !entrada.isExpirada(agora)) {
+                    //segunda chance
+                    entrada.referenciada = false;
+                    relogio.add(entrada);
+                    continue;
+                }
+                if (!entrada.removida) {
+                    descartar(entrada);
+                    remocoes.increment();
+                }
+                //-1 marca a entrada como acertada, recusando novas cobranças
+                bytesUsados.addAndGet(-entrada.custo.getAndSet(-1));
+            }
+        } finally {
+            despejo.unlock();
+        }
+    }
+
+    //contadores
+    public long getAcertos() {
+        return acertos.sum();
+    }
+
+    public long getFalhas() {
+        return falhas.sum();
+    }
+
+    public long getRemocoes() {
+        return remocoes.sum();
+    }
+
+    public long getBytesUsados() {
+        return bytesUsados.get();
+    }
+
+    public int getQuantidade() {
+        return entradas.size();
+    }
+
+    public long getLimiteBytes() {
+        return limiteBytes;
+    }
+
+    private static final class Entrada {
+
+        final String chave;
+        //null indica um recurso inexistente
+        final Recurso recurso;
+        final long expiraEm;
+        //cresce com cobrar; -1 depois que o relógio devolve os bytes
+        final AtomicLong custo;
+        volatile boolean referenciada;
+        volatile long conferidaEm = System.nanoTime();
+        volatile boolean removida;
+
+        Entrada(String chave, Recurso recurso, long expiraEm) {
+            this.chave = chave;
+            this.recurso = recurso;
+            this.expiraEm = expiraEm;
+            this.custo = new AtomicLong(CUSTO_ENTRADA + 2L * chave.length() + (recurso != null ? recurso.getTamanhoEmMemoria() : 0));
+        }
+
+        boolean isExpirada(long agora) {
+            return expiraEm != Long.MAX_VALUE && agora - expiraEm > 0;
+        }
+    }
+
+}
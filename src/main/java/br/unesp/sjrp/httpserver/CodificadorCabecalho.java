@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializa a linha de status e os cabeçalhos de uma resposta direto em
+ * bytes ASCII, sem montar Strings intermediárias. Linhas de status e nomes
+ * de cabeçalho comuns já ficam prontos em bytes.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class CodificadorCabecalho {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] DOIS_PONTOS = {':', ' '};
+    private static final byte[] VIRGULA = {',', ' '};
+
+    private static final String[] PROTOCOLOS = {"HTTP/1.1", "HTTP/1.0"};
+    private static final int[] CODIGOS = {200, 206, 304, 404, 416, 503};
+    private static final String[] MENSAGENS = {"OK", "Partial Content", "Not Modified", "Not Found",
+        "Range Not Satisfiable", "Service Unavailable"};
+    //[protocolo][código]: "HTTP/1.1 200 OK\r\n"
+    private static final byte[][][] LINHAS_STATUS = new byte[PROTOCOLOS.length][CODIGOS.length][];
+
+    private static final String[] NOMES_COMUNS = {"Accept-Ranges", "Connection", "Content-Encoding",
+        "Content-Length", "Content-Range", "Content-Type", "Date", "ETag", "Keep-Alive", "Last-Modified",
+        "Location", "Retry-After", "Server", "Transfer-Encoding", "Vary"};
+    //nome já seguido de ": "
+    private static final Map<String, byte[]> NOMES = new HashMap<>();
+
+    static {
+        for (int p = 0; p < PROTOCOLOS.length; p++) {
+            for (int c = 0; c < CODIGOS.length; c++) {
+                LINHAS_STATUS[p][c] = (PROTOCOLOS[p] + " " + CODIGOS[c] + " " + MENSAGENS[c] + "\r\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+        for (String nome : NOMES_COMUNS) {
+            NOMES.put(nome, (nome + ": ").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private CodificadorCabecalho() {
+    }
+
+    /**
+     * @return quantos bytes o cabeçalho da resposta ocupa
+     */
+    static int tamanho(RespostaHTTP resposta) {
+        byte[] linha = linhaStatus(resposta);
+        int tamanho = linha != null ? linha.length
+                : String.valueOf(resposta.getProtocolo()).length() + 1 + String.valueOf(resposta.getCodigoResposta()).length()
+                + 1 + String.valueOf(resposta.getMensagem()).length() + CRLF.length;
+        Map<String, List<String>> cabecalhos = resposta.lerCabecalhos();
+        if (cabecalhos != null) {
+            for (Map.Entry<String, List<String>> cabecalho : cabecalhos.entrySet()) {
+                tamanho += cabecalho.getKey().length() + DOIS_PONTOS.length + CRLF.length;
+                List<String> valores = cabecalho.getValue();
+                for (int i = 0; i < valores.size(); i++) {
+                    tamanho += (i > 0 ? VIRGULA.length : 0) + String.valueOf(valores.get(i)).length();
+                }
+            }
+        }
+        byte[] conexao = resposta.getCabecalhoConexao();
+        if (conexao != null) {
+            tamanho += conexao.length;
+        }
+        return tamanho + CRLF.length;
+    }
+
+    /**
+     * Escreve o cabeçalho em destino, que precisa ter tamanho(resposta)
+     * bytes livres a partir da posição.
+     *
+     * @return a posição logo após o cabeçalho
+     */
+    static int codificar(RespostaHTTP resposta, byte[] destino, int posicao) {
+        byte[] linha = linhaStatus(resposta);
+        if (linha != null) {
+            posicao = copiar(linha, destino, posicao);
+        } else {
+            posicao = texto(String.valueOf(resposta.getProtocolo()), destino, posicao);
+            destino[posicao++] = ' ';
+            posicao = texto(String.valueOf(resposta.getCodigoResposta()), destino, posicao);
+            destino[posicao++] = ' ';
+            posicao = texto(String.valueOf(resposta.getMensagem()), destino, posicao);
+            posicao = copiar(CRLF, destino, posicao);
+        }
+        Map<String, List<String>> cabecalhos = resposta.lerCabecalhos();
+        if (cabecalhos != null) {
+            for (Map.Entry<String, List<String>> cabecalho : cabecalhos.entrySet()) {
+                byte[] nome = NOMES.get(cabecalho.getKey());
+                if (nome != null) {
+                    posicao = copiar(nome, destino, posicao);
+                } else {
+                    posicao = texto(cabecalho.getKey(), destino, posicao);
+                    posicao = copiar(DOIS_PONTOS, destino, posicao);
+                }
+                List<String> valores = cabecalho.getValue();
+                for (int i = 0; i < valores.size(); i++) {
+                    if (i > 0) {
+                        posicao = copiar(VIRGULA, destino, posicao);
+                    }
+                    posicao = texto(String.valueOf(valores.get(i)), destino, posicao);
+                }
+                posicao = copiar(CRLF, destino, posicao);
+            }
+        }
+        byte[] conexao = resposta.getCabecalhoConexao();
+        if (conexao != null) {
+            posicao = copiar(conexao, destino, posicao);
+        }
+        return copiar(CRLF, destino, posicao);
+    }
+
+    /**
+     * Escreve o cabeçalho num ByteBuffer (direto ou não) a partir de uma
+     * posição absoluta, sem mexer na posição do buffer. Precisa haver
+     * tamanho(resposta) bytes até o limite.
+     *
+     * @return a posição logo após o cabeçalho
+     */
+    static int codificar(RespostaHTTP resposta, ByteBuffer destino, int posicao) {
+        if (destino.hasArray()) {
+            int deslocamento = destino.arrayOffset();
+            return codificar(resposta, destino.array(), deslocamento + posicao) - deslocamento;
+        }
+        byte[] linha = linhaStatus(resposta);
+        if (linha != null) {
+            posicao = copiar(linha, destino, posicao);
+        } else {
+            posicao = texto(String.valueOf(resposta.getProtocolo()), destino, posicao);
+            destino.put(posicao++, (byte) ' ');
+            posicao = texto(String.valueOf(resposta.getCodigoResposta()), destino, posicao);
+            destino.put(posicao++, (byte) ' ');
+            posicao = texto(String.valueOf(resposta.getMensagem()), destino, posicao);
+            posicao = copiar(CRLF, destino, posicao);
+        }
+        Map<String, List<String>> cabecalhos = resposta.lerCabecalhos();
+        if (cabecalhos != null) {
+            for (Map.Entry<String, List<String>> cabecalho : cabecalhos.entrySet()) {
+                byte[] nome = NOMES.get(cabecalho.getKey());
+                if (nome != null) {
+                    posicao = copiar(nome, destino, posicao);
+                } else {
+                    posicao = texto(cabecalho.getKey(), destino, posicao);
+                    posicao = copiar(DOIS_PONTOS, destino, posicao);
+                }
+                List<String> valores = cabecalho.getValue();
+                for (int i = 0; i < valores.size(); i++) {
+                    if (i > 0) {
+                        posicao = copiar(VIRGULA, destino, posicao);
+                    }
+                    posicao = texto(String.valueOf(valores.get(i)), destino, posicao);
+                }
+                posicao = copiar(CRLF, destino, posicao);
+            }
+        }
+        byte[] conexao = resposta.getCabecalhoConexao();
+        if (conexao != null) {
+            posicao = copiar(conexao, destino, posicao);
+        }
+        return copiar(CRLF, destino, posicao);
+    }
+
+    /**
+     * @return o cabeçalho em um array do tamanho exato
+     */
+    static byte[] codificar(RespostaHTTP resposta) {
+        byte[] bytes = new byte[tamanho(resposta)];
+        codificar(resposta, bytes, 0);
+        return bytes;
+    }
+
+    private static byte[] linhaStatus(RespostaHTTP resposta) {
+        String protocolo = resposta.getProtocolo();
+        int p = PROTOCOLOS[0].equals(protocolo) ? 0 : PROTOCOLOS[1].equals(protocolo) ? 1 : -1;
+        if (p < 0) {
+            return null;
+        }
+        for (int c = 0; c < CODIGOS.length; c++) {
+            if (CODIGOS[c] == resposta.getCodigoResposta()) {
+                return MENSAGENS[c].equals(resposta.getMensagem()) ? LINHAS_STATUS[p][c] : null;
+            }
+        }
+        return null;
+    }
+
+    private static int copiar(byte[] origem, byte[] destino, int posicao) {
+        System.arraycopy(origem, 0, destino, posicao, origem.length);
+        return posicao + origem.length;
+    }
+
+    private static int copiar(byte[] origem, ByteBuffer destino, int posicao) {
+        destino.put(posicao, origem);
+        return posicao + origem.length;
+    }
+
+    private static int texto(String texto, ByteBuffer destino, int posicao) {
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            destino.put(posicao++, c < 256 ? (byte) c : (byte) '?');
+        }
+        return posicao;
+    }
+
+    /**
+     * Cabeçalhos HTTP são ISO-8859-1; caracteres fora dele viram '?'.
+     */
+    private static int texto(String texto, byte[] destino, int posicao) {
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            destino[posicao++] = c < 256 ? (byte) c : (byte) '?';
+        }
+        return posicao;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Set;
+
+/**
+ * Codifica os cabeçalhos das respostas em HPACK. Um campo que já está numa
+ * das tabelas sai como índice; os demais saem literais e entram na tabela
+ * dinâmica, exceto os que mudam a cada resposta (Date, Content-Length,
+ * ETag...), que só ocupariam espaço. Cada texto usa Huffman quando fica
+ * menor.
+ *
+ * Não é thread-safe: a conexão codifica e escreve cada bloco sob a mesma
+ * trava, na ordem em que o cliente vai decodificá-los.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class CodificadorHPACK {
+
+    //valores que quase nunca se repetem entre respostas
+    private static final Set<String> VOLATEIS = Set.of("date", "content-length", "content-range",
+            "etag", "last-modified", "location", "set-cookie");
+
+    private final TabelaHPACK tabela = new TabelaHPACK(TabelaHPACK.CAPACIDADE_PADRAO);
+    //menor capacidade e capacidade final a anunciar no próximo bloco, ou -1
+    private int menorPendente = -1;
+    private int capacidadePendente = -1;
+
+    /**
+     * Aplica o SETTINGS_HEADER_TABLE_SIZE do cliente. A tabela nunca passa
+     * da capacidade padrão, e a mudança é anunciada no início do próximo
+     * bloco (RFC 7541, 4.2).
+     */
+    void setCapacidadeMaxima(int capacidade) {
+        int nova = Math.min(capacidade, TabelaHPACK.CAPACIDADE_PADRAO);
+        if (nova == tabela.getCapacidade()) {
+            return;
+        }
+        tabela.setCapacidade(nova);
+        menorPendente = menorPendente < 0 ? nova : Math.min(menorPendente, nova);
+        capacidadePendente = nova;
+    }
+
+    /**
+     * Começa um bloco, anunciando antes uma mudança de capacidade pendente.
+     */
+    void iniciar(ByteArrayOutputStream saida) {
+        if (capacidadePendente < 0) {
+            return;
+        }
+        if (menorPendente < capacidadePendente) {
+            inteiro(saida, 0x20, 5, menorPendente);
+        }
+        inteiro(saida, 0x20, 5, capacidadePendente);
+        menorPendente = -1;
+        capacidadePendente = -1;
+    }
+
+    /**
+     * Acrescenta um campo ao bloco.
+     *
+     * @param nome nome em minúsculas
+     */
+    void codificar(String nome, String valor, ByteArrayOutputStream saida) {
+        int indice = tabela.procurar(nome, valor);
+        if (indice > 0) {
+            inteiro(saida, 0x80, 7, indice);
+            return;
+        }
+        boolean indexar = !VOLATEIS.contains(nome);
+        if (indexar) {
+            inteiro(saida, 0x40, 6, -indice);
+        } else {
+            inteiro(saida, 0x00, 4, -indice);
+        }
+        if (indice == 0) {
+            texto(saida, nome);
+        }
+        texto(saida, valor);
+        if (indexar) {
+            tabela.adicionar(nome, valor);
+        }
+    }
+
+    TabelaHPACK getTabela() {
+        return tabela;
+    }
+
+    /**
+     * Escreve um inteiro com prefixo de n bits; os bits acima do prefixo
+     * são os do marcador.
+     */
+    static void inteiro(ByteArrayOutputStream saida, int marcador, int n, int valor) {
+        int mascara = (1 << n) - 1;
+        if (valor < mascara) {
+            saida.write(marcador | valor);
+            return;
+        }
+        saida.write(marcador | mascara);
+        valor -= mascara;
+        while (valor >= 0x80) {
+            saida.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        saida.write(valor);
+    }
+
+    static void texto(ByteArrayOutputStream saida, String texto) {
+        int huffman = HuffmanHPACK.tamanho(texto);
+        if (huffman < texto.length()) {
+            inteiro(saida, 0x80, 7, huffman);
+            HuffmanHPACK.codificar(texto, saida);
+            return;
+        }
+        inteiro(saida, 0x00, 7, texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            saida.write(texto.charAt(i));
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Negociação de Content-Encoding e compressão com java.util.zip.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public final class Compressao {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private Compressao() {
+    }
+
+    /**
+     * Escolhe a codificação a partir dos valores do cabeçalho
+     * Accept-Encoding, respeitando os pesos (q). Em caso de empate o gzip
+     * tem preferência.
+     *
+     * @param aceitas valores do Accept-Encoding (pode ser null)
+     * @return GZIP, DEFLATE ou null para enviar sem compressão
+     */
+    public static String negociar(List<String> aceitas) {
+        if (aceitas == null) {
+            return null;
+        }
+        double pesoGzip = -1;
+        double pesoDeflate = -1;
+        double pesoQualquer = -1;
+        for (String item : aceitas) {
+            int pontoVirgula = item.indexOf(';');
+            String nome = (pontoVirgula < 0 ? item : item.substring(0, pontoVirgula)).trim();
+            double peso = pontoVirgula < 0 ? 1 : peso(item.substring(pontoVirgula + 1));
+            if (nome.equalsIgnoreCase(GZIP) || nome.equalsIgnoreCase("x-gzip")) {
+                pesoGzip = peso;
+            } else if (nome.equalsIgnoreCase(DEFLATE)) {
+                pesoDeflate = peso;
+            } else if (nome.equals("*")) {
+                pesoQualquer = peso;
+            }
+        }
+        //codificações não citadas valem o peso do "*", se houver
+        if (pesoGzip < 0) {
+            pesoGzip = pesoQualquer;
+        }
+        if (pesoDeflate < 0) {
+            pesoDeflate = pesoQualquer;
+        }
+        if (pesoGzip > 0 && pesoGzip >= pesoDeflate) {
+            return GZIP;
+        }
+        return pesoDeflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * @param tipoConteudo Content-Type do recurso
+     * @return true para tipos textuais, que costumam comprimir bem
+     */
+    public static boolean isComprimivel(String tipoConteudo) {
+        return tipoConteudo.startsWith("text/")
+                || tipoConteudo.startsWith("application/javascript")
+                || tipoConteudo.startsWith("application/json")
+                || tipoConteudo.startsWith("application/xml")
+                || tipoConteudo.startsWith("image/svg+xml");
+    }
+
+    /**
+     * Comprime os bytes com a maior taxa disponível; como o resultado fica
+     * em cache, a compressão acontece uma vez por recurso.
+     *
+     * @param dados bytes originais
+     * @param codificacao GZIP ou DEFLATE (formato zlib, como pede o HTTP)
+     * @return bytes comprimidos
+     */
+    public static byte[] comprimir(byte[] dados, String codificacao) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(dados.length / 2 + 64);
+        try {
+            if (GZIP.equals(codificacao)) {
+                try (OutputStream saida = new GZIPOutputStream(bytes) {
+                    {
+                        def.setLevel(Deflater.BEST_COMPRESSION);
+                    }
+                }) {
+                    saida.write(dados);
+                }
+            } else {
+                //o Deflater nativo só é criado aqui, onde é usado
+                Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, false);
+                try (OutputStream saida = new DeflaterOutputStream(bytes, deflater)) {
+                    saida.write(dados);
+                } finally {
+                    deflater.end();
+                }
+            }
+        } catch (IOException ex) {
+            //não acontece com ByteArrayOutputStream
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static double peso(String parametros) {
+        int q = parametros.indexOf("q=");
+        if (q < 0) {
+            return 1;
+        }
+        String valor = parametros.substring(q + 2);
+        int fim = valor.indexOf(';');
+        try {
+            return Double.parseDouble((fim < 0 ? valor : valor.substring(0, fim)).trim());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Uma conexão do GeradorCarga. As requisições têm horário marcado
+ * (ritmo em laço aberto): cada uma é enviada quando chega a sua vez, sem
+ * esperar a resposta da anterior além da profundidade do pipeline, e a
+ * latência é medida a partir do horário marcado. Assim, quando o servidor
+ * atrasa, o atraso entra na medida em vez de simplesmente diminuir o
+ * ritmo do cliente (omissão coordenada).
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class ConexaoCarga implements Runnable {
+
+    //espera máxima por uma resposta antes de contá-la como erro
+    private static final int TEMPO_LIMITE = 10000;
+
+    private final GeradorCarga gerador;
+    private final int porta;
+    private final long intervalo;
+    private long proximo;
+    //horários marcados e pedidos das requisições enviadas ainda sem resposta
+    private final long[] marcados;
+    private final byte[][] enviados;
+    private int primeiro;
+    private int pendentes;
+    private Socket socket;
+    private InputStream entrada;
+    private OutputStream saida;
+    //respostas completas já lidas desta conexão
+    private int respondidas;
+
+    /**
+     * @param gerador parâmetros e contadores da execução
+     * @param porta porta do servidor
+     * @param primeiro System.nanoTime() marcado para a primeira requisição
+     * @param intervalo nanossegundos entre duas requisições desta conexão
+     */
+    ConexaoCarga(GeradorCarga gerador, int porta, long primeiro, long intervalo) {
+        this.gerador = gerador;
+        this.porta = porta;
+        this.proximo = primeiro;
+        this.intervalo = intervalo;
+        int profundidade = gerador.isManterViva() ? gerador.getProfundidade() : 1;
+        this.marcados = new long[profundidade];
+        this.enviados = new byte[profundidade][];
+    }
+
+    @Override
+    public void run() {
+        long fim = gerador.getFim();
+        while (proximo < fim || pendentes > 0) {
+            try {
+                if (socket == null) {
+                    try {
+                        conectar();
+                    } catch (IOException ex) {
+                        //a requisição da vez não pôde ser enviada
+                        gerador.registrarErros(1);
+                        proximo += intervalo;
+                        continue;
+                    }
+                }
+                long agora = System.nanoTime();
+                boolean enviou = false;
+                while (pendentes < marcados.length && proximo <= agora && proximo < fim) {
+                    enviar(proximo, gerador.sortearPedido());
+                    proximo += intervalo;
+                    enviou = true;
+                }
+                if (enviou) {
+                    saida.flush();
+                }
+                if (pendentes > 0) {
+                    receber();
+                } else if (proximo < fim) {
+                    LockSupport.parkNanos(proximo - agora);
+                }
+            } catch (IOException ex) {
+                gerador.registrarErros(pendentes);
+                pendentes = 0;
+                fechar();
+            }
+        }
+        fechar();
+    }
+
+    private void conectar() throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(TEMPO_LIMITE);
+        socket.connect(new InetSocketAddress("localhost", porta));
+        entrada = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+        saida = socket.getOutputStream();
+        respondidas = 0;
+    }
+
+    private void enviar(long marcado, byte[] pedido) throws IOException {
+        int posicao = (primeiro + pendentes) % marcados.length;
+        marcados[posicao] = marcado;
+        enviados[posicao] = pedido;
+        pendentes++;
+        saida.write(pedido);
+    }
+
+    private void receber() throws IOException {
+        int codigo = lerResposta(entrada);
+        if (codigo < 0) {
+            if (respondidas == 0) {
+                throw new EOFException("Conexão encerrada sem resposta");
+            }
+            //o servidor fechou a conexão ociosa (keep-alive expirado):
+            //como um cliente HTTP faria, reenvia os pedidos em outra
+            reenviar();
+            return;
+        }
+        gerador.registrar(marcados[primeiro], System.nanoTime(), codigo);
+        primeiro = (primeiro + 1) % marcados.length;
+        pendentes--;
+        respondidas++;
+        if (!gerador.isManterViva()) {
+            fechar();
+        }
+    }
+
+    private void reenviar() throws IOException {
+        fechar();
+        conectar();
+        int quantidade = pendentes;
+        int inicio = primeiro;
+        pendentes = 0;
+        primeiro = 0;
+        long[] marcas = marcados.clone();
+        byte[][] pedidos = enviados.clone();
+        for (int i = 0; i < quantidade; i++) {
+            int posicao = (inicio + i) % marcas.length;
+            enviar(marcas[posicao], pedidos[posicao]);
+        }
+        saida.flush();
+    }
+
+    private void fechar() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                //a conexão já está sendo descartada
+            }
+            socket = null;
+        }
+    }
+
+    /**
+     * Lê uma resposta inteira, descartando o corpo (Content-Length, chunked
+     * ou até o fim da conexão).
+     *
+     * @return o código de status, ou -1 se a conexão terminou antes do
+     * primeiro byte
+     * @throws IOException se a conexão terminar no meio da resposta
+     */
+    static int lerResposta(InputStream entrada) throws IOException {
+        String linha = lerLinha(entrada, true);
+        if (linha == null) {
+            return -1;
+        }
+        int espaco = linha.indexOf(' ');
+        int codigo;
+        try {
+            codigo = Integer.parseInt(linha.substring(espaco + 1, espaco + 4));
+        } catch (RuntimeException ex) {
+            throw new IOException("Linha de status inválida: " + linha);
+        }
+        long tamanho = -1;
+        boolean chunked = false;
+        while (!(linha = lerLinha(entrada, false)).isEmpty()) {
+            int doisPontos = linha.indexOf(':');
+            String nome = doisPontos > 0 ? linha.substring(0, doisPontos) : linha;
+            String valor = doisPontos > 0 ? linha.substring(doisPontos + 1).trim() : "";
+            if (nome.equalsIgnoreCase("Content-Length")) {
+                tamanho = Long.parseLong(valor);
+            } else if (nome.equalsIgnoreCase("Transfer-Encoding") && valor.equalsIgnoreCase("chunked")) {
+                chunked = true;
+            }
+        }
+        if (chunked) {
+            long pedaco;
+            do {
+                String linhaPedaco = lerLinha(entrada, false);
+                int extensao = linhaPedaco.indexOf(';');
+                pedaco = Long.parseLong((extensao < 0 ? linhaPedaco : linhaPedaco.substring(0, extensao)).trim(), 16);
+                descartar(entrada, pedaco);
+                lerLinha(entrada, false);
+            } while (pedaco > 0);
+        } else if (tamanho >= 0) {
+            descartar(entrada, tamanho);
+        } else if (codigo != 304 && codigo >= 200) {
+            //sem tamanho: o corpo vai até o fim da conexão
+            while (entrada.read() >= 0) {
+                descartar(entrada, entrada.available());
+            }
+        }
+        return codigo;
+    }
+
+    private static String lerLinha(InputStream entrada, boolean fimPermitido) throws IOException {
+        StringBuilder linha = new StringBuilder(64);
+        int b;
+        while ((b = entrada.read()) != '\n') {
+            if (b < 0) {
+                if (fimPermitido && linha.length() == 0) {
+                    return null;
+                }
+                throw new EOFException("Resposta incompleta");
+            }
+            if (b != '\r') {
+                linha.append((char) b);
+            }
+        }
+        return linha.toString();
+    }
+
+    private static void descartar(InputStream entrada, long quantidade) throws IOException {
+        while (quantidade > 0) {
+            long pulados = entrada.skip(quantidade);
+            if (pulados <= 0) {
+                if (entrada.read() < 0) {
+                    throw new EOFException("Corpo incompleto");
+                }
+                pulados = 1;
+            }
+            quantidade -= pulados;
+        }
+    }
+
+}
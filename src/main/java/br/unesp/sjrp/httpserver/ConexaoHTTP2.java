@@ -0,0 +1,1012 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Conexão HTTP/2 sem TLS (h2c, RFC 9113) no modo threads. Uma ThreadConexao
+ * passa a conexão para cá quando recebe o prefácio do HTTP/2 (cliente com
+ * conhecimento prévio) ou uma requisição HTTP/1.1 com Upgrade: h2c, que é
+ * respondida com 101 e vira o fluxo 1.
+ *
+ * A thread da conexão fica lendo os quadros; cada fluxo completo vira uma
+ * RequisicaoHTTP, com protocolo HTTP/2.0, e é atendido pelo Roteador numa
+ * thread própria, de modo que uma resposta lenta não segura
+ * as outras. As respostas saem como HEADERS (HPACK) e DATA, respeitando as
+ * janelas de controle de fluxo do cliente; as threads dos fluxos esperam
+ * a janela sob o monitor da conexão e escrevem os quadros sob uma trava
+ * própria, que também ordena os blocos do codificador HPACK.
+ *
+ * Os fluxos nunca rodam na thread da conexão, a única que lê os
+ * WINDOW_UPDATE de que uma resposta grande depende. No modo threads eles
+ * vão para o executor limitado de LimitesHTTP2; sem vaga nele o fluxo é
+ * recusado com REFUSED_STREAM. A conexão não é estacionada entre
+ * requisições: a ociosidade é medida com SO_TIMEOUT e, sem fluxos
+ * abertos, encerra a conexão com GOAWAY.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class ConexaoHTTP2 {
+
+    static final String PROTOCOLO = "HTTP/2.0";
+    //fluxos simultâneos anunciados em SETTINGS_MAX_CONCURRENT_STREAMS
+    static final int MAXIMO_FLUXOS = 100;
+
+    private static final byte[] PREFACIO = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    //o que sobra do prefácio depois que o analisador o leu como requisição
+    private static final byte[] RESTO_PREFACIO = "SM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] MUDANDO_PROTOCOLO = ("HTTP/1.1 101 Switching Protocols\r\n"
+            + "Connection: Upgrade\r\nUpgrade: h2c\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    private static final int JANELA_PADRAO = 65535;
+    private static final int JANELA_MAXIMA = Integer.MAX_VALUE;
+
+    //identificadores de SETTINGS
+    private static final int TAMANHO_TABELA = 0x1;
+    private static final int HABILITAR_PUSH = 0x2;
+    private static final int FLUXOS_SIMULTANEOS = 0x3;
+    private static final int JANELA_INICIAL = 0x4;
+    private static final int TAMANHO_QUADRO = 0x5;
+    private static final int TAMANHO_LISTA_CABECALHOS = 0x6;
+
+    //cabeçalhos da conexão, que não existem em HTTP/2 (RFC 9113, 8.2.2)
+    private static final Set<String> PROIBIDOS = Set.of("connection", "keep-alive", "proxy-connection",
+            "transfer-encoding", "upgrade");
+
+    private final Socket socket;
+    private final InputStream entrada;
+    private final OutputStream saida;
+    private final Executor executor;
+    private final ControleAdmissao controle;
+    private final RodaTemporizacao.Temporizador prazo;
+    private final int tempoOcioso;
+    private final int tempoEscrita;
+
+    //só a thread da conexão
+    private final QuadroHTTP2 quadro = new QuadroHTTP2();
+    private final DecodificadorHPACK decodificador = new DecodificadorHPACK(TabelaHPACK.CAPACIDADE_PADRAO,
+            RequisicaoHTTP.LIMITE_CABECALHO);
+    private int ultimoFluxo;
+
+    //codificador e saída, sob a trava de escrita
+    private final Object escrita = new Object();
+    private final CodificadorHPACK codificador = new CodificadorHPACK();
+    private volatile int tamanhoQuadro = QuadroHTTP2.TAMANHO_PADRAO;
+
+    //estado compartilhado com as threads dos fluxos (synchronized)
+    private final Map<Integer, Fluxo> fluxos = new HashMap<>();
+    private int janela = JANELA_PADRAO;
+    private int janelaInicial = JANELA_PADRAO;
+    private boolean encerrada;
+
+    /**
+     * @param socket socket da conexão, em modo bloqueante
+     * @param entrada stream do socket, precedido dos bytes que o leitor
+     * HTTP/1.1 já tinha recebido
+     * @param executor onde os fluxos são atendidos; se recusar a tarefa o
+     * fluxo é recusado
+     * @param controle limites de requisições em andamento, ou null
+     * @param prazo prazo da conexão, armado só durante as escritas; ou null
+     * @param tempoOcioso tempo sem fluxos abertos até encerrar a conexão
+     * @param tempoEscrita tempo máximo de uma escrita ou de espera pela
+     * janela do cliente
+     */
+    ConexaoHTTP2(Socket socket, InputStream entrada, Executor executor, ControleAdmissao controle,
+            RodaTemporizacao.Temporizador prazo, int tempoOcioso, int tempoEscrita) throws IOException {
+        this.socket = socket;
+        this.entrada = new BufferedInputStream(entrada, QuadroHTTP2.TAMANHO_PADRAO);
+        this.saida = new BufferedOutputStream(socket.getOutputStream(), QuadroHTTP2.TAMANHO_PADRAO);
+        this.executor = executor;
+        this.controle = controle;
+        this.prazo = prazo;
+        this.tempoOcioso = tempoOcioso;
+        this.tempoEscrita = tempoEscrita;
+    }
+
+    /**
+     * Recusa um cliente com conhecimento prévio quando não há vaga para mais
+     * uma conexão HTTP/2: o SETTINGS obrigatório e um GOAWAY sem nenhum
+     * fluxo atendido, para que ele tente de novo depois. Quem chama fecha o
+     * socket.
+     *
+     * @param socket socket da conexão
+     */
+    static void recusar(Socket socket) throws IOException {
+        OutputStream saida = socket.getOutputStream();
+        byte[] carga = new byte[8];
+        QuadroHTTP2.escreverInteiro(carga, 4, ErroHTTP2.FLUXO_RECUSADO);
+        ByteArrayOutputStream quadros = new ByteArrayOutputStream(2 * QuadroHTTP2.TAMANHO_CABECALHO + 8);
+        QuadroHTTP2.escrever(quadros, QuadroHTTP2.CONFIGURACOES, 0, 0, carga, 0, 0);
+        QuadroHTTP2.escrever(quadros, QuadroHTTP2.ENCERRAR, 0, 0, carga, 0, 8);
+        quadros.writeTo(saida);
+        saida.flush();
+        //o que o cliente já mandou é descartado antes de fechar, senão o
+        //RST do TCP pode chegar antes do GOAWAY
+        socket.shutdownOutput();
+        socket.setSoTimeout(100);
+        InputStream entrada = socket.getInputStream();
+        byte[] descarte = new byte[4096];
+        try {
+            for (int i = 0; i < 16 && entrada.read(descarte) >= 0; i++) {
+            }
+        } catch (SocketTimeoutException ex) {
+            //o cliente não mandou mais nada
+        }
+    }
+
+    /**
+     * @return true se a requisição é a primeira linha do prefácio do
+     * HTTP/2, enviado por um cliente com conhecimento prévio
+     */
+    static boolean isPrefacio(RequisicaoHTTP requisicao) {
+        return "PRI".equals(requisicao.getMetodo()) && "*".equals(requisicao.getRecurso())
+                && PROTOCOLO.equals(requisicao.getProtocolo());
+    }
+
+    /**
+     * @return true se a requisição pede a troca para h2c com um
+     * HTTP2-Settings válido (RFC 7540, 3.2)
+     */
+    static boolean isAtualizacao(RequisicaoHTTP requisicao) {
+        if (!"HTTP/1.1".equals(requisicao.getProtocolo())) {
+            return false;
+        }
+        String atualizacao = requisicao.getValorCabecalho(CabecalhoConhecido.UPGRADE);
+        if (atualizacao == null || !CabecalhosRequisicao.temOpcao(atualizacao, "h2c")) {
+            return false;
+        }
+        return configuracoesAtualizacao(requisicao) != null;
+    }
+
+    private static byte[] configuracoesAtualizacao(RequisicaoHTTP requisicao) {
+        List<String> valores = requisicao.getCabecalhos().get("HTTP2-Settings");
+        if (valores == null || valores.size() != 1) {
+            return null;
+        }
+        try {
+            byte[] configuracoes = Base64.getUrlDecoder().decode(valores.get(0).trim());
+            return configuracoes.length % 6 == 0 ? configuracoes : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Atende a conexão até o cliente fechá-la, mandar GOAWAY ou ficar
+     * ocioso. Quem chama fecha o socket depois.
+     *
+     * @param atualizacao a requisição com Upgrade: h2c, ou null se o
+     * cliente mandou o prefácio
+     * @throws ErroHTTP2 depois de enviar o GOAWAY de um erro da conexão
+     */
+    void executar(RequisicaoHTTP atualizacao) throws IOException {
+        if (prazo != null) {
+            //a ociosidade passa a ser o SO_TIMEOUT; o prazo só vale nas escritas
+            prazo.desarmar();
+        }
+        socket.setSoTimeout(tempoOcioso);
+        try {
+            if (atualizacao != null) {
+                byte[] configuracoes = configuracoesAtualizacao(atualizacao);
+                synchronized (escrita) {
+                    saida.write(MUDANDO_PROTOCOLO);
+                }
+                enviarConfiguracoes();
+                aplicarConfiguracoes(configuracoes, configuracoes.length);
+                atenderAtualizacao(atualizacao);
+                lerPrefacio(PREFACIO);
+            } else {
+                lerPrefacio(RESTO_PREFACIO);
+                enviarConfiguracoes();
+            }
+            ler();
+        } catch (ErroHTTP2 ex) {
+            try {
+                encerrar(ex.getCodigo());
+            } catch (IOException ex1) {
+                //a conexão já está perdida
+            }
+            throw ex;
+        } finally {
+            synchronized (this) {
+                encerrada = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private void lerPrefacio(byte[] esperado) throws IOException {
+        for (byte b : esperado) {
+            int lido = entrada.read();
+            if (lido < 0) {
+                throw new EOFException("Conexão encerrada no prefácio HTTP/2");
+            }
+            if (lido != (b & 0xFF)) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "Prefácio HTTP/2 inválido");
+            }
+        }
+    }
+
+    /**
+     * A requisição que pediu a troca é o fluxo 1, já recebido por inteiro.
+     */
+    private void atenderAtualizacao(RequisicaoHTTP requisicao) throws IOException {
+        requisicao.setProtocolo(PROTOCOLO);
+        Fluxo fluxo = new Fluxo(1, requisicao);
+        ultimoFluxo = 1;
+        synchronized (this) {
+            fluxo.janela = janelaInicial;
+            fluxos.put(1, fluxo);
+        }
+        fluxo.recebido = true;
+        despachar(fluxo);
+    }
+
+    private void ler() throws IOException {
+        while (true) {
+            try {
+                if (!quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO)) {
+                    return;
+                }
+            } catch (SocketTimeoutException ex) {
+                if (isSemFluxos()) {
+                    encerrar(ErroHTTP2.SEM_ERRO);
+                    return;
+                }
+                //há respostas em andamento; o cliente só está esperando
+                continue;
+            }
+            Metricas.getPadrao().adicionarRecebidos(QuadroHTTP2.TAMANHO_CABECALHO + quadro.getTamanho());
+            try {
+                if (!tratar()) {
+                    return;
+                }
+            } catch (ErroHTTP2 ex) {
+                if (ex.getFluxo() == 0) {
+                    throw ex;
+                }
+                cancelar(ex.getFluxo(), ex.getCodigo());
+            }
+        }
+    }
+
+    /**
+     * @return false se o cliente encerrou a conexão com GOAWAY
+     */
+    private boolean tratar() throws IOException {
+        switch (quadro.getTipo()) {
+            case QuadroHTTP2.DADOS:
+                tratarDados();
+                break;
+            case QuadroHTTP2.CABECALHOS:
+                tratarCabecalhos();
+                break;
+            case QuadroHTTP2.PRIORIDADE:
+                //a ordem de atendimento é a de chegada
+                if (quadro.getFluxo() == 0) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "PRIORITY no fluxo 0");
+                }
+                if (quadro.getTamanho() != 5) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_TAMANHO_QUADRO, quadro.getFluxo(), "PRIORITY com tamanho inválido");
+                }
+                break;
+            case QuadroHTTP2.CANCELAR_FLUXO:
+                tratarCancelamento();
+                break;
+            case QuadroHTTP2.CONFIGURACOES:
+                tratarConfiguracoes();
+                break;
+            case QuadroHTTP2.PING:
+                if (quadro.getFluxo() != 0) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "PING fora do fluxo 0");
+                }
+                if (quadro.getTamanho() != 8) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_TAMANHO_QUADRO, "PING com tamanho inválido");
+                }
+                if (!quadro.temFlag(QuadroHTTP2.CONFIRMACAO)) {
+                    escrever(QuadroHTTP2.PING, QuadroHTTP2.CONFIRMACAO, 0, quadro.getCarga(), 0, 8);
+                }
+                break;
+            case QuadroHTTP2.ENCERRAR:
+                if (quadro.getFluxo() != 0) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "GOAWAY fora do fluxo 0");
+                }
+                aguardarFluxos();
+                return false;
+            case QuadroHTTP2.JANELA:
+                tratarJanela();
+                break;
+            case QuadroHTTP2.PROMESSA:
+                throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "PUSH_PROMISE enviado pelo cliente");
+            case QuadroHTTP2.CONTINUACAO:
+                throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "CONTINUATION sem HEADERS");
+            default:
+                //tipos desconhecidos são ignorados (RFC 9113, 4.1)
+                break;
+        }
+        return true;
+    }
+
+    private void tratarCabecalhos() throws IOException {
+        int id = quadro.getFluxo();
+        if (id == 0) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "HEADERS no fluxo 0");
+        }
+        boolean fimFluxo = quadro.temFlag(QuadroHTTP2.FIM_FLUXO);
+        byte[] bloco = quadro.getCarga();
+        int inicio = 0;
+        int fim = quadro.getTamanho();
+        if (quadro.temFlag(QuadroHTTP2.PREENCHIDO)) {
+            if (fim < 1) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "HEADERS sem o tamanho do enchimento");
+            }
+            fim -= bloco[0] & 0xFF;
+            inicio = 1;
+        }
+        if (quadro.temFlag(QuadroHTTP2.COM_PRIORIDADE)) {
+            inicio += 5;
+        }
+        if (inicio > fim) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "HEADERS com enchimento maior que o quadro");
+        }
+        if (!quadro.temFlag(QuadroHTTP2.FIM_CABECALHOS)) {
+            //o bloco continua nos próximos quadros, que precisam ser
+            //CONTINUATION do mesmo fluxo
+            ByteArrayOutputStream partes = new ByteArrayOutputStream(fim - inicio + QuadroHTTP2.TAMANHO_PADRAO);
+            partes.write(bloco, inicio, fim - inicio);
+            do {
+                if (!quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO)) {
+                    throw new EOFException("Conexão encerrada no meio de um bloco de cabeçalhos");
+                }
+                if (quadro.getTipo() != QuadroHTTP2.CONTINUACAO || quadro.getFluxo() != id) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "Bloco de cabeçalhos interrompido");
+                }
+                if (partes.size() + quadro.getTamanho() > RequisicaoHTTP.LIMITE_CABECALHO) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "Bloco de cabeçalhos excede "
+                            + RequisicaoHTTP.LIMITE_CABECALHO + " bytes");
+                }
+                partes.write(quadro.getCarga(), 0, quadro.getTamanho());
+            } while (!quadro.temFlag(QuadroHTTP2.FIM_CABECALHOS));
+            bloco = partes.toByteArray();
+            inicio = 0;
+            fim = bloco.length;
+        }
+        //decodificado mesmo que o fluxo seja recusado: a tabela dinâmica
+        //precisa continuar igual à do cliente
+        List<String> campos = new ArrayList<>();
+        decodificador.decodificar(bloco, inicio, fim, campos);
+
+        Fluxo existente;
+        synchronized (this) {
+            existente = fluxos.get(id);
+        }
+        if (existente != null && !existente.recebido) {
+            //trailers: não vão para a requisição
+            if (!fimFluxo) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, id, "Trailers sem END_STREAM");
+            }
+            concluirRecebimento(existente);
+            return;
+        }
+        if (id <= ultimoFluxo || id % 2 == 0) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "Fluxo " + id + " fora de ordem");
+        }
+        ultimoFluxo = id;
+        Fluxo fluxo = new Fluxo(id, montarRequisicao(id, campos));
+        synchronized (this) {
+            if (fluxos.size() >= MAXIMO_FLUXOS) {
+                throw new ErroHTTP2(ErroHTTP2.FLUXO_RECUSADO, id, "Fluxos simultâneos acima de " + MAXIMO_FLUXOS);
+            }
+            fluxo.janela = janelaInicial;
+            fluxos.put(id, fluxo);
+        }
+        if (fimFluxo) {
+            concluirRecebimento(fluxo);
+        }
+    }
+
+    /**
+     * Converte os campos de um bloco em requisição: os pseudo-cabeçalhos
+     * viram método e recurso, :authority vira Host.
+     */
+    private static RequisicaoHTTP montarRequisicao(int id, List<String> campos) throws ErroHTTP2 {
+        RequisicaoHTTP requisicao = new RequisicaoHTTP();
+        requisicao.setProtocolo(PROTOCOLO);
+        String autoridade = null;
+        boolean regulares = false;
+        for (int i = 0; i < campos.size(); i += 2) {
+            String nome = campos.get(i);
+            String valor = campos.get(i + 1);
+            if (nome.startsWith(":")) {
+                if (regulares) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, id, "Pseudo-cabeçalho depois dos cabeçalhos");
+                }
+                switch (nome) {
+                    case ":method":
+                        requisicao.setMetodo(valor);
+                        break;
+                    case ":path":
+                        requisicao.setRecurso(valor);
+                        break;
+                    case ":authority":
+                        autoridade = valor;
+                        break;
+                    case ":scheme":
+                        break;
+                    default:
+                        throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, id, "Pseudo-cabeçalho desconhecido: " + nome);
+                }
+            } else {
+                regulares = true;
+                if (PROIBIDOS.contains(nome) || !nome.equals(nome.toLowerCase(Locale.ROOT))) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, id, "Cabeçalho inválido em HTTP/2: " + nome);
+                }
+                requisicao.acrescentarCabecalho(nome, valor);
+            }
+        }
+        if (requisicao.getMetodo() == null || requisicao.getRecurso() == null || requisicao.getRecurso().isEmpty()) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, id, "Requisição sem :method ou :path");
+        }
+        if (autoridade != null && requisicao.getValorCabecalho(CabecalhoConhecido.HOST) == null) {
+            requisicao.setCabecalho(CabecalhoConhecido.HOST, autoridade);
+        }
+        return requisicao;
+    }
+
+    private void tratarDados() throws IOException {
+        int id = quadro.getFluxo();
+        if (id == 0) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "DATA no fluxo 0");
+        }
+        int tamanho = quadro.getTamanho();
+        byte[] carga = quadro.getCarga();
+        int inicio = 0;
+        int fim = tamanho;
+        if (quadro.temFlag(QuadroHTTP2.PREENCHIDO)) {
+            if (tamanho < 1 || (carga[0] & 0xFF) >= tamanho) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "DATA com enchimento inválido");
+            }
+            inicio = 1;
+            fim = tamanho - (carga[0] & 0xFF);
+        }
+        //o quadro inteiro, enchimento incluído, conta para a janela; ela é
+        //devolvida logo porque o corpo já foi copiado
+        if (tamanho > 0) {
+            enviarJanela(0, tamanho);
+        }
+        Fluxo fluxo;
+        synchronized (this) {
+            fluxo = fluxos.get(id);
+        }
+        if (fluxo == null || fluxo.recebido) {
+            if (id > ultimoFluxo) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "DATA num fluxo não aberto");
+            }
+            throw new ErroHTTP2(ErroHTTP2.FLUXO_FECHADO, id, "DATA depois do fim do fluxo");
+        }
+        if (fluxo.corpo == null) {
+            fluxo.corpo = new ByteArrayOutputStream(Math.max(fim - inicio, 32));
+        }
+        if (fluxo.corpo.size() + fim - inicio > AnalisadorRequisicao.LIMITE_CORPO) {
+            throw new ErroHTTP2(ErroHTTP2.CANCELADO, id, "Corpo excede " + AnalisadorRequisicao.LIMITE_CORPO + " bytes");
+        }
+        fluxo.corpo.write(carga, inicio, fim - inicio);
+        if (quadro.temFlag(QuadroHTTP2.FIM_FLUXO)) {
+            concluirRecebimento(fluxo);
+        } else if (tamanho > 0) {
+            enviarJanela(id, tamanho);
+        }
+    }
+
+    private void tratarCancelamento() throws IOException {
+        int id = quadro.getFluxo();
+        if (id == 0 || id > ultimoFluxo) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "RST_STREAM num fluxo não aberto");
+        }
+        if (quadro.getTamanho() != 4) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_TAMANHO_QUADRO, "RST_STREAM com tamanho inválido");
+        }
+        descartar(id);
+    }
+
+    private void tratarConfiguracoes() throws IOException {
+        if (quadro.getFluxo() != 0) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "SETTINGS fora do fluxo 0");
+        }
+        if (quadro.temFlag(QuadroHTTP2.CONFIRMACAO)) {
+            if (quadro.getTamanho() != 0) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_TAMANHO_QUADRO, "Confirmação de SETTINGS com carga");
+            }
+            return;
+        }
+        if (quadro.getTamanho() % 6 != 0) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_TAMANHO_QUADRO, "SETTINGS com tamanho inválido");
+        }
+        aplicarConfiguracoes(quadro.getCarga(), quadro.getTamanho());
+        escrever(QuadroHTTP2.CONFIGURACOES, QuadroHTTP2.CONFIRMACAO, 0, quadro.getCarga(), 0, 0);
+    }
+
+    /**
+     * Aplica os parâmetros do cliente, de um SETTINGS ou do HTTP2-Settings
+     * da atualização.
+     */
+    private void aplicarConfiguracoes(byte[] dados, int tamanho) throws ErroHTTP2 {
+        for (int i = 0; i + 6 <= tamanho; i += 6) {
+            int id = ((dados[i] & 0xFF) << 8) | (dados[i + 1] & 0xFF);
+            int valor = QuadroHTTP2.inteiro(dados, i + 2);
+            switch (id) {
+                case TAMANHO_TABELA:
+                    synchronized (escrita) {
+                        //sem sinal: acima de 2^31 vale o máximo
+                        codificador.setCapacidadeMaxima(valor < 0 ? Integer.MAX_VALUE : valor);
+                    }
+                    break;
+                case HABILITAR_PUSH:
+                    if (valor != 0 && valor != 1) {
+                        throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "SETTINGS_ENABLE_PUSH inválido");
+                    }
+                    break;
+                case JANELA_INICIAL:
+                    if (valor < 0) {
+                        throw new ErroHTTP2(ErroHTTP2.ERRO_CONTROLE_FLUXO, "SETTINGS_INITIAL_WINDOW_SIZE acima do máximo");
+                    }
+                    mudarJanelaInicial(valor);
+                    break;
+                case TAMANHO_QUADRO:
+                    if (valor < QuadroHTTP2.TAMANHO_PADRAO || valor > 0xFFFFFF) {
+                        throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "SETTINGS_MAX_FRAME_SIZE inválido");
+                    }
+                    tamanhoQuadro = valor;
+                    break;
+                default:
+                    //os demais (e os desconhecidos) não mudam o que o servidor envia
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Uma nova janela inicial muda a janela de todos os fluxos abertos pela
+     * diferença (RFC 9113, 6.9.2).
+     */
+    private synchronized void mudarJanelaInicial(int valor) throws ErroHTTP2 {
+        int diferenca = valor - janelaInicial;
+        for (Fluxo fluxo : fluxos.values()) {
+            if ((long) fluxo.janela + diferenca > JANELA_MAXIMA) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_CONTROLE_FLUXO, "Janela do fluxo " + fluxo.id + " acima do máximo");
+            }
+            fluxo.janela += diferenca;
+        }
+        janelaInicial = valor;
+        notifyAll();
+    }
+
+    private void tratarJanela() throws ErroHTTP2 {
+        if (quadro.getTamanho() != 4) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_TAMANHO_QUADRO, "WINDOW_UPDATE com tamanho inválido");
+        }
+        int id = quadro.getFluxo();
+        int incremento = QuadroHTTP2.inteiro(quadro.getCarga(), 0) & 0x7FFFFFFF;
+        if (incremento == 0) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, id, "WINDOW_UPDATE com incremento 0");
+        }
+        synchronized (this) {
+            if (id == 0) {
+                if ((long) janela + incremento > JANELA_MAXIMA) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_CONTROLE_FLUXO, "Janela da conexão acima do máximo");
+                }
+                janela += incremento;
+            } else {
+                Fluxo fluxo = fluxos.get(id);
+                if (fluxo == null) {
+                    if (id > ultimoFluxo) {
+                        throw new ErroHTTP2(ErroHTTP2.ERRO_PROTOCOLO, "WINDOW_UPDATE num fluxo não aberto");
+                    }
+                    //fluxo já encerrado
+                    return;
+                }
+                if ((long) fluxo.janela + incremento > JANELA_MAXIMA) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_CONTROLE_FLUXO, id, "Janela do fluxo acima do máximo");
+                }
+                fluxo.janela += incremento;
+            }
+            notifyAll();
+        }
+    }
+
+    private void concluirRecebimento(Fluxo fluxo) throws IOException {
+        fluxo.recebido = true;
+        if (fluxo.corpo != null) {
+            fluxo.requisicao.setCorpo(fluxo.corpo.toByteArray());
+            fluxo.corpo = null;
+        }
+        despachar(fluxo);
+    }
+
+    /**
+     * Entrega o fluxo ao executor; se ele recusar, o cliente recebe
+     * REFUSED_STREAM e pode repetir a requisição.
+     */
+    private void despachar(Fluxo fluxo) throws IOException {
+        synchronized (this) {
+            fluxo.despachado = true;
+        }
+        try {
+            executor.execute(() -> atender(fluxo));
+        } catch (RejectedExecutionException ex) {
+            terminar(fluxo);
+            cancelar(fluxo.id, ErroHTTP2.FLUXO_RECUSADO);
+        }
+    }
+
+    private void atender(Fluxo fluxo) {
+        RequisicaoHTTP requisicao = fluxo.requisicao;
+        long inicio = System.nanoTime();
+        boolean admitida = controle == null || controle.iniciarRequisicao();
+        try {
+            //acima do limite a resposta é o 503 pronto
+            RespostaHTTP resposta = admitida ? ThreadConexao.criarResposta(requisicao)
+                    : controle.responderIndisponivel(requisicao);
+            resposta.setSemCorpo("HEAD".equals(requisicao.getMetodo()));
+            responder(fluxo, resposta);
+            ThreadConexao.registrar(socket.getInetAddress(), requisicao, resposta, inicio);
+        } catch (IOException | RuntimeException ex) {
+            if (!isEncerrada() && !isCancelado(fluxo)) {
+                if (!(ex instanceof SocketTimeoutException)) {
+                    Logger.getLogger(ConexaoHTTP2.class.getName()).log(Level.WARNING, null, ex);
+                }
+                try {
+                    cancelar(fluxo.id, ErroHTTP2.ERRO_INTERNO);
+                } catch (IOException ex1) {
+                    //a conexão já está perdida
+                }
+            }
+        } finally {
+            if (admitida && controle != null) {
+                controle.concluirRequisicao(inicio);
+            }
+            terminar(fluxo);
+        }
+    }
+
+    /**
+     * Envia a resposta: HEADERS (com CONTINUATION se o bloco passar do
+     * tamanho de quadro do cliente) e o corpo em quadros DATA. A resposta
+     * de um HEAD termina nos cabeçalhos.
+     */
+    private void responder(Fluxo fluxo, RespostaHTTP resposta) throws IOException {
+        int codigo = resposta.getCodigoResposta();
+        boolean vazia = resposta.isSemCorpo() || codigo == 204 || codigo == 304 || resposta.getTamanhoCorpo() == 0;
+        ByteArrayOutputStream bloco = new ByteArrayOutputStream(256);
+        synchronized (escrita) {
+            codificador.iniciar(bloco);
+            codificador.codificar(":status", Integer.toString(codigo), bloco);
+            Map<String, List<String>> cabecalhos = resposta.lerCabecalhos();
+            if (cabecalhos != null) {
+                for (Map.Entry<String, List<String>> cabecalho : cabecalhos.entrySet()) {
+                    String nome = cabecalho.getKey().toLowerCase(Locale.ROOT);
+                    if (PROIBIDOS.contains(nome)
+                            || (resposta.getGerador() != null && "content-length".equals(nome))) {
+                        continue;
+                    }
+                    if ("date".equals(nome)) {
+                        //o mapa pode ser o de uma resposta pronta
+                        codificador.codificar(nome, RelogioHTTP.agora(), bloco);
+                        continue;
+                    }
+                    for (String valor : cabecalho.getValue()) {
+                        codificador.codificar(nome, valor, bloco);
+                    }
+                }
+            }
+            escreverCabecalhos(fluxo.id, bloco.toByteArray(), vazia);
+        }
+        if (vazia) {
+            return;
+        }
+        SaidaFluxo corpo = new SaidaFluxo(fluxo);
+        if (resposta.getGerador() != null) {
+            resposta.getGerador().gerar(corpo);
+        } else if (resposta.getCorpo() != null) {
+            resposta.getCorpo().escrever(corpo, null);
+        } else {
+            corpo.write(resposta.getConteudoResposta());
+        }
+        corpo.close();
+    }
+
+    private void escreverCabecalhos(int id, byte[] bloco, boolean fimFluxo) throws IOException {
+        int maximo = tamanhoQuadro;
+        int primeiro = Math.min(bloco.length, maximo);
+        int flags = (fimFluxo ? QuadroHTTP2.FIM_FLUXO : 0) | (primeiro == bloco.length ? QuadroHTTP2.FIM_CABECALHOS : 0);
+        armar();
+        try {
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.CABECALHOS, flags, id, bloco, 0, primeiro);
+            for (int posicao = primeiro; posicao < bloco.length; posicao += maximo) {
+                int quantidade = Math.min(maximo, bloco.length - posicao);
+                QuadroHTTP2.escrever(saida, QuadroHTTP2.CONTINUACAO,
+                        posicao + quantidade == bloco.length ? QuadroHTTP2.FIM_CABECALHOS : 0,
+                        id, bloco, posicao, quantidade);
+            }
+            saida.flush();
+        } finally {
+            desarmar();
+        }
+    }
+
+    /**
+     * Reserva até quantidade bytes das janelas da conexão e do fluxo,
+     * esperando o cliente abri-las.
+     *
+     * @return quantos bytes podem ser enviados agora, mais que zero
+     * @throws SocketTimeoutException se a janela ficar fechada por mais que
+     * o tempo de escrita
+     */
+    private synchronized int reservar(Fluxo fluxo, int quantidade) throws IOException {
+        long limite = System.nanoTime() + tempoEscrita * 1_000_000L;
+        while (true) {
+            if (encerrada || fluxo.cancelado) {
+                throw new EOFException("Fluxo " + fluxo.id + " encerrado");
+            }
+            int reservados = Math.min(quantidade, Math.min(janela, fluxo.janela));
+            if (reservados > 0) {
+                janela -= reservados;
+                fluxo.janela -= reservados;
+                return reservados;
+            }
+            long restante = (limite - System.nanoTime()) / 1_000_000L;
+            if (restante <= 0) {
+                throw new SocketTimeoutException("Janela do fluxo " + fluxo.id + " fechada por " + tempoEscrita + " ms");
+            }
+            try {
+                wait(restante);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Espera pela janela interrompida");
+            }
+        }
+    }
+
+    /**
+     * Cancela o fluxo do lado do servidor, com RST_STREAM.
+     */
+    private void cancelar(int id, int codigo) throws IOException {
+        descartar(id);
+        byte[] carga = new byte[4];
+        QuadroHTTP2.escreverInteiro(carga, 0, codigo);
+        escrever(QuadroHTTP2.CANCELAR_FLUXO, 0, id, carga, 0, 4);
+    }
+
+    /**
+     * Marca o fluxo como cancelado; um fluxo já em atendimento só sai da
+     * tabela quando sua thread terminar.
+     */
+    private synchronized void descartar(int id) {
+        Fluxo fluxo = fluxos.get(id);
+        if (fluxo != null) {
+            fluxo.cancelado = true;
+            if (!fluxo.despachado) {
+                fluxos.remove(id);
+            }
+            notifyAll();
+        }
+    }
+
+    private synchronized void terminar(Fluxo fluxo) {
+        fluxos.remove(fluxo.id, fluxo);
+        notifyAll();
+    }
+
+    private synchronized boolean isSemFluxos() {
+        return fluxos.isEmpty();
+    }
+
+    private synchronized boolean isEncerrada() {
+        return encerrada;
+    }
+
+    private synchronized boolean isCancelado(Fluxo fluxo) {
+        return fluxo.cancelado;
+    }
+
+    /**
+     * Depois do GOAWAY do cliente, espera as respostas em andamento por até
+     * o tempo de escrita.
+     */
+    private synchronized void aguardarFluxos() throws InterruptedIOException {
+        long limite = System.nanoTime() + tempoEscrita * 1_000_000L;
+        while (!fluxos.isEmpty()) {
+            long restante = (limite - System.nanoTime()) / 1_000_000L;
+            if (restante <= 0) {
+                return;
+            }
+            try {
+                wait(restante);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Espera pelos fluxos interrompida");
+            }
+        }
+    }
+
+    private void enviarConfiguracoes() throws IOException {
+        byte[] carga = new byte[12];
+        configuracao(carga, 0, FLUXOS_SIMULTANEOS, MAXIMO_FLUXOS);
+        configuracao(carga, 6, TAMANHO_LISTA_CABECALHOS, RequisicaoHTTP.LIMITE_CABECALHO);
+        escrever(QuadroHTTP2.CONFIGURACOES, 0, 0, carga, 0, carga.length);
+    }
+
+    private static void configuracao(byte[] carga, int posicao, int id, int valor) {
+        carga[posicao] = (byte) (id >>> 8);
+        carga[posicao + 1] = (byte) id;
+        QuadroHTTP2.escreverInteiro(carga, posicao + 2, valor);
+    }
+
+    private void enviarJanela(int id, int incremento) throws IOException {
+        byte[] carga = new byte[4];
+        QuadroHTTP2.escreverInteiro(carga, 0, incremento);
+        escrever(QuadroHTTP2.JANELA, 0, id, carga, 0, 4);
+    }
+
+    /**
+     * Envia GOAWAY com o último fluxo aceito.
+     */
+    private void encerrar(int codigo) throws IOException {
+        byte[] carga = new byte[8];
+        QuadroHTTP2.escreverInteiro(carga, 0, ultimoFluxo);
+        QuadroHTTP2.escreverInteiro(carga, 4, codigo);
+        escrever(QuadroHTTP2.ENCERRAR, 0, 0, carga, 0, 8);
+    }
+
+    private void escrever(int tipo, int flags, int fluxo, byte[] carga, int inicio, int tamanho) throws IOException {
+        synchronized (escrita) {
+            armar();
+            try {
+                QuadroHTTP2.escrever(saida, tipo, flags, fluxo, carga, inicio, tamanho);
+                saida.flush();
+            } finally {
+                desarmar();
+            }
+        }
+    }
+
+    //o prazo fecha a conexão se o cliente parar de ler no meio de uma escrita
+    private void armar() {
+        if (prazo != null) {
+            prazo.adiar(tempoEscrita);
+        }
+    }
+
+    private void desarmar() {
+        if (prazo != null) {
+            prazo.desarmar();
+        }
+    }
+
+    /**
+     * Um fluxo da conexão. Os campos da requisição e do corpo são só da
+     * thread da conexão; janela e os estados, do monitor da conexão.
+     */
+    private static final class Fluxo {
+
+        private final int id;
+        private final RequisicaoHTTP requisicao;
+        private ByteArrayOutputStream corpo;
+        private boolean recebido;
+        private int janela;
+        private boolean despachado;
+        private boolean cancelado;
+
+        private Fluxo(int id, RequisicaoHTTP requisicao) {
+            this.id = id;
+            this.requisicao = requisicao;
+        }
+
+    }
+
+    /**
+     * Corpo de uma resposta em quadros DATA de até 16 KiB, cada um enviado
+     * quando as janelas permitem. close marca o fim do fluxo.
+     */
+    private final class SaidaFluxo extends OutputStream {
+
+        private final Fluxo fluxo;
+        private final byte[] buffer = new byte[QuadroHTTP2.TAMANHO_PADRAO];
+        private int usados;
+        private boolean fechada;
+
+        private SaidaFluxo(Fluxo fluxo) {
+            this.fluxo = fluxo;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (usados == buffer.length) {
+                enviar(false);
+            }
+            buffer[usados++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] dados, int inicio, int tamanho) throws IOException {
+            while (tamanho > 0) {
+                if (usados == buffer.length) {
+                    enviar(false);
+                }
+                int quantidade = Math.min(tamanho, buffer.length - usados);
+                System.arraycopy(dados, inicio, buffer, usados, quantidade);
+                usados += quantidade;
+                inicio += quantidade;
+                tamanho -= quantidade;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (usados > 0) {
+                enviar(false);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!fechada) {
+                fechada = true;
+                enviar(true);
+            }
+        }
+
+        private void enviar(boolean fim) throws IOException {
+            int enviados = 0;
+            while (enviados < usados) {
+                int quantidade = reservar(fluxo, usados - enviados);
+                boolean ultimo = fim && enviados + quantidade == usados;
+                escrever(QuadroHTTP2.DADOS, ultimo ? QuadroHTTP2.FIM_FLUXO : 0, fluxo.id, buffer, enviados, quantidade);
+                enviados += quantidade;
+            }
+            if (fim && usados == 0) {
+                escrever(QuadroHTTP2.DADOS, QuadroHTTP2.FIM_FLUXO, fluxo.id, buffer, 0, 0);
+            }
+            usados = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Estado de uma conexão atendida pelo motor NIO: o buffer de leitura que
+ * acumula os bytes recebidos e a fila de respostas ainda não escritas.
+ * A fila guarda ByteBuffers (cabeçalhos e corpos em memória) e
+ * CorpoResposta (arquivos, enviados com transferTo aos poucos).
+ *
+ * Só é acessada pela thread do laço de eventos dono da conexão, que
+ * também gira a roda onde fica o prazo dela: o tempo ocioso entre
+ * requisições, o tempo para completar uma requisição começada e o tempo
+ * que uma escrita pode ficar parada esperando o cliente.
+ *
+ * O buffer de leitura é um ByteBuffer direto emprestado de um PoolBuffers
+ * a cada leitura e devolvido assim que não guarda mais nenhum byte, então
+ * uma conexão ociosa não segura buffer.
+ *
+ * Um corpo gerado é produzido por uma CorpoGerado em outra thread; a
+ * conexão envia os blocos conforme eles chegam e deixa de ser escrita
+ * enquanto o gerador não produz o próximo.
+ *
+ * Quando a rota é de um ManipuladorAssincrono que ainda não respondeu, a
+ * conexão deixa de ser lida (as requisições seguintes do pipeline esperam
+ * no buffer) e é retomada pelo laço quando a resposta fica pronta.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class ConexaoNIO {
+
+    private static final int TAMANHO_INICIAL = 8 * 1024;
+    private static final int TAMANHO_MAXIMO = 64 * 1024;
+
+    private final SocketChannel canal;
+    private final Deque<Object> saidas = new ArrayDeque<>();
+    private final AnalisadorRequisicao analisador = new AnalisadorRequisicao();
+    private final PoolBuffers pool = PoolBuffers.getPadrao();
+    //null enquanto não há bytes recebidos e não analisados
+    private ByteBuffer entrada;
+    private boolean fecharAposEscrita;
+    private final PoliticaConexao politica;
+    private final RodaTemporizacao.Temporizador prazo;
+    //a conexão ocupa uma vaga dele desde a aceitação
+    private final ControleAdmissao controle;
+    private int tempoOcioso;
+    private int atendidas;
+    //uma requisição começou a chegar e o prazo para completá-la já corre
+    private boolean recebendo;
+    //sem requisição em andamento nem resposta por escrever
+    private boolean ociosa = true;
+    private boolean fechada;
+    private final Metricas metricas = Metricas.getPadrao();
+    private final LacoEventos laco;
+    private SelectionKey chave;
+    //requisição esperando um ManipuladorAssincrono, e quando ela começou
+    private RequisicaoHTTP aguardando;
+    private long inicioAguardando;
+
+    ConexaoNIO(SocketChannel canal, PoliticaConexao politica, RodaTemporizacao roda, ControleAdmissao controle,
+            LacoEventos laco) {
+        this.canal = canal;
+        this.politica = politica;
+        this.controle = controle;
+        this.laco = laco;
+        this.tempoOcioso = politica.getTempoOcioso();
+        this.prazo = roda.criar(this::fechar);
+        prazo.adiar(tempoOcioso);
+        metricas.conexaoAberta();
+        metricas.conexaoOciosa(true);
+    }
+
+    /**
+     * Lê os bytes disponíveis no canal e processa todas as requisições
+     * completas, enfileirando as respostas na ordem em que chegaram.
+     *
+     * @return false se o cliente encerrou a conexão
+     * @throws IOException em erro de leitura ou requisição inválida
+     */
+    boolean ler() throws IOException {
+        if (entrada == null) {
+            entrada = pool.emprestar(TAMANHO_INICIAL);
+        } else if (!entrada.hasRemaining()) {
+            if (entrada.capacity() >= TAMANHO_MAXIMO) {
+                throw new IOException("Cabeçalho da requisição excede " + TAMANHO_MAXIMO + " bytes");
+            }
+            ByteBuffer maior = pool.emprestar(entrada.capacity() * 2);
+            entrada.flip();
+            maior.put(entrada);
+            pool.devolver(entrada);
+            entrada = maior;
+        }
+        int lidos = canal.read(entrada);
+        if (lidos < 0) {
+            return false;
+        }
+        metricas.adicionarRecebidos(lidos);
+        analisarEntrada();
+        if (saidas.isEmpty() && aguardando == null) {
+            atualizarPrazo();
+        }
+        return true;
+    }
+
+    void setChave(SelectionKey chave) {
+        this.chave = chave;
+    }
+
+    /**
+     * Processa as requisições completas que estão no buffer de entrada,
+     * até acabarem ou uma delas ficar esperando resposta assíncrona.
+     */
+    private void analisarEntrada() throws IOException {
+        if (entrada == null) {
+            return;
+        }
+        entrada.flip();
+        try {
+            //trata requisições enviadas em sequência (pipelining) na mesma leitura
+            while (!fecharAposEscrita && aguardando == null && analisador.analisar(entrada)) {
+                RequisicaoHTTP requisicao = analisador.getRequisicao();
+                analisador.reiniciar();
+                responder(requisicao);
+            }
+        } finally {
+            //mantém no buffer apenas a parte ainda não analisada
+            entrada.compact();
+            if (entrada.position() == 0) {
+                liberarEntrada();
+            }
+        }
+    }
+
+    /**
+     * Escreve o que for possível da fila de respostas sem bloquear.
+     *
+     * @param chave chave de seleção da conexão, para ajustar o interesse
+     * @throws IOException em erro de escrita
+     */
+    void escrever(SelectionKey chave) throws IOException {
+        while (!saidas.isEmpty()) {
+            boolean completo;
+            if (saidas.peek() instanceof CorpoResposta) {
+                CorpoResposta corpo = (CorpoResposta) saidas.peek();
+                completo = corpo.transferir(canal);
+                if (completo) {
+                    saidas.poll();
+                }
+            } else {
+                completo = escreverBuffers();
+            }
+            if (!completo && saidas.peek() instanceof CorpoGerado && ((CorpoGerado) saidas.peek()).isAguardando()) {
+                //o gerador ainda não produziu o próximo bloco e acorda a
+                //conexão quando produzir; até lá ela não é lida nem escrita
+                chave.interestOps(0);
+                prazo.adiar(politica.getTempoEscrita());
+                return;
+            }
+            if (!completo) {
+                //o socket está cheio, espera o proximo OP_WRITE; o prazo
+                //recomeça a cada vez que o cliente lê alguma coisa
+                chave.interestOps(SelectionKey.OP_WRITE);
+                prazo.adiar(politica.getTempoEscrita());
+                return;
+            }
+        }
+        if (fecharAposEscrita) {
+            fechar();
+        } else if (aguardando == null) {
+            chave.interestOps(SelectionKey.OP_READ);
+            atualizarPrazo();
+        } else {
+            //nada a ler nem escrever até a resposta assíncrona chegar
+            chave.interestOps(0);
+            prazo.adiar(politica.getTempoEscrita());
+        }
+    }
+
+    /**
+     * Chamado pelo laço quando um corpo gerado produziu mais bytes.
+     */
+    private void retomarEscrita() {
+        if (fechada) {
+            return;
+        }
+        try {
+            escrever(chave);
+        } catch (IOException | RuntimeException ex) {
+            fechar();
+        }
+    }
+
+    /**
+     * Sem nada por escrever, o prazo depende do que há no buffer de
+     * entrada: o resto de uma requisição começada ou a próxima requisição.
+     * O prazo de recebimento conta a partir do primeiro byte, não é
+     * renovado a cada leitura.
+     */
+    private void atualizarPrazo() {
+        if (entrada != null || analisador.isIniciada()) {
+            if (!recebendo) {
+                recebendo = true;
+                prazo.adiar(politica.getTempoCabecalho());
+            }
+            alterarOciosa(false);
+        } else {
+            recebendo = false;
+            prazo.adiar(tempoOcioso);
+            alterarOciosa(true);
+        }
+    }
+
+    /**
+     * Escreve de uma vez os ByteBuffers do início da fila (as respostas
+     * pendentes do pipeline), até o primeiro corpo de arquivo.
+     *
+     * @return true se todos foram escritos
+     */
+    private boolean escreverBuffers() throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[saidas.size()];
+        int quantidade = 0;
+        for (Object saida : saidas) {
+            if (!(saida instanceof ByteBuffer)) {
+                break;
+            }
+            buffers[quantidade++] = (ByteBuffer) saida;
+        }
+        canal.write(buffers, 0, quantidade);
+        while (!saidas.isEmpty() && saidas.peek() instanceof ByteBuffer
+                && !((ByteBuffer) saidas.peek()).hasRemaining()) {
+            saidas.poll();
+        }
+        return !(saidas.peek() instanceof ByteBuffer);
+    }
+
+    boolean temSaidaPendente() {
+        return !saidas.isEmpty();
+    }
+
+    void fechar() {
+        if (fechada) {
+            return;
+        }
+        fechada = true;
+        prazo.cancelar();
+        if (aguardando != null) {
+            //a resposta que ainda vier é descartada por retomar
+            aguardando = null;
+            controle.concluirRequisicao(inicioAguardando);
+        }
+        alterarOciosa(false);
+        metricas.conexaoFechada();
+        controle.conexaoEncerrada();
+        for (Object saida : saidas) {
+            if (saida instanceof CorpoResposta) {
+                ((CorpoResposta) saida).fechar();
+            }
+        }
+        saidas.clear();
+        liberarEntrada();
+        try {
+            canal.close();
+        } catch (IOException ex) {
+            //nada a fazer, a conexão já está sendo descartada
+        }
+    }
+
+    private void liberarEntrada() {
+        if (entrada != null) {
+            pool.devolver(entrada);
+            entrada = null;
+        }
+    }
+
+    private void alterarOciosa(boolean valor) {
+        if (ociosa != valor) {
+            ociosa = valor;
+            metricas.conexaoOciosa(valor);
+        }
+    }
+
+    private void responder(RequisicaoHTTP requisicao) throws IOException {
+        alterarOciosa(false);
+        recebendo = false;
+        long inicio = System.nanoTime();
+        if (!controle.iniciarRequisicao()) {
+            //acima do limite a resposta é o 503 pronto
+            enfileirar(requisicao, controle.responderIndisponivel(requisicao), inicio);
+            return;
+        }
+        boolean concluida = true;
+        try {
+            Manipulador manipulador = Roteador.getPadrao().encontrar(requisicao);
+            if (!(manipulador instanceof ManipuladorAssincrono)) {
+                enfileirar(requisicao, manipulador.atender(requisicao), inicio);
+                return;
+            }
+            CompletableFuture<RespostaHTTP> futuro = ((ManipuladorAssincrono) manipulador)
+                    .atenderAssincrono(requisicao).toCompletableFuture();
+            if (futuro.isDone()) {
+                enfileirar(requisicao, ManipuladorAssincrono.resultado(futuro), inicio);
+                return;
+            }
+            //o laço não espera: a conexão fica parada até a resposta chegar
+            concluida = false;
+            aguardando = requisicao;
+            inicioAguardando = inicio;
+            chave.interestOps(0);
+            prazo.adiar(politica.getTempoEscrita());
+            futuro.whenComplete((resposta, erro) -> laco.executar(() -> retomar(futuro)));
+        } finally {
+            if (concluida) {
+                controle.concluirRequisicao(inicio);
+            }
+        }
+    }
+
+    /**
+     * Chamado pelo laço quando a resposta assíncrona fica pronta: enfileira
+     * a resposta, processa o que mais chegou no pipeline e volta a escrever
+     * e ler.
+     */
+    private void retomar(CompletableFuture<RespostaHTTP> futuro) {
+        if (fechada) {
+            //fechada pelo prazo enquanto esperava
+            return;
+        }
+        RequisicaoHTTP requisicao = aguardando;
+        long inicio = inicioAguardando;
+        aguardando = null;
+        try {
+            try {
+                enfileirar(requisicao, ManipuladorAssincrono.resultado(futuro), inicio);
+            } finally {
+                controle.concluirRequisicao(inicio);
+            }
+            analisarEntrada();
+            escrever(chave);
+        } catch (IOException | RuntimeException ex) {
+            fechar();
+        }
+    }
+
+    private void enfileirar(RequisicaoHTTP requisicao, RespostaHTTP resposta, long inicio) throws IOException {
+        atendidas++;
+        tempoOcioso = politica.getTempoOcioso(requisicao);
+        if (!politica.preparar(requisicao, resposta, atendidas)) {
+            fecharAposEscrita = true;
+        }
+        ThreadConexao.registrar(canal.socket().getInetAddress(), requisicao, resposta, inicio);
+        resposta.setSemCorpo("HEAD".equals(requisicao.getMetodo()));
+        if (resposta.getGerador() != null) {
+            //o gerador roda em outra thread: o laço de eventos só envia os
+            //blocos que ele já produziu
+            CorpoGerado corpo = new CorpoGerado(resposta, () -> laco.executar(this::retomarEscrita));
+            saidas.add(corpo);
+            corpo.iniciar();
+            return;
+        }
+        //cabeçalho e corpo entram na fila sem cópia e saem na mesma escrita
+        //agrupada; corpos de arquivo são escritos aos poucos, sem bloquear
+        resposta.adicionarPartes(saidas);
+    }
+
+}
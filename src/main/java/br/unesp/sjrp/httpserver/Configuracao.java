@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.util.Properties;
+
+/**
+ * Opções de inicialização do servidor.
+ *
+ * Os valores são lidos das propriedades de sistema com prefixo
+ * "servidor." (ex: -Dservidor.modo=nio) e podem ser sobrescritos por
+ * argumentos na forma chave=valor passados ao main (ex: modo=nio).
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class Configuracao {
+
+    private static final String PREFIXO = "servidor.";
+
+    private final Properties propriedades;
+
+    public Configuracao() {
+        this(new Properties());
+    }
+
+    public Configuracao(Properties propriedades) {
+        this.propriedades = propriedades;
+    }
+
+    /**
+     * Carrega a configuração a partir das propriedades de sistema e dos
+     * argumentos de linha de comando.
+     *
+     * @param args argumentos no formato chave=valor
+     * @return configuração carregada
+     */
+    public static Configuracao carregar(String[] args) {
+        Properties propriedades = new Properties();
+        for (String nome : System.getProperties().stringPropertyNames()) {
+            if (nome.startsWith(PREFIXO)) {
+                propriedades.setProperty(nome.substring(PREFIXO.length()), System.getProperty(nome));
+            }
+        }
+        if (args != null) {
+            for (String arg : args) {
+                int igual = arg.indexOf('=');
+                if (igual > 0) {
+                    propriedades.setProperty(arg.substring(0, igual).trim(), arg.substring(igual + 1).trim());
+                }
+            }
+        }
+        return new Configuracao(propriedades);
+    }
+
+    public String getTexto(String chave, String padrao) {
+        return propriedades.getProperty(chave, padrao);
+    }
+
+    public int getInteiro(String chave, int padrao) {
+        String valor = propriedades.getProperty(chave);
+        if (valor == null || valor.isEmpty()) {
+            return padrao;
+        }
+        try {
+            return Integer.parseInt(valor.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Valor inválido para " + chave + ": " + valor, ex);
+        }
+    }
+
+    public void definir(String chave, String valor) {
+        propriedades.setProperty(chave, valor);
+    }
+
+    //getters das opções conhecidas
+    public int getPorta() {
+        return getInteiro("porta", 8000);
+    }
+
+    /**
+     * Motor de execução: "threads" (uma thread do pool por conexão) ou
+     * "nio" (laços de eventos com Selector).
+     */
+    public String getModo() {
+        return getTexto("modo", "threads");
+    }
+
+    public int getTamanhoPool() {
+        return getInteiro("threads", 20);
+    }
+
+    public int getLacosEventos() {
+        return getInteiro("lacos", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Threads aceitando conexões. Com mais de uma, cada uma tem o próprio
+     * socket (SO_REUSEPORT, onde existir) e a sua fatia de pools ou laços.
+     */
+    public int getAceitadores() {
+        return getInteiro("aceitadores", 1);
+    }
+
+    /**
+     * Tamanho da fila de conexões esperando o accept, por socket; 0 usa o
+     * padrão da JVM (50).
+     */
+    public int getBacklog() {
+        return getInteiro("backlog", 1024);
+    }
+
+    /**
+     * Milissegundos que uma conexão keep-alive espera pela próxima
+     * requisição antes de ser fechada.
+     */
+    public int getTempoOcioso() {
+        return getInteiro("conexao.ocioso", 5000);
+    }
+
+    /**
+     * Milissegundos que o cliente tem para terminar de enviar uma
+     * requisição depois de começá-la.
+     */
+    public int getTempoCabecalho() {
+        return getInteiro("conexao.cabecalho", 10000);
+    }
+
+    /**
+     * Milissegundos que a escrita de uma resposta pode ficar parada
+     * esperando o cliente ler.
+     */
+    public int getTempoEscrita() {
+        return getInteiro("conexao.escrita", 30000);
+    }
+
+    /**
+     * Requisições atendidas por conexão antes de fechá-la (0 sem limite).
+     */
+    public int getMaxRequisicoes() {
+        return getInteiro("conexao.requisicoes", 1000);
+    }
+
+    /**
+     * Conexões abertas ao mesmo tempo; acima disso são recusadas na
+     * aceitação (0 sem limite).
+     */
+    public int getLimiteConexoes() {
+        return getInteiro("limite.conexoes", 10000);
+    }
+
+    /**
+     * Conexões esperando uma thread do pool fixo; com a fila cheia a
+     * conexão é recusada (0 deixa a fila sem limite).
+     */
+    public int getLimiteFila() {
+        return getInteiro("limite.fila", 1000);
+    }
+
+    /**
+     * Requisições em andamento ao mesmo tempo; as excedentes recebem 503
+     * (0 sem limite). No modo adaptativo é o teto do limite.
+     */
+    public int getLimiteRequisicoes() {
+        return getInteiro("limite.requisicoes", 0);
+    }
+
+    /**
+     * Ajusta o limite de requisições pela latência observada (AIMD).
+     */
+    public boolean isLimiteAdaptativo() {
+        return Boolean.parseBoolean(getTexto("limite.adaptativo", "false"));
+    }
+
+    /**
+     * Latência, em milissegundos, acima da qual o limite adaptativo é
+     * reduzido.
+     */
+    public int getLatenciaAlvo() {
+        return getInteiro("limite.latencia", 100);
+    }
+
+    /**
+     * Segundos anunciados no Retry-After das respostas 503.
+     */
+    public int getRetryAfter() {
+        return getInteiro("limite.retryAfter", 1);
+    }
+
+    /**
+     * O que fazer com uma conexão acima do limite: "responder" com 503 ou
+     * "fechar" sem resposta.
+     */
+    public String getRecusa() {
+        return getTexto("limite.recusa", "responder");
+    }
+
+    /**
+     * Threads que atendem os fluxos HTTP/2 no modo threads; a fila do
+     * executor tem o mesmo tamanho e, com ela cheia, o fluxo é recusado.
+     */
+    public int getThreadsHTTP2() {
+        return getInteiro("http2.threads", getTamanhoPool());
+    }
+
+    /**
+     * Conexões HTTP/2 abertas ao mesmo tempo no modo threads, cada uma
+     * ocupando uma thread do pool; acima disso o Upgrade é ignorado e o
+     * prefácio recebe GOAWAY (0 desliga o HTTP/2).
+     */
+    public int getConexoesHTTP2() {
+        return getInteiro("http2.conexoes", Math.max(1, getTamanhoPool() / 2));
+    }
+
+    /**
+     * Orçamento em bytes do cache de recursos.
+     */
+    public long getLimiteCache() {
+        return getInteiro("cache.bytes", 32 * 1024 * 1024);
+    }
+
+    /**
+     * Por quantos milissegundos um recurso inexistente (404) fica no cache.
+     */
+    public long getTtlAusentes() {
+        return getInteiro("cache.ttlAusentes", 5000);
+    }
+
+    /**
+     * Tamanho mínimo, em bytes, para um recurso textual ser comprimido.
+     * Um valor negativo desliga a compressão.
+     */
+    public int getCompressaoMinima() {
+        return getInteiro("compressao.minimo", 1024);
+    }
+
+    /**
+     * Pacote gerado por ArquivoRecursos, mapeado em memória. Tem
+     * preferência sobre o diretório de documentos.
+     */
+    public String getPacote() {
+        String pacote = getTexto("pacote", null);
+        return pacote == null || pacote.isEmpty() ? null : pacote;
+    }
+
+    /**
+     * Diretório de onde os arquivos são servidos. Sem ele, os arquivos
+     * vêm do classpath (pasta estaticos).
+     */
+    public String getDiretorioDocumentos() {
+        String diretorio = getTexto("documentos", null);
+        return diretorio == null || diretorio.isEmpty() ? null : diretorio;
+    }
+
+    /**
+     * Arquivos do diretório de documentos até esse tamanho são lidos para
+     * a memória; os maiores são enviados direto do disco.
+     */
+    public long getLimiteMemoria() {
+        return getInteiro("documentos.memoria", 256 * 1024);
+    }
+
+    /**
+     * Arquivo do log de acesso. Sem ele, as requisições não são
+     * registradas.
+     */
+    public String getArquivoLog() {
+        String arquivo = getTexto("log.arquivo", null);
+        return arquivo == null || arquivo.isEmpty() ? null : arquivo;
+    }
+
+    /**
+     * Formato do log de acesso: "comum", "combinado" ou "json".
+     */
+    public String getFormatoLog() {
+        return getTexto("log.formato", "combinado");
+    }
+
+    /**
+     * Quantos registros cabem na fila entre as threads de atendimento e a
+     * thread que grava o log.
+     */
+    public int getCapacidadeLog() {
+        return getInteiro("log.capacidade", 8192);
+    }
+
+    /**
+     * O que fazer com a fila do log cheia: "descartar" o registro ou
+     * "bloquear" até vagar espaço.
+     */
+    public String getPoliticaLog() {
+        return getTexto("log.politica", "descartar");
+    }
+
+    /**
+     * Registra uma a cada N requisições (1 registra todas).
+     */
+    public int getAmostragemLog() {
+        return getInteiro("log.amostragem", 1);
+    }
+
+    /**
+     * Inclui no log todos os cabeçalhos da requisição (depuração).
+     */
+    public boolean isLogCabecalhos() {
+        return Boolean.parseBoolean(getTexto("log.cabecalhos", "false"));
+    }
+
+    /**
+     * Caminho onde as métricas são servidas; vazio desliga.
+     */
+    public String getCaminhoMetricas() {
+        String caminho = getTexto("metricas.caminho", "/metrics");
+        return caminho.isEmpty() ? null : caminho;
+    }
+
+    /**
+     * Caminho da verificação de saúde (JSON); vazio desliga.
+     */
+    public String getCaminhoSaude() {
+        String caminho = getTexto("saude.caminho", "/health");
+        return caminho.isEmpty() ? null : caminho;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controle de admissão: limita as conexões abertas e as requisições em
+ * andamento para que, sob sobrecarga, o servidor recuse rápido em vez de
+ * enfileirar até a latência explodir.
+ *
+ * Uma conexão acima do limite (ou que não cabe na fila do pool) recebe na
+ * hora um 503 com Retry-After já serializado e é fechada, sem que a
+ * requisição seja lida; com limite.recusa=fechar ela é só derrubada. Uma
+ * requisição acima do limite é respondida com o mesmo 503, sem passar
+ * pelos arquivos estáticos.
+ *
+ * O limite de requisições pode ser adaptativo (AIMD): cada requisição
+ * mais lenta que a latência alvo reduz o limite em 10% (no máximo uma vez
+ * por intervalo alvo, para dar tempo das requisições já admitidas
+ * terminarem) e cada rodada de requisições dentro do alvo o aumenta em
+ * um, até o teto configurado.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public final class ControleAdmissao {
+
+    //teto do limite adaptativo quando limite.requisicoes não é dado
+    static final int TETO_ADAPTATIVO = 1000;
+    private static final double REDUCAO = 0.9;
+    private static final byte[] FECHAR = "Connection: close\r\n".getBytes(StandardCharsets.US_ASCII);
+    //bytes do cliente recusado descartados no máximo, para não prender o aceitador
+    static final int DESCARTE_MAXIMO = 16 * 1024;
+
+    private final int maxConexoes;
+    private final int teto;
+    private final boolean adaptativo;
+    private final long latenciaAlvo;
+    private final boolean derrubar;
+    private final AtomicInteger conexoes = new AtomicInteger();
+    private final AtomicInteger emAndamento = new AtomicInteger();
+    private final AtomicInteger dentroAlvo = new AtomicInteger();
+    private final AtomicLong proximaReducao = new AtomicLong(System.nanoTime());
+    private final AtomicInteger limite;
+    private final LongAdder conexoesRecusadas = new LongAdder();
+    private final LongAdder requisicoesRecusadas = new LongAdder();
+    //503 já serializado: HTTP/1.1 e HTTP/1.0
+    private final RespostaPronta[] indisponivel = new RespostaPronta[2];
+
+    public ControleAdmissao() {
+        this(new Configuracao());
+    }
+
+    public ControleAdmissao(Configuracao configuracao) {
+        this.maxConexoes = Math.max(0, configuracao.getLimiteConexoes());
+        this.adaptativo = configuracao.isLimiteAdaptativo();
+        int requisicoes = Math.max(0, configuracao.getLimiteRequisicoes());
+        this.teto = adaptativo && requisicoes == 0 ? TETO_ADAPTATIVO : requisicoes;
+        this.limite = new AtomicInteger(teto);
+        this.latenciaAlvo = TimeUnit.MILLISECONDS.toNanos(Math.max(1, configuracao.getLatenciaAlvo()));
+        this.derrubar = "fechar".equals(configuracao.getRecusa());
+        String corpo = "503 Service Unavailable\n";
+        indisponivel[0] = criarIndisponivel("HTTP/1.1", corpo, configuracao.getRetryAfter());
+        indisponivel[1] = criarIndisponivel("HTTP/1.0", corpo, configuracao.getRetryAfter());
+    }
+
+    private static RespostaPronta criarIndisponivel(String protocolo, String corpo, int retryAfter) {
+        RespostaHTTP modelo = new RespostaHTTP(protocolo, 503, "Service Unavailable");
+        modelo.setConteudoResposta(corpo.getBytes(StandardCharsets.US_ASCII));
+        ArquivosEstaticos.preencherCabecalhos(modelo, "text/plain; charset=utf-8");
+        modelo.setCabecalho("Retry-After", String.valueOf(Math.max(0, retryAfter)));
+        return new RespostaPronta(modelo);
+    }
+
+    /**
+     * Reserva uma vaga para uma conexão recém aceita. Toda conexão admitida
+     * precisa devolver a vaga com conexaoEncerrada.
+     *
+     * @return false se o limite de conexões foi atingido
+     */
+    boolean admitirConexao() {
+        if (reservar(conexoes, maxConexoes)) {
+            return true;
+        }
+        conexoesRecusadas.increment();
+        return false;
+    }
+
+    void conexaoEncerrada() {
+        conexoes.decrementAndGet();
+    }
+
+    /**
+     * Reserva uma vaga para uma requisição. Uma requisição admitida precisa
+     * chamar concluirRequisicao ao terminar.
+     *
+     * @return false se o limite de requisições em andamento foi atingido
+     */
+    boolean iniciarRequisicao() {
+        if (reservar(emAndamento, limite.get())) {
+            return true;
+        }
+        requisicoesRecusadas.increment();
+        return false;
+    }
+
+    /**
+     * Devolve a vaga da requisição e, no modo adaptativo, ajusta o limite
+     * pela latência observada.
+     *
+     * @param inicio System.nanoTime() do início do atendimento
+     */
+    void concluirRequisicao(long inicio) {
+        emAndamento.decrementAndGet();
+        if (adaptativo) {
+            long agora = System.nanoTime();
+            ajustar(agora, agora - inicio);
+        }
+    }
+
+    /**
+     * Passo do AIMD.
+     *
+     * @param agora System.nanoTime() atual
+     * @param latencia duração da requisição, em nanossegundos
+     */
+    void ajustar(long agora, long latencia) {
+        if (latencia > latenciaAlvo) {
+            long proxima = proximaReducao.get();
+            //uma redução por intervalo: as requisições lentas já admitidas
+            //não podem derrubar o limite todas de uma vez
+            if (agora - proxima >= 0 && proximaReducao.compareAndSet(proxima, agora + latenciaAlvo)) {
+                limite.updateAndGet(l -> Math.max(1, (int) (l * REDUCAO)));
+                dentroAlvo.set(0);
+            }
+        } else if (dentroAlvo.incrementAndGet() >= limite.get()) {
+            dentroAlvo.set(0);
+            limite.updateAndGet(l -> Math.min(teto, l + 1));
+        }
+    }
+
+    /**
+     * @return o 503 já serializado para o protocolo da requisição
+     */
+    RespostaHTTP responderIndisponivel(RequisicaoHTTP requisicao) {
+        return indisponivel["HTTP/1.0".equals(requisicao.getProtocolo()) ? 1 : 0].criarResposta();
+    }
+
+    /**
+     * Recusa uma conexão sem ler a requisição: escreve o 503 (o que couber
+     * no buffer do socket, sem bloquear), descarta até DESCARTE_MAXIMO
+     * bytes já recebidos e fecha, ou só a derruba com RST se
+     * limite.recusa=fechar.
+     *
+     * @param canal conexão recusada; é fechada aqui
+     */
+    void recusar(SocketChannel canal) {
+        try {
+            if (derrubar) {
+                //RST imediato, sem TIME_WAIT no servidor
+                canal.socket().setSoLinger(true, 0);
+            } else {
+                canal.configureBlocking(false);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+                indisponivel[0].escrever(bytes, FECHAR, true);
+                canal.write(ByteBuffer.wrap(bytes.toByteArray()));
+                canal.shutdownOutput();
+                //descarta o que o cliente já mandou: fechar com bytes não
+                //lidos envia RST e o cliente poderia perder o 503. Um
+                //cliente que não para de mandar leva o RST mesmo assim,
+                //em vez de ocupar o aceitador
+                ByteBuffer descarte = ByteBuffer.allocate(1024);
+                int restante = DESCARTE_MAXIMO;
+                while (restante > 0 && canal.read(descarte) > 0) {
+                    restante -= descarte.position();
+                    descarte.clear();
+                }
+            }
+        } catch (IOException ex) {
+            //o cliente já foi embora
+        } finally {
+            try {
+                canal.close();
+            } catch (IOException ex) {
+                //nada a fazer, a conexão já está sendo descartada
+            }
+        }
+    }
+
+    private static boolean reservar(AtomicInteger contador, int maximo) {
+        if (maximo <= 0) {
+            contador.incrementAndGet();
+            return true;
+        }
+        int atual;
+        do {
+            atual = contador.get();
+            if (atual >= maximo) {
+                return false;
+            }
+        } while (!contador.compareAndSet(atual, atual + 1));
+        return true;
+    }
+
+    public int getConexoes() {
+        return conexoes.get();
+    }
+
+    public int getEmAndamento() {
+        return emAndamento.get();
+    }
+
+    /**
+     * @return limite atual de requisições em andamento (0 sem limite)
+     */
+    public int getLimite() {
+        return limite.get();
+    }
+
+    public long getConexoesRecusadas() {
+        return conexoesRecusadas.sum();
+    }
+
+    public long getRequisicoesRecusadas() {
+        return requisicoesRecusadas.sum();
+    }
+
+}
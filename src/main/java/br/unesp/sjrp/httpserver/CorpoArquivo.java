@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Corpo formado por uma região de um arquivo em disco, enviada com
+ * FileChannel.transferTo. Quando o destino é o canal do socket o kernel
+ * copia direto do page cache (sendfile), sem passar pelo heap.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class CorpoArquivo extends CorpoResposta {
+
+    private final Path arquivo;
+    private final long posicao;
+    private final long tamanho;
+    //estado da escrita não bloqueante
+    private FileChannel aberto;
+    private long enviados;
+
+    public CorpoArquivo(Path arquivo, long posicao, long tamanho) {
+        this.arquivo = arquivo;
+        this.posicao = posicao;
+        this.tamanho = tamanho;
+    }
+
+    @Override
+    public long getTamanho() {
+        return tamanho;
+    }
+
+    @Override
+    public void escrever(OutputStream saida, WritableByteChannel canal) throws IOException {
+        //o cabeçalho precisa sair antes dos bytes escritos direto no canal
+        saida.flush();
+        WritableByteChannel destino = canal != null ? canal : Channels.newChannel(saida);
+        try (FileChannel origem = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long atual = posicao;
+            long restante = tamanho;
+            while (restante > 0) {
+                long escritos = origem.transferTo(atual, restante, destino);
+                if (escritos <= 0 && atual >= origem.size()) {
+                    throw new EOFException("Arquivo diminuiu durante o envio: " + arquivo);
+                }
+                atual += escritos;
+                restante -= escritos;
+            }
+        }
+    }
+
+    @Override
+    public boolean transferir(WritableByteChannel canal) throws IOException {
+        if (aberto == null) {
+            aberto = FileChannel.open(arquivo, StandardOpenOption.READ);
+        }
+        long atual = posicao + enviados;
+        long escritos = aberto.transferTo(atual, tamanho - enviados, canal);
+        if (escritos == 0 && atual >= aberto.size()) {
+            throw new EOFException("Arquivo diminuiu durante o envio: " + arquivo);
+        }
+        enviados += escritos;
+        if (enviados < tamanho) {
+            return false;
+        }
+        fechar();
+        return true;
+    }
+
+    @Override
+    public void fechar() {
+        if (aberto != null) {
+            try {
+                aberto.close();
+            } catch (IOException ex) {
+                //somente leitura, nada a perder
+            }
+            aberto = null;
+        }
+    }
+
+    //getters
+    public Path getArquivo() {
+        return arquivo;
+    }
+
+    public long getPosicao() {
+        return posicao;
+    }
+
+}
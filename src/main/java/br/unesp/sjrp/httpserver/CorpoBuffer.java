@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Corpo formado por um ByteBuffer, normalmente uma fatia de um arquivo
+ * mapeado em memória (ArquivoRecursos).
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class CorpoBuffer extends CorpoResposta {
+
+    //corpos até esse tamanho são copiados para o buffer da conexão, para
+    //seguirem junto com o cabeçalho (e com outras respostas do pipeline)
+    private static final int LIMITE_COPIA = 8 * 1024;
+
+    //cópia própria: a posição marca o quanto já foi enviado
+    private final ByteBuffer conteudo;
+    private final long tamanho;
+
+    public CorpoBuffer(ByteBuffer conteudo) {
+        this.conteudo = conteudo.duplicate();
+        this.tamanho = this.conteudo.remaining();
+    }
+
+    @Override
+    public long getTamanho() {
+        return tamanho;
+    }
+
+    @Override
+    public void escrever(OutputStream saida, WritableByteChannel canal) throws IOException {
+        ByteBuffer restante = conteudo.duplicate();
+        if (canal != null && restante.remaining() > LIMITE_COPIA) {
+            //grande: o cabeçalho sai antes e o corpo vai direto para o canal
+            saida.flush();
+            while (restante.hasRemaining()) {
+                canal.write(restante);
+            }
+            return;
+        }
+        if (restante.hasArray()) {
+            saida.write(restante.array(), restante.arrayOffset() + restante.position(), restante.remaining());
+            return;
+        }
+        byte[] bloco = new byte[Math.min(LIMITE_COPIA, restante.remaining())];
+        while (restante.hasRemaining()) {
+            int quantidade = Math.min(bloco.length, restante.remaining());
+            restante.get(bloco, 0, quantidade);
+            saida.write(bloco, 0, quantidade);
+        }
+    }
+
+    @Override
+    public boolean transferir(WritableByteChannel canal) throws IOException {
+        canal.write(conteudo);
+        return !conteudo.hasRemaining();
+    }
+
+    @Override
+    public ByteBuffer comoBuffer() {
+        return conteudo;
+    }
+
+}
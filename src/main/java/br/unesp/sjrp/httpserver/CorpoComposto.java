@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Corpo formado por outros corpos enviados em sequência, como as partes
+ * de uma resposta multipart/byteranges.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class CorpoComposto extends CorpoResposta {
+
+    private final List<CorpoResposta> partes;
+    private final long tamanho;
+    //parte em envio na escrita não bloqueante
+    private int atual;
+
+    public CorpoComposto(List<CorpoResposta> partes) {
+        this.partes = partes;
+        long soma = 0;
+        for (CorpoResposta parte : partes) {
+            soma += parte.getTamanho();
+        }
+        this.tamanho = soma;
+    }
+
+    @Override
+    public long getTamanho() {
+        return tamanho;
+    }
+
+    @Override
+    public void escrever(OutputStream saida, WritableByteChannel canal) throws IOException {
+        for (CorpoResposta parte : partes) {
+            parte.escrever(saida, canal);
+        }
+    }
+
+    @Override
+    public boolean transferir(WritableByteChannel canal) throws IOException {
+        while (atual < partes.size()) {
+            if (!partes.get(atual).transferir(canal)) {
+                return false;
+            }
+            atual++;
+        }
+        return true;
+    }
+
+    @Override
+    public void fechar() {
+        for (CorpoResposta parte : partes) {
+            parte.fechar();
+        }
+    }
+
+}
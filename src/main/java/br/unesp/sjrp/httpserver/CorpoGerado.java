@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resposta com corpo gerado (RespostaHTTP.setGerador) no motor NIO. A
+ * resposta inteira, cabeçalho incluído, é escrita por uma thread de
+ * geração numa fila de blocos que o laço de eventos envia sem bloquear.
+ *
+ * A fila guarda no máximo alguns pedaços: com ela cheia o gerador espera o
+ * cliente ler, então a memória de uma resposta não cresce com o tamanho
+ * do corpo. Com a fila vazia o laço para de escrever a conexão e o
+ * gerador a acorda quando houver mais bytes.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class CorpoGerado extends CorpoResposta {
+
+    //blocos prontos antes de o gerador esperar o cliente
+    private static final int LIMITE_BLOCOS = 4;
+    //threads que rodam os geradores; um gerador esperando o cliente ocupa
+    //uma delas até a fila andar ou a conexão cair
+    private static final ExecutorService GERADORES = Executors.newFixedThreadPool(
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), tarefa -> {
+                Thread thread = new Thread(tarefa, "gerador-nio");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final RespostaHTTP resposta;
+    private final Runnable acordar;
+    //estado compartilhado com a thread de geração (synchronized)
+    private final Deque<ByteBuffer> blocos = new ArrayDeque<>();
+    private boolean concluido;
+    private IOException erro;
+    private boolean cancelado;
+    //o laço encontrou a fila vazia e espera ser acordado
+    private boolean esperando;
+    //só o laço
+    private ByteBuffer atual;
+
+    /**
+     * @param resposta resposta com gerador, ainda sem saída
+     * @param acordar chamado de outra thread quando chega um bloco para uma
+     * conexão que estava esperando; deve retomar a escrita no laço
+     */
+    CorpoGerado(RespostaHTTP resposta, Runnable acordar) {
+        this.resposta = resposta;
+        this.acordar = acordar;
+    }
+
+    /**
+     * Começa a gerar numa thread de geração.
+     */
+    void iniciar() {
+        GERADORES.execute(this::gerar);
+    }
+
+    private void gerar() {
+        Fila fila = new Fila();
+        IOException falha = null;
+        try {
+            resposta.setSaida(fila);
+            resposta.enviar();
+        } catch (IOException ex) {
+            falha = ex;
+        } catch (RuntimeException ex) {
+            falha = new IOException(ex);
+        }
+        boolean despertar;
+        synchronized (this) {
+            concluido = true;
+            erro = falha;
+            notifyAll();
+            despertar = esperando;
+            esperando = false;
+        }
+        if (despertar) {
+            acordar.run();
+        }
+    }
+
+    private void entregar(ByteBuffer bloco) throws IOException {
+        boolean despertar;
+        synchronized (this) {
+            while (blocos.size() >= LIMITE_BLOCOS && !cancelado) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Geração interrompida", ex);
+                }
+            }
+            if (cancelado) {
+                throw new IOException("Conexão encerrada durante a geração do corpo");
+            }
+            blocos.add(bloco);
+            notifyAll();
+            despertar = esperando;
+            esperando = false;
+        }
+        if (despertar) {
+            acordar.run();
+        }
+    }
+
+    private synchronized ByteBuffer proximo() {
+        ByteBuffer bloco = blocos.poll();
+        if (bloco != null) {
+            notifyAll();
+        }
+        return bloco;
+    }
+
+    @Override
+    public long getTamanho() {
+        return -1;
+    }
+
+    @Override
+    public void escrever(OutputStream saida, WritableByteChannel canal) throws IOException {
+        //fora do motor NIO: espera cada bloco
+        WritableByteChannel destino = canal != null ? canal : Channels.newChannel(saida);
+        ByteBuffer bloco;
+        while ((bloco = aguardarBloco()) != null) {
+            while (bloco.hasRemaining()) {
+                destino.write(bloco);
+            }
+        }
+    }
+
+    /**
+     * @return o próximo bloco, ou null no fim do corpo
+     */
+    private synchronized ByteBuffer aguardarBloco() throws IOException {
+        while (blocos.isEmpty() && !concluido) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Espera pelo gerador interrompida", ex);
+            }
+        }
+        if (!blocos.isEmpty()) {
+            notifyAll();
+            return blocos.poll();
+        }
+        if (erro != null) {
+            throw erro;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean transferir(WritableByteChannel canal) throws IOException {
+        while (true) {
+            if (atual == null) {
+                atual = proximo();
+            }
+            if (atual == null) {
+                synchronized (this) {
+                    if (!blocos.isEmpty()) {
+                        continue;
+                    }
+                    if (concluido) {
+                        if (erro != null) {
+                            throw erro;
+                        }
+                        return true;
+                    }
+                    esperando = true;
+                    return false;
+                }
+            }
+            canal.write(atual);
+            if (atual.hasRemaining()) {
+                //socket cheio
+                return false;
+            }
+            atual = null;
+        }
+    }
+
+    /**
+     * @return true se a última transferência parou porque o gerador ainda
+     * não produziu o próximo bloco (e não porque o socket encheu)
+     */
+    synchronized boolean isAguardando() {
+        return esperando;
+    }
+
+    @Override
+    public synchronized void fechar() {
+        cancelado = true;
+        blocos.clear();
+        notifyAll();
+    }
+
+    /**
+     * Saída da thread de geração: junta os bytes e entrega um bloco a cada
+     * pedaço completo ou flush.
+     */
+    private final class Fila extends OutputStream {
+
+        private final ByteArrayOutputStream pendente = new ByteArrayOutputStream(RespostaHTTP.TAMANHO_PEDACO + 16);
+
+        @Override
+        public void write(int b) throws IOException {
+            pendente.write(b);
+            if (pendente.size() >= RespostaHTTP.TAMANHO_PEDACO) {
+                flush();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int inicio, int tamanho) throws IOException {
+            pendente.write(b, inicio, tamanho);
+            if (pendente.size() >= RespostaHTTP.TAMANHO_PEDACO) {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (pendente.size() > 0) {
+                entregar(ByteBuffer.wrap(pendente.toByteArray()));
+                pendente.reset();
+            }
+        }
+    }
+}
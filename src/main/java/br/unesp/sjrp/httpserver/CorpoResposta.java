@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Corpo de uma resposta que não está inteiro em um byte[] (ex: uma região
+ * de arquivo). O cabeçalho é escrito pela RespostaHTTP; o corpo cuida só
+ * dos próprios bytes.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public abstract class CorpoResposta {
+
+    /**
+     * @return tamanho do corpo em bytes (o Content-Length)
+     */
+    public abstract long getTamanho();
+
+    /**
+     * Escreve o corpo inteiro, bloqueando até terminar.
+     *
+     * @param saida stream da conexão, que ainda pode ter bytes do cabeçalho
+     * no buffer
+     * @param canal canal do socket, quando existir, para escrita sem cópia;
+     * pode ser null
+     * @throws IOException em erro de escrita
+     */
+    public abstract void escrever(OutputStream saida, WritableByteChannel canal) throws IOException;
+
+    /**
+     * Escreve o que for possível sem bloquear (motor NIO). Chamadas
+     * seguintes continuam de onde a anterior parou.
+     *
+     * @param canal canal não bloqueante do socket
+     * @return true quando todo o corpo já foi escrito
+     * @throws IOException em erro de escrita
+     */
+    public abstract boolean transferir(WritableByteChannel canal) throws IOException;
+
+    /**
+     * @return o corpo como um ByteBuffer próprio desta resposta, quando ele
+     * já estiver em um, para entrar na escrita agrupada do motor NIO; null
+     * caso contrário
+     */
+    public ByteBuffer comoBuffer() {
+        return null;
+    }
+
+    /**
+     * Libera o que o corpo mantiver aberto. Chamado também quando a conexão
+     * cai antes do fim da escrita.
+     */
+    public void fechar() {
+    }
+
+}
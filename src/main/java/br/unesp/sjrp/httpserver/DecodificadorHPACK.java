@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Decodifica os blocos de cabeçalho HPACK recebidos (RFC 7541, seção 6):
+ * campos indexados, literais com e sem indexação e mudanças de tamanho da
+ * tabela dinâmica. Um bloco é sempre decodificado inteiro, mesmo de um
+ * fluxo que vai ser recusado, para a tabela continuar igual à do cliente.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class DecodificadorHPACK {
+
+    //teto anunciado em SETTINGS_HEADER_TABLE_SIZE
+    private final int capacidadeMaxima;
+    //limite da lista de cabeçalhos decodificada, pela conta do HPACK
+    private final int limite;
+    private final TabelaHPACK tabela;
+    //posição de leitura no bloco atual
+    private int indice;
+
+    DecodificadorHPACK(int capacidadeMaxima, int limite) {
+        this.capacidadeMaxima = capacidadeMaxima;
+        this.limite = limite;
+        this.tabela = new TabelaHPACK(capacidadeMaxima);
+    }
+
+    /**
+     * Decodifica bloco[inicio, fim) acrescentando nome e valor de cada
+     * campo, nessa ordem, à lista.
+     *
+     * @throws ErroHTTP2 (COMPRESSION_ERROR) se o bloco for inválido ou os
+     * campos excederem o limite
+     */
+    void decodificar(byte[] bloco, int inicio, int fim, List<String> campos) throws ErroHTTP2 {
+        indice = inicio;
+        int total = 0;
+        boolean primeiro = true;
+        while (indice < fim) {
+            int b = bloco[indice] & 0xFF;
+            String nome;
+            String valor;
+            if ((b & 0x80) != 0) {
+                //campo indexado
+                int i = inteiro(bloco, fim, 7);
+                if (i == 0) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Índice HPACK 0");
+                }
+                nome = tabela.getNome(i);
+                valor = tabela.getValor(i);
+            } else if ((b & 0xC0) == 0x40) {
+                //literal com indexação incremental
+                int i = inteiro(bloco, fim, 6);
+                nome = i == 0 ? texto(bloco, fim) : tabela.getNome(i);
+                valor = texto(bloco, fim);
+                tabela.adicionar(nome, valor);
+            } else if ((b & 0xE0) == 0x20) {
+                //mudança de tamanho da tabela, só no começo do bloco
+                if (!primeiro) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Mudança de tamanho da tabela fora do início do bloco");
+                }
+                int capacidade = inteiro(bloco, fim, 5);
+                if (capacidade > capacidadeMaxima) {
+                    throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Tabela HPACK acima do limite: " + capacidade);
+                }
+                tabela.setCapacidade(capacidade);
+                continue;
+            } else {
+                //literal sem indexação (0000) ou nunca indexado (0001)
+                int i = inteiro(bloco, fim, 4);
+                nome = i == 0 ? texto(bloco, fim) : tabela.getNome(i);
+                valor = texto(bloco, fim);
+            }
+            primeiro = false;
+            total += TabelaHPACK.tamanho(nome, valor);
+            if (total > limite) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Cabeçalhos excedem " + limite + " bytes");
+            }
+            campos.add(nome);
+            campos.add(valor);
+        }
+    }
+
+    TabelaHPACK getTabela() {
+        return tabela;
+    }
+
+    /**
+     * Lê um inteiro com prefixo de n bits (RFC 7541, 5.1) a partir do byte
+     * atual.
+     */
+    private int inteiro(byte[] bloco, int fim, int n) throws ErroHTTP2 {
+        int mascara = (1 << n) - 1;
+        int valor = bloco[indice++] & mascara;
+        if (valor < mascara) {
+            return valor;
+        }
+        int deslocamento = 0;
+        while (true) {
+            if (indice >= fim) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Inteiro HPACK incompleto");
+            }
+            int b = bloco[indice++] & 0xFF;
+            if (deslocamento > 21) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Inteiro HPACK grande demais");
+            }
+            valor += (b & 0x7F) << deslocamento;
+            if (valor < 0) {
+                throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Inteiro HPACK grande demais");
+            }
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+            deslocamento += 7;
+        }
+    }
+
+    /**
+     * Lê um texto literal, com ou sem Huffman (RFC 7541, 5.2).
+     */
+    private String texto(byte[] bloco, int fim) throws ErroHTTP2 {
+        if (indice >= fim) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Texto HPACK ausente");
+        }
+        boolean huffman = (bloco[indice] & 0x80) != 0;
+        int tamanho = inteiro(bloco, fim, 7);
+        if (tamanho > fim - indice) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Texto HPACK incompleto");
+        }
+        int inicio = indice;
+        indice += tamanho;
+        if (huffman) {
+            return HuffmanHPACK.decodificar(bloco, inicio, indice);
+        }
+        return new String(bloco, inicio, tamanho, StandardCharsets.ISO_8859_1);
+    }
+
+}
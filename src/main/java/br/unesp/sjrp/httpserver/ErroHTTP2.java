@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+/**
+ * Erro de protocolo numa conexão HTTP/2. Com fluxo 0 é um erro da conexão
+ * inteira (vira GOAWAY); com outro fluxo só aquele fluxo é cancelado
+ * (RST_STREAM). Os códigos são os da RFC 9113, seção 7.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class ErroHTTP2 extends RequisicaoInvalidaException {
+
+    private static final long serialVersionUID = 1L;
+
+    //NO_ERROR
+    static final int SEM_ERRO = 0x0;
+    //PROTOCOL_ERROR
+    static final int ERRO_PROTOCOLO = 0x1;
+    //INTERNAL_ERROR
+    static final int ERRO_INTERNO = 0x2;
+    //FLOW_CONTROL_ERROR
+    static final int ERRO_CONTROLE_FLUXO = 0x3;
+    //STREAM_CLOSED
+    static final int FLUXO_FECHADO = 0x5;
+    //FRAME_SIZE_ERROR
+    static final int ERRO_TAMANHO_QUADRO = 0x6;
+    //REFUSED_STREAM
+    static final int FLUXO_RECUSADO = 0x7;
+    //CANCEL
+    static final int CANCELADO = 0x8;
+    //COMPRESSION_ERROR
+    static final int ERRO_COMPRESSAO = 0x9;
+
+    private final int codigo;
+    private final int fluxo;
+
+    /**
+     * Erro da conexão inteira.
+     */
+    ErroHTTP2(int codigo, String mensagem) {
+        this(codigo, 0, mensagem);
+    }
+
+    ErroHTTP2(int codigo, int fluxo, String mensagem) {
+        super(mensagem);
+        this.codigo = codigo;
+        this.fluxo = fluxo;
+    }
+
+    int getCodigo() {
+        return codigo;
+    }
+
+    /**
+     * @return o fluxo afetado, ou 0 se o erro é da conexão
+     */
+    int getFluxo() {
+        return fluxo;
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Guarda as conexões keep-alive ociosas do modo de threads sem prender
+ * uma thread do pool para cada uma. Uma única thread espera, com um
+ * Selector, que alguma delas receba bytes (ou seja fechada pelo cliente)
+ * e devolve a conexão ao pool, de volta ao modo bloqueante.
+ *
+ * O fechamento por tempo ocioso fica com a RodaTemporizacao: fechar o
+ * canal já o tira do Selector.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class EstacionamentoConexoes implements Runnable, Closeable {
+
+    private final Selector seletor;
+    private final Queue<ThreadConexao> novas = new ConcurrentLinkedQueue<>();
+    private volatile boolean ativo = true;
+
+    EstacionamentoConexoes() throws IOException {
+        this.seletor = Selector.open();
+    }
+
+    /**
+     * Inicia a thread do estacionamento.
+     *
+     * @param nome nome da thread
+     */
+    void iniciar(String nome) {
+        Thread thread = new Thread(this, nome);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Estaciona uma conexão sem bytes pendentes. Pode ser chamado de
+     * qualquer thread; quem chama deixa de usar a conexão até ela ser
+     * retomada.
+     *
+     * @param conexao conexão ociosa
+     */
+    void estacionar(ThreadConexao conexao) {
+        novas.add(conexao);
+        seletor.wakeup();
+        if (!ativo) {
+            //encerrado enquanto a conexão chegava
+            fecharNovas();
+        }
+    }
+
+    /**
+     * @return quantas conexões estão esperando no Selector
+     */
+    int getQuantidade() {
+        try {
+            return seletor.keys().size();
+        } catch (ClosedSelectorException ex) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        ativo = false;
+        seletor.wakeup();
+    }
+
+    @Override
+    public void run() {
+        List<ThreadConexao> prontas = new ArrayList<>();
+        try {
+            while (ativo) {
+                seletor.select();
+                registrarNovas();
+                Iterator<SelectionKey> chaves = seletor.selectedKeys().iterator();
+                while (chaves.hasNext()) {
+                    SelectionKey chave = chaves.next();
+                    chaves.remove();
+                    chave.cancel();
+                    prontas.add((ThreadConexao) chave.attachment());
+                }
+                if (!prontas.isEmpty()) {
+                    //efetiva os cancelamentos: só um canal fora do Selector
+                    //pode voltar ao modo bloqueante
+                    seletor.selectNow();
+                    for (ThreadConexao conexao : prontas) {
+                        conexao.retomar();
+                    }
+                    prontas.clear();
+                }
+            }
+        } catch (IOException | ClosedSelectorException ex) {
+            Logger.getLogger(EstacionamentoConexoes.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            fecharTodas();
+        }
+    }
+
+    private void registrarNovas() {
+        ThreadConexao conexao;
+        while ((conexao = novas.poll()) != null) {
+            try {
+                conexao.getCanal().configureBlocking(false);
+                conexao.getCanal().register(seletor, SelectionKey.OP_READ, conexao);
+            } catch (IOException ex) {
+                //fechada pelo prazo enquanto chegava
+                conexao.fechar();
+            }
+        }
+    }
+
+    private void fecharTodas() {
+        try {
+            for (SelectionKey chave : seletor.keys()) {
+                ((ThreadConexao) chave.attachment()).fechar();
+            }
+            seletor.close();
+        } catch (IOException | ClosedSelectorException ex) {
+            Logger.getLogger(EstacionamentoConexoes.class.getName()).log(Level.WARNING, null, ex);
+        }
+        fecharNovas();
+    }
+
+    private void fecharNovas() {
+        ThreadConexao conexao;
+        while ((conexao = novas.poll()) != null) {
+            conexao.fechar();
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Interpreta o cabeçalho Range (RFC 7233) de pedidos em bytes.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class FaixasBytes {
+
+    //mais faixas que isso num mesmo pedido: o cabeçalho é ignorado
+    static final int LIMITE_FAIXAS = 16;
+
+    private FaixasBytes() {
+    }
+
+    /**
+     * Converte o valor do Range em faixas do recurso. Faixas sobrepostas
+     * ou vizinhas são juntadas.
+     *
+     * @param valor valor do cabeçalho (ex: "bytes=0-99,200-,-50")
+     * @param tamanho tamanho do recurso
+     * @return faixas {início, fim} com o fim incluído, em ordem; lista
+     * vazia se nenhuma faixa cabe no recurso (416); null se o cabeçalho é
+     * inválido e deve ser ignorado (200 com o recurso inteiro)
+     */
+    static List<long[]> interpretar(String valor, long tamanho) {
+        valor = valor.trim();
+        if (!valor.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] especificacoes = valor.substring(6).split(",");
+        if (especificacoes.length > LIMITE_FAIXAS) {
+            return null;
+        }
+        List<long[]> faixas = new ArrayList<>(especificacoes.length);
+        for (String especificacao : especificacoes) {
+            especificacao = especificacao.trim();
+            int hifen = especificacao.indexOf('-');
+            if (hifen < 0) {
+                return null;
+            }
+            long inicio;
+            long fim;
+            try {
+                if (hifen == 0) {
+                    //sufixo: os últimos n bytes
+                    long sufixo = numero(especificacao.substring(1));
+                    inicio = Math.max(0, tamanho - sufixo);
+                    fim = sufixo == 0 ? -1 : tamanho - 1;
+                } else {
+                    inicio = numero(especificacao.substring(0, hifen));
+                    String resto = especificacao.substring(hifen + 1);
+                    if (resto.isEmpty()) {
+                        fim = tamanho - 1;
+                    } else {
+                        fim = numero(resto);
+                        if (fim < inicio) {
+                            return null;
+                        }
+                        fim = Math.min(fim, tamanho - 1);
+                    }
+                }
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+            //faixas fora do recurso são descartadas, as outras ainda valem
+            if (inicio < tamanho && fim >= inicio) {
+                faixas.add(new long[]{inicio, fim});
+            }
+        }
+        faixas.sort(Comparator.comparingLong(faixa -> faixa[0]));
+        List<long[]> juntas = new ArrayList<>(faixas.size());
+        for (long[] faixa : faixas) {
+            long[] ultima = juntas.isEmpty() ? null : juntas.get(juntas.size() - 1);
+            if (ultima != null && faixa[0] <= ultima[1] + 1) {
+                ultima[1] = Math.max(ultima[1], faixa[1]);
+            } else {
+                juntas.add(faixa);
+            }
+        }
+        return juntas;
+    }
+
+    /**
+     * @return o valor do Content-Range de uma faixa
+     */
+    static String conteudoFaixa(long[] faixa, long tamanho) {
+        return "bytes " + faixa[0] + "-" + faixa[1] + "/" + tamanho;
+    }
+
+    private static long numero(String texto) {
+        //só dígitos: parseLong aceitaria sinais
+        if (texto.isEmpty() || texto.length() > 18) {
+            throw new NumberFormatException(texto);
+        }
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) < '0' || texto.charAt(i) > '9') {
+                throw new NumberFormatException(texto);
+            }
+        }
+        return Long.parseLong(texto);
+    }
+
+}
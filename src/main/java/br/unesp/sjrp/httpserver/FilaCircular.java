@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fila circular limitada, sem locks, com vários produtores e um único
+ * consumidor. Cada posição tem um número de sequência que diz se ela está
+ * livre para o produtor da volta atual ou preenchida para o consumidor
+ * (o esquema de filas limitadas de Dmitry Vyukov).
+ *
+ * @param <T> tipo dos elementos
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class FilaCircular<T> {
+
+    private final int mascara;
+    private final AtomicLongArray sequencias;
+    private final AtomicReferenceArray<T> elementos;
+    private final AtomicLong fim = new AtomicLong();
+    //só o consumidor mexe no início
+    private long inicio;
+
+    /**
+     * @param capacidade arredondada para a próxima potência de 2
+     */
+    FilaCircular(int capacidade) {
+        int tamanho = Integer.highestOneBit(Math.max(2, capacidade) - 1) << 1;
+        mascara = tamanho - 1;
+        sequencias = new AtomicLongArray(tamanho);
+        elementos = new AtomicReferenceArray<>(tamanho);
+        for (int i = 0; i < tamanho; i++) {
+            sequencias.set(i, i);
+        }
+    }
+
+    /**
+     * Insere sem bloquear. Pode ser chamado por várias threads.
+     *
+     * @return false se a fila está cheia
+     */
+    boolean oferecer(T elemento) {
+        while (true) {
+            long posicao = fim.get();
+            int indice = (int) posicao & mascara;
+            long diferenca = sequencias.get(indice) - posicao;
+            if (diferenca == 0) {
+                if (fim.compareAndSet(posicao, posicao + 1)) {
+                    elementos.lazySet(indice, elemento);
+                    //publica o elemento para o consumidor
+                    sequencias.set(indice, posicao + 1);
+                    return true;
+                }
+            } else if (diferenca < 0) {
+                return false;
+            }
+            //outro produtor pegou a posição, tenta a seguinte
+        }
+    }
+
+    /**
+     * Remove o elemento mais antigo. Só pode ser chamado pelo consumidor.
+     *
+     * @return o elemento ou null se a fila está vazia
+     */
+    T retirar() {
+        int indice = (int) inicio & mascara;
+        if (sequencias.get(indice) != inicio + 1) {
+            return null;
+        }
+        T elemento = elementos.get(indice);
+        elementos.lazySet(indice, null);
+        //libera a posição para a próxima volta dos produtores
+        sequencias.set(indice, inicio + mascara + 1);
+        inicio++;
+        return elemento;
+    }
+
+    int getCapacidade() {
+        return mascara + 1;
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Lê os recursos do classpath (src/main/resources).
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class FonteClasspath implements FonteRecursos {
+
+    private final ClassLoader carregador;
+
+    public FonteClasspath() {
+        this(FonteClasspath.class.getClassLoader());
+    }
+
+    public FonteClasspath(ClassLoader carregador) {
+        this.carregador = carregador;
+    }
+
+    /**
+     * Lê o recurso inteiro e fecha o stream logo em seguida. O fechamento
+     * imediato importa nas virtual threads: a leitura de recursos dentro de
+     * um jar passa por trechos sincronizados do ZipFile, que prendem a
+     * carrier thread enquanto durarem. A data de modificação vem da
+     * própria conexão (do arquivo ou da entrada do jar).
+     */
+    @Override
+    public Recurso buscar(String caminho) throws IOException {
+        URL url = carregador.getResource(caminho);
+        if (url == null) {
+            return null;
+        }
+        URLConnection conexao = url.openConnection();
+        //como o getResourceAsStream: não deixa o jar aberto no cache
+        conexao.setUseCaches(false);
+        try (InputStream entrada = conexao.getInputStream()) {
+            return new Recurso(caminho, entrada.readAllBytes(), conexao.getLastModified());
+        }
+    }
+
+}
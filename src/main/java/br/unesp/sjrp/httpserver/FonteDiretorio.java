@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Lê os recursos de um diretório em disco (document root). Arquivos
+ * pequenos são lidos para a memória e passam pelo cache normalmente; os
+ * maiores viram recursos apontando para o arquivo, enviados com
+ * transferTo sem ocupar o heap. Um arquivo alterado no disco é
+ * percebido pelo tamanho e pela data de modificação (isAtual), e um
+ * arquivo grande também pela identidade, que entra na ETag dele.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class FonteDiretorio implements FonteRecursos {
+
+    private final Path raiz;
+    private final long limiteMemoria;
+
+    /**
+     * @param raiz diretório raiz dos documentos
+     * @param limiteMemoria arquivos até esse tamanho são lidos para a
+     * memória
+     */
+    public FonteDiretorio(Path raiz, long limiteMemoria) {
+        this.raiz = raiz.toAbsolutePath().normalize();
+        this.limiteMemoria = limiteMemoria;
+    }
+
+    @Override
+    public Recurso buscar(String caminho) throws IOException {
+        Path arquivo = raiz.resolve(caminho).normalize();
+        //o caminho já vem normalizado, mas a fonte não confia nisso
+        if (!arquivo.startsWith(raiz)) {
+            return null;
+        }
+        BasicFileAttributes atributos;
+        try {
+            atributos = Files.readAttributes(arquivo, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException ex) {
+            return null;
+        }
+        if (!atributos.isRegularFile()) {
+            return null;
+        }
+        long modificacao = atributos.lastModifiedTime().toMillis();
+        if (atributos.size() <= limiteMemoria) {
+            return new Recurso(caminho, Files.readAllBytes(arquivo), modificacao);
+        }
+        //a ETag de um arquivo grande vem dos metadados: ler o arquivo
+        //inteiro atrasaria o primeiro byte da resposta
+        return new Recurso(caminho, arquivo, atributos.size(), modificacao, Util.calcularETag(atributos));
+    }
+
+    @Override
+    public boolean isAtual(Recurso recurso) {
+        BasicFileAttributes atributos;
+        try {
+            atributos = Files.readAttributes(raiz.resolve(recurso.getCaminho()), BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException ex) {
+            //removido
+            return false;
+        }
+        if (!atributos.isRegularFile()) {
+            return false;
+        }
+        if (recurso.isEmArquivo()) {
+            //a ETag também muda se o arquivo for trocado por outro
+            return Util.calcularETag(atributos).equals(recurso.getEtag());
+        }
+        return atributos.size() == recurso.getTamanho()
+                && atributos.lastModifiedTime().toMillis() == recurso.getUltimaModificacao();
+    }
+
+    public Path getRaiz() {
+        return raiz;
+    }
+
+}
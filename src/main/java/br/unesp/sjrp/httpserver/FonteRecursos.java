@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+
+/**
+ * Origem dos arquivos servidos (classpath, diretório em disco...).
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public interface FonteRecursos {
+
+    /**
+     * Procura um recurso.
+     *
+     * @param caminho caminho normalizado, sem a barra inicial
+     * @return o recurso ou null se ele não existir
+     * @throws IOException se o recurso existir mas não puder ser lido
+     */
+    Recurso buscar(String caminho) throws IOException;
+
+    /**
+     * Confere se um recurso devolvido antes por buscar ainda corresponde à
+     * origem. Fontes que não mudam com o servidor no ar (classpath, pacote)
+     * não precisam implementar.
+     *
+     * @param recurso recurso guardado no cache
+     * @return false se a origem mudou e o recurso precisa ser lido de novo
+     */
+    default boolean isAtual(Recurso recurso) {
+        return true;
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gerador de carga de ponta a ponta. Sobe o Servidor no próprio processo,
+ * numa porta livre, para cada motor pedido (ou usa um servidor já rodando,
+ * com carga.porta) e o alimenta com requisições em ritmo fixo (laço
+ * aberto, ver ConexaoCarga). No fim grava vazão e percentis de latência
+ * em JSON, para comparar motores e versões na mesma máquina.
+ *
+ * Opções (chave=valor, como as do servidor):
+ * carga.modos (threads,nio), carga.conexoes (16), carga.taxa em req/s
+ * (1000), carga.duracao e carga.aquecimento em ms (10000 e 2000),
+ * carga.manterViva (true), carga.pipeline (1), carga.mistura
+ * (acerto:80,ausente:15,grande:5), carga.grande em bytes (1048576),
+ * carga.porta (0 = servidor interno) e carga.saida (carga.json). As
+ * demais opções são repassadas ao servidor.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class GeradorCarga {
+
+    private static final String[] TIPOS = {"acerto", "ausente", "grande"};
+    private static final String[] CAMINHOS = {"/index.html", "/nao-existe.html", "/grande.bin"};
+    private static final double[] QUANTIS = {0.5, 0.9, 0.99, 0.999, 1.0};
+    private static final String[] NOMES_QUANTIS = {"p50", "p90", "p99", "p999", "max"};
+    //folga para as threads das conexões começarem
+    private static final long PARTIDA = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int conexoes;
+    private final int taxa;
+    private final long duracao;
+    private final long aquecimento;
+    private final boolean manterViva;
+    private final int profundidade;
+    private final String mistura;
+    private final byte[][] pedidos = new byte[TIPOS.length][];
+    private final int[] pesos = new int[TIPOS.length];
+    private int somaPesos;
+
+    private long inicioMedicao;
+    private long fim;
+    private final HistogramaLatencia latencia = new HistogramaLatencia();
+    private final LongAdder[] codigos = new LongAdder[600];
+    private final LongAdder erros = new LongAdder();
+
+    public GeradorCarga(Configuracao configuracao) {
+        conexoes = Math.max(1, configuracao.getInteiro("carga.conexoes", 16));
+        taxa = Math.max(1, configuracao.getInteiro("carga.taxa", 1000));
+        duracao = TimeUnit.MILLISECONDS.toNanos(configuracao.getInteiro("carga.duracao", 10000));
+        aquecimento = TimeUnit.MILLISECONDS.toNanos(configuracao.getInteiro("carga.aquecimento", 2000));
+        manterViva = Boolean.parseBoolean(configuracao.getTexto("carga.manterViva", "true"));
+        profundidade = Math.max(1, configuracao.getInteiro("carga.pipeline", 1));
+        mistura = configuracao.getTexto("carga.mistura", "acerto:80,ausente:15,grande:5");
+        lerMistura(mistura);
+        for (int i = 0; i < TIPOS.length; i++) {
+            pedidos[i] = ("GET " + CAMINHOS[i] + " HTTP/1.1\r\nHost: localhost\r\n"
+                    + (manterViva ? "" : "Connection: close\r\n") + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+        for (int i = 0; i < codigos.length; i++) {
+            codigos[i] = new LongAdder();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        executar(Configuracao.carregar(args));
+    }
+
+    /**
+     * Roda a carga em cada motor pedido e grava o resultado em carga.saida.
+     *
+     * @return o JSON gravado
+     */
+    public static String executar(Configuracao configuracao) throws IOException, InterruptedException {
+        List<String> execucoes = new ArrayList<>();
+        int portaExterna = configuracao.getInteiro("carga.porta", 0);
+        if (portaExterna > 0) {
+            GeradorCarga gerador = new GeradorCarga(configuracao);
+            gerador.executar(portaExterna);
+            execucoes.add(gerador.resultado("externo"));
+        } else {
+            Path documentos = criarDocumentos(configuracao.getInteiro("carga.grande", 1024 * 1024));
+            ArquivosEstaticos anterior = ArquivosEstaticos.getPadrao();
+            try {
+                for (String modo : configuracao.getTexto("carga.modos", "threads,nio").split(",")) {
+                    configuracao.definir("modo", modo.trim());
+                    configuracao.definir("porta", "0");
+                    configuracao.definir("documentos", documentos.toString());
+                    //cada motor começa com o cache vazio
+                    ArquivosEstaticos.setPadrao(ArquivosEstaticos.criar(configuracao));
+                    GeradorCarga gerador = new GeradorCarga(configuracao);
+                    try (Servidor servidor = new Servidor(configuracao)) {
+                        servidor.iniciar();
+                        gerador.executar(servidor.getPorta());
+                    }
+                    execucoes.add(gerador.resultado(modo.trim()));
+                }
+            } finally {
+                ArquivosEstaticos.setPadrao(anterior);
+                apagar(documentos);
+            }
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\"java\":\"").append(System.getProperty("java.version"))
+                .append("\",\"processadores\":").append(Runtime.getRuntime().availableProcessors())
+                .append(",\"execucoes\":[\n").append(String.join(",\n", execucoes)).append("\n]}\n");
+        Path saida = Paths.get(configuracao.getTexto("carga.saida", "carga.json"));
+        Files.write(saida, json.toString().getBytes(StandardCharsets.UTF_8));
+        return json.toString();
+    }
+
+    /**
+     * Dispara as conexões e espera todas terminarem.
+     *
+     * @param porta porta do servidor em localhost
+     */
+    public void executar(int porta) throws InterruptedException {
+        long inicio = System.nanoTime() + PARTIDA;
+        inicioMedicao = inicio + aquecimento;
+        fim = inicioMedicao + duracao;
+        //as conexões se revezam: juntas mantêm a taxa pedida
+        long intervaloGeral = TimeUnit.SECONDS.toNanos(1) / taxa;
+        Thread[] threads = new Thread[conexoes];
+        for (int i = 0; i < conexoes; i++) {
+            ConexaoCarga conexao = new ConexaoCarga(this, porta, inicio + i * intervaloGeral, intervaloGeral * conexoes);
+            threads[i] = new Thread(conexao, "carga-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * @return o resultado desta execução como objeto JSON
+     */
+    String resultado(String modo) {
+        HistogramaLatencia.Resumo resumo = latencia.resumir();
+        double segundos = duracao / 1e9;
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"modo\":\"").append(modo).append('"')
+                .append(",\"conexoes\":").append(conexoes)
+                .append(",\"taxa_alvo\":").append(taxa)
+                .append(",\"manter_viva\":").append(manterViva)
+                .append(",\"pipeline\":").append(profundidade)
+                .append(",\"mistura\":\"").append(mistura).append('"')
+                .append(",\"duracao_s\":").append(segundos)
+                .append(",\"respostas\":").append(resumo.getTotal())
+                .append(",\"erros\":").append(erros.sum())
+                .append(",\"req_s\":").append(Math.round(resumo.getTotal() / segundos * 10) / 10.0)
+                .append(",\"latencia_us\":{");
+        for (int i = 0; i < QUANTIS.length; i++) {
+            json.append(i > 0 ? "," : "").append('"').append(NOMES_QUANTIS[i]).append("\":")
+                    .append(resumo.percentil(QUANTIS[i]));
+        }
+        json.append("},\"codigos\":{");
+        boolean primeiro = true;
+        for (int codigo = 0; codigo < codigos.length; codigo++) {
+            long quantidade = codigos[codigo].sum();
+            if (quantidade > 0) {
+                json.append(primeiro ? "" : ",").append('"').append(codigo).append("\":").append(quantidade);
+                primeiro = false;
+            }
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Conta uma resposta; as do aquecimento ficam de fora.
+     *
+     * @param marcado horário em que a requisição deveria ter saído
+     * @param agora horário em que a resposta terminou de chegar
+     */
+    void registrar(long marcado, long agora, int codigo) {
+        if (marcado < inicioMedicao) {
+            return;
+        }
+        latencia.registrar((agora - marcado) / 1000);
+        if (codigo >= 0 && codigo < codigos.length) {
+            codigos[codigo].increment();
+        }
+    }
+
+    void registrarErros(int quantidade) {
+        erros.add(quantidade);
+    }
+
+    byte[] sortearPedido() {
+        int sorteio = ThreadLocalRandom.current().nextInt(somaPesos);
+        for (int i = 0; i < pesos.length; i++) {
+            sorteio -= pesos[i];
+            if (sorteio < 0) {
+                return pedidos[i];
+            }
+        }
+        return pedidos[0];
+    }
+
+    long getFim() {
+        return fim;
+    }
+
+    boolean isManterViva() {
+        return manterViva;
+    }
+
+    int getProfundidade() {
+        return profundidade;
+    }
+
+    long getErros() {
+        return erros.sum();
+    }
+
+    private void lerMistura(String texto) {
+        for (String parte : texto.split(",")) {
+            String[] tipoPeso = parte.trim().split(":");
+            int tipo = -1;
+            for (int i = 0; i < TIPOS.length; i++) {
+                if (TIPOS[i].equals(tipoPeso[0])) {
+                    tipo = i;
+                }
+            }
+            if (tipo < 0 || tipoPeso.length != 2) {
+                throw new IllegalArgumentException("Mistura inválida: " + texto);
+            }
+            try {
+                pesos[tipo] = Integer.parseInt(tipoPeso[1]);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Mistura inválida: " + texto, ex);
+            }
+        }
+        for (int peso : pesos) {
+            somaPesos += Math.max(0, peso);
+        }
+        if (somaPesos <= 0) {
+            throw new IllegalArgumentException("Mistura sem pesos: " + texto);
+        }
+    }
+
+    /**
+     * Diretório de documentos da carga: uma página pequena (fica em
+     * memória) e um arquivo grande (enviado do disco).
+     */
+    private static Path criarDocumentos(int tamanhoGrande) throws IOException {
+        Path documentos = Files.createTempDirectory("carga");
+        StringBuilder pagina = new StringBuilder("<html><body>\n");
+        for (int i = 0; i < 40; i++) {
+            pagina.append("<p>Linha ").append(i).append(" da página de teste de carga.</p>\n");
+        }
+        Files.write(documentos.resolve("index.html"), pagina.append("</body></html>\n").toString()
+                .getBytes(StandardCharsets.UTF_8));
+        byte[] grande = new byte[tamanhoGrande];
+        new Random(42).nextBytes(grande);
+        Files.write(documentos.resolve("grande.bin"), grande);
+        return documentos;
+    }
+
+    private static void apagar(Path documentos) throws IOException {
+        Files.deleteIfExists(documentos.resolve("index.html"));
+        Files.deleteIfExists(documentos.resolve("grande.bin"));
+        Files.deleteIfExists(documentos);
+    }
+
+}
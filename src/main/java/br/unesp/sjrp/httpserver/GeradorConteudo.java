@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Produz o corpo de uma resposta enquanto ela é enviada, em vez de
+ * montá-lo inteiro antes (ver RespostaHTTP.setGerador).
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+@FunctionalInterface
+public interface GeradorConteudo {
+
+    /**
+     * Escreve o corpo. Cada flush na saída é um ponto de envio: o que foi
+     * escrito até ali segue para o cliente. Não é preciso fechar a saída.
+     *
+     * @param saida destino do corpo, com buffer limitado
+     * @throws IOException em erro de escrita (a conexão é encerrada)
+     */
+    void gerar(OutputStream saida) throws IOException;
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aceitadores de conexões de uma porta. Com mais de um aceitador, cada um
+ * tem o próprio socket com SO_REUSEPORT e o kernel (Linux) divide as
+ * conexões entre as filas de aceitação; onde a opção não existe, todos
+ * aceitam do mesmo canal. Cada aceitador entrega as conexões ao seu
+ * próprio Destino (a sua fatia de pools ou laços de eventos), sem passar
+ * por uma fila compartilhada.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class GrupoAceitacao implements Closeable {
+
+    /**
+     * Quem recebe as conexões de um aceitador. Só é chamado pela thread
+     * desse aceitador.
+     */
+    interface Destino {
+
+        void entregar(SocketChannel canal) throws IOException;
+    }
+
+    /**
+     * Pausa após uma falha do accept(), dobrada a cada falha seguida.
+     */
+    private static final long ESPERA_MINIMA = 10;
+    private static final long ESPERA_MAXIMA = 1000;
+
+    private final ServerSocketChannel[] canais;
+    private final int quantidade;
+
+    /**
+     * Abre a porta.
+     *
+     * @param porta porta a escutar, 0 para uma livre (a mesma para todos)
+     * @param quantidade aceitadores
+     * @param backlog tamanho da fila de conexões completas de cada socket;
+     * 0 usa o padrão do sistema
+     * @throws IOException se a porta não puder ser aberta
+     */
+    GrupoAceitacao(int porta, int quantidade, int backlog) throws IOException {
+        this.quantidade = Math.max(1, quantidade);
+        ServerSocketChannel primeiro = ServerSocketChannel.open();
+        boolean reusePort = this.quantidade > 1
+                && primeiro.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        canais = new ServerSocketChannel[reusePort ? this.quantidade : 1];
+        canais[0] = primeiro;
+        try {
+            if (reusePort) {
+                primeiro.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            primeiro.bind(new InetSocketAddress(porta), backlog);
+            //com porta=0 os outros entram na porta escolhida para o primeiro
+            int escolhida = primeiro.socket().getLocalPort();
+            for (int i = 1; i < canais.length; i++) {
+                canais[i] = ServerSocketChannel.open();
+                canais[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                canais[i].bind(new InetSocketAddress(escolhida), backlog);
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Roda os aceitadores até a porta ser fechada: o primeiro na thread
+     * que chamou, os outros em threads próprias.
+     *
+     * @param nome prefixo do nome das threads
+     * @param destinos um por aceitador
+     * @throws InterruptedException se interrompido esperando os outros
+     */
+    void executar(String nome, Destino[] destinos) throws InterruptedException {
+        Thread[] threads = new Thread[quantidade];
+        for (int i = 1; i < quantidade; i++) {
+            ServerSocketChannel canal = canais[i % canais.length];
+            Destino destino = destinos[i];
+            threads[i] = new Thread(() -> aceitar(canal, destino), nome + "-" + i);
+            threads[i].start();
+        }
+        aceitar(canais[0], destinos[0]);
+        for (int i = 1; i < quantidade; i++) {
+            threads[i].join();
+        }
+    }
+
+    private static void aceitar(ServerSocketChannel canal, Destino destino) {
+        long espera = ESPERA_MINIMA;
+        while (canal.isOpen()) {
+            SocketChannel conexao;
+            try {
+                conexao = canal.accept();
+            } catch (ClosedChannelException ex) {
+                //servidor fechado por outra thread
+                return;
+            } catch (IOException ex) {
+                //falha transitória (ex: EMFILE, ECONNABORTED): espera e tenta
+                //de novo, dobrando a pausa enquanto o erro persistir
+                Logger.getLogger(GrupoAceitacao.class.getName()).log(Level.WARNING, null, ex);
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                espera = Math.min(ESPERA_MAXIMA, espera * 2);
+                continue;
+            }
+            espera = ESPERA_MINIMA;
+            try {
+                destino.entregar(conexao);
+            } catch (IOException ex) {
+                //problema só desta conexão (ex: cliente já desconectou)
+                Logger.getLogger(GrupoAceitacao.class.getName()).log(Level.FINE, null, ex);
+                try {
+                    conexao.close();
+                } catch (IOException ignorada) {
+                    //a conexão já está sendo descartada
+                }
+            }
+        }
+    }
+
+    int getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * @return true se cada aceitador tem o próprio socket (SO_REUSEPORT)
+     */
+    boolean isReusePort() {
+        return canais.length > 1;
+    }
+
+    int getPorta() {
+        return canais[0].socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException erro = null;
+        for (ServerSocketChannel canal : canais) {
+            if (canal == null) {
+                continue;
+            }
+            try {
+                canal.close();
+            } catch (IOException ex) {
+                erro = ex;
+            }
+        }
+        if (erro != null) {
+            throw erro;
+        }
+    }
+
+}
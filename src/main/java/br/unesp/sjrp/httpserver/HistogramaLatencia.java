@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma log-linear de latências (no estilo do HdrHistogram). Cada
+ * potência de 2 é dividida em 32 faixas iguais, então o erro relativo de
+ * um percentil fica abaixo de 1/32 em qualquer escala, com 1024 contadores
+ * fixos e sem alocar nada ao registrar.
+ *
+ * A gravação é distribuída em células escolhidas pelo id da thread, como
+ * num LongAdder: threads diferentes quase nunca escrevem no mesmo contador
+ * e as células só são somadas quando alguém lê o histograma.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class HistogramaLatencia {
+
+    private static final int BITS_SUBFAIXA = 5;
+    private static final int SUBFAIXAS = 1 << BITS_SUBFAIXA;
+    //valores a partir de 2^36 (~19 h em microssegundos) vão para a última faixa
+    private static final int EXPOENTE_MAXIMO = 36;
+    static final int FAIXAS = SUBFAIXAS + (EXPOENTE_MAXIMO - BITS_SUBFAIXA) * SUBFAIXAS;
+
+    private final AtomicLongArray[] celulas;
+    private final int mascara;
+    private final LongAdder soma = new LongAdder();
+
+    HistogramaLatencia() {
+        int quantidade = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        celulas = new AtomicLongArray[quantidade];
+        mascara = quantidade - 1;
+        for (int i = 0; i < quantidade; i++) {
+            celulas[i] = new AtomicLongArray(FAIXAS);
+        }
+    }
+
+    /**
+     * @param valor valor não negativo (ex: microssegundos)
+     */
+    void registrar(long valor) {
+        valor = Math.max(0, valor);
+        //espalha ids sequenciais entre as células
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        celulas[(int) (id >>> 32) & mascara].getAndIncrement(indice(valor));
+        soma.add(valor);
+    }
+
+    /**
+     * Soma as células num retrato do momento.
+     */
+    Resumo resumir() {
+        long[] contagens = new long[FAIXAS];
+        long total = 0;
+        for (AtomicLongArray celula : celulas) {
+            for (int i = 0; i < FAIXAS; i++) {
+                long contagem = celula.get(i);
+                contagens[i] += contagem;
+                total += contagem;
+            }
+        }
+        return new Resumo(contagens, total, soma.sum());
+    }
+
+    static int indice(long valor) {
+        if (valor < SUBFAIXAS) {
+            return (int) valor;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        if (expoente >= EXPOENTE_MAXIMO) {
+            return FAIXAS - 1;
+        }
+        int deslocamento = expoente - BITS_SUBFAIXA;
+        //(valor >> deslocamento) fica em [32, 64)
+        return SUBFAIXAS + deslocamento * SUBFAIXAS + (int) (valor >> deslocamento) - SUBFAIXAS;
+    }
+
+    /**
+     * @return o maior valor que cai na faixa
+     */
+    static long limiteSuperior(int indice) {
+        if (indice < SUBFAIXAS) {
+            return indice;
+        }
+        int deslocamento = (indice - SUBFAIXAS) / SUBFAIXAS;
+        int subfaixa = (indice - SUBFAIXAS) % SUBFAIXAS;
+        return ((long) (SUBFAIXAS + subfaixa + 1) << deslocamento) - 1;
+    }
+
+    /**
+     * Contagens somadas de todas as células.
+     */
+    static final class Resumo {
+
+        private final long[] contagens;
+        private final long total;
+        private final long soma;
+
+        private Resumo(long[] contagens, long total, long soma) {
+            this.contagens = contagens;
+            this.total = total;
+            this.soma = soma;
+        }
+
+        long getTotal() {
+            return total;
+        }
+
+        long getSoma() {
+            return soma;
+        }
+
+        /**
+         * @param fracao entre 0 e 1 (ex: 0.99)
+         * @return o limite superior da faixa onde cai o percentil, ou 0 sem
+         * registros
+         */
+        long percentil(double fracao) {
+            if (total == 0) {
+                return 0;
+            }
+            long alvo = Math.max(1, (long) Math.ceil(fracao * total));
+            long acumulado = 0;
+            for (int i = 0; i < contagens.length; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= alvo) {
+                    return limiteSuperior(i);
+                }
+            }
+            return limiteSuperior(contagens.length - 1);
+        }
+    }
+
+}
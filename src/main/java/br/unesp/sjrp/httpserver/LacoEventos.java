@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Laço de eventos do motor NIO. Cada instância roda em uma thread própria
+ * com um Selector que multiplexa todas as conexões atribuídas a ela. Os
+ * prazos das conexões ficam numa RodaTemporizacao girada pelo próprio
+ * laço, sem percorrer todas as conexões.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class LacoEventos implements Runnable {
+
+    private final Selector seletor;
+    private final Queue<SocketChannel> novas = new ConcurrentLinkedQueue<>();
+    //trabalho de outras threads que precisa rodar neste laço
+    private final Queue<Runnable> tarefas = new ConcurrentLinkedQueue<>();
+    private final PoliticaConexao politica;
+    private final ControleAdmissao controle;
+    //girada só por esta thread
+    private final RodaTemporizacao roda = new RodaTemporizacao();
+    private volatile boolean ativo = true;
+
+    LacoEventos(PoliticaConexao politica, ControleAdmissao controle) throws IOException {
+        this.seletor = Selector.open();
+        this.politica = politica;
+        this.controle = controle;
+    }
+
+    /**
+     * Entrega uma nova conexão para este laço. Pode ser chamado de qualquer
+     * thread; o registro no Selector é feito pela própria thread do laço.
+     *
+     * @param canal conexão recém aceita
+     */
+    void registrar(SocketChannel canal) {
+        novas.add(canal);
+        seletor.wakeup();
+    }
+
+    /**
+     * Roda uma tarefa na thread do laço, como a retomada de uma conexão
+     * cuja resposta assíncrona ficou pronta. Pode ser chamado de qualquer
+     * thread.
+     */
+    void executar(Runnable tarefa) {
+        tarefas.add(tarefa);
+        seletor.wakeup();
+    }
+
+    void encerrar() {
+        ativo = false;
+        seletor.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (ativo) {
+                //acorda a cada tique da roda para vencer os prazos
+                seletor.select(roda.getResolucao());
+                registrarNovas();
+                executarTarefas();
+                Iterator<SelectionKey> chaves = seletor.selectedKeys().iterator();
+                while (chaves.hasNext()) {
+                    SelectionKey chave = chaves.next();
+                    chaves.remove();
+                    tratar(chave);
+                }
+                roda.avancar(roda.agora());
+            }
+        } catch (IOException | ClosedSelectorException ex) {
+            Logger.getLogger(LacoEventos.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            fecharTodas();
+        }
+    }
+
+    private void registrarNovas() {
+        SocketChannel canal;
+        while ((canal = novas.poll()) != null) {
+            ConexaoNIO conexao = new ConexaoNIO(canal, politica, roda, controle, this);
+            try {
+                canal.configureBlocking(false);
+                conexao.setChave(canal.register(seletor, SelectionKey.OP_READ, conexao));
+            } catch (IOException ex) {
+                Logger.getLogger(LacoEventos.class.getName()).log(Level.WARNING, null, ex);
+                conexao.fechar();
+            }
+        }
+    }
+
+    private void executarTarefas() {
+        Runnable tarefa;
+        while ((tarefa = tarefas.poll()) != null) {
+            tarefa.run();
+        }
+    }
+
+    private void tratar(SelectionKey chave) {
+        ConexaoNIO conexao = (ConexaoNIO) chave.attachment();
+        try {
+            if (chave.isReadable()) {
+                if (!conexao.ler()) {
+                    conexao.fechar();
+                    return;
+                }
+                if (conexao.temSaidaPendente()) {
+                    conexao.escrever(chave);
+                }
+            } else if (chave.isWritable()) {
+                conexao.escrever(chave);
+            }
+        } catch (IOException | RuntimeException ex) {
+            //requisição inválida ou cliente desconectado
+            conexao.fechar();
+        }
+    }
+
+    private void fecharTodas() {
+        try {
+            for (SelectionKey chave : seletor.keys()) {
+                ((ConexaoNIO) chave.attachment()).fechar();
+            }
+            seletor.close();
+        } catch (IOException | ClosedSelectorException ex) {
+            Logger.getLogger(LacoEventos.class.getName()).log(Level.WARNING, null, ex);
+        }
+        SocketChannel canal;
+        while ((canal = novas.poll()) != null) {
+            new ConexaoNIO(canal, politica, roda, controle, this).fechar();
+        }
+        tarefas.clear();
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Lê requisições sucessivas de uma mesma conexão. O buffer sobrevive entre
+ * uma requisição e outra, então os bytes de requisições enviadas em
+ * sequência (pipelining) que chegaram na mesma leitura não se perdem.
+ *
+ * Lendo de um canal, o buffer é um ByteBuffer direto emprestado de um
+ * PoolBuffers, devolvido por liberar quando a conexão fica ociosa.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class LeitorRequisicoes {
+
+    private static final int TAMANHO_INICIAL = 8192;
+
+    //um dos dois
+    private final InputStream entrada;
+    private final ReadableByteChannel canal;
+    private final PoolBuffers pool;
+    private final AnalisadorRequisicao analisador = new AnalisadorRequisicao();
+    //sempre em modo de leitura entre as chamadas; null se devolvido ao pool
+    private ByteBuffer buffer;
+
+    LeitorRequisicoes(InputStream entrada) {
+        this.entrada = entrada;
+        this.canal = null;
+        this.pool = null;
+        buffer = ByteBuffer.allocate(TAMANHO_INICIAL);
+        buffer.flip();
+    }
+
+    /**
+     * @param canal canal bloqueante da conexão
+     * @param pool de onde o buffer é emprestado
+     */
+    LeitorRequisicoes(ReadableByteChannel canal, PoolBuffers pool) {
+        this.entrada = null;
+        this.canal = canal;
+        this.pool = pool;
+    }
+
+    /**
+     * Devolve a próxima requisição da conexão. Se ela já estiver inteira no
+     * buffer nada é lido do stream; caso contrário, antes de bloquear na
+     * leitura, as respostas pendentes são descarregadas para o cliente.
+     *
+     * @param pendente saída a descarregar antes de bloquear, pode ser null
+     * @return a requisição ou null se o cliente fechou a conexão entre duas
+     * requisições
+     * @throws IOException se o stream terminar no meio de uma requisição ou
+     * se ela for inválida
+     */
+    RequisicaoHTTP proxima(Flushable pendente) throws IOException {
+        if (buffer == null) {
+            buffer = pool.emprestar(TAMANHO_INICIAL);
+            buffer.flip();
+        }
+        while (!analisador.analisar(buffer)) {
+            if (pendente != null) {
+                pendente.flush();
+            }
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                if (buffer.capacity() >= RequisicaoHTTP.LIMITE_CABECALHO) {
+                    throw new RequisicaoInvalidaException("Cabeçalho excede " + RequisicaoHTTP.LIMITE_CABECALHO + " bytes");
+                }
+                crescer();
+            }
+            int lidos = ler();
+            buffer.flip();
+            if (lidos < 0) {
+                if (analisador.isIniciada() || buffer.hasRemaining()) {
+                    throw new EOFException("Conexão encerrada antes do fim da requisição");
+                }
+                return null;
+            }
+            Metricas.getPadrao().adicionarRecebidos(lidos);
+        }
+        RequisicaoHTTP requisicao = analisador.getRequisicao();
+        analisador.reiniciar();
+        return requisicao;
+    }
+
+    /**
+     * Lê o que houver no buffer, que está em modo de escrita.
+     */
+    private int ler() throws IOException {
+        if (canal != null) {
+            return canal.read(buffer);
+        }
+        int lidos = entrada.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (lidos > 0) {
+            buffer.position(buffer.position() + lidos);
+        }
+        return lidos;
+    }
+
+    private void crescer() {
+        ByteBuffer maior = pool != null ? pool.emprestar(buffer.capacity() * 2)
+                : ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        maior.put(buffer);
+        if (pool != null) {
+            pool.devolver(buffer);
+        }
+        buffer = maior;
+    }
+
+    /**
+     * @return true se já há no buffer bytes da próxima requisição (um
+     * pipeline), que podem ser lidos sem esperar o cliente
+     */
+    boolean temPendentes() {
+        return buffer != null && buffer.hasRemaining();
+    }
+
+    /**
+     * Retira do buffer os bytes já recebidos que ainda não foram lidos,
+     * para quem vai continuar a conexão em outro protocolo (HTTP/2).
+     */
+    byte[] restantes() {
+        if (buffer == null) {
+            return new byte[0];
+        }
+        byte[] restantes = new byte[buffer.remaining()];
+        buffer.get(restantes);
+        return restantes;
+    }
+
+    /**
+     * Devolve o buffer ao pool, descartando o que houver nele. Só a thread
+     * que lê pode chamar; a próxima leitura empresta outro.
+     */
+    void liberar() {
+        if (pool != null && buffer != null) {
+            pool.devolver(buffer);
+            buffer = null;
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limites do HTTP/2 no modo threads.
+ *
+ * Cada conexão HTTP/2 fica com uma thread do pool lendo quadros, então só
+ * algumas podem existir ao mesmo tempo; o resto do pool continua para o
+ * HTTP/1.1. Os fluxos rodam num executor próprio, com threads e fila
+ * limitadas: com os dois cheios o execute lança
+ * RejectedExecutionException e o fluxo é recusado com REFUSED_STREAM, em
+ * vez de criar mais uma thread.
+ *
+ * Com um executor que não é um pool fixo (virtual threads) os fluxos vão
+ * para ele e as conexões não têm limite.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class LimitesHTTP2 implements Closeable {
+
+    //usados pelas conexões criadas só com o socket
+    private static LimitesHTTP2 padrao;
+
+    private final Executor fluxos;
+    //null quando os fluxos usam o executor das conexões
+    private final ThreadPoolExecutor proprio;
+    //negativo sem limite
+    private final int maxConexoes;
+    private final AtomicInteger conexoes = new AtomicInteger();
+
+    private LimitesHTTP2(Executor fluxos, ThreadPoolExecutor proprio, int maxConexoes) {
+        this.fluxos = fluxos;
+        this.proprio = proprio;
+        this.maxConexoes = maxConexoes;
+    }
+
+    /**
+     * @param configuracao http2.threads e http2.conexoes
+     * @param pool executor das conexões
+     * @return limites do HTTP/2 do servidor
+     */
+    static LimitesHTTP2 criar(Configuracao configuracao, Executor pool) {
+        if (pool != null && !(pool instanceof ThreadPoolExecutor)) {
+            return new LimitesHTTP2(pool, null, -1);
+        }
+        int threads = Math.max(1, configuracao.getThreadsHTTP2());
+        AtomicInteger criadas = new AtomicInteger();
+        ThreadPoolExecutor proprio = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads), tarefa -> {
+                    Thread thread = new Thread(tarefa, "http2-fluxo-" + criadas.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        //as threads só existem enquanto há fluxos
+        proprio.allowCoreThreadTimeOut(true);
+        return new LimitesHTTP2(proprio, proprio, Math.max(0, configuracao.getConexoesHTTP2()));
+    }
+
+    static synchronized LimitesHTTP2 getPadrao() {
+        if (padrao == null) {
+            padrao = criar(new Configuracao(), null);
+        }
+        return padrao;
+    }
+
+    /**
+     * Ocupa a vaga de uma conexão HTTP/2, devolvida com liberarConexao.
+     *
+     * @return false se o limite de conexões HTTP/2 foi atingido
+     */
+    boolean reservarConexao() {
+        if (maxConexoes < 0) {
+            return true;
+        }
+        int atual;
+        do {
+            atual = conexoes.get();
+            if (atual >= maxConexoes) {
+                return false;
+            }
+        } while (!conexoes.compareAndSet(atual, atual + 1));
+        return true;
+    }
+
+    void liberarConexao() {
+        if (maxConexoes >= 0) {
+            conexoes.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return executor dos fluxos
+     */
+    Executor getFluxos() {
+        return fluxos;
+    }
+
+    int getConexoes() {
+        return conexoes.get();
+    }
+
+    @Override
+    public void close() {
+        if (proprio != null) {
+            proprio.shutdownNow();
+        }
+    }
+}
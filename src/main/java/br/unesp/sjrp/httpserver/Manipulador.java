@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+
+/**
+ * Atende uma requisição devolvendo a resposta. É registrado no Roteador
+ * para um caminho e, opcionalmente, um método; os arquivos estáticos são
+ * o manipulador usado quando nenhuma rota casa.
+ *
+ * A resposta volta sem canal de saída: o motor (threads ou nio) cuida da
+ * escrita, do keep-alive e do log. O método roda na thread da conexão, ou
+ * na do laço de eventos no modo nio, então não deve bloquear por muito
+ * tempo; quem depende de algo lento implementa ManipuladorAssincrono.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+@FunctionalInterface
+public interface Manipulador {
+
+    /**
+     * @param requisicao requisição lida do cliente, com os parâmetros do
+     * caminho já preenchidos pelo Roteador
+     * @return resposta pronta para ser enviada
+     * @throws IOException se a resposta não puder ser montada; a conexão é
+     * encerrada
+     */
+    RespostaHTTP atender(RequisicaoHTTP requisicao) throws IOException;
+
+}
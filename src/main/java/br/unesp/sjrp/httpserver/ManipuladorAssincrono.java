@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Manipulador cuja resposta fica pronta depois, em outra thread. No modo
+ * nio o laço de eventos não espera: a conexão deixa de ser lida até a
+ * resposta chegar e o laço segue atendendo as outras. No modo threads a
+ * thread da conexão simplesmente espera (atender).
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+@FunctionalInterface
+public interface ManipuladorAssincrono extends Manipulador {
+
+    /**
+     * @param requisicao requisição lida do cliente
+     * @return a resposta, completada com erro se ela não puder ser montada
+     */
+    CompletionStage<RespostaHTTP> atenderAssincrono(RequisicaoHTTP requisicao);
+
+    /**
+     * Espera a resposta assíncrona.
+     */
+    @Override
+    default RespostaHTTP atender(RequisicaoHTTP requisicao) throws IOException {
+        return resultado(atenderAssincrono(requisicao).toCompletableFuture());
+    }
+
+    /**
+     * Resultado de uma resposta assíncrona, esperando se preciso. Um erro
+     * que não seja IOException nem RuntimeException vira IOException.
+     */
+    static RespostaHTTP resultado(CompletableFuture<RespostaHTTP> futuro) throws IOException {
+        try {
+            return futuro.join();
+        } catch (CompletionException ex) {
+            Throwable causa = ex.getCause() != null ? ex.getCause() : ex;
+            if (causa instanceof IOException) {
+                throw (IOException) causa;
+            }
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            if (causa instanceof Error) {
+                throw (Error) causa;
+            }
+            throw new IOException(causa);
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Métricas do servidor, expostas no formato texto do Prometheus em um
+ * caminho reservado (por padrão /metrics).
+ *
+ * Os contadores são LongAdder e a latência vai para um HistogramaLatencia
+ * com células por thread, então registrar uma requisição não disputa
+ * nenhum contador entre as threads; as somas só são feitas na exportação.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class Metricas {
+
+    private static final String[] METODOS = {"GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE",
+        "outro"};
+    private static final int MENOR_CODIGO = 100;
+    private static final int CODIGOS = 500;
+    private static final double[] QUANTIS = {0.5, 0.9, 0.99, 0.999};
+    private static final String TIPO_CONTEUDO = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static volatile Metricas padrao = new Metricas("/metrics");
+
+    private final String caminho;
+    //[método][código - 100], criados na primeira ocorrência
+    private final AtomicReferenceArray<LongAdder> requisicoes = new AtomicReferenceArray<>(METODOS.length * CODIGOS);
+    private final LongAdder bytesRecebidos = new LongAdder();
+    private final LongAdder bytesEnviados = new LongAdder();
+    private final LongAdder conexoesAceitas = new LongAdder();
+    private final LongAdder conexoesAbertas = new LongAdder();
+    private final LongAdder conexoesOciosas = new LongAdder();
+    private final HistogramaLatencia latencia = new HistogramaLatencia();
+    private final List<Medidor> medidores = new CopyOnWriteArrayList<>();
+
+    /**
+     * Valor lido só na exportação (ex: tamanho da fila do executor).
+     */
+    private static final class Medidor {
+
+        private final String nome;
+        private final String ajuda;
+        private final String tipo;
+        private final LongSupplier valor;
+
+        Medidor(String nome, String ajuda, String tipo, LongSupplier valor) {
+            this.nome = nome;
+            this.ajuda = ajuda;
+            this.tipo = tipo;
+            this.valor = valor;
+        }
+    }
+
+    /**
+     * @param caminho caminho onde as métricas são servidas, ou null para não
+     * servi-las
+     */
+    public Metricas(String caminho) {
+        this.caminho = caminho;
+    }
+
+    public static Metricas getPadrao() {
+        return padrao;
+    }
+
+    public static void setPadrao(Metricas metricas) {
+        padrao = metricas;
+    }
+
+    /**
+     * Acrescenta um medidor à exportação, substituindo o de mesmo nome.
+     *
+     * @param nome nome da métrica no Prometheus
+     * @param ajuda descrição (linha HELP)
+     * @param valor lido a cada exportação
+     */
+    public void registrarMedidor(String nome, String ajuda, LongSupplier valor) {
+        registrarMedidor(nome, ajuda, "gauge", valor);
+    }
+
+    /**
+     * Como registrarMedidor, com o tipo do Prometheus ("gauge" ou
+     * "counter", para valores que só crescem).
+     */
+    public void registrarMedidor(String nome, String ajuda, String tipo, LongSupplier valor) {
+        medidores.removeIf(medidor -> medidor.nome.equals(nome));
+        medidores.add(new Medidor(nome, ajuda, tipo, valor));
+    }
+
+    /**
+     * Conta uma requisição atendida e sua latência.
+     *
+     * @param inicio System.nanoTime() do início do atendimento
+     */
+    void registrar(RequisicaoHTTP requisicao, RespostaHTTP resposta, long inicio) {
+        latencia.registrar((System.nanoTime() - inicio) / 1000);
+        int codigo = resposta.getCodigoResposta() - MENOR_CODIGO;
+        if (codigo >= 0 && codigo < CODIGOS) {
+            int indice = indiceMetodo(requisicao.getMetodo()) * CODIGOS + codigo;
+            LongAdder contador = requisicoes.get(indice);
+            if (contador == null) {
+                requisicoes.compareAndSet(indice, null, new LongAdder());
+                contador = requisicoes.get(indice);
+            }
+            contador.increment();
+        }
+        long bytes = resposta.getTamanhoCorpo();
+        if (bytes > 0) {
+            bytesEnviados.add(bytes);
+        }
+    }
+
+    void adicionarRecebidos(long bytes) {
+        bytesRecebidos.add(bytes);
+    }
+
+    void conexaoAberta() {
+        conexoesAceitas.increment();
+        conexoesAbertas.increment();
+    }
+
+    void conexaoFechada() {
+        conexoesAbertas.decrement();
+    }
+
+    /**
+     * @param ociosa true quando a conexão passa a esperar a próxima
+     * requisição, false quando volta a ter trabalho
+     */
+    void conexaoOciosa(boolean ociosa) {
+        if (ociosa) {
+            conexoesOciosas.increment();
+        } else {
+            conexoesOciosas.decrement();
+        }
+    }
+
+    /**
+     * @return true se o recurso pedido é o caminho das métricas
+     */
+    boolean isCaminho(String recurso) {
+        return caminho != null && recurso != null
+                && (recurso.equals(caminho) || recurso.startsWith(caminho + "?"));
+    }
+
+    /**
+     * @return resposta com as métricas atuais
+     */
+    RespostaHTTP responder(RequisicaoHTTP requisicao) {
+        RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
+        resposta.setConteudoResposta(exportar().getBytes(StandardCharsets.UTF_8));
+        ArquivosEstaticos.preencherCabecalhos(resposta, TIPO_CONTEUDO);
+        resposta.setCabecalho("Cache-Control", "no-cache");
+        return resposta;
+    }
+
+    /**
+     * @return todas as métricas no formato texto do Prometheus
+     */
+    public String exportar() {
+        StringBuilder texto = new StringBuilder(4096);
+        cabecalho(texto, "meuservidor_requisicoes_total", "Requisições atendidas por método e código", "counter");
+        for (int i = 0; i < requisicoes.length(); i++) {
+            LongAdder contador = requisicoes.get(i);
+            if (contador != null) {
+                texto.append("meuservidor_requisicoes_total{metodo=\"").append(METODOS[i / CODIGOS])
+                        .append("\",codigo=\"").append(i % CODIGOS + MENOR_CODIGO).append("\"} ")
+                        .append(contador.sum()).append('\n');
+            }
+        }
+        valor(texto, "meuservidor_bytes_recebidos_total", "Bytes lidos das conexões", "counter", bytesRecebidos.sum());
+        valor(texto, "meuservidor_bytes_enviados_total", "Bytes de corpo de resposta enviados", "counter",
+                bytesEnviados.sum());
+        valor(texto, "meuservidor_conexoes_aceitas_total", "Conexões aceitas", "counter", conexoesAceitas.sum());
+        valor(texto, "meuservidor_conexoes_abertas", "Conexões abertas", "gauge", conexoesAbertas.sum());
+        valor(texto, "meuservidor_conexoes_ociosas", "Conexões esperando a próxima requisição", "gauge",
+                conexoesOciosas.sum());
+
+        HistogramaLatencia.Resumo resumo = latencia.resumir();
+        cabecalho(texto, "meuservidor_latencia_segundos", "Tempo para montar e escrever a resposta", "summary");
+        for (double quantil : QUANTIS) {
+            texto.append("meuservidor_latencia_segundos{quantile=\"").append(quantil).append("\"} ")
+                    .append(segundos(resumo.percentil(quantil))).append('\n');
+        }
+        texto.append("meuservidor_latencia_segundos_sum ").append(segundos(resumo.getSoma())).append('\n');
+        texto.append("meuservidor_latencia_segundos_count ").append(resumo.getTotal()).append('\n');
+
+        ArquivosEstaticos arquivos = ArquivosEstaticos.getPadrao();
+        if (arquivos != null) {
+            CacheRecursos cache = arquivos.getCache();
+            long acertos = cache.getAcertos();
+            long falhas = cache.getFalhas();
+            valor(texto, "meuservidor_cache_acertos_total", "Buscas atendidas pelo cache", "counter", acertos);
+            valor(texto, "meuservidor_cache_falhas_total", "Buscas que foram à fonte", "counter", falhas);
+            valor(texto, "meuservidor_cache_remocoes_total", "Entradas removidas do cache", "counter",
+                    cache.getRemocoes());
+            valor(texto, "meuservidor_cache_bytes", "Bytes ocupados pelo cache", "gauge", cache.getBytesUsados());
+            valor(texto, "meuservidor_cache_entradas", "Entradas no cache", "gauge", cache.getQuantidade());
+            cabecalho(texto, "meuservidor_cache_taxa_acertos", "Fração das buscas atendidas pelo cache", "gauge");
+            texto.append("meuservidor_cache_taxa_acertos ")
+                    .append(acertos + falhas == 0 ? 0.0 : (double) acertos / (acertos + falhas)).append('\n');
+        }
+        RegistroAcesso registro = RegistroAcesso.getPadrao();
+        if (registro != null) {
+            valor(texto, "meuservidor_log_descartados_total", "Registros do log de acesso descartados", "counter",
+                    registro.getDescartados());
+        }
+        for (Medidor medidor : medidores) {
+            valor(texto, medidor.nome, medidor.ajuda, medidor.tipo, medidor.valor.getAsLong());
+        }
+        return texto.toString();
+    }
+
+    private static int indiceMetodo(String metodo) {
+        for (int i = 0; i < METODOS.length - 1; i++) {
+            //os métodos conhecidos vêm como constantes do analisador
+            if (METODOS[i].equals(metodo)) {
+                return i;
+            }
+        }
+        return METODOS.length - 1;
+    }
+
+    private static void cabecalho(StringBuilder texto, String nome, String ajuda, String tipo) {
+        texto.append("# HELP ").append(nome).append(' ').append(ajuda).append('\n');
+        texto.append("# TYPE ").append(nome).append(' ').append(tipo).append('\n');
+    }
+
+    private static void valor(StringBuilder texto, String nome, String ajuda, String tipo, long valor) {
+        cabecalho(texto, nome, ajuda, tipo);
+        texto.append(nome).append(' ').append(valor).append('\n');
+    }
+
+    private static double segundos(long microssegundos) {
+        return microssegundos / 1e6;
+    }
+
+}
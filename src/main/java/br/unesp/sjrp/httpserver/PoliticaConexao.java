@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regras de vida de uma conexão keep-alive: quanto tempo ela pode ficar
+ * ociosa entre duas requisições, quanto tempo o cliente tem para mandar
+ * uma requisição começada e o servidor para escrever uma resposta, e
+ * quantas requisições ela atende antes de ser fechada.
+ *
+ * Os cabeçalhos Connection e Keep-Alive das respostas são montados aqui e
+ * guardados prontos em bytes, um por quantidade de requisições restantes.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public final class PoliticaConexao {
+
+    private static final String[] PROTOCOLOS = {"HTTP/1.1", "HTTP/1.0"};
+    private static final byte[] FECHAR = "Connection: close\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final int tempoOcioso;
+    private final int tempoCabecalho;
+    private final int tempoEscrita;
+    private final int maxRequisicoes;
+    //[protocolo][restantes]: cabeçalhos com o tempo ocioso configurado
+    private final byte[][][] cabecalhos;
+
+    public PoliticaConexao() {
+        this(new Configuracao());
+    }
+
+    public PoliticaConexao(Configuracao configuracao) {
+        this.tempoOcioso = configuracao.getTempoOcioso();
+        this.tempoCabecalho = configuracao.getTempoCabecalho();
+        this.tempoEscrita = configuracao.getTempoEscrita();
+        this.maxRequisicoes = Math.max(0, configuracao.getMaxRequisicoes());
+        //sem limite de requisições o max= não é anunciado e basta um por protocolo
+        this.cabecalhos = new byte[PROTOCOLOS.length][maxRequisicoes + 1][];
+    }
+
+    /**
+     * Decide se a conexão continua aberta depois desta resposta e coloca
+     * nela os cabeçalhos Connection e Keep-Alive que anunciam isso.
+     *
+     * @param requisicao requisição sendo respondida
+     * @param resposta resposta ainda não escrita
+     * @param atendidas requisições da conexão até esta, inclusive
+     * @return true se a conexão deve continuar aberta
+     */
+    boolean preparar(RequisicaoHTTP requisicao, RespostaHTTP resposta, int atendidas) {
+        if (!resposta.isDelimitada()) {
+            //o corpo termina com o fim da conexão; a resposta já diz close
+            return false;
+        }
+        boolean ultima = !requisicao.isManterViva() || (maxRequisicoes > 0 && atendidas >= maxRequisicoes);
+        Map<String, List<String>> existentes = resposta.lerCabecalhos();
+        if (existentes != null && existentes.containsKey("Connection")) {
+            //quem montou a resposta já decidiu
+            return !ultima && !"close".equalsIgnoreCase(existentes.get("Connection").get(0));
+        }
+        if (ultima) {
+            resposta.setCabecalhoConexao(FECHAR);
+            return false;
+        }
+        int restantes = maxRequisicoes > 0 ? maxRequisicoes - atendidas : 0;
+        resposta.setCabecalhoConexao(cabecalho(requisicao.getProtocolo(), getTempoOcioso(requisicao), restantes));
+        return true;
+    }
+
+    /**
+     * Tempo ocioso da conexão depois desta requisição: o configurado ou o
+     * pedido pelo cliente em Keep-Alive: timeout=, o que for menor.
+     */
+    int getTempoOcioso(RequisicaoHTTP requisicao) {
+        List<String> keepAlive = requisicao.getCabecalho(CabecalhoConhecido.KEEP_ALIVE);
+        if (keepAlive != null) {
+            for (String parametro : keepAlive) {
+                String texto = parametro.trim();
+                if (texto.regionMatches(true, 0, "timeout=", 0, 8)) {
+                    try {
+                        long pedido = Long.parseLong(texto.substring(8).trim()) * 1000;
+                        return (int) Math.max(0, Math.min(tempoOcioso, pedido));
+                    } catch (NumberFormatException ex) {
+                        //parâmetro inválido é ignorado
+                    }
+                }
+            }
+        }
+        return tempoOcioso;
+    }
+
+    private byte[] cabecalho(String protocolo, int tempo, int restantes) {
+        int p = PROTOCOLOS[0].equals(protocolo) ? 0 : PROTOCOLOS[1].equals(protocolo) ? 1 : -1;
+        if (tempo != tempoOcioso || p < 0) {
+            return montar(p == 1, tempo, restantes);
+        }
+        byte[] bytes = cabecalhos[p][restantes];
+        if (bytes == null) {
+            //corrida inofensiva: no pior caso o mesmo array é montado duas vezes
+            bytes = montar(p == 1, tempo, restantes);
+            cabecalhos[p][restantes] = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * O HTTP/1.0 só mantém a conexão com Connection: keep-alive explícito;
+     * no HTTP/1.1 ela já é o padrão e basta o Keep-Alive.
+     */
+    private byte[] montar(boolean http10, int tempo, int restantes) {
+        StringBuilder texto = new StringBuilder(64);
+        if (http10) {
+            texto.append("Connection: keep-alive\r\n");
+        }
+        texto.append("Keep-Alive: timeout=").append(tempo / 1000);
+        if (maxRequisicoes > 0) {
+            texto.append(", max=").append(restantes);
+        }
+        return texto.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    //getters
+    public int getTempoOcioso() {
+        return tempoOcioso;
+    }
+
+    public int getTempoCabecalho() {
+        return tempoCabecalho;
+    }
+
+    public int getTempoEscrita() {
+        return tempoEscrita;
+    }
+
+    public int getMaxRequisicoes() {
+        return maxRequisicoes;
+    }
+
+}
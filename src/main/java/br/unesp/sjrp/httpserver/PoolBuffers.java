@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de ByteBuffers diretos para a E/S dos sockets, em classes de
+ * tamanho (4, 8, 16, 32 e 64 KiB). Os buffers de leitura e de saída das
+ * conexões são emprestados daqui e devolvidos quando a conexão fica
+ * ociosa ou é fechada, de modo que, em regime, atender requisições não
+ * aloca buffers e conexões keep-alive paradas não seguram memória.
+ *
+ * Os buffers livres ficam em faixas escolhidas pela thread, cada uma com
+ * o próprio lock, para que as threads não disputem o mesmo. Cada faixa
+ * guarda no máximo LIMITE_FAIXA bytes por classe; o que passar disso (e
+ * pedidos maiores que a maior classe) fica para o coletor de lixo.
+ *
+ * Com rastreamento ligado (testes) o pool guarda onde cada buffer foi
+ * emprestado, acusa devoluções repetidas e verificarVazamentos aponta os
+ * que não voltaram.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class PoolBuffers {
+
+    static final int MENOR_CLASSE = 4 * 1024;
+    static final int MAIOR_CLASSE = 64 * 1024;
+    private static final int CLASSES = 5;
+    //bytes livres guardados por faixa e por classe
+    static final int LIMITE_FAIXA = 1024 * 1024;
+
+    private static volatile PoolBuffers padrao = new PoolBuffers(false);
+
+    private final Faixa[] faixas;
+    private final int mascara;
+    private final LongAdder emprestados = new LongAdder();
+    private final LongAdder alocados = new LongAdder();
+    //null sem rastreamento; buffer -> onde foi emprestado
+    private final Map<ByteBuffer, Throwable> origens;
+
+    /**
+     * Buffers livres de uma faixa: uma pilha por classe.
+     */
+    private static final class Faixa {
+
+        private final ByteBuffer[][] pilhas = new ByteBuffer[CLASSES][];
+        private final int[] quantidades = new int[CLASSES];
+
+        Faixa() {
+            for (int c = 0; c < CLASSES; c++) {
+                pilhas[c] = new ByteBuffer[LIMITE_FAIXA / tamanhoClasse(c)];
+            }
+        }
+
+        synchronized ByteBuffer retirar(int classe) {
+            int quantidade = quantidades[classe];
+            if (quantidade == 0) {
+                return null;
+            }
+            quantidades[classe] = --quantidade;
+            ByteBuffer buffer = pilhas[classe][quantidade];
+            pilhas[classe][quantidade] = null;
+            return buffer;
+        }
+
+        synchronized void guardar(int classe, ByteBuffer buffer) {
+            int quantidade = quantidades[classe];
+            if (quantidade < pilhas[classe].length) {
+                pilhas[classe][quantidade] = buffer;
+                quantidades[classe] = quantidade + 1;
+            }
+        }
+
+        synchronized long bytesLivres() {
+            long total = 0;
+            for (int c = 0; c < CLASSES; c++) {
+                total += (long) quantidades[c] * tamanhoClasse(c);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * @param rastrear guarda a origem de cada empréstimo (testes)
+     */
+    PoolBuffers(boolean rastrear) {
+        int processadores = Runtime.getRuntime().availableProcessors();
+        int quantidade = Integer.highestOneBit(Math.max(1, processadores * 2 - 1)) << 1;
+        faixas = new Faixa[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            faixas[i] = new Faixa();
+        }
+        mascara = quantidade - 1;
+        origens = rastrear ? new IdentityHashMap<>() : null;
+    }
+
+    static PoolBuffers getPadrao() {
+        return padrao;
+    }
+
+    static void setPadrao(PoolBuffers pool) {
+        padrao = pool;
+    }
+
+    /**
+     * Empresta um buffer direto limpo (posição 0, limite na capacidade) com
+     * pelo menos o tamanho pedido.
+     *
+     * @param tamanho bytes necessários
+     * @return buffer que precisa voltar por devolver
+     */
+    ByteBuffer emprestar(int tamanho) {
+        int classe = classe(tamanho);
+        ByteBuffer buffer = classe < 0 ? null : faixa().retirar(classe);
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(classe < 0 ? tamanho : tamanhoClasse(classe));
+            alocados.increment();
+        }
+        emprestados.increment();
+        if (origens != null) {
+            synchronized (origens) {
+                origens.put(buffer, new Throwable("Buffer de " + buffer.capacity() + " bytes emprestado aqui"));
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Devolve um buffer emprestado. Quem devolve não pode mais usá-lo.
+     *
+     * @param buffer buffer obtido de emprestar
+     * @throws IllegalStateException com rastreamento, se o buffer não
+     * estava emprestado
+     */
+    void devolver(ByteBuffer buffer) {
+        if (origens != null) {
+            synchronized (origens) {
+                if (origens.remove(buffer) == null) {
+                    throw new IllegalStateException("Buffer devolvido duas vezes ou de outro pool");
+                }
+            }
+        }
+        emprestados.decrement();
+        int classe = classe(buffer.capacity());
+        if (classe >= 0 && tamanhoClasse(classe) == buffer.capacity()) {
+            buffer.clear();
+            faixa().guardar(classe, buffer);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException se algum buffer não foi devolvido; com
+     * rastreamento, a causa mostra onde o primeiro foi emprestado
+     */
+    void verificarVazamentos() {
+        long quantidade = emprestados.sum();
+        if (quantidade == 0) {
+            return;
+        }
+        Throwable origem = null;
+        if (origens != null) {
+            synchronized (origens) {
+                origem = origens.isEmpty() ? null : origens.values().iterator().next();
+            }
+        }
+        throw new IllegalStateException(quantidade + " buffers não devolvidos ao pool", origem);
+    }
+
+    /**
+     * @return buffers emprestados e ainda não devolvidos
+     */
+    long getEmprestados() {
+        return emprestados.sum();
+    }
+
+    /**
+     * @return buffers criados porque não havia um livre
+     */
+    long getAlocados() {
+        return alocados.sum();
+    }
+
+    long getBytesLivres() {
+        long total = 0;
+        for (Faixa faixa : faixas) {
+            total += faixa.bytesLivres();
+        }
+        return total;
+    }
+
+    private Faixa faixa() {
+        return faixas[(int) Thread.currentThread().getId() & mascara];
+    }
+
+    /**
+     * @return a menor classe que comporta o tamanho, ou -1 se nenhuma
+     */
+    private static int classe(int tamanho) {
+        if (tamanho > MAIOR_CLASSE) {
+            return -1;
+        }
+        int classe = 0;
+        while (tamanhoClasse(classe) < tamanho) {
+            classe++;
+        }
+        return classe;
+    }
+
+    private static int tamanhoClasse(int classe) {
+        return MENOR_CLASSE << classe;
+    }
+
+}
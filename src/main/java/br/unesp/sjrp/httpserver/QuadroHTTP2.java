@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * Quadro HTTP/2 (RFC 9113, seção 4): cabeçalho de 9 bytes com tamanho,
+ * tipo, flags e fluxo, seguido da carga. Uma instância é reaproveitada
+ * para ler todos os quadros da conexão; a carga só é realocada quando um
+ * quadro maior chega.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class QuadroHTTP2 {
+
+    static final int TAMANHO_CABECALHO = 9;
+    //SETTINGS_MAX_FRAME_SIZE inicial
+    static final int TAMANHO_PADRAO = 16 * 1024;
+
+    //tipos
+    static final int DADOS = 0x0;
+    static final int CABECALHOS = 0x1;
+    static final int PRIORIDADE = 0x2;
+    static final int CANCELAR_FLUXO = 0x3;
+    static final int CONFIGURACOES = 0x4;
+    static final int PROMESSA = 0x5;
+    static final int PING = 0x6;
+    static final int ENCERRAR = 0x7;
+    static final int JANELA = 0x8;
+    static final int CONTINUACAO = 0x9;
+
+    //flags
+    static final int FIM_FLUXO = 0x1;
+    static final int CONFIRMACAO = 0x1;
+    static final int FIM_CABECALHOS = 0x4;
+    static final int PREENCHIDO = 0x8;
+    static final int COM_PRIORIDADE = 0x20;
+
+    private final byte[] cabecalho = new byte[TAMANHO_CABECALHO];
+    private int tamanho;
+    private int tipo;
+    private int flags;
+    private int fluxo;
+    private byte[] carga = new byte[TAMANHO_PADRAO];
+
+    /**
+     * Lê o próximo quadro. Um tempo limite antes do primeiro byte sai como
+     * SocketTimeoutException, com a conexão entre dois quadros; no meio
+     * do quadro a conexão é dada como perdida.
+     *
+     * @param tamanhoMaximo maior carga aceita (SETTINGS_MAX_FRAME_SIZE)
+     * @return false se o cliente fechou a conexão entre dois quadros
+     * @throws ErroHTTP2 (FRAME_SIZE_ERROR) se a carga exceder o máximo
+     */
+    boolean ler(InputStream entrada, int tamanhoMaximo) throws IOException {
+        int primeiro = entrada.read();
+        if (primeiro < 0) {
+            return false;
+        }
+        cabecalho[0] = (byte) primeiro;
+        lerTudo(entrada, cabecalho, 1, TAMANHO_CABECALHO - 1);
+        tamanho = (primeiro << 16) | ((cabecalho[1] & 0xFF) << 8) | (cabecalho[2] & 0xFF);
+        tipo = cabecalho[3] & 0xFF;
+        flags = cabecalho[4] & 0xFF;
+        fluxo = inteiro(cabecalho, 5) & 0x7FFFFFFF;
+        if (tamanho > tamanhoMaximo) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_TAMANHO_QUADRO, "Quadro de " + tamanho + " bytes");
+        }
+        if (carga.length < tamanho) {
+            carga = new byte[tamanho];
+        }
+        lerTudo(entrada, carga, 0, tamanho);
+        return true;
+    }
+
+    private static void lerTudo(InputStream entrada, byte[] destino, int inicio, int quantidade) throws IOException {
+        while (quantidade > 0) {
+            int lidos;
+            try {
+                lidos = entrada.read(destino, inicio, quantidade);
+            } catch (SocketTimeoutException ex) {
+                throw new EOFException("Quadro incompleto no tempo limite");
+            }
+            if (lidos < 0) {
+                throw new EOFException("Conexão encerrada no meio de um quadro");
+            }
+            inicio += lidos;
+            quantidade -= lidos;
+        }
+    }
+
+    int getTamanho() {
+        return tamanho;
+    }
+
+    int getTipo() {
+        return tipo;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+
+    boolean temFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    int getFluxo() {
+        return fluxo;
+    }
+
+    /**
+     * @return a carga; só os primeiros getTamanho() bytes valem
+     */
+    byte[] getCarga() {
+        return carga;
+    }
+
+    /**
+     * Escreve um quadro inteiro.
+     */
+    static void escrever(OutputStream saida, int tipo, int flags, int fluxo,
+            byte[] carga, int inicio, int tamanho) throws IOException {
+        byte[] cabecalho = new byte[TAMANHO_CABECALHO];
+        cabecalho[0] = (byte) (tamanho >>> 16);
+        cabecalho[1] = (byte) (tamanho >>> 8);
+        cabecalho[2] = (byte) tamanho;
+        cabecalho[3] = (byte) tipo;
+        cabecalho[4] = (byte) flags;
+        escreverInteiro(cabecalho, 5, fluxo);
+        saida.write(cabecalho);
+        if (tamanho > 0) {
+            saida.write(carga, inicio, tamanho);
+        }
+    }
+
+    static int inteiro(byte[] dados, int posicao) {
+        return ((dados[posicao] & 0xFF) << 24) | ((dados[posicao + 1] & 0xFF) << 16)
+                | ((dados[posicao + 2] & 0xFF) << 8) | (dados[posicao + 3] & 0xFF);
+    }
+
+    static void escreverInteiro(byte[] dados, int posicao, int valor) {
+        dados[posicao] = (byte) (valor >>> 24);
+        dados[posicao + 1] = (byte) (valor >>> 16);
+        dados[posicao + 2] = (byte) (valor >>> 8);
+        dados[posicao + 3] = (byte) valor;
+    }
+
+}
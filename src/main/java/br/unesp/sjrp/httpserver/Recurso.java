@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Um arquivo que pode ser servido pelo servidor. Normalmente o conteúdo
+ * fica em memória; arquivos grandes do diretório de documentos guardam só
+ * o caminho no disco e são enviados direto dele, e os recursos de um
+ * ArquivoRecursos são fatias do arquivo mapeado, fora do heap.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class Recurso {
+
+    private static final int VARIANTE_GZIP = 0;
+    private static final int VARIANTE_DEFLATE = 1;
+
+    private final String caminho;
+    private final byte[] conteudo;
+    //arquivo em disco quando o conteúdo não está em memória
+    private final Path arquivo;
+    //fatia de um arquivo mapeado, idem
+    private final ByteBuffer mapeado;
+    private final long tamanho;
+    //data da última modificação em milissegundos, 0 quando desconhecida
+    private final long ultimaModificacao;
+    //ETag do conteúdo; para recursos em memória é calculada no primeiro uso
+    private volatile String etag;
+    private final String tipoConteudo;
+    //Content-Encoding do conteúdo, null quando não está comprimido
+    private final String codificacao;
+    //respostas já serializadas deste recurso (ver RespostaPronta.indice)
+    private final RespostaPronta[] prontas = new RespostaPronta[RespostaPronta.VARIACOES];
+    //versões comprimidas; o próprio recurso indica que não compensa comprimir
+    private final Recurso[] variantes = new Recurso[2];
+
+    public Recurso(String caminho, byte[] conteudo) {
+        this(caminho, conteudo, 0);
+    }
+
+    public Recurso(String caminho, byte[] conteudo, long ultimaModificacao) {
+        this(caminho, conteudo, Util.tipoConteudo(caminho), null, ultimaModificacao);
+    }
+
+    public Recurso(String caminho, byte[] conteudo, String tipoConteudo, String codificacao, long ultimaModificacao) {
+        this.caminho = caminho;
+        this.conteudo = conteudo;
+        this.arquivo = null;
+        this.mapeado = null;
+        this.tamanho = conteudo.length;
+        this.ultimaModificacao = ultimaModificacao;
+        this.tipoConteudo = tipoConteudo;
+        this.codificacao = codificacao;
+    }
+
+    /**
+     * Recurso cujo conteúdo continua no disco.
+     *
+     * @param caminho caminho relativo usado na requisição
+     * @param arquivo arquivo com o conteúdo
+     * @param tamanho tamanho do arquivo em bytes
+     * @param ultimaModificacao data de modificação do arquivo
+     * @param etag ETag já entre aspas
+     */
+    public Recurso(String caminho, Path arquivo, long tamanho, long ultimaModificacao, String etag) {
+        this.caminho = caminho;
+        this.conteudo = null;
+        this.arquivo = arquivo;
+        this.mapeado = null;
+        this.tamanho = tamanho;
+        this.ultimaModificacao = ultimaModificacao;
+        this.etag = etag;
+        this.tipoConteudo = Util.tipoConteudo(caminho);
+        this.codificacao = null;
+    }
+
+    /**
+     * Recurso cujo conteúdo é uma fatia de um buffer (normalmente mapeado
+     * de um arquivo), com os metadados já calculados.
+     *
+     * @param caminho caminho relativo usado na requisição
+     * @param mapeado conteúdo; a posição e o limite delimitam o recurso
+     * @param tipoConteudo Content-Type
+     * @param etag ETag já entre aspas
+     * @param ultimaModificacao data de modificação, 0 se desconhecida
+     */
+    public Recurso(String caminho, ByteBuffer mapeado, String tipoConteudo, String etag, long ultimaModificacao) {
+        this.caminho = caminho;
+        this.conteudo = null;
+        this.arquivo = null;
+        this.mapeado = mapeado.slice().asReadOnlyBuffer();
+        this.tamanho = this.mapeado.remaining();
+        this.ultimaModificacao = ultimaModificacao;
+        this.etag = etag;
+        this.tipoConteudo = tipoConteudo;
+        this.codificacao = null;
+    }
+
+    /**
+     * @return tamanho do recurso em bytes
+     */
+    public long getTamanho() {
+        return tamanho;
+    }
+
+    /**
+     * @return true se o conteúdo está em um byte[] (getConteudo)
+     */
+    public boolean isEmMemoria() {
+        return conteudo != null;
+    }
+
+    /**
+     * @return true se o conteúdo está no disco (getConteudo devolve null)
+     */
+    public boolean isEmArquivo() {
+        return arquivo != null;
+    }
+
+    /**
+     * Cria o corpo de resposta para um recurso que não está em memória.
+     * Cada resposta ganha o seu, pois o corpo guarda o progresso do envio.
+     *
+     * @return o corpo, ou null se o conteúdo estiver em memória
+     */
+    public CorpoResposta criarCorpo() {
+        return conteudo != null ? null : criarCorpo(0, tamanho);
+    }
+
+    /**
+     * Cria um corpo com um trecho do recurso, sem copiar o conteúdo: uma
+     * região do arquivo ou uma fatia do byte[] ou do buffer mapeado.
+     *
+     * @param inicio posição do primeiro byte
+     * @param quantidade quantos bytes
+     * @return o corpo do trecho
+     */
+    public CorpoResposta criarCorpo(long inicio, long quantidade) {
+        if (arquivo != null) {
+            return new CorpoArquivo(arquivo, inicio, quantidade);
+        }
+        if (mapeado != null) {
+            ByteBuffer fatia = mapeado.duplicate();
+            fatia.position((int) inicio).limit((int) (inicio + quantidade));
+            return new CorpoBuffer(fatia);
+        }
+        return new CorpoBuffer(ByteBuffer.wrap(conteudo, (int) inicio, (int) quantidade));
+    }
+
+    /**
+     * @return quanto o recurso ocupa de memória com o conteúdo
+     */
+    public long getTamanhoEmMemoria() {
+        return conteudo != null ? conteudo.length : 0;
+    }
+
+    /*
+     * As respostas prontas e as variantes são imutáveis (campos final),
+     * então uma corrida entre duas threads só faz o mesmo objeto ser
+     * montado duas vezes.
+     */
+    RespostaPronta getPronta(int indice) {
+        return prontas[indice];
+    }
+
+    void setPronta(int indice, RespostaPronta pronta) {
+        prontas[indice] = pronta;
+    }
+
+    /**
+     * @param codificacao Compressao.GZIP ou Compressao.DEFLATE
+     * @return a variante já conhecida, este próprio recurso se comprimir
+     * não compensa ou null se ainda não foi calculada
+     */
+    Recurso getVariante(String codificacao) {
+        return variantes[indiceVariante(codificacao)];
+    }
+
+    void setVariante(String codificacao, Recurso variante) {
+        variantes[indiceVariante(codificacao)] = variante;
+    }
+
+    private static int indiceVariante(String codificacao) {
+        return Compressao.GZIP.equals(codificacao) ? VARIANTE_GZIP : VARIANTE_DEFLATE;
+    }
+
+    //getters
+    public String getCaminho() {
+        return caminho;
+    }
+
+    public byte[] getConteudo() {
+        return conteudo;
+    }
+
+    public Path getArquivo() {
+        return arquivo;
+    }
+
+    /**
+     * @return cópia independente (posição própria) do conteúdo mapeado, ou
+     * null
+     */
+    public ByteBuffer getMapeado() {
+        return mapeado != null ? mapeado.duplicate() : null;
+    }
+
+    /**
+     * ETag forte do conteúdo. Variantes comprimidas têm a sua própria,
+     * já que são outra representação.
+     *
+     * @return a ETag, já entre aspas
+     */
+    public String getEtag() {
+        String calculada = etag;
+        if (calculada == null && conteudo != null) {
+            //uma corrida só calcula o mesmo valor duas vezes
+            calculada = Util.calcularETag(conteudo);
+            etag = calculada;
+        }
+        return calculada;
+    }
+
+    public long getUltimaModificacao() {
+        return ultimaModificacao;
+    }
+
+    public String getTipoConteudo() {
+        return tipoConteudo;
+    }
+
+    public String getCodificacao() {
+        return codificacao;
+    }
+
+}
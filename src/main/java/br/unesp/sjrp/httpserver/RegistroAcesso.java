@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log de acesso assíncrono. As threads que atendem as requisições só
+ * colocam um registro imutável numa FilaCircular; uma thread própria
+ * esvazia a fila em lotes, formata as linhas e as grava no arquivo com um
+ * flush por lote. Nenhuma thread de atendimento espera pelo disco nem
+ * disputa o lock de um PrintStream.
+ *
+ * Formatos: "comum" (Common Log Format), "combinado" (Combined, com
+ * Referer e User-Agent) e "json" (um objeto por linha). Com a fila cheia o
+ * registro é descartado (política "descartar", contado em getDescartados)
+ * ou a thread espera vagar espaço (política "bloquear").
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class RegistroAcesso implements Closeable {
+
+    //intervalo máximo entre dois lotes
+    private static final long INTERVALO = TimeUnit.MILLISECONDS.toNanos(10);
+    //espera do produtor na política "bloquear"
+    private static final long ESPERA_BLOQUEIO = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final DateTimeFormatter DATA_CLF = DateTimeFormatter
+            .ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneOffset.UTC);
+
+    //desligado (null) enquanto não houver log.arquivo
+    private static volatile RegistroAcesso padrao;
+
+    private final Writer destino;
+    private final String formato;
+    private final boolean bloquear;
+    private final int amostragem;
+    private final boolean cabecalhos;
+    private final FilaCircular<Entrada> fila;
+    private final LongAdder descartados = new LongAdder();
+    private final Thread escritor;
+    private volatile boolean fechado;
+
+    /**
+     * Registro imutável de uma requisição atendida; formatado só na thread
+     * do escritor.
+     */
+    private static final class Entrada {
+
+        private final InetAddress cliente;
+        private final long instante;
+        private final long duracao;
+        private final String metodo;
+        private final String recurso;
+        private final String protocolo;
+        private final int codigo;
+        private final long bytes;
+        private final String referer;
+        private final String agente;
+        //pares nome, valor copiados na thread da requisição: o mapa dela
+        //continua sendo reaproveitado e alterado depois do registro
+        private final String[] cabecalhos;
+
+        Entrada(InetAddress cliente, long instante, long duracao, RequisicaoHTTP requisicao,
+                RespostaHTTP resposta, boolean comCabecalhos) {
+            this.cliente = cliente;
+            this.instante = instante;
+            this.duracao = duracao;
+            this.metodo = requisicao.getMetodo();
+            this.recurso = requisicao.getRecurso();
+            this.protocolo = requisicao.getProtocolo();
+            this.codigo = resposta.getCodigoResposta();
+            this.bytes = resposta.getTamanhoCorpo();
+            this.cabecalhos = comCabecalhos ? copiar(requisicao.getCabecalhos()) : null;
+            this.referer = requisicao.getValorCabecalho(CabecalhoConhecido.REFERER);
+            this.agente = requisicao.getValorCabecalho(CabecalhoConhecido.USER_AGENT);
+        }
+
+        private static String[] copiar(Map<String, List<String>> cabecalhos) {
+            if (cabecalhos == null) {
+                return null;
+            }
+            String[] pares = new String[2 * cabecalhos.size()];
+            int i = 0;
+            for (Map.Entry<String, List<String>> cabecalho : cabecalhos.entrySet()) {
+                pares[i++] = cabecalho.getKey();
+                pares[i++] = String.join(",", cabecalho.getValue());
+            }
+            return pares;
+        }
+    }
+
+    /**
+     * @param destino onde as linhas são gravadas; é fechado junto com o
+     * registro
+     * @param configuracao opções log.formato, log.capacidade,
+     * log.politica, log.amostragem e log.cabecalhos
+     */
+    public RegistroAcesso(Writer destino, Configuracao configuracao) {
+        this.destino = destino;
+        this.formato = configuracao.getFormatoLog();
+        if (!"comum".equals(formato) && !"combinado".equals(formato) && !"json".equals(formato)) {
+            throw new IllegalArgumentException("Formato de log inválido: " + formato);
+        }
+        String politica = configuracao.getPoliticaLog();
+        if (!"descartar".equals(politica) && !"bloquear".equals(politica)) {
+            throw new IllegalArgumentException("Política de log inválida: " + politica);
+        }
+        this.bloquear = "bloquear".equals(politica);
+        this.amostragem = Math.max(1, configuracao.getAmostragemLog());
+        this.cabecalhos = configuracao.isLogCabecalhos();
+        this.fila = new FilaCircular<>(configuracao.getCapacidadeLog());
+        this.escritor = new Thread(this::escrever, "registro-acesso");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Abre o arquivo de log.arquivo (acrescentando ao fim).
+     *
+     * @return o registro ou null se o log de acesso não foi configurado
+     * @throws IOException se o arquivo não puder ser aberto
+     */
+    public static RegistroAcesso criar(Configuracao configuracao) throws IOException {
+        String arquivo = configuracao.getArquivoLog();
+        if (arquivo == null) {
+            return null;
+        }
+        Writer destino = Files.newBufferedWriter(Paths.get(arquivo), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        return new RegistroAcesso(destino, configuracao);
+    }
+
+    public static RegistroAcesso getPadrao() {
+        return padrao;
+    }
+
+    public static void setPadrao(RegistroAcesso registro) {
+        padrao = registro;
+    }
+
+    /**
+     * Registra uma requisição atendida. Só cria o registro e o coloca na
+     * fila; a formatação e a escrita ficam com a thread do log.
+     *
+     * @param cliente endereço do cliente
+     * @param requisicao requisição atendida
+     * @param resposta resposta enviada
+     * @param inicio System.nanoTime() do início do atendimento
+     */
+    public void registrar(InetAddress cliente, RequisicaoHTTP requisicao, RespostaHTTP resposta, long inicio) {
+        if (fechado || amostragem > 1 && ThreadLocalRandom.current().nextInt(amostragem) != 0) {
+            return;
+        }
+        Entrada entrada = new Entrada(cliente, System.currentTimeMillis(), System.nanoTime() - inicio,
+                requisicao, resposta, cabecalhos);
+        while (!fila.oferecer(entrada)) {
+            if (!bloquear || fechado) {
+                descartados.increment();
+                return;
+            }
+            LockSupport.unpark(escritor);
+            LockSupport.parkNanos(this, ESPERA_BLOQUEIO);
+        }
+    }
+
+    /**
+     * @return quantos registros foram perdidos com a fila cheia
+     */
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    /**
+     * Grava o que ainda está na fila e fecha o arquivo.
+     */
+    @Override
+    public void close() throws IOException {
+        fechado = true;
+        LockSupport.unpark(escritor);
+        try {
+            escritor.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        destino.close();
+    }
+
+    private void escrever() {
+        StringBuilder linha = new StringBuilder(256);
+        boolean falhou = false;
+        while (true) {
+            //lido antes de esvaziar: o que entrou antes do close é gravado
+            boolean encerrar = fechado;
+            int gravados = 0;
+            Entrada entrada;
+            while ((entrada = fila.retirar()) != null) {
+                linha.setLength(0);
+                formatar(entrada, linha);
+                try {
+                    destino.append(linha);
+                    gravados++;
+                } catch (IOException ex) {
+                    falhou = avisar(falhou, ex);
+                }
+            }
+            if (gravados > 0) {
+                try {
+                    destino.flush();
+                } catch (IOException ex) {
+                    falhou = avisar(falhou, ex);
+                }
+            }
+            if (encerrar) {
+                return;
+            }
+            LockSupport.parkNanos(this, INTERVALO);
+        }
+    }
+
+    //avisa só a primeira falha, para não inundar o log do servidor
+    private static boolean avisar(boolean falhou, IOException ex) {
+        if (!falhou) {
+            Logger.getLogger(RegistroAcesso.class.getName()).log(Level.WARNING, "Falha ao gravar o log de acesso", ex);
+        }
+        return true;
+    }
+
+    private void formatar(Entrada entrada, StringBuilder linha) {
+        if ("json".equals(formato)) {
+            formatarJson(entrada, linha);
+            return;
+        }
+        //127.0.0.1 - - [10/Oct/2000:13:55:36 +0000] "GET / HTTP/1.1" 200 2326
+        linha.append(entrada.cliente == null ? "-" : entrada.cliente.getHostAddress()).append(" - - [");
+        DATA_CLF.formatTo(Instant.ofEpochMilli(entrada.instante), linha);
+        linha.append("] \"");
+        textoClf(entrada.metodo, linha);
+        linha.append(' ');
+        textoClf(entrada.recurso, linha);
+        linha.append(' ');
+        textoClf(entrada.protocolo, linha);
+        linha.append("\" ").append(entrada.codigo).append(' ');
+        if (entrada.bytes > 0) {
+            linha.append(entrada.bytes);
+        } else {
+            linha.append('-');
+        }
+        if ("combinado".equals(formato)) {
+            linha.append(" \"");
+            textoClf(entrada.referer == null ? "-" : entrada.referer, linha);
+            linha.append("\" \"");
+            textoClf(entrada.agente == null ? "-" : entrada.agente, linha);
+            linha.append('"');
+        }
+        linha.append('\n');
+        if (entrada.cabecalhos != null) {
+            for (int i = 0; i < entrada.cabecalhos.length; i += 2) {
+                linha.append("    ");
+                textoClf(entrada.cabecalhos[i] + ": " + entrada.cabecalhos[i + 1], linha);
+                linha.append('\n');
+            }
+        }
+    }
+
+    private static void formatarJson(Entrada entrada, StringBuilder linha) {
+        linha.append("{\"data\":\"").append(Instant.ofEpochMilli(entrada.instante)).append('"');
+        campoJson("cliente", entrada.cliente == null ? null : entrada.cliente.getHostAddress(), linha);
+        campoJson("metodo", entrada.metodo, linha);
+        campoJson("recurso", entrada.recurso, linha);
+        campoJson("protocolo", entrada.protocolo, linha);
+        linha.append(",\"status\":").append(entrada.codigo);
+        linha.append(",\"bytes\":").append(entrada.bytes);
+        linha.append(",\"duracao_us\":").append(entrada.duracao / 1000);
+        campoJson("referer", entrada.referer, linha);
+        campoJson("agente", entrada.agente, linha);
+        if (entrada.cabecalhos != null) {
+            linha.append(",\"cabecalhos\":{");
+            for (int i = 0; i < entrada.cabecalhos.length; i += 2) {
+                if (i > 0) {
+                    linha.append(',');
+                }
+                textoJson(entrada.cabecalhos[i], linha);
+                linha.append(':');
+                textoJson(entrada.cabecalhos[i + 1], linha);
+            }
+            linha.append('}');
+        }
+        linha.append("}\n");
+    }
+
+    private static void campoJson(String nome, String valor, StringBuilder linha) {
+        linha.append(",\"").append(nome).append("\":");
+        if (valor == null) {
+            linha.append("null");
+        } else {
+            textoJson(valor, linha);
+        }
+    }
+
+    private static void textoJson(String texto, StringBuilder linha) {
+        linha.append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                linha.append('\\').append(c);
+            } else if (c < 0x20) {
+                linha.append(String.format("\\u%04x", (int) c));
+            } else {
+                linha.append(c);
+            }
+        }
+        linha.append('"');
+    }
+
+    /**
+     * Escapa aspas, barras e caracteres de controle, para que um valor
+     * enviado pelo cliente não quebre nem forje linhas do log.
+     */
+    private static void textoClf(String texto, StringBuilder linha) {
+        if (texto == null) {
+            linha.append('-');
+            return;
+        }
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                linha.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                linha.append(String.format("\\x%02x", (int) c));
+            } else {
+                linha.append(c);
+            }
+        }
+    }
+
+}
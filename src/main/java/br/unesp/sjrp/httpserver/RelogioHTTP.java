@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Fonte do valor do cabeçalho Date. A data muda só uma vez por segundo,
+ * então ela é formatada (IMF-fixdate, RFC 7231 7.1.1.1) no máximo uma vez
+ * por segundo e publicada sem trava num campo volatile, já em bytes.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class RelogioHTTP {
+
+    private static final String[] DIAS = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+    private static final String[] MESES = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct",
+        "Nov", "Dec"};
+
+    //imutável: threads que leem a referência antiga só usam a data anterior
+    private static final class Instante {
+
+        final long segundo;
+        final String texto;
+        final byte[] bytes;
+
+        Instante(long segundo) {
+            this.segundo = segundo;
+            this.texto = formatar(segundo * 1000);
+            this.bytes = texto.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static volatile Instante atual = new Instante(System.currentTimeMillis() / 1000);
+
+    private RelogioHTTP() {
+    }
+
+    /**
+     * @return a data atual em bytes ASCII; o array é compartilhado e não
+     * pode ser alterado
+     */
+    static byte[] bytesAgora() {
+        return instante().bytes;
+    }
+
+    /**
+     * @return a data atual como texto
+     */
+    static String agora() {
+        return instante().texto;
+    }
+
+    private static Instante instante() {
+        long segundo = System.currentTimeMillis() / 1000;
+        Instante instante = atual;
+        if (instante.segundo != segundo) {
+            //duas threads na virada do segundo só formatam a mesma data duas vezes
+            instante = new Instante(segundo);
+            atual = instante;
+        }
+        return instante;
+    }
+
+    /**
+     * Formata uma data no formato IMF-fixdate, ex: "Sun, 06 Nov 1994
+     * 08:49:37 GMT".
+     *
+     * @param millis data em milissegundos desde a época
+     * @return a data formatada
+     */
+    static String formatar(long millis) {
+        LocalDateTime data = LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), 0, ZoneOffset.UTC);
+        StringBuilder texto = new StringBuilder(29);
+        texto.append(DIAS[data.getDayOfWeek().ordinal()]).append(", ");
+        doisDigitos(texto, data.getDayOfMonth()).append(' ');
+        texto.append(MESES[data.getMonthValue() - 1]).append(' ');
+        int ano = data.getYear();
+        doisDigitos(doisDigitos(texto, ano / 100), ano % 100).append(' ');
+        doisDigitos(texto, data.getHour()).append(':');
+        doisDigitos(texto, data.getMinute()).append(':');
+        doisDigitos(texto, data.getSecond()).append(" GMT");
+        return texto.toString();
+    }
+
+    private static StringBuilder doisDigitos(StringBuilder texto, int valor) {
+        return texto.append((char) ('0' + valor / 10)).append((char) ('0' + valor % 10));
+    }
+
+}
@@ -18,14 +18,13 @@
 
 package br.unesp.sjrp.httpserver;
 
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  *
@@ -39,47 +38,101 @@ public class RequisicaoHTTP {
     private boolean manterViva = true;
     private int tempoLimite = 3000;
     private Map<String, List<String>> cabecalhos;
-
+    private byte[] corpo;
+    //parâmetros do caminho preenchidos pelo Roteador
+    private Map<String, String> parametros;
+
+    //tamanho máximo da linha de requisição somada aos cabeçalhos
+    static final int LIMITE_CABECALHO = 64 * 1024;
+
+    /**
+     * Lê uma requisição completa do stream usando o AnalisadorRequisicao.
+     *
+     * @param entrada stream do cliente
+     * @return requisição lida
+     * @throws IOException se o stream terminar antes do fim do cabeçalho ou
+     * se a requisição for inválida
+     */
     public static RequisicaoHTTP lerRequisicao(InputStream entrada) throws IOException {
-        RequisicaoHTTP requisicao = new RequisicaoHTTP();
-        BufferedReader buffer = new BufferedReader(new InputStreamReader(entrada));
-        System.out.println("Requisição: ");
-        /* Lê a primeira linha
-         contem as informaçoes da requisição
-         */
-        String linhaRequisicao = buffer.readLine();
-        System.out.println(linhaRequisicao);
-        //quebra a string pelo espaço em branco
-        String[] dadosReq = linhaRequisicao.split(" ");
-        //pega o metodo
-        requisicao.setMetodo(dadosReq[0]);
-        //paga o caminho do arquivo
-        requisicao.setRecurso(dadosReq[1]);
-        //pega o protocolo
-        requisicao.setProtocolo(dadosReq[2]);
-        String dadosHeader = buffer.readLine();
-        //Enquanto a linha nao for nula e nao for vazia
-        while (dadosHeader != null && !dadosHeader.isEmpty()) {
-            System.out.println(dadosHeader);
-            String[] linhaCabecalho = dadosHeader.split(":");
-            requisicao.setCabecalho(linhaCabecalho[0], linhaCabecalho[1].trim().split(","));
-            dadosHeader = buffer.readLine();
-        }
-        //se existir a chave Connection no cabeçalho
-        if (requisicao.getCabecalhos().containsKey("Connection")) {
-            //seta o manterviva a conexao se o connection for keep-alive
-            requisicao.setManterViva(requisicao.getCabecalhos().get("Connection").get(0).equals("keep-alive"));
+        RequisicaoHTTP requisicao = new LeitorRequisicoes(entrada).proxima(null);
+        if (requisicao == null) {
+            throw new EOFException("Conexão encerrada antes do início da requisição");
         }
         return requisicao;
     }
 
+    /**
+     * Define um cabeçalho; o nome não diferencia maiúsculas.
+     *
+     * @param chave nome do cabeçalho
+     * @param valores lista com um ou mais valores para esta chave
+     */
     public void setCabecalho(String chave, String... valores) {
         if (cabecalhos == null) {
-            cabecalhos = new TreeMap<>();
+            cabecalhos = new CabecalhosRequisicao();
         }
         cabecalhos.put(chave, Arrays.asList(valores));
     }
 
+    /**
+     * Guarda um cabeçalho conhecido lido pelo AnalisadorRequisicao, com o
+     * valor ainda inteiro.
+     */
+    void setCabecalho(CabecalhoConhecido cabecalho, String valor) {
+        tabela().definir(cabecalho, valor);
+    }
+
+    /**
+     * Guarda um cabeçalho não conhecido lido pelo AnalisadorRequisicao.
+     *
+     * @param hash CabecalhoConhecido.hash do nome
+     */
+    void setCabecalho(String nome, int hash, String valor) {
+        tabela().definir(nome, hash, valor);
+    }
+
+    /**
+     * Acrescenta um campo recebido por HTTP/2, onde um mesmo cabeçalho pode
+     * vir em vários campos.
+     */
+    void acrescentarCabecalho(String nome, String valor) {
+        tabela().acrescentar(nome, CabecalhoConhecido.hash(nome), valor);
+    }
+
+    /**
+     * @return os valores do cabeçalho separados por ',' ou null se ele não
+     * veio
+     */
+    List<String> getCabecalho(CabecalhoConhecido cabecalho) {
+        if (cabecalhos instanceof CabecalhosRequisicao) {
+            return ((CabecalhosRequisicao) cabecalhos).get(cabecalho);
+        }
+        return cabecalhos == null ? null : cabecalhos.get(cabecalho.getNome());
+    }
+
+    /**
+     * @return o valor inteiro do cabeçalho ou null se ele não veio
+     */
+    String getValorCabecalho(CabecalhoConhecido cabecalho) {
+        if (cabecalhos instanceof CabecalhosRequisicao) {
+            return ((CabecalhosRequisicao) cabecalhos).getValor(cabecalho);
+        }
+        List<String> valores = getCabecalho(cabecalho);
+        return valores == null ? null : String.join(",", valores);
+    }
+
+    private CabecalhosRequisicao tabela() {
+        if (!(cabecalhos instanceof CabecalhosRequisicao)) {
+            CabecalhosRequisicao tabela = new CabecalhosRequisicao();
+            if (cabecalhos != null) {
+                //mapa vindo de setCabecalhos
+                tabela.putAll(cabecalhos);
+            }
+            cabecalhos = tabela;
+        }
+        return (CabecalhosRequisicao) cabecalhos;
+    }
+
     //getters e setters
     public void setMetodo(String metodo) {
         this.metodo = metodo;
@@ -129,4 +182,27 @@ public class RequisicaoHTTP {
         return cabecalhos;
     }
 
+    /**
+     * @param nome nome do parâmetro no padrão da rota ({id} ou *caminho)
+     * @return o trecho do caminho, sem decodificar, ou null
+     */
+    public String getParametro(String nome) {
+        return parametros == null ? null : parametros.get(nome);
+    }
+
+    void setParametro(String nome, String valor) {
+        if (parametros == null) {
+            parametros = new HashMap<>(4);
+        }
+        parametros.put(nome, valor);
+    }
+
+    public byte[] getCorpo() {
+        return corpo;
+    }
+
+    public void setCorpo(byte[] corpo) {
+        this.corpo = corpo;
+    }
+
 }
\ No newline at end of file
@@ -20,7 +20,11 @@ package br.unesp.sjrp.httpserver;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -31,12 +35,29 @@ import java.util.TreeMap;
  */
 public class RespostaHTTP {
 
+    //buffer de cada pedaço de um corpo gerado
+    static final int TAMANHO_PEDACO = 8 * 1024;
+
     private String protocolo;
     private int codigoResposta;
     private String mensagem;
     private byte[] conteudoResposta;
+    //corpo que não está em um byte[] (ex: região de arquivo); tem
+    //preferência sobre conteudoResposta
+    private CorpoResposta corpo;
+    //corpo produzido durante o envio, sem tamanho conhecido
+    private GeradorConteudo gerador;
     private Map<String, List<String>> cabecalhos;
     private OutputStream saida;
+    //canal do socket, quando existir, para enviar o corpo sem cópia
+    private WritableByteChannel canal;
+    //bytes já serializados, usados enquanto a resposta não for alterada
+    private RespostaPronta pronta;
+    //linhas Connection/Keep-Alive decididas pela conexão, já em bytes e
+    //terminadas em CRLF; escritas antes da linha em branco
+    private byte[] cabecalhoConexao;
+    //resposta a um HEAD: cabeçalhos completos, sem o corpo
+    private boolean semCorpo;
 
     public RespostaHTTP() {
 
@@ -54,14 +75,125 @@ public class RespostaHTTP {
      * @throws IOException
      */
     public void enviar() throws IOException {
-        //escreve o headers em bytes
-        saida.write(montaCabecalho());
-        //escreve o conteudo em bytes
-        saida.write(conteudoResposta);
+        escrever();
         //encerra a resposta
         saida.flush();
     }
 
+    /**
+     * Escreve a resposta na saída sem descarregá-la. Permite juntar várias
+     * respostas de um pipeline no mesmo buffer e enviá-las com um único
+     * flush.
+     *
+     * @throws IOException
+     */
+    public void escrever() throws IOException {
+        if (pronta != null) {
+            pronta.escrever(saida, cabecalhoConexao, !semCorpo);
+            return;
+        }
+        if (gerador != null) {
+            escreverGerado();
+            return;
+        }
+        escreverCabecalho();
+        if (semCorpo) {
+            return;
+        }
+        if (corpo != null) {
+            corpo.escrever(saida, canal);
+            return;
+        }
+        //escreve o conteudo em bytes
+        saida.write(conteudoResposta);
+    }
+
+    /**
+     * Envia o cabeçalho e vai gerando o corpo. Em HTTP/1.1 o corpo vai em
+     * pedaços (chunked); em HTTP/1.0 vai cru, com Connection: close, e a
+     * conexão precisa ser encerrada depois (isDelimitada).
+     */
+    private void escreverGerado() throws IOException {
+        boolean chunked = isChunked();
+        if (cabecalhos != null && cabecalhos.containsKey("Content-Length")) {
+            //cópia: o mapa pode ter vindo de uma resposta pronta
+            cabecalhos = copiar(cabecalhos);
+            cabecalhos.remove("Content-Length");
+        }
+        if (chunked) {
+            setCabecalho("Transfer-Encoding", "chunked");
+        } else {
+            setCabecalho("Connection", "close");
+        }
+        escreverCabecalho();
+        if (semCorpo) {
+            //nem o pedaço final do chunked: um HEAD não tem corpo
+            return;
+        }
+        SaidaStreaming streaming = new SaidaStreaming(saida, TAMANHO_PEDACO, chunked);
+        gerador.gerar(streaming);
+        streaming.close();
+    }
+
+    private boolean isChunked() {
+        return "HTTP/1.1".equals(protocolo);
+    }
+
+    /**
+     * @return false se o fim do corpo só pode ser indicado fechando a
+     * conexão (corpo gerado para um cliente HTTP/1.0)
+     */
+    public boolean isDelimitada() {
+        return gerador == null || isChunked();
+    }
+
+    /**
+     * Escreve apenas o cabeçalho. Numa SaidaConexao ele é codificado direto
+     * no buffer da conexão, sem array intermediário.
+     *
+     * @throws IOException
+     */
+    void escreverCabecalho() throws IOException {
+        int tamanho = CodificadorCabecalho.tamanho(this);
+        if (saida instanceof SaidaConexao) {
+            SaidaConexao conexao = (SaidaConexao) saida;
+            int posicao = conexao.reservar(tamanho);
+            if (posicao >= 0) {
+                CodificadorCabecalho.codificar(this, conexao.getBuffer(), posicao);
+                conexao.avancar(tamanho);
+                return;
+            }
+        }
+        byte[] bytes = new byte[tamanho];
+        CodificadorCabecalho.codificar(this, bytes, 0);
+        saida.write(bytes);
+    }
+
+    /**
+     * Acrescenta os pedaços da resposta (cabeçalho e corpo) a uma fila do
+     * motor NIO, que os envia numa escrita agrupada. Os corpos em memória
+     * entram sem cópia; os demais entram como CorpoResposta. Não vale para
+     * corpos gerados.
+     *
+     * @param partes fila de ByteBuffer e CorpoResposta
+     */
+    void adicionarPartes(Collection<Object> partes) {
+        if (pronta != null) {
+            pronta.adicionarPartes(partes, cabecalhoConexao, !semCorpo);
+            return;
+        }
+        partes.add(ByteBuffer.wrap(montaCabecalho()));
+        if (semCorpo) {
+            return;
+        }
+        if (corpo != null) {
+            ByteBuffer buffer = corpo.comoBuffer();
+            partes.add(buffer != null ? buffer : corpo);
+        } else if (conteudoResposta != null && conteudoResposta.length > 0) {
+            partes.add(ByteBuffer.wrap(conteudoResposta));
+        }
+    }
+
     /**
      * Insere um item de cabeçalho no mapa
      *
@@ -69,58 +201,174 @@ public class RespostaHTTP {
      * @param valores lista com um ou mais valores para esta chave
      */
     public void setCabecalho(String chave, String... valores) {
+        desligarPronta();
         if (cabecalhos == null) {
-            cabecalhos = new TreeMap<>();
+            cabecalhos = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         }
         cabecalhos.put(chave, Arrays.asList(valores));
     }
 
+    /**
+     * Desfaz o vínculo com a resposta pronta antes de qualquer alteração: o
+     * mapa de cabeçalhos dela é compartilhado e imutável, então é copiado.
+     */
+    private void desligarPronta() {
+        if (pronta != null) {
+            if (cabecalhos != null) {
+                cabecalhos = copiar(cabecalhos);
+            }
+            pronta = null;
+        }
+    }
+
+    /**
+     * Cópia ordenada sem diferenciar maiúsculas: "content-length" e
+     * "Content-Length" são o mesmo cabeçalho.
+     */
+    static Map<String, List<String>> copiar(Map<String, List<String>> cabecalhos) {
+        Map<String, List<String>> copia = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        copia.putAll(cabecalhos);
+        return copia;
+    }
+
     /**
      * pega o tamanho da resposta em bytes
      *
      * @return retorna o valor em bytes do tamanho do conteudo da resposta
-     * convertido em string
+     * convertido em string, ou null se o corpo é gerado durante o envio
      */
     public String getTamanhoResposta() {
+        if (gerador != null) {
+            //desconhecido até o fim da geração
+            return null;
+        }
+        if (corpo != null) {
+            return corpo.getTamanho() + "";
+        }
         return getConteudoResposta().length + "";
     }
 
     /**
-     * converte o cabecalho em string.
+     * @return tamanho do corpo em bytes, ou -1 se é gerado durante o envio
+     */
+    long getTamanhoCorpo() {
+        if (gerador != null) {
+            return -1;
+        }
+        if (corpo != null) {
+            return corpo.getTamanho();
+        }
+        return conteudoResposta == null ? 0 : conteudoResposta.length;
+    }
+
+    /**
+     * converte o cabecalho em bytes.
      *
      * @return retorna o cabecalho em bytes
      */
     private byte[] montaCabecalho() {
-        return this.toString().getBytes();
+        return CodificadorCabecalho.codificar(this);
     }
 
     @Override
     public String toString() {
-        StringBuilder str = new StringBuilder();
-        str.append(protocolo).append(" ").append(codigoResposta).append(" ").append(mensagem).append("\r\n");
-        for (Map.Entry<String, List<String>> entry : cabecalhos.entrySet()) {
-            str.append(entry.getKey());
-            String stringCorrigida = Arrays.toString(entry.getValue().toArray()).replace("[", "").replace("]", "");
-            str.append(": ").append(stringCorrigida).append("\r\n");
-        }
-        str.append("\r\n");
-        return str.toString();
+        return new String(montaCabecalho(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Associa os bytes de uma resposta pronta. O mapa de cabeçalhos passa
+     * a ser o do modelo (o Date enviado, porém, é sempre o atual).
+     */
+    void usarPronta(RespostaPronta pronta, Map<String, List<String>> cabecalhos, byte[] conteudo) {
+        this.pronta = pronta;
+        this.cabecalhos = cabecalhos;
+        this.conteudoResposta = conteudo;
+    }
+
+    RespostaPronta getPronta() {
+        return pronta;
+    }
+
+    byte[] getCabecalhoConexao() {
+        return cabecalhoConexao;
+    }
+
+    /**
+     * Define as linhas de cabeçalho sobre a conexão (Connection,
+     * Keep-Alive). Ficam fora do mapa para não invalidar a resposta pronta.
+     *
+     * @param cabecalhoConexao linhas terminadas em CRLF, ou null
+     */
+    void setCabecalhoConexao(byte[] cabecalhoConexao) {
+        this.cabecalhoConexao = cabecalhoConexao;
+    }
+
+    boolean isSemCorpo() {
+        return semCorpo;
+    }
+
+    /**
+     * Marca a resposta de um HEAD: a linha de status e os cabeçalhos,
+     * inclusive Content-Length, são os do GET, mas o corpo não é enviado.
+     */
+    void setSemCorpo(boolean semCorpo) {
+        this.semCorpo = semCorpo;
     }
 
     //getters e setters
     public void setConteudoResposta(byte[] conteudoResposta) {
+        desligarPronta();
         this.conteudoResposta = conteudoResposta;
+        this.corpo = null;
+        this.gerador = null;
+    }
+
+    public GeradorConteudo getGerador() {
+        return gerador;
+    }
+
+    /**
+     * Define um corpo gerado durante o envio: o cabeçalho sai antes e o
+     * conteúdo segue conforme é escrito, sem Content-Length.
+     *
+     * @param gerador produtor do corpo
+     */
+    public void setGerador(GeradorConteudo gerador) {
+        desligarPronta();
+        this.gerador = gerador;
+        this.corpo = null;
+        this.conteudoResposta = null;
+    }
+
+    public CorpoResposta getCorpo() {
+        return corpo;
+    }
+
+    public void setCorpo(CorpoResposta corpo) {
+        desligarPronta();
+        this.corpo = corpo;
+        this.gerador = null;
+        this.conteudoResposta = null;
     }
 
     public void setSaida(OutputStream saida) {
         this.saida = saida;
     }
 
+    public WritableByteChannel getCanal() {
+        return canal;
+    }
+
+    public void setCanal(WritableByteChannel canal) {
+        this.canal = canal;
+    }
+
     public String getProtocolo() {
         return protocolo;
     }
 
     public void setProtocolo(String protocolo) {
+        desligarPronta();
         this.protocolo = protocolo;
     }
 
@@ -129,6 +377,7 @@ public class RespostaHTTP {
     }
 
     public void setCodigoResposta(int codigoResposta) {
+        desligarPronta();
         this.codigoResposta = codigoResposta;
     }
 
@@ -137,14 +386,29 @@ public class RespostaHTTP {
     }
 
     public void setMensagem(String mensagem) {
+        desligarPronta();
         this.mensagem = mensagem;
     }
 
+    /**
+     * Mapa de cabeçalhos que pode ser alterado: numa resposta pronta o mapa
+     * é compartilhado, então ela é desligada antes (ver lerCabecalhos).
+     */
     public Map<String, List<String>> getCabecalhos() {
+        desligarPronta();
+        return cabecalhos;
+    }
+
+    /**
+     * Cabeçalhos só para leitura, sem desligar a resposta pronta; quem
+     * serializa ou consulta a resposta usa este, e não altera o mapa.
+     */
+    Map<String, List<String>> lerCabecalhos() {
         return cabecalhos;
     }
 
     public void setCabecalhos(Map<String, List<String>> cabecalhos) {
+        desligarPronta();
         this.cabecalhos = cabecalhos;
     }
 
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resposta de um recurso estático já serializada: linha de status,
+ * cabeçalhos e corpo prontos em bytes. Só o valor do cabeçalho Date muda
+ * de uma requisição para outra, então o cabeçalho é guardado em duas
+ * partes, antes e depois da data.
+ *
+ * Fica guardada no próprio Recurso, de modo que sai do cache junto com
+ * ele.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class RespostaPronta {
+
+    //posições em Recurso: status (200/404/304) x protocolo (1.1/1.0)
+    static final int VARIACOES = 6;
+
+    private static final String CABECALHO_DATA = "\r\nDate: ";
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final String protocolo;
+    private final int codigoResposta;
+    private final String mensagem;
+    private final Map<String, List<String>> cabecalhos;
+    private final byte[] antesData;
+    private final byte[] depoisData;
+    private final byte[] conteudo;
+
+    /**
+     * Serializa uma resposta modelo, que precisa ter o cabeçalho Date.
+     *
+     * @param modelo resposta completa de um recurso
+     */
+    RespostaPronta(RespostaHTTP modelo) {
+        String cabecalho = modelo.toString();
+        int inicioData = cabecalho.indexOf(CABECALHO_DATA);
+        if (inicioData < 0) {
+            throw new IllegalArgumentException("A resposta modelo precisa do cabeçalho Date");
+        }
+        inicioData += CABECALHO_DATA.length();
+        int fimData = cabecalho.indexOf("\r\n", inicioData);
+        this.protocolo = modelo.getProtocolo();
+        this.codigoResposta = modelo.getCodigoResposta();
+        this.mensagem = modelo.getMensagem();
+        this.cabecalhos = Collections.unmodifiableMap(RespostaHTTP.copiar(modelo.lerCabecalhos()));
+        this.antesData = cabecalho.substring(0, inicioData).getBytes(StandardCharsets.ISO_8859_1);
+        this.depoisData = cabecalho.substring(fimData).getBytes(StandardCharsets.ISO_8859_1);
+        this.conteudo = modelo.getConteudoResposta();
+    }
+
+    /**
+     * Posição da variação em Recurso para o status e o protocolo dados.
+     *
+     * @return a posição ou -1 se a combinação não é guardada
+     */
+    static int indice(int codigoResposta, String protocolo) {
+        int base;
+        if (codigoResposta == 200) {
+            base = 0;
+        } else if (codigoResposta == 404) {
+            base = 2;
+        } else if (codigoResposta == 304) {
+            base = 4;
+        } else {
+            return -1;
+        }
+        if ("HTTP/1.1".equals(protocolo)) {
+            return base;
+        }
+        return "HTTP/1.0".equals(protocolo) ? base + 1 : -1;
+    }
+
+    /**
+     * @return uma resposta que, ao ser enviada, usa os bytes prontos
+     */
+    RespostaHTTP criarResposta() {
+        RespostaHTTP resposta = new RespostaHTTP(protocolo, codigoResposta, mensagem);
+        resposta.usarPronta(this, cabecalhos, conteudo);
+        return resposta;
+    }
+
+    /**
+     * Escreve a resposta com a data atual.
+     *
+     * @param saida destino dos bytes
+     * @param conexao linhas Connection/Keep-Alive a acrescentar, pode ser
+     * null
+     * @param comCorpo false para responder um HEAD
+     * @throws IOException em erro de escrita
+     */
+    void escrever(OutputStream saida, byte[] conexao, boolean comCorpo) throws IOException {
+        saida.write(antesData);
+        saida.write(RelogioHTTP.bytesAgora());
+        if (conexao == null) {
+            saida.write(depoisData);
+        } else {
+            //as linhas entram antes do CRLF que encerra o cabeçalho
+            saida.write(depoisData, 0, depoisData.length - CRLF.length);
+            saida.write(conexao);
+            saida.write(CRLF);
+        }
+        if (comCorpo) {
+            saida.write(conteudo);
+        }
+    }
+
+    /**
+     * Acrescenta os pedaços da resposta, com a data atual, a uma fila de
+     * escrita agrupada, sem copiá-los.
+     *
+     * @param partes fila de ByteBuffer do motor NIO
+     * @param conexao linhas Connection/Keep-Alive a acrescentar, pode ser
+     * null
+     * @param comCorpo false para responder um HEAD
+     */
+    void adicionarPartes(Collection<Object> partes, byte[] conexao, boolean comCorpo) {
+        partes.add(ByteBuffer.wrap(antesData));
+        partes.add(ByteBuffer.wrap(RelogioHTTP.bytesAgora()));
+        if (conexao == null) {
+            partes.add(ByteBuffer.wrap(depoisData));
+        } else {
+            partes.add(ByteBuffer.wrap(depoisData, 0, depoisData.length - CRLF.length));
+            partes.add(ByteBuffer.wrap(conexao));
+            partes.add(ByteBuffer.wrap(CRLF));
+        }
+        if (comCorpo && conteudo.length > 0) {
+            partes.add(ByteBuffer.wrap(conteudo));
+        }
+    }
+
+}
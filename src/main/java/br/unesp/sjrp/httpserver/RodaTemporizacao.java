@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Roda de temporização (hashed timing wheel) para os prazos das conexões.
+ * O tempo é dividido em tiques de tamanho fixo e cada tique cai numa das
+ * posições da roda, de modo que agendar e vencer custam O(1) não importa
+ * quantas conexões estejam abertas; a cada tique só a lista de uma
+ * posição é percorrida.
+ *
+ * Cada conexão tem um Temporizador cujo prazo é só um campo volátil:
+ * adiar o prazo para mais tarde (o caso comum, a cada requisição) não
+ * mexe na roda. Quando a posição é visitada e o prazo foi adiado, o
+ * temporizador é reinserido para o tempo que falta; só um prazo mais cedo
+ * que o já agendado precisa entrar na roda de novo.
+ *
+ * A roda é girada por avancar, chamado pela própria thread do laço de
+ * eventos (motor NIO) ou por uma thread própria (iniciar). As ações
+ * vencidas rodam nessa thread e precisam ser rápidas.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class RodaTemporizacao implements Closeable {
+
+    //prazo de um temporizador desarmado ou de nenhuma verificação agendada
+    private static final long NUNCA = Long.MAX_VALUE;
+
+    private final long resolucao;
+    private final int mascara;
+    //listas duplamente ligadas dos temporizadores de cada posição
+    private final Temporizador[] posicoes;
+    //temporizadores antecipados ou cancelados por qualquer thread
+    private final Queue<Temporizador> pendentes = new ConcurrentLinkedQueue<>();
+    private final long origem = System.nanoTime();
+    //último tique processado; só a thread que gira a roda mexe nele
+    private long tique;
+    private volatile Thread thread;
+
+    /**
+     * Roda com tiques de 100 ms e 512 posições (uma volta a cada 51 s).
+     */
+    RodaTemporizacao() {
+        this(100, 512);
+    }
+
+    /**
+     * @param resolucao duração de um tique em milissegundos
+     * @param posicoes quantidade de posições, arredondada para a próxima
+     * potência de 2
+     */
+    RodaTemporizacao(long resolucao, int posicoes) {
+        if (resolucao <= 0) {
+            throw new IllegalArgumentException("Resolução inválida: " + resolucao);
+        }
+        int tamanho = Integer.highestOneBit(Math.max(2, posicoes) - 1) << 1;
+        this.resolucao = resolucao;
+        this.mascara = tamanho - 1;
+        this.posicoes = new Temporizador[tamanho];
+    }
+
+    /**
+     * @return o relógio da roda em milissegundos (monotônico)
+     */
+    long agora() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origem);
+    }
+
+    long getResolucao() {
+        return resolucao;
+    }
+
+    /**
+     * Cria um temporizador, ainda desarmado.
+     *
+     * @param acao executada na thread da roda quando o prazo vencer
+     */
+    Temporizador criar(Runnable acao) {
+        return new Temporizador(acao);
+    }
+
+    /**
+     * Gira a roda até o instante dado, executando as ações dos prazos
+     * vencidos. Só uma thread pode girar a roda.
+     *
+     * @param instante valor de agora()
+     */
+    void avancar(long instante) {
+        Temporizador pendente;
+        while ((pendente = pendentes.poll()) != null) {
+            //liberado antes de ler o prazo, para não perder um adiar concorrente
+            pendente.naFila.set(false);
+            agendar(pendente);
+        }
+        long alvo = instante / resolucao;
+        //depois de uma pausa longa basta uma volta: cada um guarda o seu tique
+        long ultimo = Math.min(alvo, tique + posicoes.length);
+        while (tique < ultimo) {
+            tique++;
+            int indice = (int) tique & mascara;
+            Temporizador atual = posicoes[indice];
+            posicoes[indice] = null;
+            while (atual != null) {
+                Temporizador seguinte = atual.proximo;
+                if (atual.tique > alvo) {
+                    //de uma volta futura
+                    inserir(atual, indice);
+                } else {
+                    atual.naRoda = false;
+                    verificar(atual, instante);
+                }
+                atual = seguinte;
+            }
+        }
+        tique = Math.max(tique, alvo);
+    }
+
+    /**
+     * Gira a roda numa thread própria, um tique por vez.
+     *
+     * @param nome nome da thread
+     */
+    void iniciar(String nome) {
+        Thread girando = new Thread(() -> {
+            while (thread != null) {
+                avancar(agora());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(resolucao));
+            }
+        }, nome);
+        girando.setDaemon(true);
+        thread = girando;
+        girando.start();
+    }
+
+    /**
+     * Para a thread iniciada por iniciar. Os prazos pendentes não vencem
+     * mais.
+     */
+    @Override
+    public void close() {
+        Thread girando = thread;
+        thread = null;
+        if (girando != null) {
+            LockSupport.unpark(girando);
+        }
+    }
+
+    /**
+     * Trata um temporizador cujo tique chegou: vence o prazo ou, se ele
+     * foi adiado, o reinsere para o tempo que falta.
+     */
+    private void verificar(Temporizador temporizador, long instante) {
+        //publica que não há verificação antes de reler o prazo: quem adiar
+        //ao mesmo tempo ou vê NUNCA e entra nos pendentes ou tem o seu
+        //prazo visto aqui
+        temporizador.verificacao = NUNCA;
+        long prazo = temporizador.prazo;
+        if (temporizador.cancelado || prazo == NUNCA) {
+            return;
+        }
+        if (prazo > instante) {
+            agendar(temporizador);
+            return;
+        }
+        try {
+            temporizador.acao.run();
+        } catch (RuntimeException ex) {
+            Logger.getLogger(RodaTemporizacao.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    /**
+     * Põe o temporizador na posição do seu prazo atual, a não ser que já
+     * esteja numa que vence antes. Um prazo já vencido cai no próximo
+     * tique; um cancelado sai da roda.
+     */
+    private void agendar(Temporizador temporizador) {
+        long prazo = temporizador.prazo;
+        if (temporizador.cancelado) {
+            remover(temporizador);
+            return;
+        }
+        if (prazo == NUNCA || temporizador.naRoda && temporizador.verificacao <= prazo) {
+            return;
+        }
+        remover(temporizador);
+        temporizador.verificacao = prazo;
+        temporizador.tique = Math.max((prazo + resolucao - 1) / resolucao, tique + 1);
+        inserir(temporizador, (int) temporizador.tique & mascara);
+    }
+
+    private void inserir(Temporizador temporizador, int indice) {
+        Temporizador primeiro = posicoes[indice];
+        temporizador.anterior = null;
+        temporizador.proximo = primeiro;
+        if (primeiro != null) {
+            primeiro.anterior = temporizador;
+        }
+        posicoes[indice] = temporizador;
+        temporizador.naRoda = true;
+    }
+
+    private void remover(Temporizador temporizador) {
+        if (!temporizador.naRoda) {
+            return;
+        }
+        if (temporizador.anterior != null) {
+            temporizador.anterior.proximo = temporizador.proximo;
+        } else {
+            posicoes[(int) temporizador.tique & mascara] = temporizador.proximo;
+        }
+        if (temporizador.proximo != null) {
+            temporizador.proximo.anterior = temporizador.anterior;
+        }
+        temporizador.anterior = null;
+        temporizador.proximo = null;
+        temporizador.naRoda = false;
+        temporizador.verificacao = NUNCA;
+    }
+
+    /**
+     * Prazo de uma conexão. Pode ser adiado, desarmado e cancelado de
+     * qualquer thread; adiar para mais tarde não toca na roda.
+     */
+    final class Temporizador {
+
+        private final Runnable acao;
+        private volatile long prazo = NUNCA;
+        //prazo com que está na roda (NUNCA se fora dela); só a thread que
+        //gira a roda escreve
+        private volatile long verificacao = NUNCA;
+        private volatile boolean cancelado;
+        private final AtomicBoolean naFila = new AtomicBoolean();
+        //lista da posição, só da thread que gira a roda
+        private Temporizador anterior;
+        private Temporizador proximo;
+        private long tique;
+        private boolean naRoda;
+
+        private Temporizador(Runnable acao) {
+            this.acao = acao;
+        }
+
+        /**
+         * Passa a vencer daqui a atraso milissegundos, substituindo o prazo
+         * anterior.
+         */
+        void adiar(long atraso) {
+            long novo = agora() + atraso;
+            prazo = novo;
+            if (novo < verificacao) {
+                avisar();
+            }
+        }
+
+        /**
+         * Deixa de vencer até o próximo adiar.
+         */
+        void desarmar() {
+            prazo = NUNCA;
+        }
+
+        /**
+         * Desarma para sempre e sai da roda.
+         */
+        void cancelar() {
+            cancelado = true;
+            prazo = NUNCA;
+            avisar();
+        }
+
+        long getPrazo() {
+            return prazo;
+        }
+
+        private void avisar() {
+            if (naFila.compareAndSet(false, true)) {
+                pendentes.add(this);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Escolhe o Manipulador de cada requisição pelo caminho e pelo método.
+ *
+ * As rotas são compiladas numa árvore radix: trechos fixos em comum
+ * ficam num único nó e os filhos são escolhidos pelo primeiro caractere,
+ * então o custo de encontrar uma rota depende do tamanho do caminho e
+ * não de quantas rotas existem. O padrão de uma rota aceita:
+ * <ul>
+ * <li>trechos fixos: /api/estado</li>
+ * <li>parâmetros ocupando um segmento inteiro: /usuarios/{id}</li>
+ * <li>curinga no último segmento, com o resto do caminho: /arquivos/*caminho
+ * (ou só *, guardado no parâmetro "*")</li>
+ * </ul>
+ * Trechos fixos têm preferência sobre parâmetros, que têm preferência
+ * sobre curingas. Os parâmetros vão para a requisição (getParametro) como
+ * vieram, sem decodificar. A query string não participa da escolha.
+ *
+ * Uma rota sem método atende todos; HEAD usa a rota de GET quando não tem
+ * uma própria. Caminho conhecido com método sem rota recebe 405 com Allow;
+ * caminho desconhecido vai para o manipulador padrão (os arquivos
+ * estáticos).
+ *
+ * As rotas devem ser registradas antes de o servidor começar a atender;
+ * depois disso a árvore só é lida.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public final class Roteador implements Manipulador {
+
+    private static final String TIPO_JSON = "application/json; charset=utf-8";
+    private static final byte[] SAUDE = "{\"status\":\"ok\"}".getBytes(StandardCharsets.US_ASCII);
+
+    private static volatile Roteador padrao = criar(new Configuracao());
+
+    private final No raiz = new No("");
+    private final Manipulador naoEncontrado;
+
+    /**
+     * Roteador que manda para os arquivos estáticos (ArquivosEstaticos
+     * padrão) os caminhos sem rota.
+     */
+    public Roteador() {
+        //assíncrono para o modo nio não ler o disco no laço de eventos
+        this(new ManipuladorAssincrono() {
+            @Override
+            public CompletionStage<RespostaHTTP> atenderAssincrono(RequisicaoHTTP requisicao) {
+                return ArquivosEstaticos.getPadrao().atenderAssincrono(requisicao);
+            }
+
+            @Override
+            public RespostaHTTP atender(RequisicaoHTTP requisicao) throws IOException {
+                return ArquivosEstaticos.getPadrao().atender(requisicao);
+            }
+        });
+    }
+
+    /**
+     * @param naoEncontrado manipulador dos caminhos sem rota
+     */
+    public Roteador(Manipulador naoEncontrado) {
+        this.naoEncontrado = naoEncontrado;
+    }
+
+    /**
+     * Roteador do servidor: as métricas (metricas.caminho) e a verificação
+     * de saúde (saude.caminho) como rotas, o resto para os arquivos.
+     *
+     * @param configuracao opções de inicialização
+     * @return roteador com as rotas do próprio servidor
+     */
+    public static Roteador criar(Configuracao configuracao) {
+        Roteador roteador = new Roteador();
+        if (configuracao.getCaminhoMetricas() != null) {
+            roteador.adicionar("GET", configuracao.getCaminhoMetricas(),
+                    requisicao -> Metricas.getPadrao().responder(requisicao));
+        }
+        if (configuracao.getCaminhoSaude() != null) {
+            roteador.adicionar("GET", configuracao.getCaminhoSaude(), Roteador::responderSaude);
+        }
+        return roteador;
+    }
+
+    public static Roteador getPadrao() {
+        return padrao;
+    }
+
+    public static void setPadrao(Roteador roteador) {
+        padrao = roteador;
+    }
+
+    /**
+     * Registra uma rota para qualquer método.
+     */
+    public void adicionar(String padrao, Manipulador manipulador) {
+        adicionar(null, padrao, manipulador);
+    }
+
+    /**
+     * Registra uma rota.
+     *
+     * @param metodo método atendido ou null para todos
+     * @param padrao caminho começando com '/', com {parametro} e * opcionais
+     * @param manipulador quem atende a rota
+     * @throws IllegalArgumentException se o padrão for inválido, conflitar
+     * com o nome de parâmetro de outra rota ou já estiver registrado para o
+     * método
+     */
+    public void adicionar(String metodo, String padrao, Manipulador manipulador) {
+        if (padrao == null || !padrao.startsWith("/")) {
+            throw new IllegalArgumentException("O caminho da rota deve começar com '/': " + padrao);
+        }
+        No no = raiz;
+        int i = 0;
+        while (i < padrao.length()) {
+            char c = padrao.charAt(i);
+            if (c == '{') {
+                int fecha = padrao.indexOf('}', i);
+                if (padrao.charAt(i - 1) != '/' || fecha < 0
+                        || (fecha + 1 < padrao.length() && padrao.charAt(fecha + 1) != '/')) {
+                    throw new IllegalArgumentException("Parâmetro deve ocupar um segmento inteiro: " + padrao);
+                }
+                String nome = padrao.substring(i + 1, fecha);
+                if (nome.isEmpty() || nome.indexOf('/') >= 0 || nome.indexOf('{') >= 0) {
+                    throw new IllegalArgumentException("Nome de parâmetro inválido: " + padrao);
+                }
+                if (no.parametro == null) {
+                    no.parametro = new No("");
+                    no.nomeParametro = nome;
+                } else if (!no.nomeParametro.equals(nome)) {
+                    throw new IllegalArgumentException("Parâmetro {" + nome + "} conflita com {"
+                            + no.nomeParametro + "}: " + padrao);
+                }
+                no = no.parametro;
+                i = fecha + 1;
+            } else if (c == '*') {
+                String nome = padrao.substring(i + 1);
+                if (padrao.charAt(i - 1) != '/' || nome.indexOf('/') >= 0) {
+                    throw new IllegalArgumentException("Curinga só no último segmento: " + padrao);
+                }
+                if (no.curinga == null) {
+                    no.curinga = new Destinos();
+                    no.nomeCuringa = nome.isEmpty() ? "*" : nome;
+                }
+                no.curinga.adicionar(metodo, manipulador, padrao);
+                return;
+            } else {
+                int fim = i;
+                while (fim < padrao.length() && padrao.charAt(fim) != '{' && padrao.charAt(fim) != '*') {
+                    fim++;
+                }
+                no = inserir(no, padrao.substring(i, fim));
+                i = fim;
+            }
+        }
+        if (no.destinos == null) {
+            no.destinos = new Destinos();
+        }
+        no.destinos.adicionar(metodo, manipulador, padrao);
+    }
+
+    /**
+     * Escolhe o manipulador da requisição e guarda nela os parâmetros do
+     * caminho.
+     *
+     * @return o manipulador da rota, o que responde 405 ou o padrão
+     */
+    public Manipulador encontrar(RequisicaoHTTP requisicao) {
+        String recurso = requisicao.getRecurso();
+        if (recurso == null) {
+            return naoEncontrado;
+        }
+        int fim = recurso.indexOf('?');
+        Captura captura = new Captura();
+        Destinos destinos = procurar(raiz, recurso, 0, fim < 0 ? recurso.length() : fim, captura);
+        if (destinos == null) {
+            return naoEncontrado;
+        }
+        Manipulador manipulador = destinos.para(requisicao.getMetodo());
+        if (manipulador == null) {
+            String permitidos = destinos.permitidos();
+            return r -> metodoNaoPermitido(r, permitidos);
+        }
+        for (int i = 0; i < captura.quantidade; i++) {
+            requisicao.setParametro(captura.nomes[i],
+                    recurso.substring(captura.posicoes[2 * i], captura.posicoes[2 * i + 1]));
+        }
+        return manipulador;
+    }
+
+    @Override
+    public RespostaHTTP atender(RequisicaoHTTP requisicao) throws IOException {
+        return encontrar(requisicao).atender(requisicao);
+    }
+
+    /**
+     * Desce a árvore a partir de um nó cujo trecho já casou até inicio.
+     * Volta atrás quando um caminho fixo não leva a nenhuma rota, para
+     * tentar o parâmetro e o curinga do mesmo nó.
+     */
+    private static Destinos procurar(No no, String caminho, int inicio, int fim, Captura captura) {
+        if (inicio == fim && no.destinos != null) {
+            return no.destinos;
+        }
+        if (inicio < fim) {
+            No filho = no.filho(caminho.charAt(inicio));
+            if (filho != null && inicio + filho.trecho.length() <= fim
+                    && caminho.startsWith(filho.trecho, inicio)) {
+                Destinos destinos = procurar(filho, caminho, inicio + filho.trecho.length(), fim, captura);
+                if (destinos != null) {
+                    return destinos;
+                }
+            }
+            if (no.parametro != null && caminho.charAt(inicio) != '/') {
+                int barra = caminho.indexOf('/', inicio);
+                if (barra < 0 || barra > fim) {
+                    barra = fim;
+                }
+                int marca = captura.quantidade;
+                captura.adicionar(no.nomeParametro, inicio, barra);
+                Destinos destinos = procurar(no.parametro, caminho, barra, fim, captura);
+                if (destinos != null) {
+                    return destinos;
+                }
+                captura.quantidade = marca;
+            }
+        }
+        if (no.curinga != null) {
+            captura.adicionar(no.nomeCuringa, inicio, fim);
+            return no.curinga;
+        }
+        return null;
+    }
+
+    /**
+     * Insere um trecho fixo abaixo do nó, dividindo o filho que tiver só
+     * parte do trecho em comum.
+     *
+     * @return o nó onde o trecho termina
+     */
+    private static No inserir(No no, String trecho) {
+        while (!trecho.isEmpty()) {
+            No filho = no.filho(trecho.charAt(0));
+            if (filho == null) {
+                filho = new No(trecho);
+                no.adicionarFilho(filho);
+                return filho;
+            }
+            int comum = 0;
+            int limite = Math.min(trecho.length(), filho.trecho.length());
+            while (comum < limite && trecho.charAt(comum) == filho.trecho.charAt(comum)) {
+                comum++;
+            }
+            if (comum < filho.trecho.length()) {
+                No meio = new No(filho.trecho.substring(0, comum));
+                filho.trecho = filho.trecho.substring(comum);
+                meio.adicionarFilho(filho);
+                no.substituirFilho(meio);
+                filho = meio;
+            }
+            no = filho;
+            trecho = trecho.substring(comum);
+        }
+        return no;
+    }
+
+    private static RespostaHTTP metodoNaoPermitido(RequisicaoHTTP requisicao, String permitidos) {
+        RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 405, "Method Not Allowed");
+        resposta.setConteudoResposta(new byte[0]);
+        ArquivosEstaticos.preencherCabecalhos(resposta, "text/plain");
+        resposta.setCabecalho("Allow", permitidos);
+        return resposta;
+    }
+
+    private static RespostaHTTP responderSaude(RequisicaoHTTP requisicao) {
+        RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
+        resposta.setConteudoResposta(SAUDE);
+        ArquivosEstaticos.preencherCabecalhos(resposta, TIPO_JSON);
+        resposta.setCabecalho("Cache-Control", "no-cache");
+        return resposta;
+    }
+
+    private static final class No {
+
+        //trecho fixo do caminho que leva do pai até este nó
+        private String trecho;
+        //filhos fixos e o primeiro caractere do trecho de cada um
+        private No[] filhos = new No[0];
+        private char[] iniciais = new char[0];
+        //segmento qualquer; o nó dele tem trecho vazio
+        private No parametro;
+        private String nomeParametro;
+        //resto do caminho
+        private Destinos curinga;
+        private String nomeCuringa;
+        //rotas que terminam aqui
+        private Destinos destinos;
+
+        No(String trecho) {
+            this.trecho = trecho;
+        }
+
+        No filho(char inicial) {
+            for (int i = 0; i < iniciais.length; i++) {
+                if (iniciais[i] == inicial) {
+                    return filhos[i];
+                }
+            }
+            return null;
+        }
+
+        void adicionarFilho(No filho) {
+            filhos = Arrays.copyOf(filhos, filhos.length + 1);
+            iniciais = Arrays.copyOf(iniciais, iniciais.length + 1);
+            filhos[filhos.length - 1] = filho;
+            iniciais[iniciais.length - 1] = filho.trecho.charAt(0);
+        }
+
+        //troca o filho com a mesma inicial
+        void substituirFilho(No filho) {
+            for (int i = 0; i < iniciais.length; i++) {
+                if (iniciais[i] == filho.trecho.charAt(0)) {
+                    filhos[i] = filho;
+                }
+            }
+        }
+    }
+
+    /**
+     * Manipuladores de uma rota, por método.
+     */
+    private static final class Destinos {
+
+        private String[] metodos = new String[0];
+        private Manipulador[] manipuladores = new Manipulador[0];
+        private Manipulador qualquer;
+
+        void adicionar(String metodo, Manipulador manipulador, String padrao) {
+            if (metodo == null) {
+                if (qualquer != null) {
+                    throw new IllegalArgumentException("Rota já registrada: " + padrao);
+                }
+                qualquer = manipulador;
+                return;
+            }
+            if (buscar(metodo) != null) {
+                throw new IllegalArgumentException("Rota já registrada: " + metodo + " " + padrao);
+            }
+            metodos = Arrays.copyOf(metodos, metodos.length + 1);
+            manipuladores = Arrays.copyOf(manipuladores, manipuladores.length + 1);
+            metodos[metodos.length - 1] = metodo;
+            manipuladores[manipuladores.length - 1] = manipulador;
+        }
+
+        Manipulador para(String metodo) {
+            Manipulador manipulador = buscar(metodo);
+            if (manipulador == null && "HEAD".equals(metodo)) {
+                manipulador = buscar("GET");
+            }
+            return manipulador != null ? manipulador : qualquer;
+        }
+
+        String permitidos() {
+            StringBuilder texto = new StringBuilder();
+            for (String metodo : metodos) {
+                if (texto.length() > 0) {
+                    texto.append(", ");
+                }
+                texto.append(metodo);
+            }
+            if (buscar("GET") != null && buscar("HEAD") == null) {
+                texto.append(", HEAD");
+            }
+            return texto.toString();
+        }
+
+        private Manipulador buscar(String metodo) {
+            for (int i = 0; i < metodos.length; i++) {
+                if (metodos[i].equals(metodo)) {
+                    return manipuladores[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Parâmetros encontrados na descida, como posições no caminho; só
+     * viram String quando a rota é escolhida.
+     */
+    private static final class Captura {
+
+        private String[] nomes;
+        private int[] posicoes;
+        private int quantidade;
+
+        void adicionar(String nome, int inicio, int fim) {
+            if (nomes == null) {
+                nomes = new String[4];
+                posicoes = new int[8];
+            } else if (quantidade == nomes.length) {
+                nomes = Arrays.copyOf(nomes, quantidade * 2);
+                posicoes = Arrays.copyOf(posicoes, quantidade * 4);
+            }
+            nomes[quantidade] = nome;
+            posicoes[2 * quantidade] = inicio;
+            posicoes[2 * quantidade + 1] = fim;
+            quantidade++;
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Saída de uma conexão do modo de threads. Junta as respostas num buffer
+ * reaproveitado (o cabeçalho é codificado direto nele) e, quando há um
+ * canal, manda o que estiver no buffer e um corpo grande numa única
+ * escrita agrupada, em vez de duas.
+ *
+ * Com um PoolBuffers o buffer é um ByteBuffer direto emprestado só quando
+ * há o que escrever e devolvido por liberar, com a conexão ociosa.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class SaidaConexao extends OutputStream {
+
+    private final OutputStream destino;
+    private final GatheringByteChannel canal;
+    private final PoolBuffers pool;
+    private final int tamanho;
+    //em modo de escrita: a posição é quanto já foi usado
+    private ByteBuffer buffer;
+
+    /**
+     * @param destino stream do socket
+     * @param canal canal do mesmo socket, pode ser null
+     * @param tamanho tamanho do buffer
+     */
+    SaidaConexao(OutputStream destino, GatheringByteChannel canal, int tamanho) {
+        this.destino = destino;
+        this.canal = canal;
+        this.pool = null;
+        this.tamanho = tamanho;
+        this.buffer = ByteBuffer.allocate(tamanho);
+    }
+
+    /**
+     * Saída com buffer emprestado de um pool. Os bytes saem pelo canal.
+     *
+     * @param canal canal do socket
+     * @param pool de onde o buffer é emprestado
+     * @param tamanho tamanho mínimo do buffer
+     */
+    SaidaConexao(GatheringByteChannel canal, PoolBuffers pool, int tamanho) {
+        this.destino = null;
+        this.canal = canal;
+        this.pool = pool;
+        this.tamanho = tamanho;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ByteBuffer atual = buffer();
+        if (!atual.hasRemaining()) {
+            esvaziar();
+        }
+        atual.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int inicio, int quantidade) throws IOException {
+        ByteBuffer atual = buffer();
+        if (quantidade <= atual.remaining()) {
+            atual.put(b, inicio, quantidade);
+        } else if (canal != null) {
+            //o que está no buffer (ex: o cabeçalho) e o bloco numa só escrita
+            atual.flip();
+            ByteBuffer[] partes = {atual, ByteBuffer.wrap(b, inicio, quantidade)};
+            while (partes[1].hasRemaining()) {
+                canal.write(partes);
+            }
+            atual.clear();
+        } else if (quantidade < atual.capacity()) {
+            esvaziar();
+            atual.put(b, inicio, quantidade);
+        } else {
+            esvaziar();
+            destino.write(b, inicio, quantidade);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        esvaziar();
+        if (destino != null) {
+            destino.flush();
+        }
+    }
+
+    /**
+     * Garante espaço contíguo no buffer para uma escrita direta nele.
+     *
+     * @param quantidade bytes necessários
+     * @return a posição em getBuffer onde escrever, ou -1 se não cabe
+     * @throws IOException se precisar esvaziar o buffer e a escrita falhar
+     */
+    int reservar(int quantidade) throws IOException {
+        ByteBuffer atual = buffer();
+        if (quantidade > atual.capacity()) {
+            return -1;
+        }
+        if (quantidade > atual.remaining()) {
+            esvaziar();
+        }
+        return atual.position();
+    }
+
+    /**
+     * Confirma os bytes escritos direto no buffer após reservar.
+     */
+    void avancar(int quantidade) {
+        buffer.position(buffer.position() + quantidade);
+    }
+
+    /**
+     * @return o buffer, para escritas em posições absolutas após reservar
+     */
+    ByteBuffer getBuffer() {
+        return buffer();
+    }
+
+    /**
+     * Devolve o buffer ao pool, descartando o que não foi enviado. Só a
+     * thread que usa a saída pode chamar; a próxima escrita empresta outro.
+     */
+    void liberar() {
+        if (pool != null && buffer != null) {
+            pool.devolver(buffer);
+            buffer = null;
+        }
+    }
+
+    private ByteBuffer buffer() {
+        if (buffer == null) {
+            buffer = pool.emprestar(tamanho);
+        }
+        return buffer;
+    }
+
+    private void esvaziar() throws IOException {
+        if (buffer == null || buffer.position() == 0) {
+            return;
+        }
+        if (canal != null) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+        } else {
+            destino.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        }
+        buffer.clear();
+    }
+
+}
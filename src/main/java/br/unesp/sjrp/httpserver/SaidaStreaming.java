@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Saída de um corpo gerado aos poucos. Os bytes são juntados em um buffer
+ * de tamanho fixo e cada vez que ele enche (ou num flush) viram um pedaço
+ * do Transfer-Encoding: chunked. Sem chunked (clientes HTTP/1.0) os bytes
+ * passam como estão e o fim do corpo é o fim da conexão.
+ *
+ * O close escreve o pedaço final, mas não fecha a saída da conexão.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+class SaidaStreaming extends OutputStream {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] FIM = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream destino;
+    private final boolean chunked;
+    private final byte[] buffer;
+    private int usados;
+    private boolean fechada;
+
+    SaidaStreaming(OutputStream destino, int tamanhoBuffer, boolean chunked) {
+        this.destino = destino;
+        this.chunked = chunked;
+        this.buffer = new byte[tamanhoBuffer];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        verificarAberta();
+        if (usados == buffer.length) {
+            esvaziar();
+        }
+        buffer[usados++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int inicio, int tamanho) throws IOException {
+        verificarAberta();
+        if (tamanho >= buffer.length) {
+            //blocos grandes viram um pedaço sem passar pelo buffer
+            esvaziar();
+            escreverPedaco(b, inicio, tamanho);
+            return;
+        }
+        if (tamanho > buffer.length - usados) {
+            esvaziar();
+        }
+        System.arraycopy(b, inicio, buffer, usados, tamanho);
+        usados += tamanho;
+    }
+
+    /**
+     * Envia o que estiver no buffer como um pedaço e descarrega a conexão.
+     */
+    @Override
+    public void flush() throws IOException {
+        verificarAberta();
+        esvaziar();
+        destino.flush();
+    }
+
+    /**
+     * Termina o corpo. A saída da conexão não é descarregada aqui: a
+     * resposta pode seguir junto com outras do pipeline.
+     */
+    @Override
+    public void close() throws IOException {
+        if (fechada) {
+            return;
+        }
+        esvaziar();
+        if (chunked) {
+            destino.write(FIM);
+        }
+        fechada = true;
+    }
+
+    private void esvaziar() throws IOException {
+        if (usados > 0) {
+            escreverPedaco(buffer, 0, usados);
+            usados = 0;
+        }
+    }
+
+    private void escreverPedaco(byte[] b, int inicio, int tamanho) throws IOException {
+        if (tamanho == 0) {
+            //um pedaço vazio encerraria o corpo
+            return;
+        }
+        if (chunked) {
+            destino.write(Integer.toHexString(tamanho).getBytes(StandardCharsets.US_ASCII));
+            destino.write(CRLF);
+            destino.write(b, inicio, tamanho);
+            destino.write(CRLF);
+        } else {
+            destino.write(b, inicio, tamanho);
+        }
+    }
+
+    private void verificarAberta() throws IOException {
+        if (fechada) {
+            throw new IOException("O corpo da resposta já foi encerrado");
+        }
+    }
+
+}
@@ -18,27 +18,261 @@
 
 package br.unesp.sjrp.httpserver;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * Servidor HTTP. Pode ser iniciado pelo main ou dentro de outro programa
+ * (testes, GeradorCarga): com porta=0 o sistema escolhe uma porta livre,
+ * informada por getPorta.
  *
  * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
  */
-public class Servidor {
+public class Servidor implements Closeable {
 
-    public static void main(String[] args) throws IOException {
-        /* cria um socket "servidor" associado a porta 8000
-         já aguardando conexões
-         */
-        ServerSocket servidor = new ServerSocket(8000);
-        ExecutorService pool = Executors.newFixedThreadPool(20);
+    private final Configuracao configuracao;
+    private GrupoAceitacao aceitacao;
+    //um pool por aceitador
+    private ExecutorService[] pools;
+    private LimitesHTTP2 http2;
+    private ServidorNIO servidorNIO;
+    private Thread aceitador;
+    //modo de threads: prazos das conexões e conexões ociosas sem thread
+    private PoliticaConexao politica;
+    private RodaTemporizacao roda;
+    private EstacionamentoConexoes estacionamento;
+    private ControleAdmissao controle;
 
-        while (true) {
+    public Servidor() {
+        this(new Configuracao());
+    }
+
+    public Servidor(Configuracao configuracao) {
+        this.configuracao = configuracao;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Configuracao configuracao = Configuracao.carregar(args);
+        ArquivosEstaticos.setPadrao(ArquivosEstaticos.criar(configuracao));
+        Metricas.setPadrao(new Metricas(configuracao.getCaminhoMetricas()));
+        Roteador.setPadrao(Roteador.criar(configuracao));
+        RegistroAcesso registro = RegistroAcesso.criar(configuracao);
+        if (registro != null) {
+            RegistroAcesso.setPadrao(registro);
+            //grava o que ainda estiver na fila ao encerrar o processo
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    registro.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(Servidor.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }));
+        }
+        Servidor servidor = new Servidor(configuracao);
+        servidor.iniciar();
+        servidor.aguardar();
+    }
+
+    /**
+     * Abre a porta e passa a aceitar conexões numa thread própria.
+     *
+     * @throws IOException se a porta não puder ser aberta
+     */
+    public void iniciar() throws IOException {
+        controle = new ControleAdmissao(configuracao);
+        registrarMedidores(controle);
+        PoolBuffers buffers = PoolBuffers.getPadrao();
+        Metricas.getPadrao().registrarMedidor("meuservidor_buffers_emprestados",
+                "Buffers de E/S em uso pelas conexões", buffers::getEmprestados);
+        Metricas.getPadrao().registrarMedidor("meuservidor_buffers_livres_bytes",
+                "Bytes em buffers de E/S livres no pool", buffers::getBytesLivres);
+        if ("nio".equals(configuracao.getModo())) {
+            //motor de eventos: poucas threads multiplexando as conexões
+            servidorNIO = new ServidorNIO(configuracao.getPorta(), configuracao.getLacosEventos(),
+                    new PoliticaConexao(configuracao), controle, configuracao.getAceitadores(),
+                    configuracao.getBacklog());
+            aceitador = new Thread(this::executarNIO, "aceitador-nio");
+        } else {
+            /* cria os sockets "servidor" já aguardando conexões. Abertos
+             como canais para que cada socket aceito tenha um SocketChannel,
+             usado no envio de arquivos com transferTo
+             */
+            aceitacao = new GrupoAceitacao(configuracao.getPorta(), configuracao.getAceitadores(),
+                    configuracao.getBacklog());
+            //cada aceitador entrega as conexões ao seu pool, com uma fatia
+            //das threads e da fila
+            pools = new ExecutorService[aceitacao.getQuantidade()];
+            for (int i = 0; i < pools.length; i++) {
+                pools[i] = criarExecutor(configuracao, pools.length);
+            }
+            http2 = LimitesHTTP2.criar(configuracao, pools[0]);
+            politica = new PoliticaConexao(configuracao);
+            roda = new RodaTemporizacao();
+            roda.iniciar("roda-temporizacao");
+            estacionamento = new EstacionamentoConexoes();
+            estacionamento.iniciar("estacionamento");
+            Metricas.getPadrao().registrarMedidor("meuservidor_conexoes_estacionadas",
+                    "Conexões keep-alive ociosas esperando sem thread", estacionamento::getQuantidade);
+            if (pools[0] instanceof ThreadPoolExecutor) {
+                Metricas.getPadrao().registrarMedidor("meuservidor_executor_fila",
+                        "Conexões esperando uma thread do pool", () -> somar(pools, true));
+                Metricas.getPadrao().registrarMedidor("meuservidor_executor_ativas",
+                        "Threads do pool atendendo conexões", () -> somar(pools, false));
+            }
+            aceitador = new Thread(this::aceitar, "aceitador");
+        }
+        aceitador.start();
+    }
+
+    private void aceitar() {
+        GrupoAceitacao.Destino[] destinos = new GrupoAceitacao.Destino[pools.length];
+        for (int i = 0; i < pools.length; i++) {
+            ExecutorService pool = pools[i];
+            destinos[i] = canal -> entregar(canal, pool);
+        }
+        try {
+            aceitacao.executar("aceitador", destinos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void entregar(SocketChannel canal, ExecutorService pool) {
+        if (!controle.admitirConexao()) {
+            controle.recusar(canal);
+            return;
+        }
+        ThreadConexao conexao = new ThreadConexao(canal.socket(), politica, roda, estacionamento, pool, controle,
+                http2);
+        try {
             //cria uma nova thread para cada nova solicitacao de conexao
-            pool.execute(new ThreadConexao(servidor.accept()));
+            pool.execute(conexao);
+        } catch (RejectedExecutionException ex) {
+            //fila do pool cheia: responder agora custa menos que esperar
+            conexao.recusar();
+        }
+    }
+
+    private static long somar(ExecutorService[] pools, boolean fila) {
+        long total = 0;
+        for (ExecutorService pool : pools) {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) pool;
+            total += fila ? executor.getQueue().size() : executor.getActiveCount();
+        }
+        return total;
+    }
+
+    private static void registrarMedidores(ControleAdmissao controle) {
+        Metricas metricas = Metricas.getPadrao();
+        metricas.registrarMedidor("meuservidor_requisicoes_andamento", "Requisições sendo atendidas",
+                controle::getEmAndamento);
+        metricas.registrarMedidor("meuservidor_admissao_limite",
+                "Limite atual de requisições em andamento (0 sem limite)", controle::getLimite);
+        metricas.registrarMedidor("meuservidor_conexoes_recusadas_total",
+                "Conexões recusadas pelo controle de admissão", "counter", controle::getConexoesRecusadas);
+        metricas.registrarMedidor("meuservidor_requisicoes_recusadas_total",
+                "Requisições respondidas com 503 pelo controle de admissão", "counter",
+                controle::getRequisicoesRecusadas);
+    }
+
+    private void executarNIO() {
+        try {
+            servidorNIO.executar();
+        } catch (IOException ex) {
+            Logger.getLogger(Servidor.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Bloqueia até o servidor ser fechado.
+     */
+    public void aguardar() throws InterruptedException {
+        aceitador.join();
+    }
+
+    /**
+     * @return a porta em que o servidor está escutando
+     */
+    public int getPorta() {
+        if (servidorNIO != null) {
+            return servidorNIO.getPorta();
         }
+        return aceitacao.getPorta();
+    }
+
+    /**
+     * Para de aceitar conexões e encerra as abertas.
+     */
+    @Override
+    public void close() throws IOException {
+        if (servidorNIO != null) {
+            servidorNIO.close();
+        } else if (aceitacao != null) {
+            aceitacao.close();
+            //interrompe as threads presas em leitura, fechando os sockets
+            for (ExecutorService pool : pools) {
+                pool.shutdownNow();
+            }
+            http2.close();
+            estacionamento.close();
+            roda.close();
+        }
+    }
+
+    /**
+     * Cria o executor que vai rodar as ThreadConexao. No modo "virtual" cada
+     * conexão ganha uma virtual thread (JDK 21+); como o projeto compila
+     * para Java 17, o método é obtido por reflexão e, se não existir, cai
+     * no pool fixo de sempre.
+     *
+     * A fila do pool fixo é limitada (limite.fila): com ela cheia o
+     * execute lança RejectedExecutionException e a conexão é recusada, em
+     * vez de esperar indefinidamente numa fila sem fim.
+     *
+     * @param configuracao opções de inicialização
+     * @return executor das conexões
+     */
+    static ExecutorService criarExecutor(Configuracao configuracao) {
+        return criarExecutor(configuracao, 1);
+    }
+
+    /**
+     * Executor de um entre vários aceitadores: as threads e a fila do pool
+     * fixo são divididas entre eles (arredondando para cima).
+     *
+     * @param configuracao opções de inicialização
+     * @param partes quantidade de aceitadores
+     * @return executor das conexões de um aceitador
+     */
+    static ExecutorService criarExecutor(Configuracao configuracao, int partes) {
+        if ("virtual".equals(configuracao.getModo())) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+                Logger.getLogger(Servidor.class.getName()).log(Level.WARNING,
+                        "Virtual threads indisponíveis nesta JVM ({0}), usando pool fixo",
+                        System.getProperty("java.version"));
+            }
+        }
+        int limite = dividir(configuracao.getLimiteFila(), partes);
+        BlockingQueue<Runnable> fila = limite > 0 ? new ArrayBlockingQueue<>(limite) : new LinkedBlockingQueue<>();
+        int threads = Math.max(1, dividir(configuracao.getTamanhoPool(), partes));
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, fila);
+    }
+
+    private static int dividir(int total, int partes) {
+        return total <= 0 ? total : (total + partes - 1) / partes;
     }
-}
\ No newline at end of file
+}
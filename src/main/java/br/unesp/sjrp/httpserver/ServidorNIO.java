@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Motor de eventos baseado em NIO. Os aceitadores (por padrão um) aceitam
+ * as conexões e as distribuem entre poucos laços de eventos (por padrão um
+ * por núcleo), cada um multiplexando milhares de conexões com um Selector,
+ * sem prender uma thread por cliente em keep-alive.
+ *
+ * Com vários aceitadores, os laços são repartidos entre eles: cada
+ * aceitador só entrega conexões aos laços da sua fatia.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+public class ServidorNIO implements Closeable {
+
+    private final GrupoAceitacao aceitacao;
+    private final LacoEventos[] lacos;
+    private final ControleAdmissao controle;
+    private final Thread[] threads;
+
+    public ServidorNIO(int porta, int quantidadeLacos) throws IOException {
+        this(porta, quantidadeLacos, new PoliticaConexao());
+    }
+
+    /**
+     * @param porta porta a escutar, 0 para uma livre
+     * @param quantidadeLacos laços de eventos (threads)
+     * @param politica tempos limite e máximo de requisições das conexões
+     * @throws IOException se a porta não puder ser aberta
+     */
+    public ServidorNIO(int porta, int quantidadeLacos, PoliticaConexao politica) throws IOException {
+        this(porta, quantidadeLacos, politica, new ControleAdmissao());
+    }
+
+    /**
+     * @param porta porta a escutar, 0 para uma livre
+     * @param quantidadeLacos laços de eventos (threads)
+     * @param politica tempos limite e máximo de requisições das conexões
+     * @param controle limites de conexões e de requisições em andamento
+     * @throws IOException se a porta não puder ser aberta
+     */
+    public ServidorNIO(int porta, int quantidadeLacos, PoliticaConexao politica, ControleAdmissao controle)
+            throws IOException {
+        this(porta, quantidadeLacos, politica, controle, 1, 0);
+    }
+
+    /**
+     * @param porta porta a escutar, 0 para uma livre
+     * @param quantidadeLacos laços de eventos (threads)
+     * @param politica tempos limite e máximo de requisições das conexões
+     * @param controle limites de conexões e de requisições em andamento
+     * @param aceitadores threads aceitando conexões (SO_REUSEPORT)
+     * @param backlog fila de conexões de cada socket, 0 para o padrão
+     * @throws IOException se a porta não puder ser aberta
+     */
+    public ServidorNIO(int porta, int quantidadeLacos, PoliticaConexao politica, ControleAdmissao controle,
+            int aceitadores, int backlog) throws IOException {
+        this.controle = controle;
+        aceitacao = new GrupoAceitacao(porta, aceitadores, backlog);
+        lacos = new LacoEventos[Math.max(1, quantidadeLacos)];
+        threads = new Thread[lacos.length];
+        for (int i = 0; i < lacos.length; i++) {
+            lacos[i] = new LacoEventos(politica, controle);
+            threads[i] = new Thread(lacos[i], "laco-eventos-" + i);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Aceita conexões até o servidor ser fechado, entregando cada uma ao
+     * próximo laço de eventos da fatia do aceitador (round-robin). Acima
+     * do limite de conexões a conexão é recusada aqui mesmo, sem chegar a
+     * um laço.
+     *
+     * @throws IOException se o socket do servidor falhar
+     */
+    public void executar() throws IOException {
+        int quantidade = aceitacao.getQuantidade();
+        GrupoAceitacao.Destino[] destinos = new GrupoAceitacao.Destino[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            destinos[i] = new Fatia(fatia(i, quantidade));
+        }
+        try {
+            aceitacao.executar("aceitador-nio", destinos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Laços do aceitador: os de índice igual a ele módulo a quantidade de
+     * aceitadores. Com mais aceitadores que laços, eles dividem um laço.
+     */
+    private LacoEventos[] fatia(int aceitador, int aceitadores) {
+        List<LacoEventos> proprios = new ArrayList<>();
+        for (int i = aceitador; i < lacos.length; i += aceitadores) {
+            proprios.add(lacos[i]);
+        }
+        if (proprios.isEmpty()) {
+            proprios.add(lacos[aceitador % lacos.length]);
+        }
+        return proprios.toArray(new LacoEventos[0]);
+    }
+
+    /**
+     * Laços de um aceitador. O índice do próximo só é usado pela thread
+     * desse aceitador.
+     */
+    private final class Fatia implements GrupoAceitacao.Destino {
+
+        private final LacoEventos[] lacos;
+        private int proximo;
+
+        Fatia(LacoEventos[] lacos) {
+            this.lacos = lacos;
+        }
+
+        @Override
+        public void entregar(SocketChannel canal) throws IOException {
+            canal.socket().setTcpNoDelay(true);
+            if (!controle.admitirConexao()) {
+                controle.recusar(canal);
+                return;
+            }
+            lacos[proximo].registrar(canal);
+            proximo = (proximo + 1) % lacos.length;
+        }
+    }
+
+    public int getPorta() {
+        return aceitacao.getPorta();
+    }
+
+    @Override
+    public void close() throws IOException {
+        aceitacao.close();
+        for (LacoEventos laco : lacos) {
+            laco.encerrar();
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2014 Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package br.unesp.sjrp.httpserver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tabela de índices do HPACK (RFC 7541, seção 2.3): as 61 entradas da
+ * tabela estática seguidas da tabela dinâmica, da entrada mais nova para a
+ * mais antiga. A tabela dinâmica é um vetor circular; cada entrada conta
+ * nome + valor + 32 bytes e as mais antigas saem quando a capacidade é
+ * excedida.
+ *
+ * Cada lado da conexão tem a sua: a do decodificador espelha o que o
+ * cliente indexou e a do codificador o que o servidor indexou.
+ *
+ * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
+ */
+final class TabelaHPACK {
+
+    //capacidade inicial da tabela dinâmica (SETTINGS_HEADER_TABLE_SIZE)
+    static final int CAPACIDADE_PADRAO = 4096;
+
+    private static final String[][] ESTATICA = {
+        {":authority", ""},
+        {":method", "GET"},
+        {":method", "POST"},
+        {":path", "/"},
+        {":path", "/index.html"},
+        {":scheme", "http"},
+        {":scheme", "https"},
+        {":status", "200"},
+        {":status", "204"},
+        {":status", "206"},
+        {":status", "304"},
+        {":status", "400"},
+        {":status", "404"},
+        {":status", "500"},
+        {"accept-charset", ""},
+        {"accept-encoding", "gzip, deflate"},
+        {"accept-language", ""},
+        {"accept-ranges", ""},
+        {"accept", ""},
+        {"access-control-allow-origin", ""},
+        {"age", ""},
+        {"allow", ""},
+        {"authorization", ""},
+        {"cache-control", ""},
+        {"content-disposition", ""},
+        {"content-encoding", ""},
+        {"content-language", ""},
+        {"content-length", ""},
+        {"content-location", ""},
+        {"content-range", ""},
+        {"content-type", ""},
+        {"cookie", ""},
+        {"date", ""},
+        {"etag", ""},
+        {"expect", ""},
+        {"expires", ""},
+        {"from", ""},
+        {"host", ""},
+        {"if-match", ""},
+        {"if-modified-since", ""},
+        {"if-none-match", ""},
+        {"if-range", ""},
+        {"if-unmodified-since", ""},
+        {"last-modified", ""},
+        {"link", ""},
+        {"location", ""},
+        {"max-forwards", ""},
+        {"proxy-authenticate", ""},
+        {"proxy-authorization", ""},
+        {"range", ""},
+        {"referer", ""},
+        {"refresh", ""},
+        {"retry-after", ""},
+        {"server", ""},
+        {"set-cookie", ""},
+        {"strict-transport-security", ""},
+        {"transfer-encoding", ""},
+        {"user-agent", ""},
+        {"vary", ""},
+        {"via", ""},
+        {"www-authenticate", ""}
+    };
+
+    static final int TAMANHO_ESTATICA = ESTATICA.length;
+
+    //"nome" e "nome\0valor" para o índice estático, o menor de cada
+    private static final Map<String, Integer> INDICE_ESTATICO = indexar();
+
+    //vetor circular; inicio é a entrada mais nova
+    private String[] nomes = new String[16];
+    private String[] valores = new String[16];
+    private int inicio;
+    private int quantidade;
+    private int tamanho;
+    private int capacidade;
+
+    TabelaHPACK(int capacidade) {
+        this.capacidade = capacidade;
+    }
+
+    /**
+     * @param indice índice a partir de 1, estático ou dinâmico
+     * @throws ErroHTTP2 se o índice não existir
+     */
+    String getNome(int indice) throws ErroHTTP2 {
+        if (indice >= 1 && indice <= TAMANHO_ESTATICA) {
+            return ESTATICA[indice - 1][0];
+        }
+        return nomes[posicao(indice)];
+    }
+
+    String getValor(int indice) throws ErroHTTP2 {
+        if (indice >= 1 && indice <= TAMANHO_ESTATICA) {
+            return ESTATICA[indice - 1][1];
+        }
+        return valores[posicao(indice)];
+    }
+
+    private int posicao(int indice) throws ErroHTTP2 {
+        int dinamico = indice - TAMANHO_ESTATICA - 1;
+        if (dinamico < 0 || dinamico >= quantidade) {
+            throw new ErroHTTP2(ErroHTTP2.ERRO_COMPRESSAO, "Índice HPACK inexistente: " + indice);
+        }
+        return (inicio + dinamico) % nomes.length;
+    }
+
+    /**
+     * Procura o campo nas duas tabelas.
+     *
+     * @return o índice do campo igual, o negativo do índice de um campo
+     * com o mesmo nome ou 0 se nem o nome existe
+     */
+    int procurar(String nome, String valor) {
+        Integer igual = INDICE_ESTATICO.get(nome + '\0' + valor);
+        if (igual != null) {
+            return igual;
+        }
+        Integer mesmoNome = INDICE_ESTATICO.get(nome);
+        int resultado = mesmoNome == null ? 0 : -mesmoNome;
+        for (int i = 0; i < quantidade; i++) {
+            int p = (inicio + i) % nomes.length;
+            if (nomes[p].equals(nome)) {
+                if (valores[p].equals(valor)) {
+                    return TAMANHO_ESTATICA + 1 + i;
+                }
+                if (resultado == 0) {
+                    resultado = -(TAMANHO_ESTATICA + 1 + i);
+                }
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Insere o campo como entrada mais nova, retirando as mais antigas até
+     * caber. Um campo maior que a capacidade esvazia a tabela e não entra.
+     */
+    void adicionar(String nome, String valor) {
+        int entrada = tamanho(nome, valor);
+        if (entrada > capacidade) {
+            limpar();
+            return;
+        }
+        while (tamanho + entrada > capacidade) {
+            removerMaisAntiga();
+        }
+        if (quantidade == nomes.length) {
+            crescer();
+        }
+        inicio = (inicio + nomes.length - 1) % nomes.length;
+        nomes[inicio] = nome;
+        valores[inicio] = valor;
+        quantidade++;
+        tamanho += entrada;
+    }
+
+    /**
+     * Muda a capacidade da tabela dinâmica, retirando as entradas que não
+     * cabem mais.
+     */
+    void setCapacidade(int capacidade) {
+        this.capacidade = capacidade;
+        while (tamanho > capacidade) {
+            removerMaisAntiga();
+        }
+    }
+
+    int getCapacidade() {
+        return capacidade;
+    }
+
+    /**
+     * @return tamanho ocupado pela tabela dinâmica, pela conta do HPACK
+     */
+    int getTamanho() {
+        return tamanho;
+    }
+
+    /**
+     * @return quantidade de entradas da tabela dinâmica
+     */
+    int getQuantidade() {
+        return quantidade;
+    }
+
+    static int tamanho(String nome, String valor) {
+        return nome.length() + valor.length() + 32;
+    }
+
+    private void removerMaisAntiga() {
+        int p = (inicio + quantidade - 1) % nomes.length;
+        tamanho -= tamanho(nomes[p], valores[p]);
+        nomes[p] = null;
+        valores[p] = null;
+        quantidade--;
+    }
+
+    private void limpar() {
+        while (quantidade > 0) {
+            removerMaisAntiga();
+        }
+    }
+
+    private void crescer() {
+        String[] novosNomes = new String[nomes.length * 2];
+        String[] novosValores = new String[nomes.length * 2];
+        for (int i = 0; i < quantidade; i++) {
+            int p = (inicio + i) % nomes.length;
+            novosNomes[i] = nomes[p];
+            novosValores[i] = valores[p];
+        }
+        nomes = novosNomes;
+        valores = novosValores;
+        inicio = 0;
+    }
+
+    private static Map<String, Integer> indexar() {
+        Map<String, Integer> indice = new HashMap<>();
+        for (int i = ESTATICA.length - 1; i >= 0; i--) {
+            indice.put(ESTATICA[i][0], i + 1);
+            indice.put(ESTATICA[i][0] + '\0' + ESTATICA[i][1], i + 1);
+        }
+        return indice;
+    }
+
+}
@@ -18,106 +18,415 @@
 
 package br.unesp.sjrp.httpserver;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.Date;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Atende uma conexão no modo de threads.
+ *
+ * Criada só com o socket, a thread fica com a conexão do começo ao fim,
+ * esperando cada requisição bloqueada com SO_TIMEOUT. Com uma
+ * PoliticaConexao a conexão passa a ter ciclo de vida explícito: entre
+ * duas requisições ela é estacionada sem thread, os prazos de ociosidade,
+ * de recebimento da requisição e de escrita ficam numa RodaTemporizacao,
+ * e as respostas anunciam Keep-Alive: timeout=, max=. Um ControleAdmissao
+ * limita as requisições em andamento e recusa a conexão quando o pool não
+ * tem vaga para retomá-la. Nesse modo os buffers de leitura e de saída
+ * vêm de um PoolBuffers e voltam para ele enquanto a conexão está
+ * estacionada.
+ *
+ * Um cliente que abre com o prefácio do HTTP/2 ou pede Upgrade: h2c passa
+ * a ser atendido por uma ConexaoHTTP2, que fica com a thread até o fim da
+ * conexão, se LimitesHTTP2 tiver vaga; sem ela o Upgrade é ignorado e o
+ * prefácio recebe GOAWAY.
  *
  * @author Thiago da Silva Gonzaga <thiagosg@sjrp.unesp.br>
  */
 public class ThreadConexao implements Runnable {
 
+    //buffer onde as respostas de um pipeline são agrupadas e os
+    //cabeçalhos são codificados
+    private static final int TAMANHO_SAIDA = 16 * 1024;
+
     private final Socket socket;
     private boolean conectado;
+    //null no modo sem ciclo de vida (bloqueio com SO_TIMEOUT)
+    private final PoliticaConexao politica;
+    private final RodaTemporizacao.Temporizador prazo;
+    private final EstacionamentoConexoes estacionamento;
+    private final Executor executor;
+    private final ControleAdmissao controle;
+    private final LimitesHTTP2 http2;
+    private final Metricas metricas = Metricas.getPadrao();
+    private final PoolBuffers pool = PoolBuffers.getPadrao();
+    //o leitor e a saída duram a conexão inteira: bytes de requisições
+    //em pipeline ficam no buffer e as respostas são agrupadas
+    private LeitorRequisicoes leitor;
+    private SaidaConexao saida;
+    private int atendidas;
+    private int tempoOcioso;
+    //estado compartilhado com a roda e o estacionamento (synchronized)
+    private boolean aberta;
+    private boolean ociosa;
+    private boolean fechada;
 
     public ThreadConexao(Socket socket) {
+        this(socket, null, null, null, null, null, LimitesHTTP2.getPadrao());
+    }
+
+    /**
+     * Conexão com ciclo de vida gerenciado.
+     *
+     * @param socket socket aceito por um ServerSocketChannel
+     * @param politica tempos limite e máximo de requisições
+     * @param roda roda que vence os prazos
+     * @param estacionamento onde a conexão espera ociosa
+     * @param executor pool onde a conexão é retomada
+     * @param controle limites de admissão; a conexão já ocupa uma vaga
+     * dele, devolvida ao fechar
+     * @param http2 conexões e threads do HTTP/2
+     */
+    ThreadConexao(Socket socket, PoliticaConexao politica, RodaTemporizacao roda,
+            EstacionamentoConexoes estacionamento, Executor executor, ControleAdmissao controle,
+            LimitesHTTP2 http2) {
         this.socket = socket;
+        this.politica = politica;
+        this.prazo = roda == null ? null : roda.criar(this::fechar);
+        this.estacionamento = estacionamento;
+        this.executor = executor;
+        this.controle = controle;
+        this.http2 = http2;
+        if (politica != null) {
+            tempoOcioso = politica.getTempoOcioso();
+        }
     }
 
     @Override
     public void run() {
-        conectado = true;
-        //imprime na tela o IP do cliente
-        System.out.println(socket.getInetAddress());
-        while (conectado) {
-            try {
-                //cria uma requisicao a partir do InputStream do cliente
-                RequisicaoHTTP requisicao = RequisicaoHTTP.lerRequisicao(socket.getInputStream());
+        boolean estacionada = false;
+        try {
+            if (leitor == null) {
+                abrir();
+                if (politica == null) {
+                    //SO_TIMEOUT só vale para o stream do socket
+                    leitor = new LeitorRequisicoes(socket.getInputStream());
+                    saida = new SaidaConexao(socket.getOutputStream(), socket.getChannel(), TAMANHO_SAIDA);
+                } else {
+                    leitor = new LeitorRequisicoes(socket.getChannel(), pool);
+                    saida = new SaidaConexao(socket.getChannel(), pool, TAMANHO_SAIDA);
+                }
+            } else {
+                //retomada do estacionamento
+                alterarOciosa(false);
+            }
+            //ao começar ou ser retomada a conexão já tem (ou logo terá)
+            //bytes a ler; só depois de uma resposta ela pode ficar ociosa
+            boolean atendeu = false;
+            while (conectado) {
+                if (atendeu && estacionamento != null && !leitor.temPendentes()) {
+                    //a partir daqui a conexão pode estar em outra thread
+                    estacionada = estacionar();
+                    return;
+                }
+                conectado = atender();
+                atendeu = true;
+            }
+        } catch (IOException ex) {
+            if (!isFechada()) {
+                Logger.getLogger(ThreadConexao.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        } finally {
+            if (!estacionada) {
+                fechar();
+                liberarBuffers();
+            }
+        }
+    }
+
+    /**
+     * Atende a próxima requisição da conexão. A resposta fica no buffer de
+     * saída, que só é descarregado quando não há outra requisição já
+     * recebida esperando (ou antes de fechar a conexão).
+     *
+     * @return false quando a conexão deve ser encerrada
+     */
+    private boolean atender() {
+        boolean admitida = false;
+        long inicio = 0;
+        try {
+            //cria uma requisicao a partir do buffer da conexao
+            RequisicaoHTTP requisicao = aguardar();
+            if (requisicao == null) {
+                //o cliente fechou a conexao
+                return false;
+            }
+            boolean prefacio = ConexaoHTTP2.isPrefacio(requisicao);
+            if (prefacio || ConexaoHTTP2.isAtualizacao(requisicao)) {
+                if (http2.reservarConexao()) {
+                    try {
+                        atenderHTTP2(requisicao);
+                    } finally {
+                        http2.liberarConexao();
+                    }
+                    return false;
+                }
+                if (prefacio) {
+                    saida.flush();
+                    ConexaoHTTP2.recusar(socket);
+                    return false;
+                }
+                //sem vaga para outra conexão HTTP/2 a requisição segue em HTTP/1.1
+            }
+            inicio = System.nanoTime();
+            boolean manterViva;
+            if (politica == null) {
+                manterViva = requisicao.isManterViva();
                 //se a conexao esta marcada para se mantar viva entao seta keepalive e o timeout
-                if (requisicao.isManterViva()) {
+                if (manterViva) {
                     socket.setKeepAlive(true);
                     socket.setSoTimeout(requisicao.getTempoLimite());
                 } else {
                     //se nao seta um valor menor suficiente para uma requisicao
                     socket.setSoTimeout(300);
                 }
+            } else {
+                //processamento e escrita da resposta
+                prazo.adiar(politica.getTempoEscrita());
+                manterViva = true;
+            }
 
-                //se o caminho foi igual a / entao deve pegar o /index.html
-                String nomeArquivo = requisicao.getRecurso();
-                if (nomeArquivo.equals("/")) {
-                    nomeArquivo = "/index.html";
-                }
-                
-                // Remove a barra inicial se existir para acessar o resource
-                if (nomeArquivo.startsWith("/")) {
-                    nomeArquivo = nomeArquivo.substring(1);
-                }
+            RespostaHTTP resposta;
+            if (controle == null) {
+                resposta = criarResposta(requisicao);
+            } else {
+                admitida = controle.iniciarRequisicao();
+                //acima do limite a resposta é o 503 pronto
+                resposta = admitida ? criarResposta(requisicao) : controle.responderIndisponivel(requisicao);
+            }
+            if (politica != null) {
+                atendidas++;
+                tempoOcioso = politica.getTempoOcioso(requisicao);
+                manterViva = politica.preparar(requisicao, resposta, atendidas);
+            }
+            resposta.setSemCorpo("HEAD".equals(requisicao.getMetodo()));
+            //cria o canal de resposta utilizando o buffer de saida da conexao
+            resposta.setSaida(saida);
+            //sockets aceitos por um ServerSocketChannel permitem transferTo
+            resposta.setCanal(socket.getChannel());
+            resposta.escrever();
+            registrar(socket.getInetAddress(), requisicao, resposta, inicio);
+            if (!manterViva || !resposta.isDelimitada()) {
+                saida.flush();
+                return false;
+            }
+            return true;
+        } catch (IOException ex) {
+            //quando o tempo limite terminar, o cliente fechar a conexão,
+            //enviar uma requisição inválida ou o servidor for fechado
+            //encerra a thread
+            if (!(ex instanceof SocketTimeoutException || ex instanceof EOFException
+                    || ex instanceof RequisicaoInvalidaException || ex instanceof AsynchronousCloseException
+                    || isFechada())) {
+                Logger.getLogger(ThreadConexao.class.getName()).log(Level.WARNING, null, ex);
+            }
+            try {
+                //entrega as respostas já prontas do pipeline antes de fechar
+                saida.flush();
+            } catch (IOException ex1) {
+                //a conexão já está perdida
+            }
+            return false;
+        } finally {
+            if (admitida) {
+                controle.concluirRequisicao(inicio);
+            }
+        }
+    }
 
-                RespostaHTTP resposta;
-                byte[] conteudoArquivo;
-
-                // Tenta carregar o arquivo do classpath (recursos)
-                InputStream resourceStream = ThreadConexao.class.getClassLoader().getResourceAsStream(nomeArquivo);
-                
-                if (resourceStream != null) {
-                    // Arquivo encontrado, criar resposta de sucesso
-                    resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
-                    conteudoArquivo = resourceStream.readAllBytes();
-                    resourceStream.close();
-                } else {
-                    // Arquivo não encontrado, criar resposta de erro 404
-                    resposta = new RespostaHTTP(requisicao.getProtocolo(), 404, "Not Found");
-                    InputStream errorStream = ThreadConexao.class.getClassLoader().getResourceAsStream("404.html");
-                    if (errorStream != null) {
-                        conteudoArquivo = errorStream.readAllBytes();
-                        errorStream.close();
-                    } else {
-                        // Fallback se 404.html não existir
-                        conteudoArquivo = "<html><body><h1>404 - Not Found</h1></body></html>".getBytes();
-                    }
-                }
+    /**
+     * Continua a conexão em HTTP/2 até o fim dela. Os fluxos são atendidos
+     * em outras threads e contam no controle de admissão um a um; a conexão
+     * em si não é estacionada.
+     *
+     * @param requisicao o início do prefácio ou a requisição com Upgrade:
+     * h2c, que vira o fluxo 1
+     */
+    private void atenderHTTP2(RequisicaoHTTP requisicao) throws IOException {
+        //respostas anteriores do pipeline saem antes do 101 ou do SETTINGS
+        saida.flush();
+        InputStream entrada = socket.getInputStream();
+        byte[] restantes = leitor.restantes();
+        if (restantes.length > 0) {
+            entrada = new SequenceInputStream(new ByteArrayInputStream(restantes), entrada);
+        }
+        int ocioso = politica == null ? requisicao.getTempoLimite() : politica.getTempoOcioso();
+        int escrita = politica == null ? requisicao.getTempoLimite() : politica.getTempoEscrita();
+        ConexaoHTTP2 conexao = new ConexaoHTTP2(socket, entrada, http2.getFluxos(), controle, prazo, ocioso, escrita);
+        conexao.executar(ConexaoHTTP2.isPrefacio(requisicao) ? null : requisicao);
+    }
 
-                //define o conteúdo da resposta
-                resposta.setConteudoResposta(conteudoArquivo);
-                //converte o formato para o GMT espeficicado pelo protocolo HTTP
-                String dataFormatada = Util.formatarDataGMT(new Date());
-                //cabeçalho padrão da resposta HTTP/1.1
-                resposta.setCabecalho("Location", "http://localhost:8000/");
-                resposta.setCabecalho("Date", dataFormatada);
-                resposta.setCabecalho("Server", "MeuServidor/1.0");
-                resposta.setCabecalho("Content-Type", "text/html");
-                resposta.setCabecalho("Content-Length", resposta.getTamanhoResposta());
-                //cria o canal de resposta utilizando o outputStream
-                resposta.setSaida(socket.getOutputStream());
-                resposta.enviar();
-            } catch (IOException ex) {
-                //quando o tempo limite terminar encerra a thread
-                if (ex instanceof SocketTimeoutException) {
-                    try {
-                        conectado = false;
-                        socket.close();
-                    } catch (IOException ex1) {
-                        Logger.getLogger(ThreadConexao.class.getName()).log(Level.SEVERE, null, ex1);
-                    }
-                }
-            }
+    /**
+     * Espera a próxima requisição. Sem política a espera é a ociosidade da
+     * conexão; com ela os bytes já chegaram (a conexão foi retomada ou há
+     * um pipeline no buffer) e vale o prazo para completar a requisição.
+     */
+    private RequisicaoHTTP aguardar() throws IOException {
+        if (politica != null) {
+            prazo.adiar(politica.getTempoCabecalho());
+            return leitor.proxima(saida);
+        }
+        alterarOciosa(true);
+        try {
+            return leitor.proxima(saida);
+        } finally {
+            alterarOciosa(false);
+        }
+    }
+
+    /**
+     * Entrega as respostas pendentes e devolve a thread ao pool, deixando a
+     * conexão no estacionamento até chegarem bytes.
+     *
+     * @return false se a escrita falhou e a conexão deve ser fechada
+     */
+    private boolean estacionar() {
+        try {
+            prazo.adiar(politica.getTempoEscrita());
+            saida.flush();
+        } catch (IOException ex) {
+            //o cliente não lê mais; não há o que estacionar
+            return false;
+        }
+        prazo.adiar(tempoOcioso);
+        alterarOciosa(true);
+        //ociosa não segura buffers; depois de estacionar a conexão pode já
+        //estar sendo retomada em outra thread
+        liberarBuffers();
+        estacionamento.estacionar(this);
+        return true;
+    }
+
+    private void liberarBuffers() {
+        if (leitor != null) {
+            leitor.liberar();
+            saida.liberar();
+        }
+    }
+
+    /**
+     * Chamado pelo estacionamento quando chegam bytes (ou o fim da
+     * conexão): volta ao modo bloqueante e continua numa thread do pool.
+     */
+    void retomar() {
+        try {
+            socket.getChannel().configureBlocking(true);
+            executor.execute(this);
+        } catch (RejectedExecutionException ex) {
+            //fila do pool cheia (ou pool encerrado)
+            recusar();
+        } catch (IOException | RuntimeException ex) {
+            //canal fechado pelo prazo ou pool encerrado
+            fechar();
+        }
+    }
+
+    /**
+     * Recusa a conexão com o 503 do controle de admissão, sem ler a
+     * requisição, e a encerra.
+     */
+    void recusar() {
+        controle.recusar(socket.getChannel());
+        fechar();
+    }
+
+    SocketChannel getCanal() {
+        return socket.getChannel();
+    }
+
+    /**
+     * Encerra a conexão uma única vez. Chamado pela própria thread, pela
+     * roda quando um prazo vence (a thread presa em leitura ou escrita
+     * recebe a exceção do socket fechado) ou pelo estacionamento.
+     */
+    synchronized void fechar() {
+        if (fechada) {
+            return;
+        }
+        alterarOciosa(false);
+        fechada = true;
+        if (prazo != null) {
+            prazo.cancelar();
+        }
+        if (aberta) {
+            metricas.conexaoFechada();
+        }
+        if (controle != null) {
+            controle.conexaoEncerrada();
+        }
+        try {
+            socket.close();
+        } catch (IOException ex1) {
+            Logger.getLogger(ThreadConexao.class.getName()).log(Level.SEVERE, null, ex1);
+        }
+    }
+
+    private synchronized void abrir() {
+        aberta = true;
+        conectado = true;
+        metricas.conexaoAberta();
+    }
+
+    private synchronized boolean isFechada() {
+        return fechada;
+    }
+
+    private synchronized void alterarOciosa(boolean valor) {
+        if (ociosa != valor && !fechada) {
+            ociosa = valor;
+            metricas.conexaoOciosa(valor);
+        }
+    }
+
+    /**
+     * Monta a resposta para uma requisição com o Roteador padrão. O motor
+     * NIO também escolhe a rota pelo Roteador, mas não espera os
+     * manipuladores assíncronos.
+     *
+     * @param requisicao requisição já lida do cliente
+     * @return resposta pronta para ser enviada, ainda sem canal de saída
+     * @throws IOException se a resposta não puder ser montada
+     */
+    static RespostaHTTP criarResposta(RequisicaoHTTP requisicao) throws IOException {
+        //um ManipuladorAssincrono é esperado aqui mesmo, na thread da conexão
+        return Roteador.getPadrao().atender(requisicao);
+    }
 
+    /**
+     * Conta a requisição nas métricas e a envia ao log de acesso. Usado
+     * pelos dois motores.
+     *
+     * @param cliente endereço do cliente
+     * @param inicio System.nanoTime() do início do atendimento
+     */
+    static void registrar(InetAddress cliente, RequisicaoHTTP requisicao, RespostaHTTP resposta, long inicio) {
+        Metricas.getPadrao().registrar(requisicao, resposta, inicio);
+        RegistroAcesso registro = RegistroAcesso.getPadrao();
+        if (registro != null) {
+            registro.registrar(cliente, requisicao, resposta, inicio);
         }
     }
 
-}
\ No newline at end of file
+}
@@ -18,10 +18,18 @@
 
 package br.unesp.sjrp.httpserver;
 
-import java.text.SimpleDateFormat;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
-import java.util.TimeZone;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -29,14 +37,162 @@ import java.util.TimeZone;
  */
 public class Util {
 
+    private static final String TIPO_PADRAO = "application/octet-stream";
+    private static final Map<String, String> TIPOS = new HashMap<>();
+
+    static {
+        TIPOS.put("html", "text/html");
+        TIPOS.put("htm", "text/html");
+        TIPOS.put("css", "text/css");
+        TIPOS.put("txt", "text/plain");
+        TIPOS.put("csv", "text/csv");
+        TIPOS.put("js", "application/javascript");
+        TIPOS.put("mjs", "application/javascript");
+        TIPOS.put("json", "application/json");
+        TIPOS.put("xml", "application/xml");
+        TIPOS.put("svg", "image/svg+xml");
+        TIPOS.put("png", "image/png");
+        TIPOS.put("jpg", "image/jpeg");
+        TIPOS.put("jpeg", "image/jpeg");
+        TIPOS.put("gif", "image/gif");
+        TIPOS.put("webp", "image/webp");
+        TIPOS.put("ico", "image/x-icon");
+        TIPOS.put("woff", "font/woff");
+        TIPOS.put("woff2", "font/woff2");
+        TIPOS.put("pdf", "application/pdf");
+        TIPOS.put("zip", "application/zip");
+        TIPOS.put("gz", "application/gzip");
+        TIPOS.put("mp4", "video/mp4");
+        TIPOS.put("webm", "video/webm");
+        TIPOS.put("mp3", "audio/mpeg");
+        TIPOS.put("wasm", "application/wasm");
+    }
+
     static String formatarDataGMT(Date date) {
-        //cria um formato para o GMT espeficicado pelo HTTP
-        SimpleDateFormat formatador = new SimpleDateFormat("E, dd MMM yyyy HH:mm:ss", Locale.ENGLISH);
-        formatador.setTimeZone(TimeZone.getTimeZone("GMT"));
-        // Use the passed date parameter instead of creating a new Date
+        //sem SimpleDateFormat: o formatador do RelogioHTTP não aloca um
+        //formatador nem consulta o TimeZone a cada chamada
         Date data = (date != null) ? date : new Date();
-        //Formata a dara para o padrao
-        return formatador.format(data) + " GMT";
+        return RelogioHTTP.formatar(data.getTime());
+    }
+
+    /**
+     * Lê uma data HTTP (IMF-fixdate, ex: "Sun, 06 Nov 1994 08:49:37 GMT").
+     *
+     * @param texto valor do cabeçalho
+     * @return a data em milissegundos, ou -1 se o texto não for uma data
+     */
+    static long lerDataGMT(String texto) {
+        if (texto == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(texto.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Calcula uma ETag forte a partir do conteúdo: os primeiros 16 bytes do
+     * SHA-256, em hexadecimal e entre aspas.
+     *
+     * @param conteudo bytes do recurso
+     * @return a ETag, já com as aspas
+     */
+    static String calcularETag(byte[] conteudo) {
+        return formatarETag(criarResumo().digest(conteudo));
+    }
+
+    /**
+     * ETag de um arquivo enviado direto do disco, montada com o tamanho, a
+     * data de modificação e a identidade do arquivo (inode, onde houver),
+     * sem ler o conteúdo. Muda quando o arquivo é reescrito ou trocado por
+     * outro.
+     *
+     * @param atributos atributos do arquivo
+     * @return a ETag, já com as aspas
+     */
+    static String calcularETag(BasicFileAttributes atributos) {
+        return '"' + Long.toHexString(atributos.size())
+                + '-' + Long.toHexString(atributos.lastModifiedTime().to(TimeUnit.NANOSECONDS))
+                + '-' + Integer.toHexString(Objects.hashCode(atributos.fileKey())) + '"';
+    }
+
+    private static MessageDigest criarResumo() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            //todo JRE é obrigado a ter SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String formatarETag(byte[] resumo) {
+        StringBuilder etag = new StringBuilder(34).append('"');
+        for (int i = 0; i < 16; i++) {
+            etag.append(Character.forDigit((resumo[i] >> 4) & 0xF, 16)).append(Character.forDigit(resumo[i] & 0xF, 16));
+        }
+        return etag.append('"').toString();
+    }
+
+    /**
+     * Descobre o Content-Type pela extensão do arquivo.
+     *
+     * @param caminho nome ou caminho do arquivo
+     * @return o tipo MIME, ou application/octet-stream se for desconhecido
+     */
+    static String tipoConteudo(String caminho) {
+        int ponto = caminho.lastIndexOf('.');
+        if (ponto < 0 || ponto < caminho.lastIndexOf('/')) {
+            return TIPO_PADRAO;
+        }
+        return TIPOS.getOrDefault(caminho.substring(ponto + 1).toLowerCase(Locale.ROOT), TIPO_PADRAO);
+    }
+
+    /**
+     * Converte o recurso pedido na requisição no caminho usado para buscar
+     * o arquivo: descarta query string e fragmento, resolve "." e "..",
+     * troca "/" por "index.html" e remove a barra inicial.
+     *
+     * @param recurso alvo da requisição (ex: /css/../index.html?v=1)
+     * @return caminho normalizado (ex: index.html) ou null se o caminho
+     * tentar sair da raiz
+     */
+    static String normalizarCaminho(String recurso) {
+        int fim = recurso.length();
+        int query = recurso.indexOf('?');
+        if (query >= 0) {
+            fim = query;
+        }
+        int fragmento = recurso.indexOf('#');
+        if (fragmento >= 0 && fragmento < fim) {
+            fim = fragmento;
+        }
+        StringBuilder caminho = new StringBuilder(fim);
+        int inicio = 0;
+        while (inicio <= fim) {
+            int barra = recurso.indexOf('/', inicio);
+            if (barra < 0 || barra > fim) {
+                barra = fim;
+            }
+            int tamanho = barra - inicio;
+            if (tamanho == 2 && recurso.startsWith("..", inicio)) {
+                //volta um segmento
+                int anterior = caminho.lastIndexOf("/");
+                if (caminho.length() == 0) {
+                    return null;
+                }
+                caminho.setLength(Math.max(anterior, 0));
+            } else if (tamanho > 0 && !(tamanho == 1 && recurso.charAt(inicio) == '.')) {
+                if (caminho.length() > 0) {
+                    caminho.append('/');
+                }
+                caminho.append(recurso, inicio, barra);
+            }
+            inicio = barra + 1;
+        }
+        //se o caminho foi igual a / entao deve pegar o index.html
+        return caminho.length() == 0 ? "index.html" : caminho.toString();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class AnalisadorRequisicaoTest {
+
+    private static final String REQUISICAO = "GET /index.html?q=1 HTTP/1.1\r\n"
+            + "Host: example.com:8000\r\n"
+            + "Accept-Encoding: gzip, deflate\r\n"
+            + "X-Custom:\tvalue with spaces  \r\n"
+            + "\r\n";
+
+    private AnalisadorRequisicao analisador;
+
+    @BeforeEach
+    void setUp() {
+        analisador = new AnalisadorRequisicao();
+    }
+
+    @Test
+    void testCompleteRequest() throws Exception {
+        ByteBuffer buffer = buffer(REQUISICAO);
+
+        assertTrue(analisador.analisar(buffer));
+        assertFalse(buffer.hasRemaining());
+
+        RequisicaoHTTP req = analisador.getRequisicao();
+        assertEquals("GET", req.getMetodo());
+        assertEquals("/index.html?q=1", req.getRecurso());
+        assertEquals("HTTP/1.1", req.getProtocolo());
+        assertEquals(Arrays.asList("example.com:8000"), req.getCabecalhos().get("Host"));
+        assertEquals(Arrays.asList("gzip", " deflate"), req.getCabecalhos().get("Accept-Encoding"));
+        assertEquals(Arrays.asList("value with spaces"), req.getCabecalhos().get("X-Custom"));
+    }
+
+    @Test
+    void testKnownTokensAreShared() throws Exception {
+        assertTrue(analisador.analisar(buffer(REQUISICAO)));
+
+        RequisicaoHTTP req = analisador.getRequisicao();
+        assertSame("GET", req.getMetodo());
+        assertSame("HTTP/1.1", req.getProtocolo());
+    }
+
+    @Test
+    void testResumesByteByByte() throws Exception {
+        byte[] bytes = REQUISICAO.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        buffer.flip();
+        boolean completa = false;
+        for (int i = 0; i < bytes.length; i++) {
+            assertFalse(completa);
+            buffer.compact();
+            buffer.put(bytes[i]);
+            buffer.flip();
+            completa = analisador.analisar(buffer);
+        }
+        assertTrue(completa);
+        assertEquals("/index.html?q=1", analisador.getRequisicao().getRecurso());
+        assertEquals(Arrays.asList("example.com:8000"), analisador.getRequisicao().getCabecalhos().get("Host"));
+    }
+
+    @Test
+    void testPipelinedRequests() throws Exception {
+        ByteBuffer buffer = buffer("GET /a HTTP/1.1\r\n\r\nHEAD /b HTTP/1.0\nConnection: close\n\n");
+
+        assertTrue(analisador.analisar(buffer));
+        assertEquals("/a", analisador.getRequisicao().getRecurso());
+        analisador.reiniciar();
+
+        assertTrue(analisador.analisar(buffer));
+        RequisicaoHTTP segunda = analisador.getRequisicao();
+        assertEquals("HEAD", segunda.getMetodo());
+        assertEquals("/b", segunda.getRecurso());
+        assertFalse(segunda.isManterViva());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testBodyConsumedBeforeNextRequest() throws Exception {
+        ByteBuffer buffer = buffer("POST /form HTTP/1.1\r\nContent-Length: 5\r\n\r\nhelloGET /next HTTP/1.1\r\n\r\n");
+
+        assertTrue(analisador.analisar(buffer));
+        assertArrayEquals("hello".getBytes(StandardCharsets.US_ASCII), analisador.getRequisicao().getCorpo());
+        analisador.reiniciar();
+
+        assertTrue(analisador.analisar(buffer));
+        assertEquals("/next", analisador.getRequisicao().getRecurso());
+        assertNull(analisador.getRequisicao().getCorpo());
+    }
+
+    @Test
+    void testBodySplitAcrossReads() throws Exception {
+        assertFalse(analisador.analisar(buffer("PUT /x HTTP/1.1\r\nContent-Length: 4\r\n\r\nab")));
+        assertTrue(analisador.isIniciada());
+        assertTrue(analisador.analisar(buffer("cd")));
+        assertArrayEquals("abcd".getBytes(StandardCharsets.US_ASCII), analisador.getRequisicao().getCorpo());
+    }
+
+    @Test
+    void testInvalidContentLength() {
+        assertThrows(RequisicaoInvalidaException.class,
+                () -> analisador.analisar(buffer("POST / HTTP/1.1\r\nContent-Length: abc\r\n\r\n")));
+    }
+
+    @Test
+    void testChunkedRequestBodyRejected() {
+        assertThrows(RequisicaoInvalidaException.class,
+                () -> analisador.analisar(buffer("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n")));
+    }
+
+    @Test
+    void testLeadingEmptyLinesIgnored() throws Exception {
+        assertTrue(analisador.analisar(buffer("\r\n\r\nGET / HTTP/1.1\r\n\r\n")));
+        assertEquals("/", analisador.getRequisicao().getRecurso());
+    }
+
+    @Test
+    void testIncompleteRequestKeepsPartialLine() throws Exception {
+        ByteBuffer buffer = buffer("GET / HTTP/1.1\r\nHost: loc");
+
+        assertFalse(analisador.analisar(buffer));
+        assertTrue(analisador.isIniciada());
+        assertEquals("Host: loc".length(), buffer.remaining());
+    }
+
+    @Test
+    void testDirectBuffer() throws Exception {
+        byte[] bytes = REQUISICAO.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer direto = ByteBuffer.allocateDirect(bytes.length);
+        direto.put(bytes).flip();
+
+        assertTrue(analisador.analisar(direto));
+        assertEquals("/index.html?q=1", analisador.getRequisicao().getRecurso());
+        assertEquals(Arrays.asList("value with spaces"), analisador.getRequisicao().getCabecalhos().get("X-Custom"));
+    }
+
+    @Test
+    void testInvalidRequestLine() {
+        assertThrows(RequisicaoInvalidaException.class, () -> analisador.analisar(buffer("GET\r\n\r\n")));
+    }
+
+    @Test
+    void testInvalidHeaderLine() {
+        assertThrows(RequisicaoInvalidaException.class,
+                () -> analisador.analisar(buffer("GET / HTTP/1.1\r\nsem dois pontos\r\n\r\n")));
+    }
+
+    @Test
+    void testLineTooLong() {
+        char[] longa = new char[AnalisadorRequisicao.LIMITE_LINHA + 1];
+        Arrays.fill(longa, 'a');
+
+        assertThrows(RequisicaoInvalidaException.class,
+                () -> analisador.analisar(buffer("GET /" + new String(longa))));
+    }
+
+    @Test
+    void testConnectionOptions() throws Exception {
+        assertTrue(analisador.analisar(buffer("GET / HTTP/1.1\r\nConnection: Keep-Alive, Upgrade\r\n\r\n")));
+        assertTrue(analisador.getRequisicao().isManterViva());
+        analisador.reiniciar();
+
+        assertTrue(analisador.analisar(buffer("GET / HTTP/1.1\r\nConnection: Upgrade, CLOSE\r\n\r\n")));
+        assertFalse(analisador.getRequisicao().isManterViva());
+        analisador.reiniciar();
+
+        assertTrue(analisador.analisar(buffer("GET / HTTP/1.1\r\nConnection: Upgrade\r\n\r\n")));
+        assertTrue(analisador.getRequisicao().isManterViva());
+    }
+
+    @Test
+    void testHeaderNamesAreCaseInsensitive() throws Exception {
+        assertTrue(analisador.analisar(buffer("POST / HTTP/1.1\r\nconnection: close\r\n"
+                + "CONTENT-LENGTH: 2\r\nx-custom: a\r\n\r\nok")));
+
+        RequisicaoHTTP req = analisador.getRequisicao();
+        assertFalse(req.isManterViva());
+        assertArrayEquals("ok".getBytes(StandardCharsets.US_ASCII), req.getCorpo());
+        assertEquals("close", req.getValorCabecalho(CabecalhoConhecido.CONNECTION));
+        assertEquals(Arrays.asList("2"), req.getCabecalhos().get("Content-Length"));
+        assertEquals(Arrays.asList("a"), req.getCabecalhos().get("X-Custom"));
+        //conhecidos aparecem na grafia usual, os demais como chegaram
+        assertTrue(req.getCabecalhos().keySet().containsAll(Arrays.asList("Connection", "Content-Length", "x-custom")));
+    }
+
+    private static ByteBuffer buffer(String texto) {
+        return ByteBuffer.wrap(texto.getBytes(StandardCharsets.US_ASCII));
+    }
+}
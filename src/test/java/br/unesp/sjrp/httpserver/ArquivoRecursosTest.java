@@ -0,0 +1,93 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+class ArquivoRecursosTest {
+
+    @TempDir
+    Path temporario;
+
+    private Path pacote;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path site = Files.createDirectory(temporario.resolve("site"));
+        Files.write(site.resolve("index.html"), "<html>inicio</html>".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(site.resolve("css"));
+        Files.write(site.resolve("css/site.css"), "body { margin: 0 }".getBytes(StandardCharsets.UTF_8));
+        Files.write(site.resolve("vazio.txt"), new byte[0]);
+        pacote = temporario.resolve("site.pack");
+
+        assertEquals(3, ArquivoRecursos.empacotar(site, pacote));
+    }
+
+    @Test
+    void testLookupReturnsMappedSlices() throws IOException {
+        ArquivoRecursos recursos = ArquivoRecursos.abrir(pacote);
+
+        Recurso css = recursos.buscar("css/site.css");
+        assertEquals(3, recursos.getQuantidade());
+        assertFalse(css.isEmMemoria());
+        assertEquals("text/css", css.getTipoConteudo());
+        assertEquals("body { margin: 0 }", texto(css.getMapeado()));
+        assertEquals("<html>inicio</html>", texto(recursos.buscar("index.html").getMapeado()));
+        assertEquals(0, recursos.buscar("vazio.txt").getTamanho());
+    }
+
+    @Test
+    void testPrecomputedEtagMatchesContent() throws IOException {
+        Recurso index = ArquivoRecursos.abrir(pacote).buscar("index.html");
+
+        assertEquals(Util.calcularETag("<html>inicio</html>".getBytes(StandardCharsets.UTF_8)), index.getEtag());
+        assertEquals(Files.getLastModifiedTime(temporario.resolve("site/index.html")).toMillis(),
+                index.getUltimaModificacao());
+    }
+
+    @Test
+    void testLookupIsStable() throws IOException {
+        ArquivoRecursos recursos = ArquivoRecursos.abrir(pacote);
+
+        assertSame(recursos.buscar("index.html"), recursos.buscar("index.html"));
+        assertNull(recursos.buscar("nao-existe.html"));
+        assertNull(recursos.buscar("css"));
+    }
+
+    @Test
+    void testSliceBodyWrittenToStream() throws IOException {
+        Recurso css = ArquivoRecursos.abrir(pacote).buscar("css/site.css");
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+
+        CorpoResposta corpo = css.criarCorpo();
+        corpo.escrever(saida, null);
+        corpo.escrever(saida, null);
+
+        assertEquals("body { margin: 0 }body { margin: 0 }", saida.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testInvalidArchiveRejected() throws IOException {
+        Path invalido = Files.write(temporario.resolve("invalido.pack"), "nada".getBytes(StandardCharsets.US_ASCII));
+        Path truncado = Files.write(temporario.resolve("truncado.pack"),
+                Arrays.copyOf(Files.readAllBytes(pacote), 20));
+
+        assertThrows(IOException.class, () -> ArquivoRecursos.abrir(invalido));
+        assertThrows(IOException.class, () -> ArquivoRecursos.abrir(truncado));
+    }
+
+    private static String texto(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
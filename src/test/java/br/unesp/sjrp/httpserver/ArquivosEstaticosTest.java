@@ -0,0 +1,431 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+class ArquivosEstaticosTest {
+
+    private ArquivosEstaticos arquivos;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        arquivos = ArquivosEstaticos.criar(new Configuracao());
+    }
+
+    @Test
+    void testServesIndexForRoot() throws IOException {
+        RespostaHTTP resposta = arquivos.responder(requisicao("/"));
+
+        assertEquals(200, resposta.getCodigoResposta());
+        assertTrue(new String(resposta.getConteudoResposta(), StandardCharsets.UTF_8).contains("Funcionou!!!!"));
+        assertEquals(resposta.getTamanhoResposta(), resposta.getCabecalhos().get("Content-Length").get(0));
+    }
+
+    @Test
+    void testNotFoundUsesErrorPage() throws IOException {
+        RespostaHTTP resposta = arquivos.responder(requisicao("/nao-existe.html"));
+
+        assertEquals(404, resposta.getCodigoResposta());
+        assertEquals("Not Found", resposta.getMensagem());
+        assertTrue(resposta.getConteudoResposta().length > 0);
+    }
+
+    @Test
+    void testTraversalIsNotFound() throws IOException {
+        assertEquals(404, arquivos.responder(requisicao("/../pom.xml")).getCodigoResposta());
+    }
+
+    @Test
+    void testRepeatedRequestsHitCache() throws IOException {
+        arquivos.responder(requisicao("/index.html"));
+        arquivos.responder(requisicao("/index.html?v=2"));
+
+        assertEquals(1, arquivos.getCache().getFalhas());
+        assertEquals(1, arquivos.getCache().getAcertos());
+    }
+
+    @Test
+    void testPreSerializedResponseReused() throws IOException {
+        RespostaHTTP primeira = arquivos.responder(requisicao("/"));
+        RespostaHTTP segunda = arquivos.responder(requisicao("/"));
+
+        assertNotNull(primeira.getPronta());
+        assertSame(primeira.getPronta(), segunda.getPronta());
+    }
+
+    @Test
+    void testPreSerializedResponseDroppedWithResource() throws IOException {
+        RespostaPronta antes = arquivos.responder(requisicao("/")).getPronta();
+
+        arquivos.getCache().invalidar("index.html");
+
+        assertNotSame(antes, arquivos.responder(requisicao("/")).getPronta());
+    }
+
+    @Test
+    void testHeadersEditedThroughGetterOnCachedResource() throws IOException {
+        RespostaHTTP resposta = arquivos.responder(requisicao("/"));
+        assertNotNull(resposta.getPronta());
+
+        resposta.getCabecalhos().put("X-Extra", List.of("1"));
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        resposta.setSaida(saida);
+        resposta.enviar();
+
+        assertNull(resposta.getPronta());
+        assertTrue(saida.toString(StandardCharsets.ISO_8859_1).contains("X-Extra: 1\r\n"));
+        // the next response from the cache still uses the shared template
+        RespostaHTTP seguinte = arquivos.responder(requisicao("/"));
+        assertNotNull(seguinte.getPronta());
+        assertFalse(seguinte.getCabecalhos().containsKey("X-Extra"));
+    }
+
+    @Test
+    void testUnknownProtocolNotPreSerialized() throws IOException {
+        RequisicaoHTTP requisicao = requisicao("/");
+        requisicao.setProtocolo("HTTP/0.9");
+
+        RespostaHTTP resposta = arquivos.responder(requisicao);
+
+        assertEquals(200, resposta.getCodigoResposta());
+        assertNull(resposta.getPronta());
+    }
+
+    @Test
+    void testGzipForLargeTextResource() throws IOException {
+        RequisicaoHTTP requisicao = requisicao("/estaticos/grande.css");
+        requisicao.setCabecalho("Accept-Encoding", "gzip", " deflate");
+
+        RespostaHTTP resposta = arquivos.responder(requisicao);
+
+        assertEquals(200, resposta.getCodigoResposta());
+        assertEquals("gzip", resposta.getCabecalhos().get("Content-Encoding").get(0));
+        assertEquals("Accept-Encoding", resposta.getCabecalhos().get("Vary").get(0));
+        assertEquals("text/css", resposta.getCabecalhos().get("Content-Type").get(0));
+        assertEquals(resposta.getTamanhoResposta(), resposta.getCabecalhos().get("Content-Length").get(0));
+        byte[] original = arquivos.responder(requisicao("/estaticos/grande.css")).getConteudoResposta();
+        assertArrayEquals(original, new java.util.zip.GZIPInputStream(
+                new java.io.ByteArrayInputStream(resposta.getConteudoResposta())).readAllBytes());
+    }
+
+    @Test
+    void testCompressedVariantComputedOnce() throws IOException {
+        RequisicaoHTTP requisicao = requisicao("/estaticos/grande.css");
+        requisicao.setCabecalho("Accept-Encoding", "deflate");
+
+        RespostaHTTP primeira = arquivos.responder(requisicao);
+        RespostaHTTP segunda = arquivos.responder(requisicao);
+
+        assertEquals("deflate", primeira.getCabecalhos().get("Content-Encoding").get(0));
+        assertSame(primeira.getConteudoResposta(), segunda.getConteudoResposta());
+    }
+
+    @Test
+    void testIdentityStillVaries() throws IOException {
+        RespostaHTTP resposta = arquivos.responder(requisicao("/estaticos/grande.css"));
+
+        assertNull(resposta.getCabecalhos().get("Content-Encoding"));
+        assertEquals("Accept-Encoding", resposta.getCabecalhos().get("Vary").get(0));
+    }
+
+    @Test
+    void testSmallResourceNotCompressed() throws IOException {
+        RequisicaoHTTP requisicao = requisicao("/estaticos/pequeno.css");
+        requisicao.setCabecalho("Accept-Encoding", "gzip");
+
+        RespostaHTTP resposta = arquivos.responder(requisicao);
+
+        assertNull(resposta.getCabecalhos().get("Content-Encoding"));
+        assertNull(resposta.getCabecalhos().get("Vary"));
+    }
+
+    @Test
+    void testPrecompressedSiblingPreferred() throws IOException {
+        RequisicaoHTTP requisicao = requisicao("/estaticos/pre.css");
+        requisicao.setCabecalho("Accept-Encoding", "gzip");
+
+        RespostaHTTP resposta = arquivos.responder(requisicao);
+
+        assertEquals("gzip", resposta.getCabecalhos().get("Content-Encoding").get(0));
+        String descomprimido = new String(new java.util.zip.GZIPInputStream(
+                new java.io.ByteArrayInputStream(resposta.getConteudoResposta())).readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals("/* pre-comprimido */\n", descomprimido);
+    }
+
+    @Test
+    void testCompressionDisabled() throws IOException {
+        ArquivosEstaticos semCompressao = new ArquivosEstaticos(new CacheRecursos(new FonteClasspath(), 100_000, 0));
+        RequisicaoHTTP requisicao = requisicao("/estaticos/grande.css");
+        requisicao.setCabecalho("Accept-Encoding", "gzip");
+
+        RespostaHTTP resposta = semCompressao.responder(requisicao);
+
+        assertNull(resposta.getCabecalhos().get("Content-Encoding"));
+    }
+
+    @Test
+    void testFallbackWithoutErrorPage() throws IOException {
+        ArquivosEstaticos vazio = new ArquivosEstaticos(new CacheRecursos(caminho -> null, 1000, 1000));
+
+        RespostaHTTP resposta = vazio.responder(requisicao("/"));
+
+        assertEquals(404, resposta.getCodigoResposta());
+        assertArrayEquals(ArquivosEstaticos.PAGINA_404_PADRAO, resposta.getConteudoResposta());
+    }
+
+    @Test
+    void testLargeFileFromDocumentRootStreamedFromDisk(@TempDir Path raiz) throws IOException {
+        Files.write(raiz.resolve("grande.css"), new byte[4096]);
+        ArquivosEstaticos disco = new ArquivosEstaticos(
+                new CacheRecursos(new FonteDiretorio(raiz, 1024), 1024 * 1024, 0), 0);
+
+        RespostaHTTP resposta = disco.responder(requisicao("/grande.css"));
+
+        assertEquals(200, resposta.getCodigoResposta());
+        assertTrue(resposta.getCorpo() instanceof CorpoArquivo);
+        assertNull(resposta.getPronta());
+        assertEquals("4096", resposta.getCabecalhos().get("Content-Length").get(0));
+        assertNull(resposta.getCabecalhos().get("Content-Encoding"));
+    }
+
+    @Test
+    void testRewrittenFileServedAgain(@TempDir Path raiz) throws Exception {
+        Path arquivo = raiz.resolve("grande.css");
+        Files.write(arquivo, new byte[4096]);
+        ArquivosEstaticos disco = new ArquivosEstaticos(
+                new CacheRecursos(new FonteDiretorio(raiz, 1024), 1024 * 1024, 0), 0);
+        assertEquals("4096", disco.responder(requisicao("/grande.css")).getCabecalhos().get("Content-Length").get(0));
+
+        Files.write(arquivo, new byte[2048]);
+        Files.setLastModifiedTime(arquivo, FileTime.fromMillis(Files.getLastModifiedTime(arquivo).toMillis() + 5000));
+        // the cache looks at the file again after a second
+        Thread.sleep(1100);
+
+        RespostaHTTP resposta = disco.responder(requisicao("/grande.css"));
+        assertEquals("2048", resposta.getCabecalhos().get("Content-Length").get(0));
+        assertEquals(2048, resposta.getCorpo().getTamanho());
+    }
+
+    @Test
+    void testAsyncAnswersCachedResourceInline(@TempDir Path raiz) throws Exception {
+        Files.write(raiz.resolve("a.html"), "<html>a</html>".getBytes(StandardCharsets.UTF_8));
+        ArquivosEstaticos disco = new ArquivosEstaticos(
+                new CacheRecursos(new FonteDiretorio(raiz, 1024), 1024 * 1024, 0), 0);
+
+        // the first lookup reads the disk on another thread
+        CompletableFuture<RespostaHTTP> primeira = disco.atenderAssincrono(requisicao("/a.html")).toCompletableFuture();
+        assertEquals(200, primeira.get().getCodigoResposta());
+        CompletableFuture<RespostaHTTP> segunda = disco.atenderAssincrono(requisicao("/a.html")).toCompletableFuture();
+        assertTrue(segunda.isDone());
+        assertEquals(200, segunda.get().getCodigoResposta());
+        assertEquals(404, disco.atenderAssincrono(requisicao("/b.html")).toCompletableFuture().get().getCodigoResposta());
+    }
+
+    @Test
+    void testPackedArchiveServedFromMapping(@TempDir Path temporario) throws IOException {
+        Path site = Files.createDirectory(temporario.resolve("site"));
+        Files.write(site.resolve("index.html"), "<html>pacote</html>".getBytes(StandardCharsets.UTF_8));
+        Path pacote = temporario.resolve("site.pack");
+        ArquivoRecursos.empacotar(site, pacote);
+        Configuracao configuracao = new Configuracao();
+        configuracao.definir("pacote", pacote.toString());
+        ArquivosEstaticos empacotados = ArquivosEstaticos.criar(configuracao);
+
+        RespostaHTTP resposta = empacotados.responder(requisicao("/"));
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        resposta.setSaida(saida);
+        resposta.enviar();
+
+        assertTrue(resposta.getCorpo() instanceof CorpoBuffer);
+        assertEquals("19", resposta.getCabecalhos().get("Content-Length").get(0));
+        assertTrue(saida.toString(StandardCharsets.UTF_8).endsWith("\r\n\r\n<html>pacote</html>"));
+    }
+
+    @Test
+    void testValidatorsSentWithContent() throws IOException {
+        RespostaHTTP resposta = arquivos.responder(requisicao("/"));
+
+        assertEquals(Util.calcularETag(resposta.getConteudoResposta()), resposta.getCabecalhos().get("ETag").get(0));
+        assertTrue(Util.lerDataGMT(resposta.getCabecalhos().get("Last-Modified").get(0)) > 0);
+        assertNull(arquivos.responder(requisicao("/nao-existe.html")).getCabecalhos().get("ETag"));
+    }
+
+    @Test
+    void testIfNoneMatchAnswersNotModified() throws IOException {
+        String etag = arquivos.responder(requisicao("/")).getCabecalhos().get("ETag").get(0);
+        RequisicaoHTTP requisicao = requisicao("/");
+        requisicao.setCabecalho("If-None-Match", "\"outra\"", " W/" + etag);
+
+        RespostaHTTP resposta = arquivos.responder(requisicao);
+
+        assertSame(resposta.getPronta(), arquivos.responder(requisicao).getPronta());
+        assertEquals(304, resposta.getCodigoResposta());
+        assertEquals("Not Modified", resposta.getMensagem());
+        assertEquals(0, resposta.getConteudoResposta().length);
+        assertEquals(etag, resposta.getCabecalhos().get("ETag").get(0));
+        assertNull(resposta.getCabecalhos().get("Content-Length"));
+    }
+
+    @Test
+    void testIfNoneMatchMismatchSendsContent() throws IOException {
+        RequisicaoHTTP requisicao = requisicao("/");
+        requisicao.setCabecalho("If-None-Match", "\"outra\"");
+        //If-None-Match tem precedência sobre If-Modified-Since
+        requisicao.setCabecalho("If-Modified-Since", "Fri, 01 Jan 2100 00:00:00 GMT");
+
+        assertEquals(200, arquivos.responder(requisicao).getCodigoResposta());
+    }
+
+    @Test
+    void testIfModifiedSince() throws IOException {
+        RequisicaoHTTP depois = requisicao("/");
+        //o analisador separa o valor na vírgula
+        depois.setCabecalho("If-Modified-Since", "Fri", " 01 Jan 2100 00:00:00 GMT");
+        RequisicaoHTTP antes = requisicao("/");
+        antes.setCabecalho("If-Modified-Since", "Thu", " 01 Jan 1970 00:00:01 GMT");
+
+        assertEquals(304, arquivos.responder(depois).getCodigoResposta());
+        assertEquals(200, arquivos.responder(antes).getCodigoResposta());
+    }
+
+    @Test
+    void testConditionalIgnoredForPost() throws IOException {
+        RequisicaoHTTP requisicao = requisicao("/");
+        requisicao.setMetodo("POST");
+        requisicao.setCabecalho("If-None-Match", "*");
+
+        assertEquals(200, arquivos.responder(requisicao).getCodigoResposta());
+    }
+
+    @Test
+    void testCompressedVariantHasOwnEtag() throws IOException {
+        RequisicaoHTTP gzip = requisicao("/estaticos/grande.css");
+        gzip.setCabecalho("Accept-Encoding", "gzip");
+        String etagGzip = arquivos.responder(gzip).getCabecalhos().get("ETag").get(0);
+        String etag = arquivos.responder(requisicao("/estaticos/grande.css")).getCabecalhos().get("ETag").get(0);
+        gzip.setCabecalho("If-None-Match", etag);
+
+        assertNotEquals(etag, etagGzip);
+        assertEquals(200, arquivos.responder(gzip).getCodigoResposta());
+    }
+
+    @Test
+    void testNotModifiedForFileOnDisk(@TempDir Path raiz) throws IOException {
+        Files.write(raiz.resolve("grande.bin"), new byte[4096]);
+        ArquivosEstaticos disco = new ArquivosEstaticos(
+                new CacheRecursos(new FonteDiretorio(raiz, 1024), 1024 * 1024, 0));
+        String etag = disco.responder(requisicao("/grande.bin")).getCabecalhos().get("ETag").get(0);
+        RequisicaoHTTP requisicao = requisicao("/grande.bin");
+        requisicao.setCabecalho("If-None-Match", etag);
+
+        RespostaHTTP resposta = disco.responder(requisicao);
+
+        assertEquals(304, resposta.getCodigoResposta());
+        assertNull(resposta.getCorpo());
+    }
+
+    @Test
+    void testSingleRangeServedAsSlice() throws IOException {
+        byte[] completo = arquivos.responder(requisicao("/estaticos/grande.css")).getConteudoResposta();
+        RequisicaoHTTP requisicao = requisicao("/estaticos/grande.css");
+        requisicao.setCabecalho("Range", "bytes=10-19");
+
+        RespostaHTTP resposta = arquivos.responder(requisicao);
+
+        assertEquals(206, resposta.getCodigoResposta());
+        assertEquals("bytes 10-19/" + completo.length, resposta.getCabecalhos().get("Content-Range").get(0));
+        assertEquals("10", resposta.getCabecalhos().get("Content-Length").get(0));
+        assertEquals("bytes", resposta.getCabecalhos().get("Accept-Ranges").get(0));
+        assertEquals(new String(completo, 10, 10, StandardCharsets.ISO_8859_1), enviarCorpo(resposta));
+    }
+
+    @Test
+    void testMultipleRangesAsMultipart() throws IOException {
+        byte[] completo = arquivos.responder(requisicao("/estaticos/grande.css")).getConteudoResposta();
+        RequisicaoHTTP requisicao = requisicao("/estaticos/grande.css");
+        //o analisador separa o valor na vírgula
+        requisicao.setCabecalho("Range", "bytes=0-4", " -3");
+
+        RespostaHTTP resposta = arquivos.responder(requisicao);
+        String corpo = enviarCorpo(resposta);
+
+        assertEquals(206, resposta.getCodigoResposta());
+        assertEquals("multipart/byteranges; boundary=" + ArquivosEstaticos.SEPARADOR,
+                resposta.getCabecalhos().get("Content-Type").get(0));
+        assertEquals(String.valueOf(corpo.length()), resposta.getCabecalhos().get("Content-Length").get(0));
+        String esperado = "--" + ArquivosEstaticos.SEPARADOR + "\r\nContent-Type: text/css\r\nContent-Range: bytes 0-4/"
+                + completo.length + "\r\n\r\n" + new String(completo, 0, 5, StandardCharsets.ISO_8859_1)
+                + "\r\n--" + ArquivosEstaticos.SEPARADOR + "\r\nContent-Type: text/css\r\nContent-Range: bytes "
+                + (completo.length - 3) + "-" + (completo.length - 1) + "/" + completo.length + "\r\n\r\n"
+                + new String(completo, completo.length - 3, 3, StandardCharsets.ISO_8859_1)
+                + "\r\n--" + ArquivosEstaticos.SEPARADOR + "--\r\n";
+        assertEquals(esperado, corpo);
+    }
+
+    @Test
+    void testUnsatisfiableRange() throws IOException {
+        RequisicaoHTTP requisicao = requisicao("/");
+        requisicao.setCabecalho("Range", "bytes=999999-");
+
+        RespostaHTTP resposta = arquivos.responder(requisicao);
+
+        assertEquals(416, resposta.getCodigoResposta());
+        assertTrue(resposta.getCabecalhos().get("Content-Range").get(0).startsWith("bytes */"));
+    }
+
+    @Test
+    void testIfRangeMismatchSendsWholeResource() throws IOException {
+        String etag = arquivos.responder(requisicao("/")).getCabecalhos().get("ETag").get(0);
+        RequisicaoHTTP antiga = requisicao("/");
+        antiga.setCabecalho("Range", "bytes=0-0");
+        antiga.setCabecalho("If-Range", "\"antiga\"");
+        RequisicaoHTTP atual = requisicao("/");
+        atual.setCabecalho("Range", "bytes=0-0");
+        atual.setCabecalho("If-Range", etag);
+
+        assertEquals(200, arquivos.responder(antiga).getCodigoResposta());
+        assertEquals(206, arquivos.responder(atual).getCodigoResposta());
+    }
+
+    @Test
+    void testRangeOnFileUsesFileRegion(@TempDir Path raiz) throws IOException {
+        Files.write(raiz.resolve("video.mp4"), new byte[4096]);
+        ArquivosEstaticos disco = new ArquivosEstaticos(
+                new CacheRecursos(new FonteDiretorio(raiz, 1024), 1024 * 1024, 0));
+        RequisicaoHTTP requisicao = requisicao("/video.mp4");
+        requisicao.setCabecalho("Range", "bytes=1000-");
+
+        RespostaHTTP resposta = disco.responder(requisicao);
+
+        assertEquals(206, resposta.getCodigoResposta());
+        assertEquals(1000, ((CorpoArquivo) resposta.getCorpo()).getPosicao());
+        assertEquals(3096, resposta.getCorpo().getTamanho());
+    }
+
+    private static String enviarCorpo(RespostaHTTP resposta) throws IOException {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        resposta.setSaida(saida);
+        resposta.enviar();
+        String texto = saida.toString(StandardCharsets.ISO_8859_1);
+        return texto.substring(texto.indexOf("\r\n\r\n") + 4);
+    }
+
+    private static RequisicaoHTTP requisicao(String recurso) {
+        RequisicaoHTTP requisicao = new RequisicaoHTTP();
+        requisicao.setMetodo("GET");
+        requisicao.setRecurso(recurso);
+        requisicao.setProtocolo("HTTP/1.1");
+        return requisicao;
+    }
+}
@@ -0,0 +1,112 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+class CabecalhosRequisicaoTest {
+
+    @Test
+    void testKnownHeaderFromBytesInAnyCase() {
+        for (String nome : new String[]{"If-None-Match", "if-none-match", "IF-NONE-MATCH"}) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(nome.length());
+            buffer.put(nome.getBytes(StandardCharsets.US_ASCII));
+            int hash = CabecalhoConhecido.hash(buffer, 0, nome.length());
+
+            assertEquals(CabecalhoConhecido.hash(nome), hash);
+            assertSame(CabecalhoConhecido.IF_NONE_MATCH, CabecalhoConhecido.procurar(buffer, 0, nome.length(), hash));
+        }
+        ByteBuffer outro = ByteBuffer.wrap("X-Range".getBytes(StandardCharsets.US_ASCII));
+        assertNull(CabecalhoConhecido.procurar(outro, 0, 7, CabecalhoConhecido.hash(outro, 0, 7)));
+    }
+
+    @Test
+    void testValueSplitOnlyWhenReadAsList() {
+        CabecalhosRequisicao cabecalhos = new CabecalhosRequisicao();
+        cabecalhos.definir(CabecalhoConhecido.IF_MODIFIED_SINCE, "Sun, 06 Nov 1994 08:49:37 GMT");
+
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", cabecalhos.getValor(CabecalhoConhecido.IF_MODIFIED_SINCE));
+        assertEquals(Arrays.asList("Sun", " 06 Nov 1994 08:49:37 GMT"),
+                cabecalhos.get(CabecalhoConhecido.IF_MODIFIED_SINCE));
+        //depois de separado o texto continua igual
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", cabecalhos.getValor(CabecalhoConhecido.IF_MODIFIED_SINCE));
+        assertNull(cabecalhos.get(CabecalhoConhecido.RANGE));
+        assertFalse(cabecalhos.contem(CabecalhoConhecido.RANGE));
+    }
+
+    @Test
+    void testMapLookupIgnoresCase() {
+        CabecalhosRequisicao cabecalhos = new CabecalhosRequisicao();
+        cabecalhos.put("accept-encoding", Arrays.asList("gzip"));
+        cabecalhos.definir("X-Trace", CabecalhoConhecido.hash("X-Trace"), "1, 2");
+
+        assertEquals(Arrays.asList("gzip"), cabecalhos.get("Accept-Encoding"));
+        assertEquals(Arrays.asList("gzip"), cabecalhos.get(CabecalhoConhecido.ACCEPT_ENCODING));
+        assertEquals(Arrays.asList("1", " 2"), cabecalhos.get("x-trace"));
+        assertTrue(cabecalhos.containsKey("X-TRACE"));
+        assertFalse(cabecalhos.containsKey("X-Outro"));
+        assertNull(cabecalhos.get(42));
+    }
+
+    @Test
+    void testRepeatedHeaderReplacesValue() {
+        CabecalhosRequisicao cabecalhos = new CabecalhosRequisicao();
+        cabecalhos.definir(CabecalhoConhecido.HOST, "a");
+        cabecalhos.definir(CabecalhoConhecido.HOST, "b");
+        cabecalhos.definir("X-A", CabecalhoConhecido.hash("X-A"), "1");
+        cabecalhos.definir("x-a", CabecalhoConhecido.hash("x-a"), "2");
+
+        assertEquals(2, cabecalhos.size());
+        assertEquals("b", cabecalhos.getValor(CabecalhoConhecido.HOST));
+        assertEquals(Arrays.asList("2"), cabecalhos.get("X-A"));
+    }
+
+    @Test
+    void testIterationKnownFirstThenArrivalOrder() {
+        CabecalhosRequisicao cabecalhos = new CabecalhosRequisicao();
+        for (int i = 0; i < 10; i++) {
+            cabecalhos.definir("X-" + i, CabecalhoConhecido.hash("X-" + i), String.valueOf(i));
+        }
+        cabecalhos.definir(CabecalhoConhecido.CONNECTION, "close");
+        cabecalhos.definir(CabecalhoConhecido.HOST, "h");
+
+        Iterator<Map.Entry<String, List<String>>> entradas = cabecalhos.entrySet().iterator();
+        assertEquals("Host", entradas.next().getKey());
+        assertEquals("Connection", entradas.next().getKey());
+        for (int i = 0; i < 10; i++) {
+            Map.Entry<String, List<String>> entrada = entradas.next();
+            assertEquals("X-" + i, entrada.getKey());
+            assertEquals(Arrays.asList(String.valueOf(i)), entrada.getValue());
+        }
+        assertFalse(entradas.hasNext());
+        assertEquals(12, cabecalhos.size());
+    }
+
+    @Test
+    void testEqualsOrdinaryMap() {
+        CabecalhosRequisicao cabecalhos = new CabecalhosRequisicao();
+        cabecalhos.definir(CabecalhoConhecido.HOST, "h");
+        cabecalhos.definir("X-A", CabecalhoConhecido.hash("X-A"), "1");
+        Map<String, List<String>> esperado = new TreeMap<>();
+        esperado.put("Host", Arrays.asList("h"));
+        esperado.put("X-A", Arrays.asList("1"));
+
+        assertEquals(esperado, cabecalhos);
+        assertEquals(cabecalhos, esperado);
+    }
+
+    @Test
+    void testOptionSearch() {
+        assertTrue(CabecalhosRequisicao.temOpcao("Upgrade, CLOSE", "close"));
+        assertTrue(CabecalhosRequisicao.temOpcao(" keep-alive ", "keep-alive"));
+        assertFalse(CabecalhosRequisicao.temOpcao("closed, x", "close"));
+        assertFalse(CabecalhosRequisicao.temOpcao("", "close"));
+    }
+}
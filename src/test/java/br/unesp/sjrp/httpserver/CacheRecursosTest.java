@@ -0,0 +1,153 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CacheRecursosTest {
+
+    private final Map<String, byte[]> arquivos = new HashMap<>();
+    private final AtomicInteger cargas = new AtomicInteger();
+    private final FonteRecursos fonte = caminho -> {
+        cargas.incrementAndGet();
+        byte[] conteudo = arquivos.get(caminho);
+        return conteudo != null ? new Recurso(caminho, conteudo) : null;
+    };
+
+    @BeforeEach
+    void setUp() {
+        for (String nome : new String[]{"a.html", "b.html", "c.html", "d.html", "e.html"}) {
+            arquivos.put(nome, new byte[60]);
+        }
+    }
+
+    @Test
+    void testHitAfterFirstLoad() throws IOException {
+        CacheRecursos cache = new CacheRecursos(fonte, 10_000, 1000);
+
+        Recurso primeiro = cache.buscar("a.html");
+        Recurso segundo = cache.buscar("a.html");
+
+        assertSame(primeiro, segundo);
+        assertEquals(1, cargas.get());
+        assertEquals(1, cache.getAcertos());
+        assertEquals(1, cache.getFalhas());
+        assertEquals(1, cache.getQuantidade());
+    }
+
+    @Test
+    void testMissesAreCachedUntilTtl() throws Exception {
+        CacheRecursos cache = new CacheRecursos(fonte, 10_000, 50);
+
+        assertNull(cache.buscar("nao-existe"));
+        assertNull(cache.buscar("nao-existe"));
+        assertEquals(1, cargas.get());
+
+        Thread.sleep(80);
+        assertNull(cache.buscar("nao-existe"));
+        assertEquals(2, cargas.get());
+    }
+
+    @Test
+    void testNegativeCachingDisabled() throws IOException {
+        CacheRecursos cache = new CacheRecursos(fonte, 10_000, 0);
+
+        cache.buscar("nao-existe");
+        cache.buscar("nao-existe");
+
+        assertEquals(2, cargas.get());
+        assertEquals(0, cache.getQuantidade());
+    }
+
+    @Test
+    void testEvictionKeepsBudget() throws IOException {
+        // room for four entries
+        CacheRecursos cache = new CacheRecursos(fonte, 700, 1000);
+
+        for (String nome : new String[]{"a.html", "b.html", "c.html", "d.html", "e.html"}) {
+            cache.buscar(nome);
+        }
+
+        assertTrue(cache.getBytesUsados() <= cache.getLimiteBytes());
+        assertTrue(cache.getRemocoes() >= 1);
+    }
+
+    @Test
+    void testChargedBytesCountTowardBudget() throws IOException {
+        CacheRecursos cache = new CacheRecursos(fonte, 700, 1000);
+        Recurso a = cache.buscar("a.html");
+        cache.buscar("b.html");
+        long antes = cache.getBytesUsados();
+
+        cache.cobrar(a, 100);
+        assertEquals(antes + 100, cache.getBytesUsados());
+
+        // the extra bytes push the cache over budget
+        cache.cobrar(a, 400);
+        assertTrue(cache.getBytesUsados() <= cache.getLimiteBytes());
+        assertTrue(cache.getRemocoes() >= 1);
+    }
+
+    @Test
+    void testChargeIgnoredAfterEviction() throws IOException {
+        CacheRecursos cache = new CacheRecursos(fonte, 10_000, 1000);
+        Recurso a = cache.buscar("a.html");
+        cache.buscar("b.html");
+        cache.invalidar("a.html");
+        long antes = cache.getBytesUsados();
+
+        cache.cobrar(a, 100);
+        // same path, but not the instance held by the cache
+        cache.cobrar(new Recurso("b.html", new byte[60]), 100);
+
+        assertEquals(antes, cache.getBytesUsados());
+    }
+
+    @Test
+    void testRecentlyUsedEntrySurvivesEviction() throws IOException {
+        CacheRecursos cache = new CacheRecursos(fonte, 700, 1000);
+
+        cache.buscar("a.html");
+        cache.buscar("b.html");
+        cache.buscar("c.html");
+        cache.buscar("d.html");
+        // a.html gets a second chance, b.html is evicted
+        cache.buscar("a.html");
+        cache.buscar("e.html");
+        cargas.set(0);
+
+        cache.buscar("a.html");
+        assertEquals(0, cargas.get());
+        cache.buscar("b.html");
+        assertEquals(1, cargas.get());
+    }
+
+    @Test
+    void testOversizedResourceNotCached() throws IOException {
+        arquivos.put("grande.bin", new byte[5000]);
+        CacheRecursos cache = new CacheRecursos(fonte, 10_000, 1000);
+
+        assertNotNull(cache.buscar("grande.bin"));
+        assertNotNull(cache.buscar("grande.bin"));
+
+        assertEquals(2, cargas.get());
+    }
+
+    @Test
+    void testInvalidate() throws IOException {
+        CacheRecursos cache = new CacheRecursos(fonte, 10_000, 1000);
+        cache.buscar("a.html");
+        arquivos.put("a.html", new byte[7]);
+
+        cache.invalidar("a.html");
+
+        assertEquals(7, cache.buscar("a.html").getTamanho());
+        cache.limpar();
+        assertEquals(0, cache.getQuantidade());
+    }
+}
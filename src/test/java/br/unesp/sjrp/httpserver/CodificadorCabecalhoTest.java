@@ -0,0 +1,80 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+class CodificadorCabecalhoTest {
+
+    private static String texto(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void testCommonStatusLineAndHeaders() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setCabecalho("Content-Length", "5");
+        resposta.setCabecalho("Content-Type", "text/html");
+
+        byte[] bytes = CodificadorCabecalho.codificar(resposta);
+
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Length: 5\r\nContent-Type: text/html\r\n\r\n", texto(bytes));
+        assertEquals(bytes.length, CodificadorCabecalho.tamanho(resposta));
+    }
+
+    @Test
+    void testUncommonStatusAndHeader() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.0", 418, "I'm a teapot");
+        resposta.setCabecalho("X-Bule", "sim");
+
+        assertEquals("HTTP/1.0 418 I'm a teapot\r\nX-Bule: sim\r\n\r\n", texto(CodificadorCabecalho.codificar(resposta)));
+    }
+
+    @Test
+    void testCustomMessageForKnownCode() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 404, "Nao Encontrado");
+        resposta.setCabecalho("Content-Length", "0");
+
+        assertTrue(texto(CodificadorCabecalho.codificar(resposta)).startsWith("HTTP/1.1 404 Nao Encontrado\r\n"));
+    }
+
+    @Test
+    void testMultipleValuesJoinedWithComma() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setCabecalho("Vary", "Accept-Encoding", "Range");
+
+        assertEquals("HTTP/1.1 200 OK\r\nVary: Accept-Encoding, Range\r\n\r\n", texto(CodificadorCabecalho.codificar(resposta)));
+    }
+
+    @Test
+    void testNoHeaders() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 304, "Not Modified");
+
+        assertEquals("HTTP/1.1 304 Not Modified\r\n\r\n", texto(CodificadorCabecalho.codificar(resposta)));
+    }
+
+    @Test
+    void testLatin1KeptAndOtherCharsReplaced() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setCabecalho("X-Texto", "ação €");
+
+        byte[] bytes = CodificadorCabecalho.codificar(resposta);
+
+        assertEquals("HTTP/1.1 200 OK\r\nX-Texto: ação ?\r\n\r\n", texto(bytes));
+        assertEquals(bytes.length, CodificadorCabecalho.tamanho(resposta));
+    }
+
+    @Test
+    void testEncodesAtPosition() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setCabecalho("Content-Length", "0");
+        byte[] destino = new byte[100];
+
+        int fim = CodificadorCabecalho.codificar(resposta, destino, 10);
+
+        assertEquals(10 + CodificadorCabecalho.tamanho(resposta), fim);
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n", new String(destino, 10, fim - 10, StandardCharsets.ISO_8859_1));
+    }
+
+}
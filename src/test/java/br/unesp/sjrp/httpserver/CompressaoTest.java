@@ -0,0 +1,56 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+class CompressaoTest {
+
+    @Test
+    void testNegociarPrefersGzip() {
+        assertEquals("gzip", Compressao.negociar(Arrays.asList("gzip", " deflate", " br")));
+        assertEquals("gzip", Compressao.negociar(Arrays.asList("deflate", " gzip")));
+    }
+
+    @Test
+    void testNegociarHonorsWeights() {
+        assertEquals("deflate", Compressao.negociar(Arrays.asList("gzip;q=0.5", " deflate")));
+        assertNull(Compressao.negociar(Arrays.asList("gzip;q=0", " deflate;q=0")));
+        assertEquals("deflate", Compressao.negociar(Arrays.asList("gzip;q=0", " *")));
+        assertEquals("gzip", Compressao.negociar(Arrays.asList("x-gzip")));
+    }
+
+    @Test
+    void testNegociarWithoutSupportedEncoding() {
+        assertNull(Compressao.negociar(null));
+        assertNull(Compressao.negociar(Arrays.asList("br")));
+        assertNull(Compressao.negociar(Arrays.asList("identity")));
+    }
+
+    @Test
+    void testIsComprimivel() {
+        assertTrue(Compressao.isComprimivel("text/html"));
+        assertTrue(Compressao.isComprimivel("application/javascript"));
+        assertTrue(Compressao.isComprimivel("image/svg+xml"));
+        assertFalse(Compressao.isComprimivel("image/png"));
+        assertFalse(Compressao.isComprimivel("application/octet-stream"));
+    }
+
+    @Test
+    void testComprimirRoundTrip() throws IOException {
+        byte[] dados = "abc abc abc abc abc abc abc abc abc abc".repeat(20).getBytes(StandardCharsets.US_ASCII);
+
+        byte[] gzip = Compressao.comprimir(dados, Compressao.GZIP);
+        byte[] deflate = Compressao.comprimir(dados, Compressao.DEFLATE);
+
+        assertTrue(gzip.length < dados.length);
+        assertArrayEquals(dados, new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+        assertArrayEquals(dados, new InflaterInputStream(new ByteArrayInputStream(deflate)).readAllBytes());
+    }
+}
@@ -0,0 +1,329 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+class ConexaoHTTP2Test {
+
+    private static final byte[] PREFACIO = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private Roteador anterior;
+    private Servidor servidor;
+
+    @BeforeEach
+    void iniciar() throws Exception {
+        anterior = Roteador.getPadrao();
+        Roteador roteador = Roteador.criar(new Configuracao());
+        roteador.adicionar("GET", "/lento", requisicao -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return texto(requisicao, "lento");
+        });
+        roteador.adicionar("GET", "/grande", requisicao -> texto(requisicao, "x".repeat(40000)));
+        roteador.adicionar("GET", "/enorme", requisicao -> texto(requisicao, "y".repeat(200000)));
+        roteador.adicionar("POST", "/eco", requisicao -> texto(requisicao,
+                requisicao.getValorCabecalho(CabecalhoConhecido.COOKIE) + "|"
+                + new String(requisicao.getCorpo(), StandardCharsets.US_ASCII)));
+        Roteador.setPadrao(roteador);
+        servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "threads=8"}));
+        servidor.iniciar();
+    }
+
+    @AfterEach
+    void parar() throws Exception {
+        servidor.close();
+        Roteador.setPadrao(anterior);
+    }
+
+    private static RespostaHTTP texto(RequisicaoHTTP requisicao, String texto) {
+        RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
+        resposta.setConteudoResposta(texto.getBytes(StandardCharsets.US_ASCII));
+        ArquivosEstaticos.preencherCabecalhos(resposta, "text/plain");
+        return resposta;
+    }
+
+    @Test
+    void testUpgradeFromHttp11() throws Exception {
+        HttpClient cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        URI base = URI.create("http://localhost:" + servidor.getPorta());
+        //a primeira requisição pede Upgrade: h2c e vira o fluxo 1
+        HttpResponse<String> saude = cliente.send(HttpRequest.newBuilder(base.resolve("/health")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(HttpClient.Version.HTTP_2, saude.version());
+        assertEquals("{\"status\":\"ok\"}", saude.body());
+        //as seguintes dividem a mesma conexão
+        List<CompletableFuture<HttpResponse<String>>> respostas = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            respostas.add(cliente.sendAsync(HttpRequest.newBuilder(base.resolve(i % 2 == 0 ? "/grande" : "/")).build(),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        for (int i = 0; i < respostas.size(); i++) {
+            HttpResponse<String> resposta = respostas.get(i).get();
+            assertEquals(HttpClient.Version.HTTP_2, resposta.version());
+            assertEquals(200, resposta.statusCode());
+            if (i % 2 == 0) {
+                assertEquals(40000, resposta.body().length());
+            }
+        }
+    }
+
+    @Test
+    void testPriorKnowledgeMultiplexesStreams() throws Exception {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", servidor.getPorta()));
+            socket.setSoTimeout(5000);
+            OutputStream saida = socket.getOutputStream();
+            InputStream entrada = socket.getInputStream();
+            CodificadorHPACK codificador = new CodificadorHPACK();
+            DecodificadorHPACK decodificador = new DecodificadorHPACK(4096, 65536);
+
+            saida.write(PREFACIO);
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.CONFIGURACOES, 0, 0, new byte[0], 0, 0);
+            //o lento primeiro: a resposta do segundo não espera por ele
+            enviarRequisicao(saida, codificador, 1, "GET", "/lento", true);
+            enviarRequisicao(saida, codificador, 3, "GET", "/health", true);
+            //corpo em dois quadros e Cookie em dois campos
+            ByteArrayOutputStream bloco = new ByteArrayOutputStream();
+            campos(codificador, bloco, "POST", "/eco");
+            codificador.codificar("cookie", "a=1", bloco);
+            codificador.codificar("cookie", "b=2", bloco);
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.CABECALHOS, QuadroHTTP2.FIM_CABECALHOS, 5,
+                    bloco.toByteArray(), 0, bloco.size());
+            byte[] corpo = "corpo".getBytes(StandardCharsets.US_ASCII);
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.DADOS, 0, 5, corpo, 0, 2);
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.DADOS, QuadroHTTP2.FIM_FLUXO, 5, corpo, 2, 3);
+            saida.flush();
+
+            List<Integer> concluidos = new ArrayList<>();
+            Map<Integer, String> status = new HashMap<>();
+            Map<Integer, ByteArrayOutputStream> corpos = new HashMap<>();
+            boolean configuracoes = false;
+            QuadroHTTP2 quadro = new QuadroHTTP2();
+            while (concluidos.size() < 3) {
+                assertTrue(quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+                int fluxo = quadro.getFluxo();
+                if (quadro.getTipo() == QuadroHTTP2.CONFIGURACOES && !quadro.temFlag(QuadroHTTP2.CONFIRMACAO)) {
+                    configuracoes = true;
+                } else if (quadro.getTipo() == QuadroHTTP2.CABECALHOS) {
+                    List<String> lidos = new ArrayList<>();
+                    decodificador.decodificar(quadro.getCarga(), 0, quadro.getTamanho(), lidos);
+                    assertEquals(":status", lidos.get(0));
+                    assertFalse(lidos.contains("connection"), lidos.toString());
+                    status.put(fluxo, lidos.get(1));
+                } else if (quadro.getTipo() == QuadroHTTP2.DADOS) {
+                    corpos.computeIfAbsent(fluxo, f -> new ByteArrayOutputStream())
+                            .write(quadro.getCarga(), 0, quadro.getTamanho());
+                }
+                if ((quadro.getTipo() == QuadroHTTP2.DADOS || quadro.getTipo() == QuadroHTTP2.CABECALHOS)
+                        && quadro.temFlag(QuadroHTTP2.FIM_FLUXO)) {
+                    concluidos.add(fluxo);
+                }
+            }
+            assertTrue(configuracoes);
+            assertEquals(1, concluidos.get(2), concluidos.toString());
+            assertEquals("200", status.get(3));
+            assertEquals("{\"status\":\"ok\"}", corpos.get(3).toString(StandardCharsets.US_ASCII));
+            assertEquals("a=1; b=2|corpo", corpos.get(5).toString(StandardCharsets.US_ASCII));
+            assertEquals("lento", corpos.get(1).toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void testResponseRespectsStreamWindow() throws Exception {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", servidor.getPorta()));
+            socket.setSoTimeout(5000);
+            OutputStream saida = socket.getOutputStream();
+            InputStream entrada = socket.getInputStream();
+            CodificadorHPACK codificador = new CodificadorHPACK();
+
+            saida.write(PREFACIO);
+            //SETTINGS_INITIAL_WINDOW_SIZE = 100
+            byte[] configuracoes = {0, 4, 0, 0, 0, 100};
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.CONFIGURACOES, 0, 0, configuracoes, 0, 6);
+            enviarRequisicao(saida, codificador, 1, "GET", "/grande", true);
+            saida.flush();
+
+            QuadroHTTP2 quadro = new QuadroHTTP2();
+            int recebidos = lerDados(entrada, quadro, 100);
+            assertEquals(100, recebidos);
+            //com a janela esgotada nada mais chega
+            socket.setSoTimeout(200);
+            assertThrows(java.net.SocketTimeoutException.class, () -> quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+            socket.setSoTimeout(5000);
+            byte[] incremento = new byte[4];
+            QuadroHTTP2.escreverInteiro(incremento, 0, 1 << 20);
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.JANELA, 0, 1, incremento, 0, 4);
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.JANELA, 0, 0, incremento, 0, 4);
+            saida.flush();
+            assertEquals(40000 - 100, lerDados(entrada, quadro, 40000 - 100));
+        }
+    }
+
+    @Test
+    void testLargeResponseWithSingleThreadPool() throws Exception {
+        //a única thread do pool fica lendo quadros; a resposta, maior que a
+        //janela padrão, depende dos WINDOW_UPDATE que só ela lê
+        try (Servidor pequeno = new Servidor(Configuracao.carregar(new String[]{"porta=0", "threads=1"}));
+                Socket socket = new Socket()) {
+            pequeno.iniciar();
+            socket.connect(new InetSocketAddress("localhost", pequeno.getPorta()));
+            socket.setSoTimeout(5000);
+            OutputStream saida = socket.getOutputStream();
+            InputStream entrada = socket.getInputStream();
+            saida.write(PREFACIO);
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.CONFIGURACOES, 0, 0, new byte[0], 0, 0);
+            enviarRequisicao(saida, new CodificadorHPACK(), 1, "GET", "/enorme", true);
+            saida.flush();
+
+            QuadroHTTP2 quadro = new QuadroHTTP2();
+            int recebidos = 0;
+            boolean fim = false;
+            while (!fim) {
+                assertTrue(quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+                assertNotEquals(QuadroHTTP2.CANCELAR_FLUXO, quadro.getTipo());
+                if (quadro.getTipo() == QuadroHTTP2.DADOS) {
+                    recebidos += quadro.getTamanho();
+                    fim = quadro.temFlag(QuadroHTTP2.FIM_FLUXO);
+                    if (quadro.getTamanho() > 0) {
+                        //devolve o que foi consumido, como um cliente com as janelas padrão
+                        byte[] incremento = new byte[4];
+                        QuadroHTTP2.escreverInteiro(incremento, 0, quadro.getTamanho());
+                        QuadroHTTP2.escrever(saida, QuadroHTTP2.JANELA, 0, 0, incremento, 0, 4);
+                        QuadroHTTP2.escrever(saida, QuadroHTTP2.JANELA, 0, 1, incremento, 0, 4);
+                        saida.flush();
+                    }
+                }
+            }
+            assertEquals(200000, recebidos);
+        }
+    }
+
+    @Test
+    void testStreamsBeyondExecutorAreRefused() throws Exception {
+        //uma thread e uma vaga na fila para os fluxos, uma conexão HTTP/2
+        try (Servidor pequeno = new Servidor(Configuracao.carregar(new String[]{"porta=0", "threads=2",
+                "http2.threads=1", "http2.conexoes=1"}));
+                Socket socket = new Socket();
+                Socket outro = new Socket()) {
+            pequeno.iniciar();
+            socket.connect(new InetSocketAddress("localhost", pequeno.getPorta()));
+            socket.setSoTimeout(5000);
+            OutputStream saida = socket.getOutputStream();
+            InputStream entrada = socket.getInputStream();
+            saida.write(PREFACIO);
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.CONFIGURACOES, 0, 0, new byte[0], 0, 0);
+            CodificadorHPACK codificador = new CodificadorHPACK();
+            for (int fluxo = 1; fluxo <= 11; fluxo += 2) {
+                enviarRequisicao(saida, codificador, fluxo, "GET", "/lento", true);
+            }
+            saida.flush();
+            //o SETTINGS do servidor mostra que a conexão já ocupa a vaga
+            QuadroHTTP2 quadro = new QuadroHTTP2();
+            assertTrue(quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+            assertEquals(QuadroHTTP2.CONFIGURACOES, quadro.getTipo());
+
+            //a segunda conexão HTTP/2 não tem vaga
+            outro.connect(new InetSocketAddress("localhost", pequeno.getPorta()));
+            outro.setSoTimeout(5000);
+            outro.getOutputStream().write(PREFACIO);
+            outro.getOutputStream().flush();
+            do {
+                assertTrue(quadro.ler(outro.getInputStream(), QuadroHTTP2.TAMANHO_PADRAO));
+            } while (quadro.getTipo() != QuadroHTTP2.ENCERRAR);
+            assertEquals(ErroHTTP2.FLUXO_RECUSADO, QuadroHTTP2.inteiro(quadro.getCarga(), 4));
+
+            //o HTTP/1.1 continua com thread do pool
+            HttpClient cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            HttpResponse<String> saude = cliente.send(HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + pequeno.getPorta() + "/health")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, saude.statusCode());
+
+            int concluidos = 0;
+            int recusados = 0;
+            while (concluidos + recusados < 6) {
+                assertTrue(quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+                if (quadro.getTipo() == QuadroHTTP2.CANCELAR_FLUXO) {
+                    assertEquals(ErroHTTP2.FLUXO_RECUSADO, QuadroHTTP2.inteiro(quadro.getCarga(), 0));
+                    recusados++;
+                } else if (quadro.getTipo() == QuadroHTTP2.DADOS && quadro.temFlag(QuadroHTTP2.FIM_FLUXO)) {
+                    concluidos++;
+                }
+            }
+            assertEquals(2, concluidos);
+            assertEquals(4, recusados);
+        }
+    }
+
+    @Test
+    void testProtocolErrorSendsGoAway() throws Exception {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", servidor.getPorta()));
+            socket.setSoTimeout(5000);
+            OutputStream saida = socket.getOutputStream();
+            saida.write(PREFACIO);
+            //fluxo par, que só o servidor poderia abrir
+            QuadroHTTP2.escrever(saida, QuadroHTTP2.CABECALHOS, QuadroHTTP2.FIM_CABECALHOS | QuadroHTTP2.FIM_FLUXO,
+                    2, new byte[]{(byte) 0x82, (byte) 0x84}, 0, 2);
+            saida.flush();
+            QuadroHTTP2 quadro = new QuadroHTTP2();
+            do {
+                assertTrue(quadro.ler(socket.getInputStream(), QuadroHTTP2.TAMANHO_PADRAO));
+            } while (quadro.getTipo() != QuadroHTTP2.ENCERRAR);
+            assertEquals(ErroHTTP2.ERRO_PROTOCOLO, QuadroHTTP2.inteiro(quadro.getCarga(), 4));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    /**
+     * Lê quadros até juntar a quantidade de bytes de DATA pedida.
+     */
+    private static int lerDados(InputStream entrada, QuadroHTTP2 quadro, int quantidade) throws Exception {
+        int recebidos = 0;
+        while (recebidos < quantidade) {
+            assertTrue(quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+            if (quadro.getTipo() == QuadroHTTP2.DADOS) {
+                recebidos += quadro.getTamanho();
+            }
+        }
+        return recebidos;
+    }
+
+    private static void campos(CodificadorHPACK codificador, ByteArrayOutputStream bloco, String metodo, String caminho) {
+        codificador.codificar(":method", metodo, bloco);
+        codificador.codificar(":scheme", "http", bloco);
+        codificador.codificar(":path", caminho, bloco);
+        codificador.codificar(":authority", "localhost", bloco);
+    }
+
+    private static void enviarRequisicao(OutputStream saida, CodificadorHPACK codificador, int fluxo,
+            String metodo, String caminho, boolean fim) throws Exception {
+        ByteArrayOutputStream bloco = new ByteArrayOutputStream();
+        campos(codificador, bloco, metodo, caminho);
+        QuadroHTTP2.escrever(saida, QuadroHTTP2.CABECALHOS,
+                QuadroHTTP2.FIM_CABECALHOS | (fim ? QuadroHTTP2.FIM_FLUXO : 0), fluxo, bloco.toByteArray(), 0, bloco.size());
+    }
+
+}
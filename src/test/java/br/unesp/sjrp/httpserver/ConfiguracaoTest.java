@@ -0,0 +1,84 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfiguracaoTest {
+
+    @Test
+    void testDefaultValues() {
+        Configuracao configuracao = new Configuracao();
+
+        assertEquals(8000, configuracao.getPorta());
+        assertEquals("threads", configuracao.getModo());
+        assertEquals(20, configuracao.getTamanhoPool());
+        assertTrue(configuracao.getLacosEventos() >= 1);
+        assertEquals(1, configuracao.getAceitadores());
+        assertEquals(1024, configuracao.getBacklog());
+    }
+
+    @Test
+    void testConnectionDefaults() {
+        Configuracao configuracao = new Configuracao();
+
+        assertEquals(5000, configuracao.getTempoOcioso());
+        assertEquals(10000, configuracao.getTempoCabecalho());
+        assertEquals(30000, configuracao.getTempoEscrita());
+        assertEquals(1000, configuracao.getMaxRequisicoes());
+    }
+
+    @Test
+    void testAdmissionDefaults() {
+        Configuracao configuracao = new Configuracao();
+
+        assertEquals(10000, configuracao.getLimiteConexoes());
+        assertEquals(1000, configuracao.getLimiteFila());
+        assertEquals(0, configuracao.getLimiteRequisicoes());
+        assertFalse(configuracao.isLimiteAdaptativo());
+        assertEquals(1, configuracao.getRetryAfter());
+        assertEquals("responder", configuracao.getRecusa());
+    }
+
+    @Test
+    void testEndpointPaths() {
+        assertEquals("/metrics", new Configuracao().getCaminhoMetricas());
+        assertEquals("/health", new Configuracao().getCaminhoSaude());
+        assertNull(Configuracao.carregar(new String[]{"saude.caminho="}).getCaminhoSaude());
+    }
+
+    @Test
+    void testArgumentsOverrideDefaults() {
+        Configuracao configuracao = Configuracao.carregar(new String[]{"modo=nio", "porta=9090", "invalido"});
+
+        assertEquals("nio", configuracao.getModo());
+        assertEquals(9090, configuracao.getPorta());
+    }
+
+    @Test
+    void testSystemProperty() {
+        System.setProperty("servidor.lacos", "3");
+        try {
+            assertEquals(3, Configuracao.carregar(null).getLacosEventos());
+        } finally {
+            System.clearProperty("servidor.lacos");
+        }
+    }
+
+    @Test
+    void testInvalidNumber() {
+        Configuracao configuracao = Configuracao.carregar(new String[]{"porta=abc"});
+
+        assertThrows(IllegalArgumentException.class, configuracao::getPorta);
+    }
+
+    @Test
+    void testAccessLogDefaults() {
+        Configuracao configuracao = new Configuracao();
+
+        assertNull(configuracao.getArquivoLog());
+        assertEquals("combinado", configuracao.getFormatoLog());
+        assertEquals("descartar", configuracao.getPoliticaLog());
+        assertEquals(1, configuracao.getAmostragemLog());
+        assertFalse(configuracao.isLogCabecalhos());
+    }
+}
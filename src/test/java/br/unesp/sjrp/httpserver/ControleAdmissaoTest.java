@@ -0,0 +1,183 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class ControleAdmissaoTest {
+
+    private static ControleAdmissao controle(String... args) {
+        return new ControleAdmissao(Configuracao.carregar(args));
+    }
+
+    private static RequisicaoHTTP requisicao(String protocolo) {
+        RequisicaoHTTP requisicao = new RequisicaoHTTP();
+        requisicao.setMetodo("GET");
+        requisicao.setRecurso("/");
+        requisicao.setProtocolo(protocolo);
+        return requisicao;
+    }
+
+    @Test
+    void testConnectionLimit() {
+        ControleAdmissao controle = controle("limite.conexoes=2");
+
+        assertTrue(controle.admitirConexao());
+        assertTrue(controle.admitirConexao());
+        assertFalse(controle.admitirConexao());
+        assertEquals(1, controle.getConexoesRecusadas());
+
+        controle.conexaoEncerrada();
+        assertTrue(controle.admitirConexao());
+        assertEquals(2, controle.getConexoes());
+    }
+
+    @Test
+    void testRequestLimit() {
+        ControleAdmissao controle = controle("limite.requisicoes=1");
+
+        assertTrue(controle.iniciarRequisicao());
+        assertFalse(controle.iniciarRequisicao());
+        assertEquals(1, controle.getRequisicoesRecusadas());
+
+        controle.concluirRequisicao(System.nanoTime());
+        assertTrue(controle.iniciarRequisicao());
+        assertEquals(1, controle.getEmAndamento());
+    }
+
+    @Test
+    void testNoLimitsByDefaultForRequests() {
+        ControleAdmissao controle = new ControleAdmissao();
+
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(controle.iniciarRequisicao());
+        }
+        assertEquals(0, controle.getLimite());
+        assertEquals(5000, controle.getEmAndamento());
+    }
+
+    @Test
+    void testAdaptiveLimitDecreasesOncePerInterval() {
+        ControleAdmissao controle = controle("limite.adaptativo=true", "limite.requisicoes=100",
+                "limite.latencia=50");
+        long lenta = TimeUnit.MILLISECONDS.toNanos(80);
+        long agora = System.nanoTime();
+
+        controle.ajustar(agora, lenta);
+        assertEquals(90, controle.getLimite());
+        //dentro do mesmo intervalo as outras lentas não reduzem de novo
+        controle.ajustar(agora + TimeUnit.MILLISECONDS.toNanos(10), lenta);
+        assertEquals(90, controle.getLimite());
+        controle.ajustar(agora + TimeUnit.MILLISECONDS.toNanos(60), lenta);
+        assertEquals(81, controle.getLimite());
+    }
+
+    @Test
+    void testAdaptiveLimitGrowsBackToCeiling() {
+        ControleAdmissao controle = controle("limite.adaptativo=true", "limite.requisicoes=10",
+                "limite.latencia=50");
+        long agora = System.nanoTime();
+        controle.ajustar(agora, TimeUnit.MILLISECONDS.toNanos(80));
+        assertEquals(9, controle.getLimite());
+
+        //uma rodada de requisições rápidas aumenta o limite em um
+        for (int i = 0; i < 9; i++) {
+            controle.ajustar(agora, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(10, controle.getLimite());
+        for (int i = 0; i < 100; i++) {
+            controle.ajustar(agora, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(10, controle.getLimite());
+    }
+
+    @Test
+    void testAdaptiveWithoutCeilingUsesDefault() {
+        assertEquals(ControleAdmissao.TETO_ADAPTATIVO, controle("limite.adaptativo=true").getLimite());
+    }
+
+    @Test
+    void testUnavailableResponse() {
+        ControleAdmissao controle = controle("limite.retryAfter=3");
+
+        RespostaHTTP resposta = controle.responderIndisponivel(requisicao("HTTP/1.0"));
+        assertEquals(503, resposta.getCodigoResposta());
+        assertEquals("HTTP/1.0", resposta.getProtocolo());
+        assertEquals(List.of("3"), resposta.getCabecalhos().get("Retry-After"));
+        assertEquals("HTTP/1.1", controle.responderIndisponivel(requisicao("HTTP/1.1")).getProtocolo());
+    }
+
+    @Test
+    void testRefusedConnectionReceives503() throws Exception {
+        ControleAdmissao controle = controle("limite.retryAfter=2");
+        try (ServerSocketChannel servidor = ServerSocketChannel.open()) {
+            servidor.bind(new InetSocketAddress("localhost", 0));
+            try (Socket cliente = new Socket("localhost", servidor.socket().getLocalPort())) {
+                cliente.setSoTimeout(5000);
+                controle.recusar(servidor.accept());
+                InputStream entrada = cliente.getInputStream();
+                String resposta = new String(entrada.readAllBytes(), StandardCharsets.ISO_8859_1);
+                assertTrue(resposta.startsWith("HTTP/1.1 503 Service Unavailable\r\n"), resposta);
+                assertTrue(resposta.contains("\r\nRetry-After: 2\r\n"), resposta);
+                assertTrue(resposta.contains("\r\nConnection: close\r\n\r\n"), resposta);
+            }
+        }
+    }
+
+    @Test
+    void testStreamingClientDoesNotHoldRefusal() throws Exception {
+        ControleAdmissao controle = controle();
+        try (ServerSocketChannel servidor = ServerSocketChannel.open()) {
+            servidor.bind(new InetSocketAddress("localhost", 0));
+            try (Socket cliente = new Socket("localhost", servidor.socket().getLocalPort())) {
+                Thread escritor = new Thread(() -> {
+                    byte[] bloco = new byte[8192];
+                    try {
+                        while (true) {
+                            cliente.getOutputStream().write(bloco);
+                        }
+                    } catch (java.io.IOException ex) {
+                        //a conexão foi fechada pelo servidor
+                    }
+                });
+                escritor.setDaemon(true);
+                escritor.start();
+                SocketChannel canal = servidor.accept();
+                Thread.sleep(100);
+
+                long inicio = System.nanoTime();
+                controle.recusar(canal);
+                assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(1));
+                assertFalse(canal.isOpen());
+                escritor.join(5000);
+                assertFalse(escritor.isAlive());
+            }
+        }
+    }
+
+    @Test
+    void testRefuseByClosing() throws Exception {
+        ControleAdmissao controle = controle("limite.recusa=fechar");
+        try (ServerSocketChannel servidor = ServerSocketChannel.open()) {
+            servidor.bind(new InetSocketAddress("localhost", 0));
+            try (Socket cliente = new Socket("localhost", servidor.socket().getLocalPort())) {
+                cliente.setSoTimeout(5000);
+                controle.recusar(servidor.accept());
+                //a conexão é derrubada sem nenhum byte de resposta
+                assertThrows(java.io.IOException.class, () -> {
+                    if (cliente.getInputStream().read() < 0) {
+                        throw new java.io.EOFException();
+                    }
+                });
+            }
+        }
+    }
+}
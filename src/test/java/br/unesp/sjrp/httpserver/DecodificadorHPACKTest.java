@@ -0,0 +1,111 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+class DecodificadorHPACKTest {
+
+    private static List<String> decodificar(DecodificadorHPACK decodificador, String hex) throws Exception {
+        byte[] bloco = HexFormat.of().parseHex(hex);
+        List<String> campos = new ArrayList<>();
+        decodificador.decodificar(bloco, 0, bloco.length, campos);
+        return campos;
+    }
+
+    @Test
+    void testRfcRequestsWithoutHuffman() throws Exception {
+        //RFC 7541, apêndice C.3
+        DecodificadorHPACK decodificador = new DecodificadorHPACK(4096, 65536);
+        assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com"),
+                decodificar(decodificador, "828684410f7777772e6578616d706c652e636f6d"));
+        assertEquals(57, decodificador.getTabela().getTamanho());
+        assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com",
+                "cache-control", "no-cache"),
+                decodificar(decodificador, "828684be58086e6f2d6361636865"));
+        assertEquals(110, decodificador.getTabela().getTamanho());
+        assertEquals(List.of(":method", "GET", ":scheme", "https", ":path", "/index.html",
+                ":authority", "www.example.com", "custom-key", "custom-value"),
+                decodificar(decodificador, "828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565"));
+        assertEquals(164, decodificador.getTabela().getTamanho());
+        assertEquals(3, decodificador.getTabela().getQuantidade());
+    }
+
+    @Test
+    void testRfcRequestsWithHuffman() throws Exception {
+        //RFC 7541, apêndice C.4
+        DecodificadorHPACK decodificador = new DecodificadorHPACK(4096, 65536);
+        assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com"),
+                decodificar(decodificador, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com",
+                "cache-control", "no-cache"),
+                decodificar(decodificador, "828684be5886a8eb10649cbf"));
+        assertEquals(List.of(":method", "GET", ":scheme", "https", ":path", "/index.html",
+                ":authority", "www.example.com", "custom-key", "custom-value"),
+                decodificar(decodificador, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+        assertEquals(164, decodificador.getTabela().getTamanho());
+    }
+
+    @Test
+    void testEncoderRoundTripKeepsTablesInSync() throws Exception {
+        CodificadorHPACK codificador = new CodificadorHPACK();
+        DecodificadorHPACK decodificador = new DecodificadorHPACK(4096, 65536);
+        String[] campos = {":status", "200", "content-type", "text/html", "server", "MeuServidorHTTP",
+            "date", "Mon, 21 Oct 2013 20:13:21 GMT", "content-length", "1234"};
+        int anterior = Integer.MAX_VALUE;
+        for (int vez = 0; vez < 3; vez++) {
+            ByteArrayOutputStream bloco = new ByteArrayOutputStream();
+            codificador.iniciar(bloco);
+            for (int i = 0; i < campos.length; i += 2) {
+                codificador.codificar(campos[i], campos[i + 1], bloco);
+            }
+            assertEquals(List.of(campos), decodificar(decodificador, HexFormat.of().formatHex(bloco.toByteArray())));
+            //a partir da segunda vez os campos repetidos saem como índice
+            assertTrue(bloco.size() <= anterior);
+            anterior = bloco.size();
+        }
+        //date e content-length não entram na tabela
+        assertEquals(2, codificador.getTabela().getQuantidade());
+        assertEquals(codificador.getTabela().getTamanho(), decodificador.getTabela().getTamanho());
+    }
+
+    @Test
+    void testTableSizeUpdateAndEviction() throws Exception {
+        CodificadorHPACK codificador = new CodificadorHPACK();
+        DecodificadorHPACK decodificador = new DecodificadorHPACK(4096, 65536);
+        codificador.setCapacidadeMaxima(100);
+        for (int i = 0; i < 5; i++) {
+            ByteArrayOutputStream bloco = new ByteArrayOutputStream();
+            codificador.iniciar(bloco);
+            codificador.codificar("x-campo", "valor" + i, bloco);
+            decodificar(decodificador, HexFormat.of().formatHex(bloco.toByteArray()));
+        }
+        //cada entrada ocupa 7 + 6 + 32 = 45: só cabem duas
+        assertEquals(100, decodificador.getTabela().getCapacidade());
+        assertEquals(2, decodificador.getTabela().getQuantidade());
+        assertEquals("valor4", decodificador.getTabela().getValor(TabelaHPACK.TAMANHO_ESTATICA + 1));
+        assertEquals("valor3", decodificador.getTabela().getValor(TabelaHPACK.TAMANHO_ESTATICA + 2));
+    }
+
+    @Test
+    void testInvalidBlocksRejected() {
+        DecodificadorHPACK decodificador = new DecodificadorHPACK(4096, 65536);
+        //índice 0 e índice fora das tabelas
+        assertThrows(ErroHTTP2.class, () -> decodificar(decodificador, "80"));
+        assertThrows(ErroHTTP2.class, () -> decodificar(decodificador, "be"));
+        //tabela maior que a anunciada
+        assertThrows(ErroHTTP2.class, () -> decodificar(decodificador, "3fe21f"));
+        //mudança de tamanho depois de um campo
+        assertThrows(ErroHTTP2.class, () -> decodificar(decodificador, "8220"));
+        //texto que termina antes do tamanho
+        assertThrows(ErroHTTP2.class, () -> decodificar(decodificador, "400a6375"));
+        //lista de cabeçalhos acima do limite
+        DecodificadorHPACK pequeno = new DecodificadorHPACK(4096, 40);
+        assertThrows(ErroHTTP2.class, () -> decodificar(pequeno, "8286"));
+    }
+
+}
@@ -0,0 +1,54 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+class FaixasBytesTest {
+
+    @Test
+    void testSingleRanges() {
+        assertFaixas(FaixasBytes.interpretar("bytes=0-99", 1000), 0, 99);
+        assertFaixas(FaixasBytes.interpretar("bytes=900-", 1000), 900, 999);
+        assertFaixas(FaixasBytes.interpretar("bytes=-100", 1000), 900, 999);
+        assertFaixas(FaixasBytes.interpretar("bytes=-5000", 1000), 0, 999);
+        assertFaixas(FaixasBytes.interpretar("bytes=990-2000", 1000), 990, 999);
+    }
+
+    @Test
+    void testMultipleRangesSortedAndMerged() {
+        assertFaixas(FaixasBytes.interpretar("bytes=500-599, 0-9,10-19, 550-700", 1000), 0, 19, 500, 700);
+    }
+
+    @Test
+    void testUnsatisfiableRangesDropped() {
+        assertFaixas(FaixasBytes.interpretar("bytes=2000-3000,0-0", 1000), 0, 0);
+        assertTrue(FaixasBytes.interpretar("bytes=1000-", 1000).isEmpty());
+        assertTrue(FaixasBytes.interpretar("bytes=-0", 1000).isEmpty());
+        assertTrue(FaixasBytes.interpretar("bytes=0-", 0).isEmpty());
+    }
+
+    @Test
+    void testInvalidHeaderIgnored() {
+        assertNull(FaixasBytes.interpretar("items=0-1", 1000));
+        assertNull(FaixasBytes.interpretar("bytes=5-1", 1000));
+        assertNull(FaixasBytes.interpretar("bytes=a-b", 1000));
+        assertNull(FaixasBytes.interpretar("bytes=+1-2", 1000));
+        assertNull(FaixasBytes.interpretar("bytes=10", 1000));
+        assertNull(FaixasBytes.interpretar("bytes=" + "0-0,".repeat(FaixasBytes.LIMITE_FAIXAS + 1), 1000));
+    }
+
+    @Test
+    void testConteudoFaixa() {
+        assertEquals("bytes 0-99/1000", FaixasBytes.conteudoFaixa(new long[]{0, 99}, 1000));
+    }
+
+    private static void assertFaixas(List<long[]> faixas, long... esperadas) {
+        assertEquals(esperadas.length / 2, faixas.size());
+        for (int i = 0; i < faixas.size(); i++) {
+            assertEquals(esperadas[2 * i], faixas.get(i)[0]);
+            assertEquals(esperadas[2 * i + 1], faixas.get(i)[1]);
+        }
+    }
+}
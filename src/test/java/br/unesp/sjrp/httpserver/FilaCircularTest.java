@@ -0,0 +1,72 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+class FilaCircularTest {
+
+    @Test
+    void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(8, new FilaCircular<Integer>(5).getCapacidade());
+        assertEquals(8, new FilaCircular<Integer>(8).getCapacidade());
+        assertEquals(2, new FilaCircular<Integer>(0).getCapacidade());
+    }
+
+    @Test
+    void testFifoAndFull() {
+        FilaCircular<Integer> fila = new FilaCircular<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(fila.oferecer(i));
+        }
+        assertFalse(fila.oferecer(4));
+
+        assertEquals(0, fila.retirar());
+        assertTrue(fila.oferecer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, fila.retirar());
+        }
+        assertNull(fila.retirar());
+    }
+
+    @Test
+    void testConcurrentProducers() throws InterruptedException {
+        FilaCircular<Integer> fila = new FilaCircular<>(64);
+        int produtores = 4;
+        int porProdutor = 10000;
+        Thread[] threads = new Thread[produtores];
+        for (int p = 0; p < produtores; p++) {
+            int base = p * porProdutor;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < porProdutor; i++) {
+                    while (!fila.oferecer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        Set<Integer> recebidos = new HashSet<>();
+        int[] ultimo = new int[produtores];
+        java.util.Arrays.fill(ultimo, -1);
+        while (recebidos.size() < produtores * porProdutor) {
+            Integer valor = fila.retirar();
+            if (valor == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertTrue(recebidos.add(valor));
+            //a ordem de cada produtor é preservada
+            int produtor = valor / porProdutor;
+            assertTrue(valor > ultimo[produtor]);
+            ultimo[produtor] = valor;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(fila.retirar());
+    }
+
+}
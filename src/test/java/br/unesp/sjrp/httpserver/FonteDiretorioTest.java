@@ -0,0 +1,88 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+class FonteDiretorioTest {
+
+    @TempDir
+    Path raiz;
+
+    private FonteDiretorio fonte;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(raiz.resolve("pequeno.txt"), new byte[10]);
+        Files.write(raiz.resolve("grande.js"), new byte[100]);
+        Files.createDirectory(raiz.resolve("pasta"));
+        fonte = new FonteDiretorio(raiz, 50);
+    }
+
+    @Test
+    void testSmallFileLoadedInMemory() throws IOException {
+        Recurso recurso = fonte.buscar("pequeno.txt");
+
+        assertFalse(recurso.isEmArquivo());
+        assertEquals(10, recurso.getConteudo().length);
+        assertEquals(10, recurso.getTamanhoEmMemoria());
+    }
+
+    @Test
+    void testLargeFileKeptOnDisk() throws IOException {
+        Recurso recurso = fonte.buscar("grande.js");
+
+        assertTrue(recurso.isEmArquivo());
+        assertNull(recurso.getConteudo());
+        assertEquals(100, recurso.getTamanho());
+        assertEquals(0, recurso.getTamanhoEmMemoria());
+        assertEquals("application/javascript", recurso.getTipoConteudo());
+        assertEquals(raiz.resolve("grande.js").toAbsolutePath(), recurso.getArquivo());
+    }
+
+    @Test
+    void testChangedFileIsNotCurrent() throws IOException {
+        Recurso grande = fonte.buscar("grande.js");
+        Recurso pequeno = fonte.buscar("pequeno.txt");
+        assertTrue(fonte.isAtual(grande));
+        assertTrue(fonte.isAtual(pequeno));
+
+        Files.write(raiz.resolve("grande.js"), new byte[80]);
+        Files.delete(raiz.resolve("pequeno.txt"));
+
+        assertFalse(fonte.isAtual(grande));
+        assertFalse(fonte.isAtual(pequeno));
+    }
+
+    @Test
+    void testLargeFileEtagFromMetadata() throws IOException {
+        Recurso grande = fonte.buscar("grande.js");
+        assertEquals(Util.calcularETag(Files.readAttributes(raiz.resolve("grande.js"), BasicFileAttributes.class)),
+                grande.getEtag());
+
+        // same size and date, but another file moved into place
+        Path novo = Files.write(raiz.resolve("novo.js"), new byte[100]);
+        Files.setLastModifiedTime(novo, Files.getLastModifiedTime(raiz.resolve("grande.js")));
+        Files.move(novo, raiz.resolve("grande.js"), StandardCopyOption.REPLACE_EXISTING);
+
+        assertFalse(fonte.isAtual(grande));
+    }
+
+    @Test
+    void testMissingFileAndDirectoryAreNull() throws IOException {
+        assertNull(fonte.buscar("nao-existe.txt"));
+        assertNull(fonte.buscar("pasta"));
+    }
+
+    @Test
+    void testPathOutsideRootIsNull() throws IOException {
+        assertNull(fonte.buscar("../fora.txt"));
+    }
+}
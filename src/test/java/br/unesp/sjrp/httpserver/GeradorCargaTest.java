@@ -0,0 +1,79 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class GeradorCargaTest {
+
+    @TempDir
+    Path temporario;
+
+    private static InputStream bytes(String texto) {
+        return new ByteArrayInputStream(texto.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void testRunsBothEnginesWithoutErrors() throws Exception {
+        Path saida = temporario.resolve("carga.json");
+        ArquivosEstaticos anterior = ArquivosEstaticos.getPadrao();
+        String json = GeradorCarga.executar(Configuracao.carregar(new String[]{"carga.modos=threads,nio",
+            "carga.conexoes=2", "carga.taxa=200", "carga.duracao=300", "carga.aquecimento=50",
+            "carga.pipeline=2", "carga.grande=300000", "carga.saida=" + saida}));
+
+        assertSame(anterior, ArquivosEstaticos.getPadrao());
+        assertEquals(json, new String(Files.readAllBytes(saida), StandardCharsets.UTF_8));
+        assertTrue(json.contains("{\"modo\":\"threads\""));
+        assertTrue(json.contains("{\"modo\":\"nio\""));
+        assertFalse(json.contains("\"respostas\":0,"));
+        assertTrue(json.contains("\"erros\":0,\"req_s\""));
+        assertFalse(json.replace("\"erros\":0,", "").contains("\"erros\""));
+        assertTrue(json.contains("\"latencia_us\":{\"p50\":"));
+    }
+
+    @Test
+    void testReadsContentLengthResponses() throws IOException {
+        InputStream entrada = bytes("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nabcde"
+                + "HTTP/1.1 404 Not Found\r\ncontent-length: 0\r\n\r\n");
+
+        assertEquals(200, ConexaoCarga.lerResposta(entrada));
+        assertEquals(404, ConexaoCarga.lerResposta(entrada));
+        assertEquals(-1, ConexaoCarga.lerResposta(entrada));
+    }
+
+    @Test
+    void testReadsChunkedResponse() throws IOException {
+        InputStream entrada = bytes("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "3\r\nabc\r\na;ext=1\r\n0123456789\r\n0\r\n\r\n"
+                + "HTTP/1.1 304 Not Modified\r\n\r\n");
+
+        assertEquals(200, ConexaoCarga.lerResposta(entrada));
+        assertEquals(304, ConexaoCarga.lerResposta(entrada));
+    }
+
+    @Test
+    void testTruncatedResponse() {
+        assertThrows(EOFException.class,
+                () -> ConexaoCarga.lerResposta(bytes("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nabc")));
+        assertThrows(EOFException.class, () -> ConexaoCarga.lerResposta(bytes("HTTP/1.1 200 OK\r\n")));
+    }
+
+    @Test
+    void testInvalidMix() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new GeradorCarga(Configuracao.carregar(new String[]{"carga.mistura=acerto:x"})));
+        assertThrows(IllegalArgumentException.class,
+                () -> new GeradorCarga(Configuracao.carregar(new String[]{"carga.mistura=outro:1"})));
+        assertThrows(IllegalArgumentException.class,
+                () -> new GeradorCarga(Configuracao.carregar(new String[]{"carga.mistura=acerto:0"})));
+    }
+
+}
@@ -0,0 +1,75 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class GrupoAceitacaoTest {
+
+    private static boolean suportaReusePort() throws IOException {
+        try (ServerSocketChannel canal = ServerSocketChannel.open()) {
+            return canal.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+    }
+
+    @Test
+    void testSingleAcceptorSharesNothing() throws Exception {
+        try (GrupoAceitacao grupo = new GrupoAceitacao(0, 1, 0)) {
+            assertEquals(1, grupo.getQuantidade());
+            assertFalse(grupo.isReusePort());
+            assertTrue(grupo.getPorta() > 0);
+        }
+    }
+
+    @Test
+    void testAcceptorsDeliverToTheirOwnDestination() throws Exception {
+        int conexoes = 40;
+        AtomicInteger[] entregues = {new AtomicInteger(), new AtomicInteger()};
+        String[] threads = new String[2];
+        CountDownLatch todas = new CountDownLatch(conexoes);
+        GrupoAceitacao grupo = new GrupoAceitacao(0, 2, 128);
+        assertEquals(suportaReusePort(), grupo.isReusePort());
+        GrupoAceitacao.Destino[] destinos = new GrupoAceitacao.Destino[2];
+        for (int i = 0; i < 2; i++) {
+            int indice = i;
+            destinos[i] = canal -> {
+                //cada destino só é chamado pela thread do seu aceitador
+                String atual = Thread.currentThread().getName();
+                assertTrue(threads[indice] == null || threads[indice].equals(atual));
+                threads[indice] = atual;
+                entregues[indice].incrementAndGet();
+                canal.close();
+                todas.countDown();
+            };
+        }
+        Thread executor = new Thread(() -> {
+            try {
+                grupo.executar("teste-aceitador", destinos);
+            } catch (InterruptedException ex) {
+                //fim do teste
+            }
+        });
+        executor.start();
+        try {
+            for (int i = 0; i < conexoes; i++) {
+                try (Socket socket = new Socket("localhost", grupo.getPorta())) {
+                    assertTrue(socket.isConnected());
+                }
+            }
+            assertTrue(todas.await(5, TimeUnit.SECONDS));
+            assertEquals(conexoes, entregues[0].get() + entregues[1].get());
+        } finally {
+            grupo.close();
+        }
+        //executar devolve depois que todos os aceitadores terminam
+        executor.join(5000);
+        assertFalse(executor.isAlive());
+    }
+}
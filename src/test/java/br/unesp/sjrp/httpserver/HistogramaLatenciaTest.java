@@ -0,0 +1,72 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramaLatenciaTest {
+
+    @Test
+    void testSmallValuesAreExact() {
+        for (int valor = 0; valor < 32; valor++) {
+            assertEquals(valor, HistogramaLatencia.indice(valor));
+            assertEquals(valor, HistogramaLatencia.limiteSuperior(valor));
+        }
+    }
+
+    @Test
+    void testBucketsCoverValuesWithBoundedError() {
+        int anterior = -1;
+        for (long valor = 0; valor < 1L << 20; valor += 7) {
+            int indice = HistogramaLatencia.indice(valor);
+            long limite = HistogramaLatencia.limiteSuperior(indice);
+            assertTrue(indice >= anterior);
+            assertTrue(limite >= valor);
+            assertTrue(limite - valor <= valor / 32, "valor " + valor + " limite " + limite);
+            anterior = indice;
+        }
+    }
+
+    @Test
+    void testHugeValuesGoToLastBucket() {
+        assertEquals(HistogramaLatencia.FAIXAS - 1, HistogramaLatencia.indice(Long.MAX_VALUE));
+        assertEquals(HistogramaLatencia.FAIXAS - 1, HistogramaLatencia.indice(1L << 40));
+    }
+
+    @Test
+    void testPercentiles() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        for (int valor = 1; valor <= 10000; valor++) {
+            histograma.registrar(valor);
+        }
+
+        HistogramaLatencia.Resumo resumo = histograma.resumir();
+        assertEquals(10000, resumo.getTotal());
+        assertEquals(10000L * 10001 / 2, resumo.getSoma());
+        assertEquals(5000, resumo.percentil(0.5), 5000 / 32.0);
+        assertEquals(9900, resumo.percentil(0.99), 9900 / 32.0);
+        assertEquals(9990, resumo.percentil(0.999), 9990 / 32.0);
+        assertEquals(0, new HistogramaLatencia().resumir().percentil(0.5));
+    }
+
+    @Test
+    void testConcurrentRecording() throws InterruptedException {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histograma.registrar(100);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        HistogramaLatencia.Resumo resumo = histograma.resumir();
+        assertEquals(80000, resumo.getTotal());
+        assertEquals(HistogramaLatencia.limiteSuperior(HistogramaLatencia.indice(100)), resumo.percentil(0.5));
+    }
+
+}
@@ -0,0 +1,49 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HexFormat;
+
+class HuffmanHPACKTest {
+
+    private static byte[] codificar(String texto) {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        HuffmanHPACK.codificar(texto, saida);
+        return saida.toByteArray();
+    }
+
+    @Test
+    void testRfcExamples() {
+        //RFC 7541, apêndice C.4
+        assertEquals("f1e3c2e5f23a6ba0ab90f4ff", HexFormat.of().formatHex(codificar("www.example.com")));
+        assertEquals("a8eb10649cbf", HexFormat.of().formatHex(codificar("no-cache")));
+        assertEquals("25a849e95ba97d7f", HexFormat.of().formatHex(codificar("custom-key")));
+        assertEquals(12, HuffmanHPACK.tamanho("www.example.com"));
+    }
+
+    @Test
+    void testRoundTripAllBytes() throws Exception {
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            texto.append((char) i);
+        }
+        byte[] codificado = codificar(texto.toString());
+        assertEquals(HuffmanHPACK.tamanho(texto.toString()), codificado.length);
+        assertEquals(texto.toString(), HuffmanHPACK.decodificar(codificado, 0, codificado.length));
+    }
+
+    @Test
+    void testInvalidPaddingRejected() {
+        //'a' é 00011 (5 bits); o enchimento precisa ser 111
+        assertEquals("a", assertDoesNotThrow(() -> HuffmanHPACK.decodificar(new byte[]{0x1f}, 0, 1)));
+        assertThrows(ErroHTTP2.class, () -> HuffmanHPACK.decodificar(new byte[]{0x18}, 0, 1));
+        //um byte inteiro de enchimento passa do limite de 7 bits
+        assertThrows(ErroHTTP2.class, () -> HuffmanHPACK.decodificar(new byte[]{0x1f, (byte) 0xff}, 0, 2));
+        //EOS explícito
+        assertThrows(ErroHTTP2.class, () -> HuffmanHPACK.decodificar(
+                new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff}, 0, 4));
+    }
+
+}
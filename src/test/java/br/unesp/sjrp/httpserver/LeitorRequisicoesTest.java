@@ -0,0 +1,112 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class LeitorRequisicoesTest {
+
+    @Test
+    void testPipelinedRequestsFromSingleRead() throws IOException {
+        LeitorRequisicoes leitor = new LeitorRequisicoes(stream(
+                "GET /a HTTP/1.1\r\nHost: x\r\n\r\nGET /b HTTP/1.1\r\nHost: x\r\n\r\n"));
+
+        assertEquals("/a", leitor.proxima(null).getRecurso());
+        assertEquals("/b", leitor.proxima(null).getRecurso());
+        assertNull(leitor.proxima(null));
+    }
+
+    @Test
+    void testHttp2PrefaceLeavesFramesInBuffer() throws IOException {
+        LeitorRequisicoes leitor = new LeitorRequisicoes(stream("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\nquadros"));
+
+        RequisicaoHTTP prefacio = leitor.proxima(null);
+        assertTrue(ConexaoHTTP2.isPrefacio(prefacio));
+        assertEquals("SM\r\n\r\nquadros", new String(leitor.restantes(), StandardCharsets.US_ASCII));
+        assertFalse(leitor.temPendentes());
+    }
+
+    @Test
+    void testFlushOnlyBeforeBlocking() throws IOException {
+        AtomicInteger descargas = new AtomicInteger();
+        LeitorRequisicoes leitor = new LeitorRequisicoes(stream(
+                "GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n"));
+
+        leitor.proxima(descargas::incrementAndGet);
+        assertEquals(1, descargas.get());
+        // second request is already buffered: nothing to flush yet
+        leitor.proxima(descargas::incrementAndGet);
+        assertEquals(1, descargas.get());
+    }
+
+    @Test
+    void testOneByteAtATime() throws IOException {
+        byte[] bytes = "GET /lento HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        InputStream gotejando = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        assertEquals("/lento", new LeitorRequisicoes(gotejando).proxima(null).getRecurso());
+    }
+
+    @Test
+    void testLargeHeaderGrowsBuffer() throws IOException {
+        StringBuilder requisicao = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 20; i++) {
+            requisicao.append("X-Header-").append(i).append(": ").append("v".repeat(1000)).append("\r\n");
+        }
+        requisicao.append("\r\n");
+
+        RequisicaoHTTP req = new LeitorRequisicoes(stream(requisicao.toString())).proxima(null);
+
+        assertEquals(20, req.getCabecalhos().size());
+    }
+
+    @Test
+    void testEndOfStreamInsideRequest() {
+        LeitorRequisicoes leitor = new LeitorRequisicoes(stream("GET / HTTP/1.1\r\nHo"));
+
+        assertThrows(EOFException.class, () -> leitor.proxima(null));
+    }
+
+    private static InputStream stream(String texto) {
+        return new ByteArrayInputStream(texto.getBytes(StandardCharsets.US_ASCII));
+    }
+    @Test
+    void testChannelWithPooledBuffer() throws IOException {
+        PoolBuffers pool = new PoolBuffers(true);
+        StringBuilder grande = new StringBuilder("GET /b HTTP/1.1\r\n");
+        for (int i = 0; i < 12; i++) {
+            grande.append("X-Header-").append(i).append(": ").append("v".repeat(1000)).append("\r\n");
+        }
+        grande.append("\r\n");
+        LeitorRequisicoes leitor = new LeitorRequisicoes(java.nio.channels.Channels.newChannel(stream(
+                "GET /a HTTP/1.1\r\nHost: x\r\n\r\n" + grande)), pool);
+
+        assertEquals("/a", leitor.proxima(null).getRecurso());
+        assertEquals(1, pool.getEmprestados());
+        //o cabeçalho grande faz o buffer crescer, devolvendo o menor
+        RequisicaoHTTP requisicao = leitor.proxima(null);
+        assertEquals("/b", requisicao.getRecurso());
+        assertEquals("v".repeat(1000), requisicao.getCabecalhos().get("X-Header-11").get(0));
+        assertFalse(leitor.temPendentes());
+        assertEquals(1, pool.getEmprestados());
+
+        leitor.liberar();
+        pool.verificarVazamentos();
+        //depois de liberado, a próxima leitura empresta outro buffer
+        assertNull(leitor.proxima(null));
+        leitor.liberar();
+        pool.verificarVazamentos();
+    }
+
+}
@@ -0,0 +1,92 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+class MetricasTest {
+
+    private static RequisicaoHTTP requisicao(String metodo, String recurso) {
+        RequisicaoHTTP requisicao = new RequisicaoHTTP();
+        requisicao.setMetodo(metodo);
+        requisicao.setRecurso(recurso);
+        requisicao.setProtocolo("HTTP/1.1");
+        return requisicao;
+    }
+
+    private static RespostaHTTP resposta(int codigo, int bytes) {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", codigo, "X");
+        resposta.setConteudoResposta(new byte[bytes]);
+        return resposta;
+    }
+
+    @Test
+    void testCountsByMethodAndStatus() {
+        Metricas metricas = new Metricas("/metrics");
+        metricas.registrar(requisicao("GET", "/"), resposta(200, 10), System.nanoTime());
+        metricas.registrar(requisicao("GET", "/"), resposta(200, 5), System.nanoTime());
+        metricas.registrar(requisicao("GET", "/x"), resposta(404, 0), System.nanoTime());
+        metricas.registrar(requisicao("BREW", "/"), resposta(418, 0), System.nanoTime());
+
+        String texto = metricas.exportar();
+
+        assertTrue(texto.contains("meuservidor_requisicoes_total{metodo=\"GET\",codigo=\"200\"} 2\n"), texto);
+        assertTrue(texto.contains("meuservidor_requisicoes_total{metodo=\"GET\",codigo=\"404\"} 1\n"));
+        assertTrue(texto.contains("meuservidor_requisicoes_total{metodo=\"outro\",codigo=\"418\"} 1\n"));
+        assertTrue(texto.contains("\nmeuservidor_bytes_enviados_total 15\n"));
+        assertTrue(texto.contains("\nmeuservidor_latencia_segundos_count 4\n"));
+        assertTrue(texto.contains("meuservidor_latencia_segundos{quantile=\"0.99\"} "));
+        assertTrue(texto.contains("# TYPE meuservidor_latencia_segundos summary\n"));
+    }
+
+    @Test
+    void testConnectionGauges() {
+        Metricas metricas = new Metricas("/metrics");
+        metricas.conexaoAberta();
+        metricas.conexaoAberta();
+        metricas.conexaoOciosa(true);
+        metricas.conexaoFechada();
+        metricas.adicionarRecebidos(100);
+
+        String texto = metricas.exportar();
+
+        assertTrue(texto.contains("\nmeuservidor_conexoes_aceitas_total 2\n"));
+        assertTrue(texto.contains("\nmeuservidor_conexoes_abertas 1\n"));
+        assertTrue(texto.contains("\nmeuservidor_conexoes_ociosas 1\n"));
+        assertTrue(texto.contains("\nmeuservidor_bytes_recebidos_total 100\n"));
+    }
+
+    @Test
+    void testRegisteredGaugeAndCache() {
+        Metricas metricas = new Metricas("/metrics");
+        metricas.registrarMedidor("meuservidor_teste", "Medidor de teste", () -> 7);
+
+        String texto = metricas.exportar();
+
+        assertTrue(texto.contains("# HELP meuservidor_teste Medidor de teste\n# TYPE meuservidor_teste gauge\nmeuservidor_teste 7\n"));
+        assertTrue(texto.contains("\nmeuservidor_cache_taxa_acertos "));
+    }
+
+    @Test
+    void testPathMatching() {
+        Metricas metricas = new Metricas("/metrics");
+
+        assertTrue(metricas.isCaminho("/metrics"));
+        assertTrue(metricas.isCaminho("/metrics?x=1"));
+        assertFalse(metricas.isCaminho("/metricsx"));
+        assertFalse(metricas.isCaminho(null));
+        assertFalse(new Metricas(null).isCaminho("/metrics"));
+    }
+
+    @Test
+    void testResponse() {
+        RespostaHTTP resposta = new Metricas("/metrics").responder(requisicao("GET", "/metrics"));
+
+        assertEquals(200, resposta.getCodigoResposta());
+        assertEquals("text/plain; version=0.0.4; charset=utf-8", resposta.getCabecalhos().get("Content-Type").get(0));
+        assertEquals(resposta.getConteudoResposta().length + "", resposta.getCabecalhos().get("Content-Length").get(0));
+        assertTrue(new String(resposta.getConteudoResposta(), StandardCharsets.UTF_8).contains("meuservidor_requisicoes_total"));
+    }
+
+}
@@ -0,0 +1,119 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+class PoliticaConexaoTest {
+
+    private final PoliticaConexao politica = new PoliticaConexao(Configuracao.carregar(new String[]{
+        "conexao.ocioso=5000", "conexao.requisicoes=3"}));
+
+    private static RequisicaoHTTP requisicao(String protocolo) {
+        RequisicaoHTTP requisicao = new RequisicaoHTTP();
+        requisicao.setMetodo("GET");
+        requisicao.setRecurso("/");
+        requisicao.setProtocolo(protocolo);
+        return requisicao;
+    }
+
+    private static RequisicaoHTTP ler(String texto) throws IOException {
+        return RequisicaoHTTP.lerRequisicao(new ByteArrayInputStream(texto.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static String cabecalho(RespostaHTTP resposta) {
+        byte[] bytes = resposta.getCabecalhoConexao();
+        return bytes == null ? null : new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void testAdvertisesTimeoutAndRemainingRequests() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+
+        assertTrue(politica.preparar(requisicao("HTTP/1.1"), resposta, 1));
+        assertEquals("Keep-Alive: timeout=5, max=2\r\n", cabecalho(resposta));
+        assertTrue(resposta.toString().endsWith("Keep-Alive: timeout=5, max=2\r\n\r\n"));
+    }
+
+    @Test
+    void testLastRequestClosesConnection() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+
+        assertFalse(politica.preparar(requisicao("HTTP/1.1"), resposta, 3));
+        assertEquals("Connection: close\r\n", cabecalho(resposta));
+    }
+
+    @Test
+    void testClientAskedToClose() {
+        RequisicaoHTTP requisicao = requisicao("HTTP/1.1");
+        requisicao.setManterViva(false);
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+
+        assertFalse(politica.preparar(requisicao, resposta, 1));
+        assertEquals("Connection: close\r\n", cabecalho(resposta));
+    }
+
+    @Test
+    void testHttp10NeedsExplicitKeepAlive() throws IOException {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.0", 200, "OK");
+
+        assertTrue(politica.preparar(ler("GET / HTTP/1.0\r\nConnection: keep-alive\r\n\r\n"), resposta, 1));
+        assertEquals("Connection: keep-alive\r\nKeep-Alive: timeout=5, max=2\r\n", cabecalho(resposta));
+
+        RespostaHTTP semPedido = new RespostaHTTP("HTTP/1.0", 200, "OK");
+        assertFalse(politica.preparar(ler("GET / HTTP/1.0\r\nHost: x\r\n\r\n"), semPedido, 1));
+        assertEquals("Connection: close\r\n", cabecalho(semPedido));
+        RespostaHTTP semCabecalhos = new RespostaHTTP("HTTP/1.0", 200, "OK");
+        assertFalse(politica.preparar(ler("GET / HTTP/1.0\r\n\r\n"), semCabecalhos, 1));
+        assertEquals("Connection: close\r\n", cabecalho(semCabecalhos));
+    }
+
+    @Test
+    void testClientTimeoutHonoredOnlyWhenShorter() {
+        RequisicaoHTTP curto = requisicao("HTTP/1.1");
+        curto.setCabecalho("Keep-Alive", "timeout=2", " max=10");
+        RequisicaoHTTP longo = requisicao("HTTP/1.1");
+        longo.setCabecalho("Keep-Alive", "timeout=60");
+        RequisicaoHTTP invalido = requisicao("HTTP/1.1");
+        invalido.setCabecalho("Keep-Alive", "timeout=x");
+
+        assertEquals(2000, politica.getTempoOcioso(curto));
+        assertEquals(5000, politica.getTempoOcioso(longo));
+        assertEquals(5000, politica.getTempoOcioso(invalido));
+        assertEquals(5000, politica.getTempoOcioso(requisicao("HTTP/1.1")));
+
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        politica.preparar(curto, resposta, 1);
+        assertEquals("Keep-Alive: timeout=2, max=2\r\n", cabecalho(resposta));
+    }
+
+    @Test
+    void testUnlimitedRequestsOmitsMax() {
+        PoliticaConexao semLimite = new PoliticaConexao(Configuracao.carregar(new String[]{"conexao.requisicoes=0"}));
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+
+        assertTrue(semLimite.preparar(requisicao("HTTP/1.1"), resposta, 5000));
+        assertEquals("Keep-Alive: timeout=5\r\n", cabecalho(resposta));
+    }
+
+    @Test
+    void testGeneratedBodyForHttp10IsNotTouched() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.0", 200, "OK");
+        resposta.setGerador(saida -> saida.write('x'));
+
+        assertFalse(politica.preparar(requisicao("HTTP/1.0"), resposta, 1));
+        assertNull(resposta.getCabecalhoConexao());
+    }
+
+    @Test
+    void testExplicitConnectionHeaderWins() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setCabecalho("Connection", "close");
+
+        assertFalse(politica.preparar(requisicao("HTTP/1.1"), resposta, 1));
+        assertNull(resposta.getCabecalhoConexao());
+    }
+}
@@ -0,0 +1,88 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+class PoolBuffersTest {
+
+    @Test
+    void testLeasesDirectBufferOfSizeClass() {
+        PoolBuffers pool = new PoolBuffers(true);
+
+        ByteBuffer buffer = pool.emprestar(5000);
+        assertTrue(buffer.isDirect());
+        assertEquals(8192, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(8192, buffer.limit());
+        assertEquals(4096, pool.emprestar(1).capacity());
+        assertEquals(2, pool.getEmprestados());
+    }
+
+    @Test
+    void testReturnedBufferIsReusedCleared() {
+        PoolBuffers pool = new PoolBuffers(true);
+        ByteBuffer buffer = pool.emprestar(16 * 1024);
+        buffer.put((byte) 1).flip();
+
+        pool.devolver(buffer);
+        assertEquals(16 * 1024, pool.getBytesLivres());
+
+        ByteBuffer outro = pool.emprestar(10000);
+        assertSame(buffer, outro);
+        assertEquals(0, outro.position());
+        assertEquals(outro.capacity(), outro.limit());
+        assertEquals(1, pool.getAlocados());
+        assertEquals(0, pool.getBytesLivres());
+    }
+
+    @Test
+    void testOversizedBuffersAreNotPooled() {
+        PoolBuffers pool = new PoolBuffers(true);
+        ByteBuffer grande = pool.emprestar(PoolBuffers.MAIOR_CLASSE + 1);
+        assertEquals(PoolBuffers.MAIOR_CLASSE + 1, grande.capacity());
+
+        pool.devolver(grande);
+        assertEquals(0, pool.getBytesLivres());
+        assertEquals(0, pool.getEmprestados());
+    }
+
+    @Test
+    void testFreeBuffersAreBounded() {
+        PoolBuffers pool = new PoolBuffers(false);
+        int cabem = PoolBuffers.LIMITE_FAIXA / PoolBuffers.MAIOR_CLASSE;
+        ByteBuffer[] buffers = new ByteBuffer[cabem + 5];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.emprestar(PoolBuffers.MAIOR_CLASSE);
+        }
+        for (ByteBuffer buffer : buffers) {
+            pool.devolver(buffer);
+        }
+        //a mesma thread usa uma só faixa
+        assertEquals((long) cabem * PoolBuffers.MAIOR_CLASSE, pool.getBytesLivres());
+    }
+
+    @Test
+    void testLeakDetectionPointsToLeaseSite() {
+        PoolBuffers pool = new PoolBuffers(true);
+        pool.devolver(pool.emprestar(100));
+        pool.verificarVazamentos();
+
+        pool.emprestar(100);
+        IllegalStateException erro = assertThrows(IllegalStateException.class, pool::verificarVazamentos);
+        assertTrue(erro.getMessage().startsWith("1 "));
+        assertNotNull(erro.getCause());
+        assertEquals("testLeakDetectionPointsToLeaseSite", erro.getCause().getStackTrace()[1].getMethodName());
+    }
+
+    @Test
+    void testDoubleReturnDetected() {
+        PoolBuffers pool = new PoolBuffers(true);
+        ByteBuffer buffer = pool.emprestar(100);
+        pool.devolver(buffer);
+
+        assertThrows(IllegalStateException.class, () -> pool.devolver(buffer));
+        assertThrows(IllegalStateException.class, () -> pool.devolver(ByteBuffer.allocateDirect(4096)));
+    }
+}
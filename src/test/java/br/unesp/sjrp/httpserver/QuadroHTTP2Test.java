@@ -0,0 +1,54 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+
+class QuadroHTTP2Test {
+
+    @Test
+    void testWriteAndRead() throws Exception {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        byte[] carga = "ola".getBytes(StandardCharsets.US_ASCII);
+        QuadroHTTP2.escrever(saida, QuadroHTTP2.DADOS, QuadroHTTP2.FIM_FLUXO, 3, carga, 0, carga.length);
+        QuadroHTTP2.escrever(saida, QuadroHTTP2.CONFIGURACOES, QuadroHTTP2.CONFIRMACAO, 0, carga, 0, 0);
+        byte[] bytes = saida.toByteArray();
+        assertEquals(9 + 3 + 9, bytes.length);
+        assertArrayEquals(new byte[]{0, 0, 3, 0, 1, 0, 0, 0, 3}, java.util.Arrays.copyOf(bytes, 9));
+
+        ByteArrayInputStream entrada = new ByteArrayInputStream(bytes);
+        QuadroHTTP2 quadro = new QuadroHTTP2();
+        assertTrue(quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+        assertEquals(QuadroHTTP2.DADOS, quadro.getTipo());
+        assertTrue(quadro.temFlag(QuadroHTTP2.FIM_FLUXO));
+        assertEquals(3, quadro.getFluxo());
+        assertEquals("ola", new String(quadro.getCarga(), 0, quadro.getTamanho(), StandardCharsets.US_ASCII));
+        assertTrue(quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+        assertEquals(QuadroHTTP2.CONFIGURACOES, quadro.getTipo());
+        assertEquals(0, quadro.getTamanho());
+        //fim do stream entre dois quadros
+        assertFalse(quadro.ler(entrada, QuadroHTTP2.TAMANHO_PADRAO));
+    }
+
+    @Test
+    void testReservedBitIgnoredAndSizeChecked() throws Exception {
+        QuadroHTTP2 quadro = new QuadroHTTP2();
+        byte[] reservado = {0, 0, 0, 8, 0, (byte) 0x80, 0, 0, 1};
+        assertTrue(quadro.ler(new ByteArrayInputStream(reservado), QuadroHTTP2.TAMANHO_PADRAO));
+        assertEquals(1, quadro.getFluxo());
+
+        byte[] grande = {0, 0x40, 1, 0, 0, 0, 0, 0, 1};
+        ErroHTTP2 erro = assertThrows(ErroHTTP2.class,
+                () -> quadro.ler(new ByteArrayInputStream(grande), QuadroHTTP2.TAMANHO_PADRAO));
+        assertEquals(ErroHTTP2.ERRO_TAMANHO_QUADRO, erro.getCodigo());
+
+        byte[] incompleto = {0, 0, 4, 0, 0, 0, 0, 0, 1, 1};
+        assertThrows(EOFException.class,
+                () -> quadro.ler(new ByteArrayInputStream(incompleto), QuadroHTTP2.TAMANHO_PADRAO));
+    }
+
+}
@@ -0,0 +1,206 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+
+class RegistroAcessoTest {
+
+    private static RequisicaoHTTP requisicao() {
+        RequisicaoHTTP requisicao = new RequisicaoHTTP();
+        requisicao.setMetodo("GET");
+        requisicao.setRecurso("/index.html");
+        requisicao.setProtocolo("HTTP/1.1");
+        requisicao.setCabecalho("Referer", "http://exemplo/");
+        requisicao.setCabecalho("User-Agent", "teste \"1\"");
+        return requisicao;
+    }
+
+    private static RespostaHTTP resposta() {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setConteudoResposta(new byte[42]);
+        return resposta;
+    }
+
+    private static String registrar(String... opcoes) throws IOException {
+        StringWriter destino = new StringWriter();
+        RegistroAcesso registro = new RegistroAcesso(destino, Configuracao.carregar(opcoes));
+        registro.registrar(InetAddress.getLoopbackAddress(), requisicao(), resposta(), System.nanoTime());
+        registro.close();
+        return destino.toString();
+    }
+
+    @Test
+    void testCommonFormat() throws IOException {
+        String linha = registrar("log.formato=comum");
+
+        assertTrue(linha.matches("127\\.0\\.0\\.1 - - \\[\\d{2}/\\w{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2} \\+0000\\] "
+                + "\"GET /index\\.html HTTP/1\\.1\" 200 42\n"), linha);
+    }
+
+    @Test
+    void testCombinedFormatEscapesQuotes() throws IOException {
+        String linha = registrar();
+
+        assertTrue(linha.endsWith("\"GET /index.html HTTP/1.1\" 200 42 \"http://exemplo/\" \"teste \\\"1\\\"\"\n"), linha);
+    }
+
+    @Test
+    void testJsonFormat() throws IOException {
+        String linha = registrar("log.formato=json");
+
+        assertTrue(linha.startsWith("{\"data\":\""), linha);
+        assertTrue(linha.contains(",\"cliente\":\"127.0.0.1\",\"metodo\":\"GET\",\"recurso\":\"/index.html\","
+                + "\"protocolo\":\"HTTP/1.1\",\"status\":200,\"bytes\":42,\"duracao_us\":"), linha);
+        assertTrue(linha.endsWith(",\"referer\":\"http://exemplo/\",\"agente\":\"teste \\\"1\\\"\"}\n"), linha);
+    }
+
+    @Test
+    void testHeaderDumpIsOptIn() throws IOException {
+        assertFalse(registrar().contains("    Referer"));
+        assertTrue(registrar("log.cabecalhos=true").contains("\n    Referer: http://exemplo/\n"));
+    }
+
+    @Test
+    void testControlCharactersEscaped() throws IOException {
+        StringWriter destino = new StringWriter();
+        RegistroAcesso registro = new RegistroAcesso(destino, new Configuracao());
+        RequisicaoHTTP requisicao = requisicao();
+        requisicao.setRecurso("/a\nb");
+        registro.registrar(null, requisicao, resposta(), System.nanoTime());
+        registro.close();
+
+        assertTrue(destino.toString().startsWith("- - - ["));
+        assertTrue(destino.toString().contains("/a\\x0ab"));
+        assertEquals(1, destino.toString().split("\n").length);
+    }
+
+    @Test
+    void testSampling() throws IOException {
+        StringWriter destino = new StringWriter();
+        RegistroAcesso registro = new RegistroAcesso(destino, Configuracao.carregar(new String[]{"log.amostragem=4"}));
+        for (int i = 0; i < 4000; i++) {
+            registro.registrar(null, requisicao(), resposta(), System.nanoTime());
+        }
+        registro.close();
+
+        int linhas = destino.toString().split("\n").length;
+        assertTrue(linhas > 500 && linhas < 1500, "linhas: " + linhas);
+    }
+
+    /**
+     * Destino que trava a thread do log até ser liberado.
+     */
+    private static class DestinoTravado extends Writer {
+
+        private final CountDownLatch liberar = new CountDownLatch(1);
+        private final CountDownLatch travado = new CountDownLatch(1);
+        private int linhas;
+
+        @Override
+        public void write(char[] texto, int inicio, int tamanho) throws IOException {
+            travado.countDown();
+            try {
+                liberar.await();
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            for (int i = inicio; i < inicio + tamanho; i++) {
+                if (texto[i] == '\n') {
+                    linhas++;
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void testDropPolicyWhenFull() throws Exception {
+        DestinoTravado destino = new DestinoTravado();
+        RegistroAcesso registro = new RegistroAcesso(destino, Configuracao.carregar(new String[]{"log.capacidade=4"}));
+        registro.registrar(null, requisicao(), resposta(), System.nanoTime());
+        destino.travado.await();
+
+        for (int i = 0; i < 10; i++) {
+            registro.registrar(null, requisicao(), resposta(), System.nanoTime());
+        }
+        assertEquals(6, registro.getDescartados());
+
+        destino.liberar.countDown();
+        registro.close();
+        assertEquals(5, destino.linhas);
+    }
+
+    @Test
+    void testHeadersCopiedWhenRegistered() throws Exception {
+        StringWriter saida = new StringWriter();
+        DestinoTravado destino = new DestinoTravado() {
+            @Override
+            public void write(char[] texto, int inicio, int tamanho) throws IOException {
+                super.write(texto, inicio, tamanho);
+                saida.write(texto, inicio, tamanho);
+            }
+        };
+        RegistroAcesso registro = new RegistroAcesso(destino, Configuracao.carregar(new String[]{"log.cabecalhos=true"}));
+        registro.registrar(null, requisicao(), resposta(), System.nanoTime());
+        destino.travado.await();
+        RequisicaoHTTP requisicao = requisicao();
+        registro.registrar(null, requisicao, resposta(), System.nanoTime());
+
+        // the request is reused after registering, while the writer is still behind
+        requisicao.setCabecalho("Referer", "http://outro/");
+        destino.liberar.countDown();
+        registro.close();
+
+        assertFalse(saida.toString().contains("http://outro/"));
+    }
+
+    @Test
+    void testBlockPolicyKeepsEverything() throws Exception {
+        DestinoTravado destino = new DestinoTravado();
+        RegistroAcesso registro = new RegistroAcesso(destino,
+                Configuracao.carregar(new String[]{"log.capacidade=4", "log.politica=bloquear"}));
+        registro.registrar(null, requisicao(), resposta(), System.nanoTime());
+        destino.travado.await();
+
+        Thread produtor = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                registro.registrar(null, requisicao(), resposta(), System.nanoTime());
+            }
+        });
+        produtor.start();
+        produtor.join(200);
+        //com a fila cheia o produtor fica esperando
+        assertTrue(produtor.isAlive());
+
+        destino.liberar.countDown();
+        produtor.join();
+        registro.close();
+        assertEquals(0, registro.getDescartados());
+        assertEquals(11, destino.linhas);
+    }
+
+    @Test
+    void testInvalidFormat() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RegistroAcesso(new StringWriter(), Configuracao.carregar(new String[]{"log.formato=xml"})));
+    }
+
+    @Test
+    void testDisabledWithoutFile() throws IOException {
+        assertNull(RegistroAcesso.criar(new Configuracao()));
+    }
+
+}
@@ -0,0 +1,51 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+class RelogioHTTPTest {
+
+    @Test
+    void testFormatar() {
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", RelogioHTTP.formatar(0));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", RelogioHTTP.formatar(784111777000L));
+        assertEquals("Sat, 01 Feb 2025 09:05:03 GMT", RelogioHTTP.formatar(1738400703999L));
+    }
+
+    @Test
+    void testAgoraIsCurrentTime() {
+        long antes = System.currentTimeMillis() / 1000 * 1000;
+        long agora = Util.lerDataGMT(RelogioHTTP.agora());
+        long depois = System.currentTimeMillis();
+
+        assertTrue(agora >= antes && agora <= depois);
+    }
+
+    @Test
+    void testBytesMatchText() {
+        String texto;
+        byte[] bytes;
+        do {
+            texto = RelogioHTTP.agora();
+            bytes = RelogioHTTP.bytesAgora();
+        } while (!texto.equals(RelogioHTTP.agora()));
+
+        assertEquals(texto, new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testSameSecondReusesBytes() {
+        byte[] primeiro;
+        byte[] segundo;
+        long inicio;
+        do {
+            inicio = System.currentTimeMillis() / 1000;
+            primeiro = RelogioHTTP.bytesAgora();
+            segundo = RelogioHTTP.bytesAgora();
+        } while (inicio != System.currentTimeMillis() / 1000);
+
+        assertSame(primeiro, segundo);
+    }
+}
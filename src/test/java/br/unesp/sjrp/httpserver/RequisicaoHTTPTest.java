@@ -117,7 +117,8 @@ class RequisicaoHTTPTest {
         Map<String, List<String>> cabecalhos = req.getCabecalhos();
         assertNotNull(cabecalhos);
         assertTrue(cabecalhos.containsKey("Host"));
-        assertEquals(Arrays.asList("localhost"), cabecalhos.get("Host"));
+        // Values containing ':' are kept whole
+        assertEquals(Arrays.asList("localhost:8000"), cabecalhos.get("Host"));
         assertTrue(cabecalhos.containsKey("User-Agent"));
         assertEquals(Arrays.asList("Mozilla/5.0"), cabecalhos.get("User-Agent"));
         
@@ -187,11 +188,38 @@ class RequisicaoHTTPTest {
         assertEquals("/favicon.ico", req.getRecurso());
         assertEquals("HTTP/1.0", req.getProtocolo());
         
-        // No Connection header, so should remain default (true)
-        assertTrue(req.isManterViva());
+        // HTTP/1.0 without Connection: keep-alive is not persistent
+        assertFalse(req.isManterViva());
         
         // Should have the Host header
         assertNotNull(req.getCabecalhos());
         assertTrue(req.getCabecalhos().containsKey("Host"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testLerRequisicaoWithoutHeaders() throws IOException {
+        InputStream inputStream = new ByteArrayInputStream("GET / HTTP/1.1\r\n\r\n".getBytes());
+
+        RequisicaoHTTP req = RequisicaoHTTP.lerRequisicao(inputStream);
+
+        assertEquals("/", req.getRecurso());
+        assertNull(req.getCabecalhos());
+        assertTrue(req.isManterViva());
+    }
+
+    @Test
+    void testLerRequisicaoEndOfStream() {
+        InputStream vazio = new ByteArrayInputStream(new byte[0]);
+        InputStream incompleto = new ByteArrayInputStream("GET / HTTP/1.1\r\nHost: a".getBytes());
+
+        assertThrows(java.io.EOFException.class, () -> RequisicaoHTTP.lerRequisicao(vazio));
+        assertThrows(java.io.EOFException.class, () -> RequisicaoHTTP.lerRequisicao(incompleto));
+    }
+
+    @Test
+    void testLerRequisicaoInvalid() {
+        InputStream inputStream = new ByteArrayInputStream("GET /\r\n\r\n".getBytes());
+
+        assertThrows(RequisicaoInvalidaException.class, () -> RequisicaoHTTP.lerRequisicao(inputStream));
+    }
+}
@@ -221,4 +221,37 @@ class RespostaHTTPTest {
         assertTrue(output.contains("HTTP/1.1 404 Not Found"));
         assertTrue(output.endsWith(errorContent));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGeneratedBodyIsChunked() throws IOException {
+        RespostaHTTP resp = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resp.setCabecalho("Content-Length", "99");
+        resp.setGerador(saida -> {
+            saida.write("ola ".getBytes());
+            saida.flush();
+            saida.write("mundo".getBytes());
+        });
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        resp.setSaida(bytes);
+
+        resp.enviar();
+
+        assertNull(resp.getTamanhoResposta());
+        assertTrue(resp.isDelimitada());
+        assertEquals("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nola \r\n5\r\nmundo\r\n0\r\n\r\n",
+                bytes.toString());
+    }
+
+    @Test
+    void testGeneratedBodyForHttp10ClosesConnection() throws IOException {
+        RespostaHTTP resp = new RespostaHTTP("HTTP/1.0", 200, "OK");
+        resp.setGerador(saida -> saida.write("ola".getBytes()));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        resp.setSaida(bytes);
+
+        resp.enviar();
+
+        assertFalse(resp.isDelimitada());
+        assertEquals("HTTP/1.0 200 OK\r\nConnection: close\r\n\r\nola", bytes.toString());
+    }
+}
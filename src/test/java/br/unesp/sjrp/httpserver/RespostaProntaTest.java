@@ -0,0 +1,117 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+class RespostaProntaTest {
+
+    private static RespostaHTTP modelo() {
+        RespostaHTTP modelo = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        modelo.setConteudoResposta("Hello".getBytes(StandardCharsets.US_ASCII));
+        modelo.setCabecalho("Date", "Thu, 01 Jan 1970 00:00:00 GMT");
+        modelo.setCabecalho("Server", "MeuServidor/1.0");
+        modelo.setCabecalho("Content-Length", "5");
+        return modelo;
+    }
+
+    @Test
+    void testSameBytesAsModelExceptDate() throws IOException {
+        RespostaHTTP modelo = modelo();
+        ByteArrayOutputStream esperado = new ByteArrayOutputStream();
+        modelo.setSaida(esperado);
+        modelo.enviar();
+
+        RespostaHTTP resposta = new RespostaPronta(modelo).criarResposta();
+        ByteArrayOutputStream obtido = new ByteArrayOutputStream();
+        resposta.setSaida(obtido);
+        resposta.enviar();
+
+        String semData = "Date: [^\r]*";
+        String texto = obtido.toString(StandardCharsets.ISO_8859_1);
+        assertEquals(esperado.toString(StandardCharsets.ISO_8859_1).replaceAll(semData, ""),
+                texto.replaceAll(semData, ""));
+        assertFalse(texto.contains("1970"));
+        assertTrue(texto.endsWith("\r\n\r\nHello"));
+    }
+
+    @Test
+    void testResponseExposesModelFields() {
+        RespostaHTTP resposta = new RespostaPronta(modelo()).criarResposta();
+
+        assertEquals("HTTP/1.1", resposta.getProtocolo());
+        assertEquals(200, resposta.getCodigoResposta());
+        assertEquals("OK", resposta.getMensagem());
+        assertNotNull(resposta.getPronta());
+        assertEquals("5", resposta.getCabecalhos().get("Content-Length").get(0));
+    }
+
+    @Test
+    void testChangingHeadersFallsBackToSerialization() throws IOException {
+        RespostaPronta pronta = new RespostaPronta(modelo());
+        RespostaHTTP resposta = pronta.criarResposta();
+
+        resposta.setCabecalho("X-Extra", "1");
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        resposta.setSaida(saida);
+        resposta.enviar();
+
+        assertNull(resposta.getPronta());
+        assertTrue(saida.toString(StandardCharsets.ISO_8859_1).contains("X-Extra: 1\r\n"));
+        // the shared template is untouched
+        assertFalse(pronta.criarResposta().getCabecalhos().containsKey("X-Extra"));
+    }
+
+    @Test
+    void testSetterThenHeaderOnPreparedResponse() throws IOException {
+        RespostaPronta pronta = new RespostaPronta(modelo());
+        RespostaHTTP resposta = pronta.criarResposta();
+
+        resposta.setCodigoResposta(201);
+        resposta.setCabecalho("X-Extra", "1");
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        resposta.setSaida(saida);
+        resposta.enviar();
+
+        String texto = saida.toString(StandardCharsets.ISO_8859_1);
+        assertTrue(texto.startsWith("HTTP/1.1 201 "));
+        assertTrue(texto.contains("X-Extra: 1\r\n"));
+        assertFalse(pronta.criarResposta().getCabecalhos().containsKey("X-Extra"));
+    }
+
+    @Test
+    void testConnectionHeaderInsertedBeforeBlankLine() throws IOException {
+        RespostaHTTP resposta = new RespostaPronta(modelo()).criarResposta();
+        resposta.setCabecalhoConexao("Keep-Alive: timeout=5\r\n".getBytes(StandardCharsets.US_ASCII));
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        resposta.setSaida(saida);
+        resposta.enviar();
+
+        assertNotNull(resposta.getPronta());
+        assertTrue(saida.toString(StandardCharsets.ISO_8859_1).endsWith(
+                "Server: MeuServidor/1.0\r\nKeep-Alive: timeout=5\r\n\r\nHello"));
+    }
+
+    @Test
+    void testModelWithoutDateRejected() {
+        RespostaHTTP semData = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        semData.setCabecalho("Server", "x");
+
+        assertThrows(IllegalArgumentException.class, () -> new RespostaPronta(semData));
+    }
+
+    @Test
+    void testIndice() {
+        assertEquals(0, RespostaPronta.indice(200, "HTTP/1.1"));
+        assertEquals(1, RespostaPronta.indice(200, "HTTP/1.0"));
+        assertEquals(2, RespostaPronta.indice(404, "HTTP/1.1"));
+        assertEquals(3, RespostaPronta.indice(404, "HTTP/1.0"));
+        assertEquals(4, RespostaPronta.indice(304, "HTTP/1.1"));
+        assertEquals(5, RespostaPronta.indice(304, "HTTP/1.0"));
+        assertEquals(-1, RespostaPronta.indice(500, "HTTP/1.1"));
+        assertEquals(-1, RespostaPronta.indice(200, "HTTP/2.0"));
+    }
+}
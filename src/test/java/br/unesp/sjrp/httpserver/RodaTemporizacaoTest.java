@@ -0,0 +1,109 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RodaTemporizacaoTest {
+
+    private final RodaTemporizacao roda = new RodaTemporizacao(10, 8);
+    private final AtomicInteger vencidos = new AtomicInteger();
+
+    @Test
+    void testExpiresOnlyAfterDeadline() {
+        RodaTemporizacao.Temporizador temporizador = roda.criar(vencidos::incrementAndGet);
+        long inicio = roda.agora();
+        temporizador.adiar(1000);
+
+        roda.avancar(inicio + 900);
+        assertEquals(0, vencidos.get());
+        roda.avancar(inicio + 1100);
+        assertEquals(1, vencidos.get());
+        roda.avancar(inicio + 5000);
+        assertEquals(1, vencidos.get());
+    }
+
+    @Test
+    void testPostponedDeadlineIsRescheduled() {
+        RodaTemporizacao.Temporizador temporizador = roda.criar(vencidos::incrementAndGet);
+        long inicio = roda.agora();
+        temporizador.adiar(100);
+        roda.avancar(inicio + 50);
+        temporizador.adiar(1000);
+
+        roda.avancar(inicio + 200);
+        assertEquals(0, vencidos.get());
+        roda.avancar(inicio + 1200);
+        assertEquals(1, vencidos.get());
+    }
+
+    @Test
+    void testEarlierDeadlineReplacesLaterOne() {
+        RodaTemporizacao.Temporizador temporizador = roda.criar(vencidos::incrementAndGet);
+        long inicio = roda.agora();
+        temporizador.adiar(30000);
+        roda.avancar(inicio);
+        temporizador.adiar(100);
+
+        roda.avancar(inicio + 300);
+        assertEquals(1, vencidos.get());
+        roda.avancar(inicio + 40000);
+        assertEquals(1, vencidos.get());
+    }
+
+    @Test
+    void testDisarmedAndCancelledNeverExpire() {
+        RodaTemporizacao.Temporizador desarmado = roda.criar(vencidos::incrementAndGet);
+        RodaTemporizacao.Temporizador cancelado = roda.criar(vencidos::incrementAndGet);
+        long inicio = roda.agora();
+        desarmado.adiar(100);
+        cancelado.adiar(100);
+        roda.avancar(inicio);
+        desarmado.desarmar();
+        cancelado.cancelar();
+
+        roda.avancar(inicio + 200);
+        assertEquals(0, vencidos.get());
+
+        desarmado.adiar(100);
+        cancelado.adiar(100);
+        roda.avancar(inicio + 1000);
+        assertEquals(1, vencidos.get());
+    }
+
+    @Test
+    void testManyTimersAcrossSeveralTurns() {
+        long inicio = roda.agora();
+        for (int i = 1; i <= 100; i++) {
+            roda.criar(vencidos::incrementAndGet).adiar(i * 7);
+        }
+        //a roda tem 8 posições de 10 ms: os prazos dão várias voltas
+        for (long instante = inicio; instante <= inicio + 350; instante += 10) {
+            roda.avancar(instante);
+        }
+        int ateMetade = vencidos.get();
+        assertTrue(ateMetade >= 45 && ateMetade <= 50, "vencidos: " + ateMetade);
+        roda.avancar(inicio + 800);
+        assertEquals(100, vencidos.get());
+    }
+
+    @Test
+    void testOwnThread() throws InterruptedException {
+        CountDownLatch vencido = new CountDownLatch(1);
+        roda.iniciar("roda-teste");
+        try {
+            roda.criar(vencido::countDown).adiar(50);
+            assertTrue(vencido.await(5, TimeUnit.SECONDS));
+        } finally {
+            roda.close();
+        }
+    }
+
+    @Test
+    void testInvalidResolution() {
+        assertThrows(IllegalArgumentException.class, () -> new RodaTemporizacao(0, 8));
+    }
+}
@@ -0,0 +1,138 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+class RoteadorTest {
+
+    private static final Manipulador PADRAO = requisicao -> resposta("padrao");
+
+    private static RequisicaoHTTP requisicao(String metodo, String recurso) {
+        RequisicaoHTTP requisicao = new RequisicaoHTTP();
+        requisicao.setMetodo(metodo);
+        requisicao.setRecurso(recurso);
+        requisicao.setProtocolo("HTTP/1.1");
+        return requisicao;
+    }
+
+    private static RespostaHTTP resposta(String texto) {
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setConteudoResposta(texto.getBytes(StandardCharsets.UTF_8));
+        return resposta;
+    }
+
+    private static Manipulador texto(String texto) {
+        return requisicao -> resposta(texto);
+    }
+
+    private static String atender(Roteador roteador, String metodo, String recurso) throws Exception {
+        return new String(roteador.atender(requisicao(metodo, recurso)).getConteudoResposta(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testStaticRoutesSharingPrefixes() throws Exception {
+        Roteador roteador = new Roteador(PADRAO);
+        roteador.adicionar("GET", "/api/usuarios", texto("usuarios"));
+        roteador.adicionar("GET", "/api/uso", texto("uso"));
+        roteador.adicionar("GET", "/api", texto("api"));
+        roteador.adicionar("GET", "/", texto("raiz"));
+
+        assertEquals("usuarios", atender(roteador, "GET", "/api/usuarios"));
+        assertEquals("uso", atender(roteador, "GET", "/api/uso?x=1"));
+        assertEquals("api", atender(roteador, "GET", "/api"));
+        assertEquals("raiz", atender(roteador, "GET", "/"));
+        assertEquals("padrao", atender(roteador, "GET", "/api/us"));
+        assertEquals("padrao", atender(roteador, "GET", "/api/usuarios/"));
+    }
+
+    @Test
+    void testPathParameters() throws Exception {
+        Roteador roteador = new Roteador(PADRAO);
+        roteador.adicionar("GET", "/usuarios/{id}/fotos/{foto}",
+                requisicao -> resposta(requisicao.getParametro("id") + ":" + requisicao.getParametro("foto")));
+
+        assertEquals("42:7", atender(roteador, "GET", "/usuarios/42/fotos/7?tamanho=p"));
+        assertEquals("padrao", atender(roteador, "GET", "/usuarios//fotos/7"));
+        assertEquals("padrao", atender(roteador, "GET", "/usuarios/42/fotos/"));
+    }
+
+    @Test
+    void testStaticBeforeParameterBeforeWildcard() throws Exception {
+        Roteador roteador = new Roteador(PADRAO);
+        roteador.adicionar("GET", "/itens/novo", texto("novo"));
+        roteador.adicionar("GET", "/itens/{id}", requisicao -> resposta("item " + requisicao.getParametro("id")));
+        roteador.adicionar("GET", "/itens/*resto", requisicao -> resposta("resto " + requisicao.getParametro("resto")));
+
+        assertEquals("novo", atender(roteador, "GET", "/itens/novo"));
+        assertEquals("item novos", atender(roteador, "GET", "/itens/novos"));
+        assertEquals("resto a/b", atender(roteador, "GET", "/itens/a/b"));
+        assertEquals("resto ", atender(roteador, "GET", "/itens/"));
+    }
+
+    @Test
+    void testBacktracksFromStaticToParameter() throws Exception {
+        Roteador roteador = new Roteador(PADRAO);
+        roteador.adicionar("GET", "/a/fixo/x", texto("fixo"));
+        roteador.adicionar("GET", "/a/{p}/y", requisicao -> resposta(requisicao.getParametro("p")));
+
+        assertEquals("fixo", atender(roteador, "GET", "/a/fixo/x"));
+        assertEquals("fixo", atender(roteador, "GET", "/a/fixo/y"));
+    }
+
+    @Test
+    void testMethodConstraints() throws Exception {
+        Roteador roteador = new Roteador(PADRAO);
+        roteador.adicionar("GET", "/recurso", texto("get"));
+        roteador.adicionar("POST", "/recurso", texto("post"));
+        roteador.adicionar("/livre", texto("livre"));
+
+        assertEquals("get", atender(roteador, "GET", "/recurso"));
+        assertEquals("get", atender(roteador, "HEAD", "/recurso"));
+        assertEquals("post", atender(roteador, "POST", "/recurso"));
+        assertEquals("livre", atender(roteador, "DELETE", "/livre"));
+
+        RespostaHTTP resposta = roteador.atender(requisicao("DELETE", "/recurso"));
+        assertEquals(405, resposta.getCodigoResposta());
+        assertEquals("GET, POST, HEAD", resposta.getCabecalhos().get("Allow").get(0));
+    }
+
+    @Test
+    void testInvalidPatterns() {
+        Roteador roteador = new Roteador(PADRAO);
+        roteador.adicionar("GET", "/x/{id}", PADRAO);
+
+        assertThrows(IllegalArgumentException.class, () -> roteador.adicionar("GET", "sem-barra", PADRAO));
+        assertThrows(IllegalArgumentException.class, () -> roteador.adicionar("GET", "/x/a{id}", PADRAO));
+        assertThrows(IllegalArgumentException.class, () -> roteador.adicionar("GET", "/x/{id}b", PADRAO));
+        assertThrows(IllegalArgumentException.class, () -> roteador.adicionar("GET", "/x/*a/b", PADRAO));
+        assertThrows(IllegalArgumentException.class, () -> roteador.adicionar("GET", "/x/{outro}", PADRAO));
+        assertThrows(IllegalArgumentException.class, () -> roteador.adicionar("GET", "/x/{id}", PADRAO));
+    }
+
+    @Test
+    void testAsyncHandlerAwaitedBySyncCall() throws Exception {
+        Roteador roteador = new Roteador(PADRAO);
+        roteador.adicionar("GET", "/lento", (ManipuladorAssincrono) requisicao
+                -> CompletableFuture.supplyAsync(() -> resposta("pronto")));
+        roteador.adicionar("GET", "/falha", (ManipuladorAssincrono) requisicao
+                -> CompletableFuture.failedFuture(new java.io.IOException("falhou")));
+
+        assertEquals("pronto", atender(roteador, "GET", "/lento"));
+        assertThrows(java.io.IOException.class, () -> atender(roteador, "GET", "/falha"));
+    }
+
+    @Test
+    void testServerRoutes() throws Exception {
+        Roteador roteador = Roteador.criar(new Configuracao());
+
+        RespostaHTTP saude = roteador.atender(requisicao("GET", "/health"));
+        assertEquals("{\"status\":\"ok\"}", new String(saude.getConteudoResposta(), StandardCharsets.UTF_8));
+        assertTrue(saude.getCabecalhos().get("Content-Type").get(0).startsWith("application/json"));
+        assertTrue(new String(roteador.atender(requisicao("GET", "/metrics")).getConteudoResposta(),
+                StandardCharsets.UTF_8).contains("meuservidor_"));
+        assertEquals(404, roteador.atender(requisicao("GET", "/nao-existe.html")).getCodigoResposta());
+    }
+}
@@ -0,0 +1,173 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class SaidaConexaoTest {
+
+    /**
+     * Canal que aceita no máximo alguns bytes por chamada e registra quantas
+     * buffers vieram em cada escrita.
+     */
+    private static class CanalLento implements GatheringByteChannel {
+
+        private final ByteArrayOutputStream recebidos = new ByteArrayOutputStream();
+        private final List<Integer> escritas = new ArrayList<>();
+        private final int limite;
+
+        CanalLento(int limite) {
+            this.limite = limite;
+        }
+
+        @Override
+        public long write(ByteBuffer[] buffers, int inicio, int quantidade) {
+            escritas.add(quantidade);
+            int escritos = 0;
+            for (int i = inicio; i < inicio + quantidade && escritos < limite; i++) {
+                while (buffers[i].hasRemaining() && escritos < limite) {
+                    recebidos.write(buffers[i].get());
+                    escritos++;
+                }
+            }
+            return escritos;
+        }
+
+        @Override
+        public long write(ByteBuffer[] buffers) {
+            return write(buffers, 0, buffers.length);
+        }
+
+        @Override
+        public int write(ByteBuffer buffer) {
+            return (int) write(new ByteBuffer[]{buffer});
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    private static byte[] bytes(int tamanho) {
+        byte[] bytes = new byte[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    void testSmallWritesAreBuffered() throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        SaidaConexao saida = new SaidaConexao(destino, null, 16);
+
+        saida.write(new byte[]{1, 2, 3});
+        saida.write(4);
+        assertEquals(0, destino.size());
+
+        saida.flush();
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, destino.toByteArray());
+    }
+
+    @Test
+    void testLargeWriteIsGatheredWithBufferedBytes() throws IOException {
+        CanalLento canal = new CanalLento(7);
+        SaidaConexao saida = new SaidaConexao(new ByteArrayOutputStream(), canal, 16);
+        byte[] corpo = bytes(40);
+
+        saida.write(new byte[]{9, 9});
+        saida.write(corpo);
+
+        byte[] esperado = new byte[42];
+        esperado[0] = 9;
+        esperado[1] = 9;
+        System.arraycopy(corpo, 0, esperado, 2, 40);
+        assertArrayEquals(esperado, canal.recebidos.toByteArray());
+        //cabeçalho e corpo sempre na mesma chamada
+        assertTrue(canal.escritas.stream().allMatch(q -> q == 2));
+    }
+
+    @Test
+    void testLargeWriteWithoutChannel() throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        SaidaConexao saida = new SaidaConexao(destino, null, 16);
+        byte[] corpo = bytes(40);
+
+        saida.write(new byte[]{9});
+        saida.write(corpo);
+        saida.flush();
+
+        byte[] recebidos = destino.toByteArray();
+        assertEquals(41, recebidos.length);
+        assertArrayEquals(corpo, Arrays.copyOfRange(recebidos, 1, 41));
+    }
+
+    @Test
+    void testReserveWritesInPlace() throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        SaidaConexao saida = new SaidaConexao(destino, null, 8);
+        saida.write(new byte[]{1, 2, 3, 4, 5});
+
+        int posicao = saida.reservar(4);
+        assertEquals(0, posicao);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, destino.toByteArray());
+
+        saida.getBuffer().put(posicao, (byte) 6);
+        saida.avancar(1);
+        saida.flush();
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, destino.toByteArray());
+        assertEquals(-1, saida.reservar(9));
+    }
+
+    @Test
+    void testHeaderEncodedIntoBuffer() throws IOException {
+        CanalLento canal = new CanalLento(Integer.MAX_VALUE);
+        SaidaConexao saida = new SaidaConexao(new ByteArrayOutputStream(), canal, 1024);
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 200, "OK");
+        resposta.setCabecalho("Content-Length", "2000");
+        resposta.setConteudoResposta(new byte[2000]);
+        resposta.setSaida(saida);
+
+        resposta.enviar();
+
+        assertEquals(Arrays.asList(2), canal.escritas);
+        assertEquals(resposta.toString().length() + 2000, canal.recebidos.size());
+    }
+
+    @Test
+    void testPooledBufferLeasedOnDemand() throws IOException {
+        CanalLento canal = new CanalLento(Integer.MAX_VALUE);
+        PoolBuffers pool = new PoolBuffers(true);
+        SaidaConexao saida = new SaidaConexao(canal, pool, 1024);
+        assertEquals(0, pool.getEmprestados());
+
+        RespostaHTTP resposta = new RespostaHTTP("HTTP/1.1", 404, "Not Found");
+        resposta.setCabecalho("Content-Length", "3");
+        resposta.setConteudoResposta(new byte[]{1, 2, 3});
+        resposta.setSaida(saida);
+        resposta.enviar();
+        assertEquals(1, pool.getEmprestados());
+        assertTrue(saida.getBuffer().isDirect());
+
+        saida.flush();
+        saida.liberar();
+        pool.verificarVazamentos();
+        byte[] recebidos = canal.recebidos.toByteArray();
+        assertEquals(resposta.toString(), new String(recebidos, 0, recebidos.length - 3,
+                java.nio.charset.StandardCharsets.ISO_8859_1));
+    }
+
+}
@@ -0,0 +1,88 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+class SaidaStreamingTest {
+
+    @Test
+    void testBufferedUntilFull() throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        SaidaStreaming saida = new SaidaStreaming(destino, 4, true);
+
+        saida.write(bytes("abc"));
+        assertEquals("", texto(destino));
+        saida.write(bytes("de"));
+        assertEquals("3\r\nabc\r\n", texto(destino));
+        saida.close();
+        assertEquals("3\r\nabc\r\n2\r\nde\r\n0\r\n\r\n", texto(destino));
+    }
+
+    @Test
+    void testFlushEmitsChunk() throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        SaidaStreaming saida = new SaidaStreaming(destino, 64, true);
+
+        saida.write('x');
+        saida.flush();
+        saida.flush();
+
+        assertEquals("1\r\nx\r\n", texto(destino));
+    }
+
+    @Test
+    void testLargeWriteBecomesOneChunk() throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        SaidaStreaming saida = new SaidaStreaming(destino, 4, true);
+
+        saida.write(bytes("a"));
+        saida.write(bytes("0123456789abcdef"));
+        saida.close();
+
+        assertEquals("1\r\na\r\n10\r\n0123456789abcdef\r\n0\r\n\r\n", texto(destino));
+    }
+
+    @Test
+    void testEmptyBodyOnlyTerminates() throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        SaidaStreaming saida = new SaidaStreaming(destino, 4, true);
+
+        saida.write(new byte[0]);
+        saida.close();
+        saida.close();
+
+        assertEquals("0\r\n\r\n", texto(destino));
+    }
+
+    @Test
+    void testRawWithoutChunked() throws IOException {
+        ByteArrayOutputStream destino = new ByteArrayOutputStream();
+        SaidaStreaming saida = new SaidaStreaming(destino, 4, false);
+
+        saida.write(bytes("abcdef"));
+        saida.write(bytes("g"));
+        saida.close();
+
+        assertEquals("abcdefg", texto(destino));
+    }
+
+    @Test
+    void testWriteAfterCloseFails() throws IOException {
+        SaidaStreaming saida = new SaidaStreaming(new ByteArrayOutputStream(), 4, true);
+        saida.close();
+
+        assertThrows(IOException.class, () -> saida.write('x'));
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String texto(ByteArrayOutputStream destino) {
+        return destino.toString(StandardCharsets.US_ASCII);
+    }
+}
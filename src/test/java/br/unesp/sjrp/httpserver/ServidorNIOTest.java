@@ -0,0 +1,213 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+class ServidorNIOTest {
+
+    private ServidorNIO servidor;
+    private Thread aceitador;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        servidor = new ServidorNIO(0, 2);
+        aceitador = new Thread(() -> {
+            try {
+                servidor.executar();
+            } catch (IOException e) {
+                // server closed
+            }
+        });
+        aceitador.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        servidor.close();
+        aceitador.join(2000);
+    }
+
+    @Test
+    void testServesIndex() throws IOException {
+        String resposta = enviar("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+        assertTrue(resposta.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(resposta.contains("Content-Type: text/html"));
+        assertTrue(resposta.contains("Funcionou!!!!"));
+    }
+
+    @Test
+    void testNotFound() throws IOException {
+        String resposta = enviar("GET /nao-existe.html HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+        assertTrue(resposta.startsWith("HTTP/1.1 404 Not Found\r\n"));
+    }
+
+    @Test
+    void testPipelinedRequestsAnsweredInOrder() throws IOException {
+        String resposta = enviar("GET /nao-existe HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+        int primeira = resposta.indexOf("HTTP/1.1 404 Not Found");
+        int segunda = resposta.indexOf("HTTP/1.1 200 OK");
+        assertTrue(primeira >= 0);
+        assertTrue(segunda > primeira);
+    }
+
+    @Test
+    void testPipelinedHeadSendsNoBody() throws IOException {
+        String resposta = enviar("HEAD / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "HEAD /nao-existe HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+        //cada resposta do HEAD termina no fim dos cabeçalhos
+        int fimPrimeira = resposta.indexOf("\r\n\r\n") + 4;
+        assertTrue(resposta.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(resposta.substring(0, fimPrimeira).contains("Content-Length: "));
+        assertTrue(resposta.startsWith("HTTP/1.1 404 Not Found\r\n", fimPrimeira), resposta);
+        int fimSegunda = resposta.indexOf("\r\n\r\n", fimPrimeira) + 4;
+        assertTrue(resposta.startsWith("HTTP/1.1 200 OK\r\n", fimSegunda), resposta);
+        assertEquals(resposta.indexOf("Funcionou!!!!"), resposta.lastIndexOf("Funcionou!!!!"));
+        assertTrue(resposta.indexOf("Funcionou!!!!") > fimSegunda);
+    }
+
+    @Test
+    void testRequestSplitAcrossWrites() throws Exception {
+        try (Socket socket = new Socket("localhost", servidor.getPorta())) {
+            OutputStream saida = socket.getOutputStream();
+            saida.write("GET / HTTP/1.1\r\nHo".getBytes(StandardCharsets.US_ASCII));
+            saida.flush();
+            Thread.sleep(50);
+            saida.write("st: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            saida.flush();
+
+            String resposta = lerTudo(socket.getInputStream());
+            assertTrue(resposta.startsWith("HTTP/1.1 200 OK\r\n"));
+        }
+    }
+
+    @Test
+    void testLargeFileSentFromDisk(@TempDir Path raiz) throws IOException {
+        //maior que o buffer do socket, força várias transferências parciais
+        byte[] conteudo = new byte[4 * 1024 * 1024];
+        for (int i = 0; i < conteudo.length; i++) {
+            conteudo[i] = (byte) ('a' + i % 26);
+        }
+        Files.write(raiz.resolve("grande.txt"), conteudo);
+        ArquivosEstaticos anterior = ArquivosEstaticos.getPadrao();
+        ArquivosEstaticos.setPadrao(new ArquivosEstaticos(
+                new CacheRecursos(new FonteDiretorio(raiz, 1024), 1024 * 1024, 0)));
+        try {
+            String resposta = enviar("GET /grande.txt HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /nao-existe HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+            assertTrue(resposta.startsWith("HTTP/1.1 200 OK\r\n"));
+            int corpo = resposta.indexOf("\r\n\r\n") + 4;
+            assertEquals(new String(conteudo, StandardCharsets.ISO_8859_1),
+                    resposta.substring(corpo, corpo + conteudo.length));
+            assertTrue(resposta.startsWith("HTTP/1.1 404 Not Found\r\n", corpo + conteudo.length));
+        } finally {
+            ArquivosEstaticos.setPadrao(anterior);
+        }
+    }
+
+    @Test
+    void testMultipleRangesFromDisk(@TempDir Path raiz) throws IOException {
+        byte[] conteudo = new byte[2 * 1024 * 1024];
+        for (int i = 0; i < conteudo.length; i++) {
+            conteudo[i] = (byte) ('a' + i % 26);
+        }
+        Files.write(raiz.resolve("grande.txt"), conteudo);
+        ArquivosEstaticos anterior = ArquivosEstaticos.getPadrao();
+        ArquivosEstaticos.setPadrao(new ArquivosEstaticos(
+                new CacheRecursos(new FonteDiretorio(raiz, 1024), 1024 * 1024, 0)));
+        try {
+            String resposta = enviar("GET /grande.txt HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Range: bytes=0-1048575,2000000-\r\nConnection: close\r\n\r\n");
+
+            assertTrue(resposta.startsWith("HTTP/1.1 206 Partial Content\r\n"));
+            String texto = new String(conteudo, StandardCharsets.ISO_8859_1);
+            String separador = "--" + ArquivosEstaticos.SEPARADOR;
+            int primeira = resposta.indexOf("\r\n\r\n", resposta.indexOf(separador)) + 4;
+            assertEquals(texto.substring(0, 1048576), resposta.substring(primeira, primeira + 1048576));
+            assertTrue(resposta.contains("Content-Range: bytes 2000000-" + (conteudo.length - 1) + "/" + conteudo.length));
+            assertTrue(resposta.endsWith(texto.substring(2000000) + "\r\n" + separador + "--\r\n"));
+        } finally {
+            ArquivosEstaticos.setPadrao(anterior);
+        }
+    }
+
+    @Test
+    void testGeneratorDoesNotBlockEventLoop() throws Exception {
+        byte[] conteudo = new byte[4 * 1024 * 1024];
+        for (int i = 0; i < conteudo.length; i++) {
+            conteudo[i] = (byte) ('a' + i % 26);
+        }
+        CountDownLatch liberar = new CountDownLatch(1);
+        Roteador anterior = Roteador.getPadrao();
+        Roteador roteador = Roteador.criar(new Configuracao());
+        roteador.adicionar("GET", "/gerado", requisicao -> {
+            RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
+            resposta.setGerador(saida -> {
+                try {
+                    liberar.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                for (int i = 0; i < conteudo.length; i += 1000) {
+                    saida.write(conteudo, i, Math.min(1000, conteudo.length - i));
+                }
+            });
+            return resposta;
+        });
+        Roteador.setPadrao(roteador);
+        try (Socket socket = new Socket("localhost", servidor.getPorta())) {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write("GET /gerado HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+
+            //com o gerador parado, os dois laços continuam atendendo
+            for (int i = 0; i < 2; i++) {
+                assertTrue(enviar("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                        .startsWith("HTTP/1.1 200 OK\r\n"));
+            }
+
+            liberar.countDown();
+            String resposta = lerTudo(socket.getInputStream());
+            assertTrue(resposta.startsWith("HTTP/1.0 200 OK\r\n"), resposta);
+            int corpo = resposta.indexOf("\r\n\r\n") + 4;
+            assertEquals(new String(conteudo, StandardCharsets.ISO_8859_1), resposta.substring(corpo));
+        } finally {
+            liberar.countDown();
+            Roteador.setPadrao(anterior);
+        }
+    }
+
+    private String enviar(String requisicao) throws IOException {
+        try (Socket socket = new Socket("localhost", servidor.getPorta())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(requisicao.getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            return lerTudo(socket.getInputStream());
+        }
+    }
+
+    private static String lerTudo(InputStream entrada) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        entrada.transferTo(bytes);
+        return bytes.toString(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -45,4 +45,338 @@ class ServidorTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCriarExecutorFixedPool() throws Exception {
+        java.util.concurrent.ExecutorService pool = Servidor.criarExecutor(new Configuracao());
+        try {
+            assertTrue(pool instanceof java.util.concurrent.ThreadPoolExecutor);
+            assertEquals(20, ((java.util.concurrent.ThreadPoolExecutor) pool).getMaximumPoolSize());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testCriarExecutorBoundedQueue() {
+        java.util.concurrent.ThreadPoolExecutor pool = (java.util.concurrent.ThreadPoolExecutor) Servidor
+                .criarExecutor(Configuracao.carregar(new String[]{"limite.fila=5"}));
+        try {
+            assertEquals(5, pool.getQueue().remainingCapacity());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testCriarExecutorSplitAcrossAcceptors() {
+        java.util.concurrent.ThreadPoolExecutor pool = (java.util.concurrent.ThreadPoolExecutor) Servidor
+                .criarExecutor(new Configuracao(), 3);
+        try {
+            assertEquals(7, pool.getMaximumPoolSize());
+            assertEquals(334, pool.getQueue().remainingCapacity());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testCriarExecutorVirtualMode() throws Exception {
+        // On JDK 21+ this yields virtual threads, on JDK 17 it falls back to the fixed pool
+        Configuracao configuracao = Configuracao.carregar(new String[]{"modo=virtual"});
+        java.util.concurrent.ExecutorService pool = Servidor.criarExecutor(configuracao);
+        try {
+            assertEquals("ok", pool.submit(() -> "ok").get());
+            if (Runtime.version().feature() < 21) {
+                assertTrue(pool instanceof java.util.concurrent.ThreadPoolExecutor);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String buscar(int porta) throws IOException {
+        try (java.net.Socket socket = new java.net.Socket("localhost", porta)) {
+            socket.getOutputStream().write("GET / HTTP/1.1\r\nConnection: close\r\n\r\n"
+                    .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+            return new String(socket.getInputStream().readAllBytes(), java.nio.charset.StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    @Test
+    void testStartOnEphemeralPortAndStop() throws Exception {
+        for (String modo : new String[]{"threads", "nio"}) {
+            Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "modo=" + modo, "lacos=1"}));
+            servidor.iniciar();
+            int porta = servidor.getPorta();
+            try {
+                assertTrue(porta > 0);
+                assertTrue(buscar(porta).startsWith("HTTP/1.1 200 OK"), modo);
+            } finally {
+                servidor.close();
+            }
+            servidor.aguardar();
+            assertThrows(IOException.class, () -> buscar(porta));
+        }
+    }
+
+    @Test
+    void testKeepAliveAdvertisedUntilMaxRequests() throws Exception {
+        for (String modo : new String[]{"threads", "nio"}) {
+            try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "modo=" + modo,
+                "lacos=1", "conexao.requisicoes=2"}))) {
+                servidor.iniciar();
+                try (java.net.Socket socket = new java.net.Socket("localhost", servidor.getPorta())) {
+                    socket.setSoTimeout(5000);
+                    socket.getOutputStream().write("GET / HTTP/1.1\r\n\r\nGET / HTTP/1.1\r\n\r\n"
+                            .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                    //a conexão é fechada pelo servidor depois da segunda resposta
+                    String respostas = new String(socket.getInputStream().readAllBytes(),
+                            java.nio.charset.StandardCharsets.ISO_8859_1);
+                    int segunda = respostas.indexOf("HTTP/1.1 200 OK", 1);
+                    assertTrue(segunda > 0, modo);
+                    assertTrue(respostas.substring(0, segunda).contains("\r\nKeep-Alive: timeout=5, max=1\r\n"), modo);
+                    assertTrue(respostas.substring(segunda).contains("\r\nConnection: close\r\n"), modo);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testIdleConnectionClosedAfterTimeout() throws Exception {
+        for (String modo : new String[]{"threads", "nio"}) {
+            try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "modo=" + modo,
+                "lacos=1", "conexao.ocioso=1000"}))) {
+                servidor.iniciar();
+                try (java.net.Socket socket = new java.net.Socket("localhost", servidor.getPorta())) {
+                    socket.setSoTimeout(5000);
+                    socket.getOutputStream().write("GET / HTTP/1.1\r\n\r\n"
+                            .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                    long inicio = System.nanoTime();
+                    java.io.InputStream entrada = new java.io.BufferedInputStream(socket.getInputStream());
+                    assertEquals(200, ConexaoCarga.lerResposta(entrada), modo);
+                    //sem outra requisição, o servidor fecha a conexão ociosa
+                    assertEquals(-1, entrada.read(), modo);
+                    long decorrido = (System.nanoTime() - inicio) / 1000000;
+                    assertTrue(decorrido >= 900 && decorrido < 4000, modo + ": " + decorrido);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testIdleConnectionsDoNotHoldPoolThreads() throws Exception {
+        try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "threads=1"}))) {
+            servidor.iniciar();
+            try (java.net.Socket primeira = new java.net.Socket("localhost", servidor.getPorta());
+                    java.net.Socket segunda = new java.net.Socket("localhost", servidor.getPorta())) {
+                primeira.setSoTimeout(3000);
+                segunda.setSoTimeout(3000);
+                //com uma só thread, a segunda conexão só é atendida se a
+                //primeira, ociosa, não estiver presa a ela
+                for (int i = 0; i < 2; i++) {
+                    for (java.net.Socket socket : new java.net.Socket[]{primeira, segunda}) {
+                        socket.getOutputStream().write("GET / HTTP/1.1\r\n\r\n"
+                                .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                        assertEquals(200, ConexaoCarga.lerResposta(socket.getInputStream()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testConnectionsOverLimitReceive503() throws Exception {
+        for (String modo : new String[]{"threads", "nio"}) {
+            try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "modo=" + modo,
+                "lacos=1", "limite.conexoes=1", "limite.retryAfter=7"}))) {
+                servidor.iniciar();
+                try (java.net.Socket primeira = new java.net.Socket("localhost", servidor.getPorta())) {
+                    primeira.setSoTimeout(5000);
+                    primeira.getOutputStream().write("GET / HTTP/1.1\r\n\r\n"
+                            .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                    assertEquals(200, ConexaoCarga.lerResposta(primeira.getInputStream()), modo);
+                    //a primeira, em keep-alive, ainda ocupa a única vaga
+                    try (java.net.Socket segunda = new java.net.Socket("localhost", servidor.getPorta())) {
+                        segunda.setSoTimeout(5000);
+                        String resposta = new String(segunda.getInputStream().readAllBytes(),
+                                java.nio.charset.StandardCharsets.ISO_8859_1);
+                        assertTrue(resposta.startsWith("HTTP/1.1 503 Service Unavailable\r\n"), modo);
+                        assertTrue(resposta.contains("\r\nRetry-After: 7\r\n"), modo);
+                    }
+                }
+                //fechada a primeira, a vaga volta
+                long limite = System.currentTimeMillis() + 5000;
+                int codigo = 0;
+                while (codigo != 200 && System.currentTimeMillis() < limite) {
+                    try (java.net.Socket outra = new java.net.Socket("localhost", servidor.getPorta())) {
+                        outra.setSoTimeout(5000);
+                        outra.getOutputStream().write("GET / HTTP/1.1\r\nConnection: close\r\n\r\n"
+                                .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                        codigo = ConexaoCarga.lerResposta(outra.getInputStream());
+                    } catch (java.io.IOException ex) {
+                        //recusada antes de o servidor notar o fechamento
+                    }
+                    if (codigo != 200) {
+                        Thread.sleep(50);
+                    }
+                }
+                assertEquals(200, codigo, modo);
+            }
+        }
+    }
+
+    @Test
+    void testRequestLimitReleasesSlots() throws Exception {
+        for (String modo : new String[]{"threads", "nio"}) {
+            try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "modo=" + modo,
+                "lacos=1", "limite.requisicoes=1"}))) {
+                servidor.iniciar();
+                try (java.net.Socket socket = new java.net.Socket("localhost", servidor.getPorta())) {
+                    socket.setSoTimeout(5000);
+                    //cada requisição devolve a única vaga ao terminar
+                    for (int i = 0; i < 3; i++) {
+                        socket.getOutputStream().write("GET / HTTP/1.1\r\n\r\n"
+                                .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                        assertEquals(200, ConexaoCarga.lerResposta(socket.getInputStream()), modo);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMultipleAcceptors() throws Exception {
+        for (String modo : new String[]{"threads", "nio"}) {
+            try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "modo=" + modo,
+                "lacos=3", "aceitadores=2", "backlog=64"}))) {
+                servidor.iniciar();
+                for (int i = 0; i < 20; i++) {
+                    assertTrue(buscar(servidor.getPorta()).startsWith("HTTP/1.1 200 OK"), modo);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testIoBuffersReturnedToPool() throws Exception {
+        PoolBuffers anterior = PoolBuffers.getPadrao();
+        PoolBuffers pool = new PoolBuffers(true);
+        PoolBuffers.setPadrao(pool);
+        try {
+            for (String modo : new String[]{"threads", "nio"}) {
+                try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "modo=" + modo,
+                    "lacos=1"}))) {
+                    servidor.iniciar();
+                    try (java.net.Socket socket = new java.net.Socket("localhost", servidor.getPorta())) {
+                        socket.setSoTimeout(5000);
+                        for (int i = 0; i < 3; i++) {
+                            socket.getOutputStream().write("GET / HTTP/1.1\r\n\r\n"
+                                    .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                            assertEquals(200, ConexaoCarga.lerResposta(socket.getInputStream()), modo);
+                        }
+                        //ociosa, a conexão keep-alive não segura buffers
+                        esperarDevolucao(pool);
+                        assertEquals(0, pool.getEmprestados(), modo);
+                    }
+                    for (int i = 0; i < 3; i++) {
+                        assertTrue(buscar(servidor.getPorta()).startsWith("HTTP/1.1 200 OK"), modo);
+                    }
+                }
+                esperarDevolucao(pool);
+                pool.verificarVazamentos();
+            }
+        } finally {
+            PoolBuffers.setPadrao(anterior);
+        }
+    }
+
+    @Test
+    void testRoutesAndAsyncHandlers() throws Exception {
+        Roteador anterior = Roteador.getPadrao();
+        Roteador roteador = Roteador.criar(new Configuracao());
+        roteador.adicionar("GET", "/eco/{texto}", requisicao -> {
+            RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
+            resposta.setConteudoResposta(requisicao.getParametro("texto")
+                    .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+            ArquivosEstaticos.preencherCabecalhos(resposta, "text/plain");
+            return resposta;
+        });
+        roteador.adicionar("GET", "/lento", (ManipuladorAssincrono) requisicao -> java.util.concurrent.CompletableFuture
+                .supplyAsync(() -> {
+                    RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
+                    resposta.setConteudoResposta("lento".getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                    ArquivosEstaticos.preencherCabecalhos(resposta, "text/plain");
+                    return resposta;
+                }, java.util.concurrent.CompletableFuture.delayedExecutor(50,
+                        java.util.concurrent.TimeUnit.MILLISECONDS)));
+        Roteador.setPadrao(roteador);
+        try {
+            for (String modo : new String[]{"threads", "nio"}) {
+                try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0", "modo=" + modo,
+                    "lacos=1"}));
+                        java.net.Socket socket = new java.net.Socket()) {
+                    servidor.iniciar();
+                    socket.connect(new java.net.InetSocketAddress("localhost", servidor.getPorta()));
+                    socket.setSoTimeout(5000);
+                    //a resposta assíncrona sai antes das seguintes do pipeline
+                    socket.getOutputStream().write(("GET /lento HTTP/1.1\r\n\r\nGET /eco/ola HTTP/1.1\r\n\r\n"
+                            + "GET /health HTTP/1.1\r\nConnection: close\r\n\r\n")
+                            .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                    String respostas = new String(socket.getInputStream().readAllBytes(),
+                            java.nio.charset.StandardCharsets.ISO_8859_1);
+                    int lento = respostas.indexOf("\r\n\r\nlento");
+                    int eco = respostas.indexOf("\r\n\r\nola");
+                    int saude = respostas.indexOf("{\"status\":\"ok\"}");
+                    assertTrue(lento > 0 && eco > lento && saude > eco, modo + ": " + respostas);
+                }
+            }
+        } finally {
+            Roteador.setPadrao(anterior);
+        }
+    }
+
+    @Test
+    void testPipelinedHeadSendsNoBody() throws Exception {
+        Roteador anterior = Roteador.getPadrao();
+        Roteador roteador = Roteador.criar(new Configuracao());
+        roteador.adicionar("GET", "/gerado", requisicao -> {
+            RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
+            resposta.setGerador(saida -> saida.write("gerado".getBytes(java.nio.charset.StandardCharsets.US_ASCII)));
+            return resposta;
+        });
+        Roteador.setPadrao(roteador);
+        try (Servidor servidor = new Servidor(Configuracao.carregar(new String[]{"porta=0"}));
+                java.net.Socket socket = new java.net.Socket()) {
+            servidor.iniciar();
+            socket.connect(new java.net.InetSocketAddress("localhost", servidor.getPorta()));
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("HEAD / HTTP/1.1\r\n\r\nHEAD /gerado HTTP/1.1\r\n\r\n"
+                    + "GET / HTTP/1.1\r\nConnection: close\r\n\r\n")
+                    .getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+            String respostas = new String(socket.getInputStream().readAllBytes(),
+                    java.nio.charset.StandardCharsets.ISO_8859_1);
+            //os cabeçalhos do HEAD são os do GET, mas o corpo não vai
+            int fimPrimeira = respostas.indexOf("\r\n\r\n") + 4;
+            assertTrue(respostas.substring(0, fimPrimeira).contains("Content-Length: "), respostas);
+            assertTrue(respostas.startsWith("HTTP/1.1 200 OK\r\n", fimPrimeira), respostas);
+            //nem o pedaço final do chunked
+            int fimSegunda = respostas.indexOf("\r\n\r\n", fimPrimeira) + 4;
+            assertTrue(respostas.substring(fimPrimeira, fimSegunda).contains("Transfer-Encoding: chunked"));
+            assertTrue(respostas.startsWith("HTTP/1.1 200 OK\r\n", fimSegunda), respostas);
+            assertFalse(respostas.contains("gerado"));
+            assertEquals(respostas.indexOf("Funcionou!!!!"), respostas.lastIndexOf("Funcionou!!!!"));
+            assertTrue(respostas.indexOf("Funcionou!!!!") > fimSegunda);
+        } finally {
+            Roteador.setPadrao(anterior);
+        }
+    }
+
+    private static void esperarDevolucao(PoolBuffers pool) throws InterruptedException {
+        //as conexões são encerradas pelas threads do servidor
+        long limite = System.currentTimeMillis() + 5000;
+        while (pool.getEmprestados() > 0 && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+    }
+}
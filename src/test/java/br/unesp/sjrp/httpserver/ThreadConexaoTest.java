@@ -0,0 +1,168 @@
+package br.unesp.sjrp.httpserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+class ThreadConexaoTest {
+
+    private ServerSocketChannel servidor;
+    private int porta;
+    private Thread atendente;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        //aceita como o Servidor, para que o socket tenha um canal
+        servidor = ServerSocketChannel.open().bind(new InetSocketAddress(0));
+        porta = ((InetSocketAddress) servidor.getLocalAddress()).getPort();
+        atendente = new Thread(() -> {
+            try {
+                new ThreadConexao(servidor.accept().socket()).run();
+            } catch (IOException e) {
+                // server closed
+            }
+        });
+        atendente.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        servidor.close();
+        atendente.join(5000);
+    }
+
+    @Test
+    void testPipelinedRequestsAnsweredInOrder() throws IOException {
+        String resposta = enviar("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /nao-existe HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+        int primeira = resposta.indexOf("HTTP/1.1 200 OK");
+        int segunda = resposta.indexOf("HTTP/1.1 404 Not Found");
+        int terceira = resposta.indexOf("HTTP/1.1 200 OK", segunda);
+        assertTrue(primeira == 0);
+        assertTrue(segunda > primeira);
+        assertTrue(terceira > segunda);
+    }
+
+    @Test
+    void testRequestBodyDoesNotBreakPipeline() throws IOException {
+        String resposta = enviar("POST /nao-existe HTTP/1.1\r\nContent-Length: 11\r\n\r\nGET /ignore"
+                + "GET / HTTP/1.1\r\nConnection: close\r\n\r\n");
+
+        assertTrue(resposta.startsWith("HTTP/1.1 404 Not Found"));
+        assertTrue(resposta.contains("HTTP/1.1 200 OK"));
+    }
+
+    @Test
+    void testClientCloseEndsConnection() throws Exception {
+        try (Socket socket = new Socket("localhost", porta)) {
+            socket.getOutputStream().write("GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            socket.shutdownOutput();
+            String resposta = new String(socket.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+            assertTrue(resposta.startsWith("HTTP/1.1 200 OK"));
+        }
+        atendente.join(5000);
+        assertFalse(atendente.isAlive());
+    }
+
+    @Test
+    void testMetricsEndpoint() throws IOException {
+        String resposta = enviar("GET / HTTP/1.1\r\n\r\n"
+                + "GET /metrics HTTP/1.1\r\nConnection: close\r\n\r\n");
+
+        int metricas = resposta.indexOf("HTTP/1.1 200 OK", 1);
+        assertTrue(metricas > 0);
+        assertTrue(resposta.indexOf("Content-Type: text/plain; version=0.0.4", metricas) > 0);
+        assertTrue(resposta.indexOf("meuservidor_requisicoes_total{metodo=\"GET\",codigo=\"200\"}", metricas) > 0);
+        assertTrue(resposta.indexOf("meuservidor_conexoes_abertas ", metricas) > 0);
+    }
+
+    @Test
+    void testInvalidRequestClosesConnection() throws Exception {
+        String resposta = enviar("LIXO\r\n\r\n");
+
+        assertEquals("", resposta);
+        atendente.join(5000);
+        assertFalse(atendente.isAlive());
+    }
+
+    @Test
+    void testLargeFileSentFromDisk(@TempDir Path raiz) throws IOException {
+        byte[] conteudo = new byte[3 * 1024 * 1024];
+        Arrays.fill(conteudo, (byte) 'x');
+        Files.write(raiz.resolve("grande.bin"), conteudo);
+        ArquivosEstaticos anterior = ArquivosEstaticos.getPadrao();
+        ArquivosEstaticos.setPadrao(new ArquivosEstaticos(
+                new CacheRecursos(new FonteDiretorio(raiz, 1024), 1024 * 1024, 0)));
+        try {
+            String resposta = enviar("GET /grande.bin HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /grande.bin HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+            String cabecalho = "HTTP/1.1 200 OK\r\n";
+            assertTrue(resposta.startsWith(cabecalho));
+            assertTrue(resposta.contains("Content-Length: " + conteudo.length + "\r\n"));
+            int corpo = resposta.indexOf("\r\n\r\n") + 4;
+            int segunda = resposta.indexOf(cabecalho, corpo);
+            assertEquals(corpo + conteudo.length, segunda);
+            assertEquals(resposta.length(), resposta.indexOf("\r\n\r\n", segunda) + 4 + conteudo.length);
+        } finally {
+            ArquivosEstaticos.setPadrao(anterior);
+        }
+    }
+
+    @Test
+    void testStreamedResponseKeepsConnectionOpen() throws IOException {
+        ArquivosEstaticos anterior = ArquivosEstaticos.getPadrao();
+        ArquivosEstaticos.setPadrao(new ArquivosEstaticos(anterior.getCache()) {
+            @Override
+            public RespostaHTTP responder(RequisicaoHTTP requisicao) throws IOException {
+                if (!requisicao.getRecurso().equals("/gerado")) {
+                    return super.responder(requisicao);
+                }
+                RespostaHTTP resposta = new RespostaHTTP(requisicao.getProtocolo(), 200, "OK");
+                resposta.setCabecalho("Content-Type", "text/plain");
+                resposta.setGerador(saida -> {
+                    for (int i = 0; i < 3; i++) {
+                        saida.write(("linha " + i + "\n").getBytes(StandardCharsets.US_ASCII));
+                        saida.flush();
+                    }
+                });
+                return resposta;
+            }
+        });
+        try {
+            String resposta = enviar("GET /gerado HTTP/1.1\r\n\r\n"
+                    + "GET / HTTP/1.1\r\nConnection: close\r\n\r\n");
+
+            assertTrue(resposta.startsWith("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n"
+                    + "Transfer-Encoding: chunked\r\n\r\n8\r\nlinha 0\n\r\n8\r\nlinha 1\n\r\n8\r\nlinha 2\n\r\n0\r\n\r\n"
+                    + "HTTP/1.1 200 OK\r\n"));
+        } finally {
+            ArquivosEstaticos.setPadrao(anterior);
+        }
+    }
+
+    private String enviar(String requisicoes) throws IOException {
+        try (Socket socket = new Socket("localhost", porta)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(requisicoes.getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            socket.getInputStream().transferTo(bytes);
+            return bytes.toString(StandardCharsets.ISO_8859_1);
+        }
+    }
+}
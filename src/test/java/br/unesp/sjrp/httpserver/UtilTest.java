@@ -1,8 +1,15 @@
 package br.unesp.sjrp.httpserver;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.Date;
 import java.util.Calendar;
 import java.util.TimeZone;
@@ -133,4 +140,59 @@ class UtilTest {
         boolean hasEnglishDay = formattedDate.matches(".*\\b(Mon|Tue|Wed|Thu|Fri|Sat|Sun),.*");
         assertTrue(hasEnglishDay);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testNormalizarCaminho() {
+        assertEquals("index.html", Util.normalizarCaminho("/"));
+        assertEquals("index.html", Util.normalizarCaminho("/index.html"));
+        assertEquals("index.html", Util.normalizarCaminho("/index.html?v=1#topo"));
+        assertEquals("css/site.css", Util.normalizarCaminho("/css//./site.css"));
+        assertEquals("index.html", Util.normalizarCaminho("/css/../index.html"));
+        assertEquals("index.html", Util.normalizarCaminho("/?q=1"));
+    }
+
+    @Test
+    void testNormalizarCaminhoOutsideRoot() {
+        assertNull(Util.normalizarCaminho("/../etc/passwd"));
+        assertNull(Util.normalizarCaminho("/a/../../b"));
+    }
+
+    @Test
+    void testTipoConteudo() {
+        assertEquals("text/html", Util.tipoConteudo("index.html"));
+        assertEquals("text/css", Util.tipoConteudo("css/site.CSS"));
+        assertEquals("application/javascript", Util.tipoConteudo("js/app.js"));
+        assertEquals("application/octet-stream", Util.tipoConteudo("LICENSE"));
+        assertEquals("application/octet-stream", Util.tipoConteudo("dir.d/arquivo"));
+        assertEquals("application/octet-stream", Util.tipoConteudo("arquivo.desconhecido"));
+    }
+
+    @Test
+    void testLerDataGMT() {
+        assertEquals(784111777000L, Util.lerDataGMT("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(784111777000L, Util.lerDataGMT(Util.formatarDataGMT(new Date(784111777000L))));
+        assertEquals(-1, Util.lerDataGMT("ontem"));
+        assertEquals(-1, Util.lerDataGMT(null));
+    }
+
+    @Test
+    void testCalcularETag() {
+        byte[] conteudo = "conteudo".getBytes(StandardCharsets.US_ASCII);
+        String etag = Util.calcularETag(conteudo);
+
+        assertTrue(etag.matches("\"[0-9a-f]{32}\""));
+        assertEquals(etag, Util.calcularETag("conteudo".getBytes(StandardCharsets.US_ASCII)));
+        assertNotEquals(etag, Util.calcularETag("outro".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void testCalcularETagFromAttributes(@TempDir Path temporario) throws IOException {
+        Path arquivo = Files.write(temporario.resolve("a.txt"), new byte[10]);
+        String etag = Util.calcularETag(Files.readAttributes(arquivo, BasicFileAttributes.class));
+
+        assertTrue(etag.matches("\"[0-9a-f]+-[0-9a-f]+-[0-9a-f]+\""), etag);
+        assertEquals(etag, Util.calcularETag(Files.readAttributes(arquivo, BasicFileAttributes.class)));
+        Files.setLastModifiedTime(arquivo, FileTime.fromMillis(1000));
+        assertNotEquals(etag, Util.calcularETag(Files.readAttributes(arquivo, BasicFileAttributes.class)));
+    }
+}